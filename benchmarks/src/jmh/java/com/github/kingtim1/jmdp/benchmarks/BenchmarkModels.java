@@ -0,0 +1,110 @@
+/**
+	BenchmarkModels.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.benchmarks;
+
+import com.github.kingtim1.jmdp.BoxedSMDP;
+import com.github.kingtim1.jmdp.IntSMDP;
+import com.github.kingtim1.jmdp.lib.mdps.GarnetMDP;
+import com.github.kingtim1.jmdp.lib.mdps.GridWorldMDP;
+import com.github.kingtim1.jmdp.lib.mdps.LayeredDAGMDP;
+import com.github.kingtim1.jmdp.lib.mdps.RandomSMDP;
+
+/**
+ * The generated models used by the benchmarks. All models are built from the
+ * same seed so that runs are comparable.
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+public final class BenchmarkModels {
+
+	public static final long SEED = 20141031L;
+	public static final int NUM_ACTIONS = 4;
+
+	public static final double GRID_WALL_DENSITY = 0.2;
+	public static final double GRID_SLIP = 0.1;
+	public static final int DAG_LAYERS = 10;
+	public static final int SMDP_MAX_DURATION = 100;
+	public static final double SMDP_TAIL_INDEX = 1.5;
+
+	/**
+	 * The families of generated models.
+	 */
+	public enum Kind {
+		/**
+		 * {@link GarnetMDP}
+		 */
+		GARNET,
+		/**
+		 * {@link GridWorldMDP} on a square grid (ignores the branching
+		 * factor)
+		 */
+		GRID,
+		/**
+		 * {@link LayeredDAGMDP} with {@link BenchmarkModels#DAG_LAYERS}
+		 * layers
+		 */
+		DAG,
+		/**
+		 * {@link RandomSMDP} with heavy-tailed durations
+		 */
+		SMDP
+	}
+
+	private BenchmarkModels() {
+	}
+
+	/**
+	 * Constructs a model with roughly the specified number of states.
+	 */
+	public static IntSMDP model(Kind kind, int states, int branching) {
+		switch (kind) {
+		case GRID:
+			int side = (int) Math.ceil(Math.sqrt(states));
+			return new GridWorldMDP(side, side, GRID_WALL_DENSITY, GRID_SLIP,
+					SEED);
+		case DAG:
+			return new LayeredDAGMDP(DAG_LAYERS, Math.max(branching, states
+					/ DAG_LAYERS), NUM_ACTIONS, branching, SEED);
+		case SMDP:
+			return new RandomSMDP(states, NUM_ACTIONS, branching,
+					SMDP_MAX_DURATION, SMDP_TAIL_INDEX, SEED);
+		default:
+			return new GarnetMDP(states, NUM_ACTIONS, branching, SEED);
+		}
+	}
+
+	public static BoxedSMDP boxed(Kind kind, int states, int branching) {
+		return new BoxedSMDP(model(kind, states, branching));
+	}
+
+	public static BoxedSMDP garnet(int states, int branching) {
+		return boxed(Kind.GARNET, states, branching);
+	}
+}
@@ -0,0 +1,106 @@
+/**
+	CompressedModelBenchmark.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.kingtim1.jmdp.compiled.CompiledSMDP;
+import com.github.kingtim1.jmdp.compiled.CompressedSMDP;
+import com.github.kingtim1.jmdp.discounted.DiscountFactor;
+
+/**
+ * Measures one Gauss-Seidel sweep over a compiled model and over its
+ * {@link CompressedSMDP}, so that the cost of decoding can be compared with
+ * the memory traffic it saves. The largest models do not fit in the processor
+ * caches.
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CompressedModelBenchmark {
+
+	public static final double GAMMA = 0.95;
+
+	@Param({ "GARNET", "GRID", "DAG", "SMDP" })
+	public BenchmarkModels.Kind model;
+
+	@Param({ "10000", "1000000" })
+	public int states;
+
+	@Param({ "4", "16" })
+	public int branching;
+
+	@Param({ "false", "true" })
+	public boolean compressed;
+
+	private CompiledSMDP<Integer, Integer> _compiled;
+	private CompressedSMDP<Integer, Integer> _compressed;
+	private double[] _discounts;
+	private double[] _values;
+
+	@Setup
+	public void setup() {
+		CompiledSMDP<Integer, Integer> compiled = CompiledSMDP
+				.of(BenchmarkModels.model(model, states, branching));
+		_discounts = compiled.discounts(new DiscountFactor(GAMMA));
+		_values = new double[compiled.numberOfStates()];
+		if (compressed) {
+			_compressed = new CompressedSMDP<Integer, Integer>(compiled);
+		} else {
+			_compiled = compiled;
+		}
+	}
+
+	@Benchmark
+	public double[] sweep() {
+		double[] values = _values;
+		if (compressed) {
+			for (int s = 0; s < values.length; s++) {
+				values[s] = _compressed.backup(s, values, _discounts);
+			}
+		} else {
+			for (int s = 0; s < values.length; s++) {
+				values[s] = _compiled.backup(s, values, _discounts);
+			}
+		}
+		return values;
+	}
+}
@@ -0,0 +1,102 @@
+/**
+	FiniteHorizonPolicyEvaluationBenchmark.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.kingtim1.jmdp.BoxedSMDP;
+import com.github.kingtim1.jmdp.DeterministicPolicy;
+import com.github.kingtim1.jmdp.StationaryPolicy;
+import com.github.kingtim1.jmdp.VFunction;
+import com.github.kingtim1.jmdp.discounted.DiscountFactor;
+import com.github.kingtim1.jmdp.horizon.FiniteHorizonPolicyEvaluation;
+import com.github.kingtim1.jmdp.horizon.SequenceOfStationaryPolicies;
+
+/**
+ * Measures {@link FiniteHorizonPolicyEvaluation} of a fixed deterministic
+ * policy repeated over the horizon.
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FiniteHorizonPolicyEvaluationBenchmark {
+
+	public static final int HORIZON = 10;
+
+	@Param({ "100", "10000", "1000000" })
+	public int states;
+
+	@Param({ "4", "16" })
+	public int branching;
+
+	@Param({ "0.9", "0.99" })
+	public double gamma;
+
+	private FiniteHorizonPolicyEvaluation<Integer, Integer> _pe;
+	private SequenceOfStationaryPolicies<Integer, Integer> _policy;
+
+	@Setup
+	public void setup() {
+		BoxedSMDP smdp = BenchmarkModels.garnet(states, branching);
+		_pe = new FiniteHorizonPolicyEvaluation<Integer, Integer>(smdp,
+				new DiscountFactor(gamma));
+
+		StationaryPolicy<Integer, Integer> policy = new DeterministicPolicy<Integer, Integer>() {
+			@Override
+			public Integer policy(Integer state) {
+				return state % BenchmarkModels.NUM_ACTIONS;
+			}
+		};
+		List<StationaryPolicy<Integer, Integer>> seq = new ArrayList<StationaryPolicy<Integer, Integer>>(
+				HORIZON);
+		for (int t = 0; t < HORIZON; t++) {
+			seq.add(policy);
+		}
+		_policy = new SequenceOfStationaryPolicies<Integer, Integer>(seq);
+	}
+
+	@Benchmark
+	public VFunction<Integer> evaluate() {
+		return _pe.eval(_policy);
+	}
+}
@@ -0,0 +1,94 @@
+/**
+	MapQFunctionBenchmark.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.kingtim1.jmdp.actions.ListActionSet;
+import com.github.kingtim1.jmdp.discounted.MapQFunction;
+import com.github.kingtim1.jmdp.util.Optimization;
+
+/**
+ * Measures the latency of {@link MapQFunction#greedyAction(Object)} for
+ * states visited in a pseudo-random order.
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MapQFunctionBenchmark {
+
+	public static final int NUM_LOOKUPS = 1 << 16;
+
+	@Param({ "100", "10000", "1000000" })
+	public int states;
+
+	@Param({ "2", "16", "64" })
+	public int actions;
+
+	private MapQFunction<Integer, Integer> _q;
+	private Integer[] _lookups;
+	private int _next;
+
+	@Setup
+	public void setup() {
+		Random rng = new Random(BenchmarkModels.SEED);
+		_q = new MapQFunction<Integer, Integer>(
+				ListActionSet.<Integer> buildActionSet(actions), 0,
+				Optimization.MAXIMIZE);
+		for (int s = 0; s < states; s++) {
+			for (int a = 0; a < actions; a++) {
+				_q.set(s, a, rng.nextDouble());
+			}
+		}
+		_lookups = new Integer[NUM_LOOKUPS];
+		for (int i = 0; i < NUM_LOOKUPS; i++) {
+			_lookups[i] = rng.nextInt(states);
+		}
+		_next = 0;
+	}
+
+	@Benchmark
+	public Integer greedyAction() {
+		_next = (_next + 1) & (NUM_LOOKUPS - 1);
+		return _q.greedyAction(_lookups[_next]);
+	}
+}
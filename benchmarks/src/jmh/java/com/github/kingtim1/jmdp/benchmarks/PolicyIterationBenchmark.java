@@ -0,0 +1,102 @@
+/**
+	PolicyIterationBenchmark.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.kingtim1.jmdp.BoxedSMDP;
+import com.github.kingtim1.jmdp.StationaryPolicy;
+import com.github.kingtim1.jmdp.discounted.DiscountFactor;
+import com.github.kingtim1.jmdp.discounted.IterativePolicyEvaluation;
+import com.github.kingtim1.jmdp.discounted.PolicyIteration;
+
+/**
+ * Measures {@link PolicyIteration} with the matrix inverse evaluator and with
+ * the iterative evaluator. The matrix inverse evaluator builds a dense
+ * <code>n x n</code> matrix, so the state counts stay small.
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PolicyIterationBenchmark {
+
+	public static final int MAX_ITERATIONS = 20;
+	public static final int EVALUATION_SWEEPS = 50;
+
+	public enum Evaluator {
+		MATRIX_INVERSE, ITERATIVE
+	}
+
+	@Param({ "MATRIX_INVERSE", "ITERATIVE" })
+	public Evaluator evaluator;
+
+	@Param({ "100", "1000" })
+	public int states;
+
+	@Param({ "4", "16" })
+	public int branching;
+
+	@Param({ "0.9", "0.99" })
+	public double gamma;
+
+	private BoxedSMDP _smdp;
+	private DiscountFactor _df;
+
+	@Setup
+	public void setup() {
+		_smdp = BenchmarkModels.garnet(states, branching);
+		_df = new DiscountFactor(gamma);
+	}
+
+	@Benchmark
+	public StationaryPolicy<Integer, Integer> policyIteration() {
+		PolicyIteration<Integer, Integer> pi;
+		if (evaluator == Evaluator.MATRIX_INVERSE) {
+			pi = new PolicyIteration<Integer, Integer>(_smdp, _df,
+					MAX_ITERATIONS);
+		} else {
+			pi = new PolicyIteration<Integer, Integer>(_smdp,
+					new IterativePolicyEvaluation<Integer, Integer>(_smdp, _df,
+							EVALUATION_SWEEPS, 0), _df, MAX_ITERATIONS);
+		}
+		return pi.run();
+	}
+}
@@ -0,0 +1,118 @@
+/**
+	SMDPEstimatorBenchmark.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math3.geometry.euclidean.oned.Interval;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.kingtim1.jmdp.IntSMDP;
+import com.github.kingtim1.jmdp.actions.ListActionSet;
+import com.github.kingtim1.jmdp.approx.ActionOutcome;
+import com.github.kingtim1.jmdp.approx.SMDPEstimator;
+import com.github.kingtim1.jmdp.util.Optimization;
+
+/**
+ * Measures the throughput of {@link SMDPEstimator#update(Iterable)} on a burst
+ * of outcomes sampled from a random MDP. Each invocation feeds the burst to a
+ * fresh estimator so that the cost of creating new table entries is included.
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SMDPEstimatorBenchmark {
+
+	public static final int NUM_OUTCOMES = 100000;
+
+	@Param({ "100", "10000", "1000000" })
+	public int states;
+
+	@Param({ "4", "16" })
+	public int branching;
+
+	private List<ActionOutcome<Integer, Integer>> _outcomes;
+
+	@Setup
+	public void setup() {
+		IntSMDP mdp = BenchmarkModels.model(BenchmarkModels.Kind.GARNET,
+				states, branching);
+		final Random rng = new Random(BenchmarkModels.SEED);
+		_outcomes = new ArrayList<ActionOutcome<Integer, Integer>>(
+				NUM_OUTCOMES);
+		for (int i = 0; i < NUM_OUTCOMES; i++) {
+			final int s = rng.nextInt(states);
+			final int a = rng.nextInt(BenchmarkModels.NUM_ACTIONS);
+			final double u = rng.nextDouble();
+			mdp.successors(s, a, new IntSMDP.SuccessorVisitor() {
+				private double _cdf = 0;
+				private boolean _done = false;
+
+				@Override
+				public void visit(int successor, int duration, double tprob,
+						double r) {
+					_cdf += tprob;
+					if (!_done && u < _cdf) {
+						_outcomes.add(new ActionOutcome<Integer, Integer>(s, a,
+								successor, r, duration));
+						_done = true;
+					}
+				}
+			});
+			if (_outcomes.size() <= i) {
+				_outcomes.add(new ActionOutcome<Integer, Integer>(s, a, s, 0, 1));
+			}
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_OUTCOMES)
+	public SMDPEstimator<Integer, Integer> update() {
+		SMDPEstimator<Integer, Integer> estimator = new SMDPEstimator<Integer, Integer>(
+				-1, ListActionSet
+						.<Integer> buildActionSet(BenchmarkModels.NUM_ACTIONS),
+				1, true, new Interval(0, 1), Optimization.MAXIMIZE);
+		estimator.update(_outcomes);
+		return estimator;
+	}
+}
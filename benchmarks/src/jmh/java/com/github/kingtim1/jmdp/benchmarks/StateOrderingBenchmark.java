@@ -0,0 +1,113 @@
+/**
+	StateOrderingBenchmark.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.kingtim1.jmdp.compiled.CompiledSMDP;
+import com.github.kingtim1.jmdp.compiled.Reordering;
+import com.github.kingtim1.jmdp.compiled.StateOrdering;
+import com.github.kingtim1.jmdp.discounted.DiscountFactor;
+
+/**
+ * Measures one Gauss-Seidel sweep over a compiled model whose states are
+ * numbered in a random order (as when the states of a model are returned in
+ * hash order) and over the same model reordered by a {@link Reordering}
+ * ({@link Reordering#NONE} keeps the shuffled order). By itself the benchmark
+ * only reports the time per sweep; the cache misses that explain it are
+ * counted by the <code>perfnorm</code> profiler
+ * (<code>gradle :benchmarks:jmh -PjmhIncludes=StateOrdering -PjmhProfilers=perfnorm</code>),
+ * which needs Linux <code>perf</code> and access to the hardware counters.
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StateOrderingBenchmark {
+
+	public static final double GAMMA = 0.95;
+
+	@Param({ "GARNET", "GRID", "DAG" })
+	public BenchmarkModels.Kind model;
+
+	@Param({ "10000", "1000000" })
+	public int states;
+
+	@Param({ "4", "16" })
+	public int branching;
+
+	@Param({ "NONE", "BREADTH_FIRST", "REVERSE_CUTHILL_MCKEE" })
+	public Reordering ordering;
+
+	private CompiledSMDP<Integer, Integer> _model;
+	private double[] _discounts;
+	private double[] _values;
+
+	@Setup
+	public void setup() {
+		CompiledSMDP<Integer, Integer> compiled = CompiledSMDP
+				.of(BenchmarkModels.model(model, states, branching));
+		int[] shuffle = new int[compiled.numberOfStates()];
+		for (int i = 0; i < shuffle.length; i++) {
+			shuffle[i] = i;
+		}
+		Random rand = new Random(BenchmarkModels.SEED);
+		for (int i = shuffle.length - 1; i > 0; i--) {
+			int j = rand.nextInt(i + 1);
+			int tmp = shuffle[i];
+			shuffle[i] = shuffle[j];
+			shuffle[j] = tmp;
+		}
+		CompiledSMDP<Integer, Integer> shuffled = new StateOrdering(shuffle)
+				.apply(compiled);
+		_model = ordering.apply(shuffled);
+		_discounts = _model.discounts(new DiscountFactor(GAMMA));
+		_values = new double[_model.numberOfStates()];
+	}
+
+	@Benchmark
+	public double[] sweep() {
+		double[] values = _values;
+		for (int s = 0; s < values.length; s++) {
+			values[s] = _model.backup(s, values, _discounts);
+		}
+		return values;
+	}
+}
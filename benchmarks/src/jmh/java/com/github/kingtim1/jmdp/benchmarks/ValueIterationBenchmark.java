@@ -0,0 +1,93 @@
+/**
+	ValueIterationBenchmark.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.kingtim1.jmdp.BoxedSMDP;
+import com.github.kingtim1.jmdp.discounted.DiscountFactor;
+import com.github.kingtim1.jmdp.discounted.DiscountedQFunction;
+import com.github.kingtim1.jmdp.discounted.ValueIteration;
+
+/**
+ * Measures a fixed number of {@link ValueIteration} sweeps (followed by the
+ * construction of the action-value function) on each family of generated
+ * models.
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ValueIterationBenchmark {
+
+	public static final int SWEEPS = 10;
+
+	@Param({ "GARNET", "GRID", "DAG", "SMDP" })
+	public BenchmarkModels.Kind model;
+
+	@Param({ "100", "10000", "1000000" })
+	public int states;
+
+	@Param({ "4", "16" })
+	public int branching;
+
+	@Param({ "0.9", "0.99" })
+	public double gamma;
+
+	@Param({ "false", "true" })
+	public boolean compiled;
+
+	private BoxedSMDP _smdp;
+	private DiscountFactor _df;
+
+	@Setup
+	public void setup() {
+		_smdp = BenchmarkModels.boxed(model, states, branching);
+		_df = new DiscountFactor(gamma);
+	}
+
+	@Benchmark
+	public DiscountedQFunction<Integer, Integer> valueIteration() {
+		ValueIteration<Integer, Integer> vi = new ValueIteration<Integer, Integer>(
+				_smdp, _df, SWEEPS, 0);
+		vi.setCompiled(compiled);
+		return vi.run();
+	}
+}
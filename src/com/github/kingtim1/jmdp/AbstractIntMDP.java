@@ -0,0 +1,83 @@
+/**
+	AbstractIntMDP.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp;
+
+import com.github.kingtim1.jmdp.util.Optimization;
+
+/**
+ * A skeletal implementation of {@link IntMDP} that implements the
+ * duration-based methods of {@link IntSMDP} in terms of the single-step
+ * methods. Every action is valid at every state unless
+ * {@link #isValid(int, int)} is overridden.
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+public abstract class AbstractIntMDP implements IntMDP {
+
+	private Optimization _opType;
+
+	public AbstractIntMDP(Optimization opType) {
+		_opType = opType;
+	}
+
+	@Override
+	public boolean isValid(int state, int action) {
+		return true;
+	}
+
+	@Override
+	public double r(int state, int action, int terminalState, int duration) {
+		if (duration != 1) {
+			return 0;
+		} else {
+			return r(state, action, terminalState);
+		}
+	}
+
+	@Override
+	public double tprob(int state, int action, int terminalState, int duration) {
+		if (duration != 1) {
+			return 0;
+		} else {
+			return tprob(state, action, terminalState);
+		}
+	}
+
+	@Override
+	public final int maxActionDuration() {
+		return 1;
+	}
+
+	@Override
+	public final Optimization opType() {
+		return _opType;
+	}
+
+}
@@ -29,11 +29,15 @@ package com.github.kingtim1.jmdp;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A generic policy iteration framework. Depending on the implementations of
  * {@link PolicyEvaluation} and {@link PolicyImprovement} provided, this class
  * can implement exact Policy Iteration or Approximate Policy Iteration (API).
+ * Each iteration is reported to the {@link SolverMonitor} as one sweep. The
+ * backups of the evaluation and improvement steps are reported by their own
+ * monitors (if they implement {@link MonitoredSolver}).
  * 
  * @author Timothy A. Mann
  * 
@@ -48,7 +52,7 @@ import java.util.List;
  *            {@link QFunction})
  */
 public abstract class AbstractPolicyIteration<S, A, P extends Policy<S, A>, V>
-		implements DP<P> {
+		implements DP<P>, MonitoredSolver {
 
 	/**
 	 * Listens for typical events that occur during policy iteration algorithms.
@@ -126,6 +130,7 @@ public abstract class AbstractPolicyIteration<S, A, P extends Policy<S, A>, V>
 	private PolicyEvaluation<S, A, P, V> _pe;
 	private PolicyImprovement<S, A, P, V> _pi;
 	private List<PolicyIterationListener<S, A, P, V>> _listeners;
+	private SolverMonitor _monitor;
 
 	/**
 	 * Constructs an instance of AbstractPolicyEvaluation given algorithms for
@@ -140,6 +145,7 @@ public abstract class AbstractPolicyIteration<S, A, P extends Policy<S, A>, V>
 		_pi = pi;
 
 		_listeners = new ArrayList<PolicyIterationListener<S, A, P, V>>();
+		_monitor = new SolverMonitor(this);
 	}
 
 	/**
@@ -181,6 +187,26 @@ public abstract class AbstractPolicyIteration<S, A, P extends Policy<S, A>, V>
 		_listeners.remove(l);
 	}
 
+	@Override
+	public SolverMonitor monitor() {
+		return _monitor;
+	}
+
+	/**
+	 * Returns the residual reported to the {@link SolverMonitor} after an
+	 * iteration. This method is only called when the monitor has listeners.
+	 * The default implementation returns {@link Double#NaN}.
+	 * 
+	 * @param oldVFunc
+	 *            the value of the policy before the iteration
+	 * @param newVFunc
+	 *            the value of the policy after the iteration
+	 * @return the residual of the iteration
+	 */
+	protected double residual(V oldVFunc, V newVFunc) {
+		return Double.NaN;
+	}
+
 	/**
 	 * Returns true if the policy iteration process can terminate. False is
 	 * returned to indicate that the algorithm should continue.
@@ -209,16 +235,17 @@ public abstract class AbstractPolicyIteration<S, A, P extends Policy<S, A>, V>
 	 */
 	@Override
 	public P run() {
-		long pgStart = System.currentTimeMillis();
+		boolean monitored = _monitor.start();
+		long pgStart = System.nanoTime();
 		P policy = initialPolicy();
-		long pgEnd = System.currentTimeMillis();
+		long pgEnd = System.nanoTime();
 
-		long ipeStart = System.currentTimeMillis();
+		long ipeStart = System.nanoTime();
 		V vfunc = _pe.eval(policy);
-		long ipeEnd = System.currentTimeMillis();
+		long ipeEnd = System.nanoTime();
 
-		long pgTime = pgEnd - pgStart;
-		long ipeTime = ipeEnd - ipeStart;
+		long pgTime = TimeUnit.NANOSECONDS.toMillis(pgEnd - pgStart);
+		long ipeTime = TimeUnit.NANOSECONDS.toMillis(ipeEnd - ipeStart);
 		for (PolicyIterationListener<S, A, P, V> l : _listeners) {
 			l.initialEvaluation(policy, vfunc, pgTime, ipeTime);
 		}
@@ -227,19 +254,22 @@ public abstract class AbstractPolicyIteration<S, A, P extends Policy<S, A>, V>
 		while (!isFinished(policy, vfunc, iteration)) {
 			iteration++;
 
-			long peStart = System.currentTimeMillis();
+			long piStart = System.nanoTime();
 			P newPolicy = _pi.improve(policy, vfunc);
-			long peEnd = System.currentTimeMillis();
-			long piStart = System.currentTimeMillis();
+			long piEnd = System.nanoTime();
+			long peStart = System.nanoTime();
 			V newVFunc = _pe.eval(newPolicy);
-			long piEnd = System.currentTimeMillis();
+			long peEnd = System.nanoTime();
 
-			long peTime = peEnd - peStart;
-			long piTime = piEnd - piStart;
+			long piTime = TimeUnit.NANOSECONDS.toMillis(piEnd - piStart);
+			long peTime = TimeUnit.NANOSECONDS.toMillis(peEnd - peStart);
 			for (PolicyIterationListener<S, A, P, V> l : _listeners) {
 				l.iteration(iteration, policy, vfunc, newPolicy, newVFunc,
 						piTime, peTime);
 			}
+			if (monitored) {
+				_monitor.endSweep(residual(vfunc, newVFunc));
+			}
 
 			policy = newPolicy;
 			vfunc = newVFunc;
@@ -249,6 +279,7 @@ public abstract class AbstractPolicyIteration<S, A, P extends Policy<S, A>, V>
 			l.finished(policy, vfunc);
 		}
 
+		_monitor.finish();
 		return policy;
 	}
 
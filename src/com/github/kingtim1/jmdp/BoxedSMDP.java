@@ -0,0 +1,286 @@
+/**
+	BoxedSMDP.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Random;
+
+import com.github.kingtim1.jmdp.discounted.DiscountFactor;
+
+/**
+ * Adapts an {@link IntSMDP} to the generic {@link FiniteStateSMDP} API, so
+ * that primitive models can be solved by the map-based algorithms.
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+public class BoxedSMDP extends FiniteStateSMDP<Integer, Integer> {
+
+	/**
+	 * The action set of an {@link IntSMDP}.
+	 */
+	private static class IntActionSet implements ActionSet<Integer, Integer> {
+
+		private IntSMDP _model;
+		private Random _rand = new Random();
+
+		public IntActionSet(IntSMDP model) {
+			_model = model;
+		}
+
+		@Override
+		public boolean isValid(Integer state, Integer action) {
+			return action >= 0 && action < _model.numberOfActions()
+					&& _model.isValid(state, action);
+		}
+
+		@Override
+		public List<Integer> indices(Integer state) {
+			return actions(state);
+		}
+
+		@Override
+		public List<Integer> actions(Integer state) {
+			List<Integer> actions = new ArrayList<Integer>(
+					_model.numberOfActions());
+			for (int a = 0; a < _model.numberOfActions(); a++) {
+				if (_model.isValid(state, a)) {
+					actions.add(a);
+				}
+			}
+			return actions;
+		}
+
+		@Override
+		public Integer uniformRandom(Integer state) {
+			List<Integer> actions = actions(state);
+			return actions.get(_rand.nextInt(actions.size()));
+		}
+
+		@Override
+		public Integer action(Integer index) {
+			return index;
+		}
+
+		@Override
+		public Integer index(Integer action) {
+			return action;
+		}
+
+		@Override
+		public int numberOfActions() {
+			return _model.numberOfActions();
+		}
+	}
+
+	/**
+	 * Adds the transitions it visits to a distribution.
+	 */
+	private static class DistributionVisitor implements
+			IntSMDP.SuccessorVisitor {
+
+		private TransitionDistribution<Integer> _dist;
+
+		@Override
+		public void visit(int successor, int duration, double tprob, double r) {
+			_dist.add(successor, duration, tprob, r);
+		}
+	}
+
+	/**
+	 * The state that represents all successors outside of the primitive
+	 * SMDP's states (see {@link IntSMDP#successors}).
+	 */
+	public static final int OUTSIDE = -1;
+
+	private static final ThreadLocal<DistributionVisitor> VISITOR = new ThreadLocal<DistributionVisitor>() {
+		@Override
+		protected DistributionVisitor initialValue() {
+			return new DistributionVisitor();
+		}
+	};
+
+	private IntSMDP _model;
+
+	/**
+	 * Constructs a generic view of a primitive SMDP.
+	 * 
+	 * @param model
+	 *            a primitive SMDP
+	 */
+	public BoxedSMDP(IntSMDP model) {
+		super(new IntActionSet(model), model.opType());
+		_model = model;
+	}
+
+	/**
+	 * Returns the primitive SMDP adapted by this instance.
+	 * 
+	 * @return a primitive SMDP
+	 */
+	public IntSMDP model() {
+		return _model;
+	}
+
+	@Override
+	public double r(Integer state, Integer action, Integer terminalState,
+			Integer duration) {
+		if (terminalState == OUTSIDE) {
+			return outside(state, action, duration)[1];
+		}
+		return _model.r(state, action, terminalState, duration);
+	}
+
+	@Override
+	public double tprob(Integer state, Integer action, Integer terminalState,
+			Integer duration) {
+		if (terminalState == OUTSIDE) {
+			return outside(state, action, duration)[0];
+		}
+		return _model.tprob(state, action, terminalState, duration);
+	}
+
+	/**
+	 * Returns the probability and the expected reinforcement of leaving the
+	 * primitive SMDP's states with a specified duration.
+	 */
+	private double[] outside(int state, int action, final int duration) {
+		final double[] pr = new double[2];
+		_model.successors(state, action, new IntSMDP.SuccessorVisitor() {
+			@Override
+			public void visit(int successor, int d, double tprob, double r) {
+				if (successor == OUTSIDE && d == duration) {
+					pr[0] += tprob;
+					pr[1] += tprob * r;
+				}
+			}
+		});
+		if (pr[0] > 0) {
+			pr[1] /= pr[0];
+		}
+		return pr;
+	}
+
+	@Override
+	public double dtprob(Integer state, Integer action, Integer terminalState,
+			Integer duration, DiscountFactor gamma) {
+		return Math.pow(gamma.doubleValue(), duration)
+				* tprob(state, action, terminalState, duration);
+	}
+
+	@Override
+	public int maxActionDuration() {
+		return _model.maxActionDuration();
+	}
+
+	@Override
+	public Iterable<Integer> durations(Integer state, Integer action,
+			final Integer terminalState) {
+		final List<Integer> durations = new ArrayList<Integer>();
+		_model.successors(state, action, new IntSMDP.SuccessorVisitor() {
+			@Override
+			public void visit(int successor, int duration, double tprob,
+					double r) {
+				if (successor == terminalState.intValue()) {
+					durations.add(duration);
+				}
+			}
+		});
+		return durations;
+	}
+
+	@Override
+	public void transitions(Integer state, Integer action,
+			TransitionDistribution<Integer> dist) {
+		transitions(_model, state.intValue(), action.intValue(), dist);
+	}
+
+	/**
+	 * Replaces the contents of a distribution with the transitions of a
+	 * state-action pair of a primitive SMDP. Every thread reuses one visitor,
+	 * so this method performs no allocation (beyond growing
+	 * <code>dist</code>); it is the usual way for an {@link IntSMDP} that
+	 * extends {@link FiniteStateSMDP} to implement
+	 * {@link FiniteStateSMDP#transitions(Object, Object, TransitionDistribution)}.
+	 * 
+	 * @param model
+	 *            a primitive SMDP
+	 * @param state
+	 *            a state index
+	 * @param action
+	 *            an action index
+	 * @param dist
+	 *            receives the transitions of the state-action pair
+	 */
+	public static void transitions(IntSMDP model, int state, int action,
+			TransitionDistribution<Integer> dist) {
+		dist.clear();
+		DistributionVisitor visitor = VISITOR.get();
+		// Models may read other models' transitions while they are visited
+		TransitionDistribution<Integer> outer = visitor._dist;
+		visitor._dist = dist;
+		try {
+			model.successors(state, action, visitor);
+		} finally {
+			visitor._dist = outer;
+		}
+	}
+
+	@Override
+	public Iterable<Integer> states() {
+		List<Integer> states = new ArrayList<Integer>(_model.numberOfStates());
+		for (int s = 0; s < _model.numberOfStates(); s++) {
+			states.add(s);
+		}
+		return Collections.unmodifiableList(states);
+	}
+
+	@Override
+	public int numberOfStates() {
+		return _model.numberOfStates();
+	}
+
+	@Override
+	public Iterable<Integer> successors(Integer state, Integer action) {
+		final Set<Integer> successors = new LinkedHashSet<Integer>();
+		_model.successors(state, action, new IntSMDP.SuccessorVisitor() {
+			@Override
+			public void visit(int successor, int duration, double tprob,
+					double r) {
+				successors.add(successor);
+			}
+		});
+		return successors;
+	}
+
+}
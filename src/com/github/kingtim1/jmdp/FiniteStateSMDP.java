@@ -45,6 +45,13 @@ import com.github.kingtim1.jmdp.util.Optimization;
  */
 public abstract class FiniteStateSMDP<S, A> extends AbstractSMDP<S, A> {
 
+	private static final ThreadLocal<TransitionDistribution<Object>> BUFFER = new ThreadLocal<TransitionDistribution<Object>>() {
+		@Override
+		protected TransitionDistribution<Object> initialValue() {
+			return new TransitionDistribution<Object>();
+		}
+	};
+
 	private ActionSet<S,A> _actionSet;
 	
 	public FiniteStateSMDP(ActionSet<S,A> actionSet, Optimization opType) {
@@ -117,8 +124,113 @@ public abstract class FiniteStateSMDP<S, A> extends AbstractSMDP<S, A> {
 	 */
 	public abstract Iterable<S> successors(S state, A action);
 
+	/**
+	 * Fills a buffer with the outcome distribution of a state-action pair: one
+	 * (successor, duration, probability, reinforcement) tuple for every
+	 * successor and duration with positive probability. The buffer is cleared
+	 * first.
+	 * <p>
+	 * The default implementation calls {@link #successors(Object, Object)},
+	 * {@link #durations(Object, Object, Object)}, <code>tprob</code> and
+	 * <code>r</code>. SMDPs that compute their distributions from a common
+	 * intermediate result should override this method, so that the
+	 * distribution is computed once per call instead of once per method.
+	 * </p>
+	 * 
+	 * @param state
+	 *            a state
+	 * @param action
+	 *            an action
+	 * @param dist
+	 *            a caller-owned buffer that receives the distribution
+	 */
+	public void transitions(S state, A action, TransitionDistribution<S> dist) {
+		dist.clear();
+		Iterable<S> tstates = successors(state, action);
+		for (S tstate : tstates) {
+			Iterable<Integer> durations = durations(state, action, tstate);
+			for (Integer d : durations) {
+				double tprob = tprob(state, action, tstate, d);
+				if (tprob != 0) {
+					dist.add(tstate, d, tprob, r(state, action, tstate, d));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the expected reinforcement plus the expected discounted value of
+	 * the next state at a state-action pair (a Bellman backup of the
+	 * state-action pair). The distribution is computed with a single call to
+	 * {@link #transitions(Object, Object, TransitionDistribution)}.
+	 * 
+	 * @param smdp
+	 *            a finite-state SMDP
+	 * @param state
+	 *            a state
+	 * @param action
+	 *            an action
+	 * @param vfunc
+	 *            an estimate of the value function
+	 * @param df
+	 *            the discount factor to use
+	 * @param dist
+	 *            a buffer used to hold the distribution of (state, action)
+	 * @return the backed up value of (state, action)
+	 */
+	public static <S, A> double backup(FiniteStateSMDP<S, A> smdp, S state,
+			A action, DiscountedVFunction<S> vfunc, DiscountFactor df,
+			TransitionDistribution<S> dist) {
+		smdp.transitions(state, action, dist);
+		double q = 0;
+		for (int i = 0; i < dist.size(); i++) {
+			double tprob = dist.tprob(i);
+			double gamma = Math.pow(df.doubleValue(), dist.duration(i));
+			q += tprob * (dist.r(i) + gamma * vfunc.value(dist.successor(i)));
+		}
+		return q;
+	}
+
+	/**
+	 * Returns the expected reinforcement plus the expected discounted value of
+	 * the next state at a state-action pair for a time-dependent value
+	 * function.
+	 * 
+	 * @param smdp
+	 *            a finite-state SMDP
+	 * @param state
+	 *            a state
+	 * @param action
+	 *            an action
+	 * @param timestep
+	 *            the current timestep
+	 * @param vfunc
+	 *            an estimate of the value function
+	 * @param df
+	 *            the discount factor to use
+	 * @param dist
+	 *            a buffer used to hold the distribution of (state, action)
+	 * @return the backed up value of (state, action, timestep)
+	 */
+	public static <S, A> double backup(FiniteStateSMDP<S, A> smdp, S state,
+			A action, Integer timestep, VFunction<S> vfunc, DiscountFactor df,
+			TransitionDistribution<S> dist) {
+		smdp.transitions(state, action, dist);
+		double q = 0;
+		for (int i = 0; i < dist.size(); i++) {
+			int d = dist.duration(i);
+			double tprob = dist.tprob(i);
+			double gamma = Math.pow(df.doubleValue(), d);
+			q += tprob
+					* (dist.r(i) + gamma
+							* vfunc.value(dist.successor(i), timestep + d));
+		}
+		return q;
+	}
+
 	/**
 	 * Returns the expected reinforcement at the specified state-action pair.
+	 * The distribution is read into a buffer reused by the calling thread.
 	 * 
 	 * @param smdp
 	 *            a finite-state SMDP
@@ -130,22 +242,37 @@ public abstract class FiniteStateSMDP<S, A> extends AbstractSMDP<S, A> {
 	 */
 	public static <S, A> double avgR(FiniteStateSMDP<S, A> smdp, S state,
 			A action) {
-		double ravg = 0;
-		Iterable<S> tstates = smdp.successors(state, action);
-		for (S tstate : tstates) {
-			Iterable<Integer> durations = smdp.durations(state, action, tstate);
-			for (Integer d : durations) {
-				double tprob = smdp.tprob(state, action, tstate, d);
-				double r = smdp.r(state, action, tstate, d);
-				ravg += tprob * r;
-			}
+		TransitionDistribution<S> dist = borrow();
+		try {
+			return avgR(smdp, state, action, dist);
+		} finally {
+			release(dist);
 		}
-		return ravg;
+	}
+
+	/**
+	 * Returns the expected reinforcement at the specified state-action pair.
+	 * 
+	 * @param smdp
+	 *            a finite-state SMDP
+	 * @param state
+	 *            a state
+	 * @param action
+	 *            an action
+	 * @param dist
+	 *            a buffer used to hold the distribution of (state, action)
+	 * @return the expected reinforcement for (state, action)
+	 */
+	public static <S, A> double avgR(FiniteStateSMDP<S, A> smdp, S state,
+			A action, TransitionDistribution<S> dist) {
+		smdp.transitions(state, action, dist);
+		return dist.avgR();
 	}
 
 	/**
 	 * Returns the expected value associated with the state immediately
-	 * transitioned to from (state, action).
+	 * transitioned to from (state, action). The distribution is read into a
+	 * buffer reused by the calling thread.
 	 * 
 	 * @param smdp
 	 *            a finite-state SMDP
@@ -161,23 +288,45 @@ public abstract class FiniteStateSMDP<S, A> extends AbstractSMDP<S, A> {
 	 */
 	public static <S, A> double avgNextV(FiniteStateSMDP<S, A> smdp, S state,
 			A action, DiscountedVFunction<S> vfunc, DiscountFactor df) {
-		double avgV = 0;
-		Iterable<S> tstates = smdp.successors(state, action);
-		for (S tstate : tstates) {
-			Iterable<Integer> durations = smdp.durations(state, action, tstate);
-			for (Integer d : durations) {
-				double tprob = smdp.tprob(state, action, tstate, d);
-				double gamma = Math.pow(df.doubleValue(), d);
-				double v = vfunc.value(tstate);
-				avgV += gamma * tprob * v;
-			}
+		TransitionDistribution<S> dist = borrow();
+		try {
+			return avgNextV(smdp, state, action, vfunc, df, dist);
+		} finally {
+			release(dist);
 		}
-		return avgV;
 	}
 
 	/**
 	 * Returns the expected value associated with the state immediately
-	 * transitioned to from (state, action, timestep).
+	 * transitioned to from (state, action): the
+	 * {@link #backup(FiniteStateSMDP, Object, Object, DiscountedVFunction, DiscountFactor, TransitionDistribution)
+	 * backup} of (state, action) minus its expected reinforcement.
+	 * 
+	 * @param smdp
+	 *            a finite-state SMDP
+	 * @param state
+	 *            a state
+	 * @param action
+	 *            an action
+	 * @param vfunc
+	 *            an estimate of the value function
+	 * @param df
+	 *            the discount factor to use
+	 * @param dist
+	 *            a buffer used to hold the distribution of (state, action)
+	 * @return the expected value of the next state
+	 */
+	public static <S, A> double avgNextV(FiniteStateSMDP<S, A> smdp, S state,
+			A action, DiscountedVFunction<S> vfunc, DiscountFactor df,
+			TransitionDistribution<S> dist) {
+		double q = backup(smdp, state, action, vfunc, df, dist);
+		return q - dist.avgR();
+	}
+
+	/**
+	 * Returns the expected value associated with the state immediately
+	 * transitioned to from (state, action, timestep). The distribution is read
+	 * into a buffer reused by the calling thread.
 	 * 
 	 * @param smdp
 	 *            a finite-state SMDP
@@ -195,17 +344,65 @@ public abstract class FiniteStateSMDP<S, A> extends AbstractSMDP<S, A> {
 	 */
 	public static <S, A> double avgNextV(FiniteStateSMDP<S, A> smdp, S state,
 			A action, Integer timestep, VFunction<S> vfunc, DiscountFactor df) {
-		double avgV = 0;
-		Iterable<S> tstates = smdp.successors(state, action);
-		for (S tstate : tstates) {
-			Iterable<Integer> durations = smdp.durations(state, action, tstate);
-			for (Integer d : durations) {
-				double tprob = smdp.tprob(state, action, tstate, d);
-				double gamma = Math.pow(df.doubleValue(), d);
-				double v = vfunc.value(tstate, timestep + d);
-				avgV += gamma * tprob * v;
-			}
+		TransitionDistribution<S> dist = borrow();
+		try {
+			return avgNextV(smdp, state, action, timestep, vfunc, df, dist);
+		} finally {
+			release(dist);
 		}
-		return avgV;
+	}
+
+	/**
+	 * Returns the expected value associated with the state immediately
+	 * transitioned to from (state, action, timestep): the
+	 * {@link #backup(FiniteStateSMDP, Object, Object, Integer, VFunction, DiscountFactor, TransitionDistribution)
+	 * backup} of (state, action, timestep) minus its expected reinforcement.
+	 * 
+	 * @param smdp
+	 *            a finite-state SMDP
+	 * @param state
+	 *            a state
+	 * @param action
+	 *            an action
+	 * @param timestep
+	 *            the current timestep
+	 * @param vfunc
+	 *            an estimate of the value function
+	 * @param df
+	 *            the discount factor to use
+	 * @param dist
+	 *            a buffer used to hold the distribution of (state, action)
+	 * @return the expected value of the next state
+	 */
+	public static <S, A> double avgNextV(FiniteStateSMDP<S, A> smdp, S state,
+			A action, Integer timestep, VFunction<S> vfunc, DiscountFactor df,
+			TransitionDistribution<S> dist) {
+		double q = backup(smdp, state, action, timestep, vfunc, df, dist);
+		return q - dist.avgR();
+	}
+
+	/**
+	 * Returns the calling thread's buffer, or a new buffer if the thread's
+	 * buffer is in use (when an SMDP calls these methods from its own
+	 * <code>transitions</code>).
+	 */
+	@SuppressWarnings("unchecked")
+	private static <S> TransitionDistribution<S> borrow() {
+		TransitionDistribution<Object> dist = BUFFER.get();
+		if (dist == null) {
+			return new TransitionDistribution<S>();
+		}
+		BUFFER.set(null);
+		return (TransitionDistribution<S>) dist;
+	}
+
+	/**
+	 * Returns a buffer to the calling thread, dropping its references to
+	 * states.
+	 */
+	@SuppressWarnings("unchecked")
+	private static void release(TransitionDistribution<?> dist) {
+		dist.clear();
+		BUFFER.set((TransitionDistribution<Object>) dist);
 	}
 }
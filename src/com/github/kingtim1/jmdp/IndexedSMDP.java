@@ -0,0 +1,179 @@
+/**
+	IndexedSMDP.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.kingtim1.jmdp.util.Optimization;
+
+/**
+ * Adapts a {@link FiniteStateSMDP} to the primitive {@link IntSMDP} API. States
+ * are numbered in the order returned by {@link FiniteStateSMDP#states()} and
+ * actions by their index in the SMDP's {@link ActionSet}. Successor states that
+ * are not returned by {@link FiniteStateSMDP#states()} are reported with index
+ * -1.
+ * 
+ * @author Timothy A. Mann
+ *
+ * @param <S>
+ *            the state type
+ * @param <A>
+ *            the action type
+ */
+public class IndexedSMDP<S, A> implements IntSMDP {
+
+	private FiniteStateSMDP<S, A> _smdp;
+	private List<S> _states;
+	private Map<S, Integer> _indices;
+
+	/**
+	 * Constructs a primitive view of a finite-state SMDP.
+	 * 
+	 * @param smdp
+	 *            a finite-state SMDP
+	 */
+	public IndexedSMDP(FiniteStateSMDP<S, A> smdp) {
+		if (smdp == null) {
+			throw new NullPointerException("SMDP cannot be null.");
+		}
+		_smdp = smdp;
+		_states = new ArrayList<S>(smdp.numberOfStates());
+		_indices = new HashMap<S, Integer>();
+		for (S state : smdp.states()) {
+			_indices.put(state, _states.size());
+			_states.add(state);
+		}
+	}
+
+	/**
+	 * Returns the SMDP adapted by this instance.
+	 * 
+	 * @return a finite-state SMDP
+	 */
+	public FiniteStateSMDP<S, A> smdp() {
+		return _smdp;
+	}
+
+	/**
+	 * Returns the state with a specified index.
+	 * 
+	 * @param index
+	 *            a state index
+	 * @return the state
+	 */
+	public S state(int index) {
+		return _states.get(index);
+	}
+
+	/**
+	 * Returns the index of a state or -1 if the state is not part of this SMDP.
+	 * 
+	 * @param state
+	 *            a state
+	 * @return the index of the state or -1
+	 */
+	public int index(S state) {
+		Integer index = _indices.get(state);
+		return (index == null) ? -1 : index.intValue();
+	}
+
+	/**
+	 * Returns the states of this SMDP in index order.
+	 * 
+	 * @return an unmodifiable list of states
+	 */
+	public List<S> states() {
+		return Collections.unmodifiableList(_states);
+	}
+
+	/**
+	 * Returns the action with a specified index.
+	 * 
+	 * @param index
+	 *            an action index
+	 * @return the action
+	 */
+	public A action(int index) {
+		return _smdp.actionSet().action(index);
+	}
+
+	@Override
+	public int numberOfStates() {
+		return _states.size();
+	}
+
+	@Override
+	public int numberOfActions() {
+		return _smdp.numberOfActions();
+	}
+
+	@Override
+	public boolean isValid(int state, int action) {
+		return _smdp.actionSet().isValid(_states.get(state), action(action));
+	}
+
+	@Override
+	public double r(int state, int action, int terminalState, int duration) {
+		return _smdp.r(_states.get(state), action(action),
+				_states.get(terminalState), duration);
+	}
+
+	@Override
+	public double tprob(int state, int action, int terminalState, int duration) {
+		return _smdp.tprob(_states.get(state), action(action),
+				_states.get(terminalState), duration);
+	}
+
+	@Override
+	public void successors(int state, int action, SuccessorVisitor visitor) {
+		TransitionDistribution<S> dist = new TransitionDistribution<S>();
+		_smdp.transitions(_states.get(state), action(action), dist);
+		for (int k = 0; k < dist.size(); k++) {
+			if (dist.tprob(k) > 0) {
+				visitor.visit(index(dist.successor(k)), dist.duration(k),
+						dist.tprob(k), dist.r(k));
+			}
+		}
+	}
+
+	@Override
+	public int maxActionDuration() {
+		return _smdp.maxActionDuration();
+	}
+
+	@Override
+	public Optimization opType() {
+		return _smdp.opType();
+	}
+
+}
@@ -0,0 +1,126 @@
+/**
+	IntSMDP.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp;
+
+import com.github.kingtim1.jmdp.util.Optimization;
+
+/**
+ * A finite-state, finite-action SMDP whose states are the integers
+ * <code>0, ..., numberOfStates() - 1</code> and whose actions are the integers
+ * <code>0, ..., numberOfActions() - 1</code>. Unlike
+ * <code>FiniteStateSMDP&lt;Integer, Integer&gt;</code>, none of the methods of
+ * this interface box their arguments, and the transitions of a state-action
+ * pair are reported to a {@link SuccessorVisitor} instead of being returned in
+ * a collection.
+ * <p>
+ * {@link BoxedSMDP} adapts an instance of this interface to
+ * {@link FiniteStateSMDP}, and {@link IndexedSMDP} adapts a
+ * {@link FiniteStateSMDP} to this interface.
+ * </p>
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+public interface IntSMDP {
+
+	/**
+	 * Receives the transitions of a state-action pair.
+	 * 
+	 * @author Timothy A. Mann
+	 *
+	 */
+	public static interface SuccessorVisitor {
+
+		/**
+		 * Called once for each (successor, duration) pair with positive
+		 * probability.
+		 * 
+		 * @param successor
+		 *            the index of the successor state
+		 * @param duration
+		 *            the duration of the transition
+		 * @param tprob
+		 *            the probability of the transition
+		 * @param r
+		 *            the reinforcement received for the transition
+		 */
+		public void visit(int successor, int duration, double tprob, double r);
+	}
+
+	/**
+	 * Returns the number of states in this SMDP.
+	 * 
+	 * @return the number of states
+	 */
+	public int numberOfStates();
+
+	/**
+	 * Returns the number of actions in this SMDP. However, there may be fewer
+	 * valid actions at each state.
+	 * 
+	 * @return the number of actions
+	 */
+	public int numberOfActions();
+
+	/**
+	 * Returns true if an action can be taken at a state.
+	 * 
+	 * @param state
+	 *            a state
+	 * @param action
+	 *            an action
+	 * @return true if the action is valid at the state; otherwise false
+	 */
+	public boolean isValid(int state, int action);
+
+	public double r(int state, int action, int terminalState, int duration);
+
+	public double tprob(int state, int action, int terminalState, int duration);
+
+	/**
+	 * Reports every transition with positive probability from a state-action
+	 * pair to a visitor. A successor index of -1 denotes a state outside of
+	 * this SMDP whose value is always 0 (such as the dummy state of an SMDP
+	 * estimator). Such transitions are only reported by this method;
+	 * {@link #r(int, int, int, int)} and {@link #tprob(int, int, int, int)}
+	 * are only defined for the states of this SMDP.
+	 * 
+	 * @param state
+	 *            a state
+	 * @param action
+	 *            an action
+	 * @param visitor
+	 *            a visitor receiving the transitions
+	 */
+	public void successors(int state, int action, SuccessorVisitor visitor);
+
+	public int maxActionDuration();
+
+	public Optimization opType();
+}
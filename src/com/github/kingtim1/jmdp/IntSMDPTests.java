@@ -0,0 +1,149 @@
+/**
+	IntSMDPTests.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.github.kingtim1.jmdp.discounted.DiscountFactor;
+import com.github.kingtim1.jmdp.discounted.DiscountedVFunction;
+import com.github.kingtim1.jmdp.discounted.ValueIteration;
+import com.github.kingtim1.jmdp.lib.mdps.ChainMDP;
+import com.github.kingtim1.jmdp.lib.mdps.RandomSMDP;
+import com.github.kingtim1.jmdp.util.Optimization;
+
+public class IntSMDPTests {
+
+	public static final DiscountFactor DF = new DiscountFactor(0.9);
+	public static final double EPSILON = 1e-9;
+
+	/**
+	 * Tests if {@link IndexedSMDP} numbers the states of the adapted SMDP and
+	 * visits the same transitions, probabilities and reinforcements as the
+	 * adapted SMDP returns from
+	 * {@link FiniteStateSMDP#transitions(Object, Object, TransitionDistribution)}.
+	 */
+	@Test
+	public void testIndexedSMDPVisitsTheTransitionsOfTheAdaptedSMDP() {
+		BoxedSMDP smdp = new BoxedSMDP(new RandomSMDP(20, 3, 4, 5, 1.5, 2));
+		IndexedSMDP<Integer, Integer> indexed = new IndexedSMDP<Integer, Integer>(
+				smdp);
+		assertEquals(smdp.numberOfStates(), indexed.numberOfStates());
+		assertEquals(smdp.numberOfActions(), indexed.numberOfActions());
+		assertEquals(smdp.maxActionDuration(), indexed.maxActionDuration());
+		assertEquals(smdp.opType(), indexed.opType());
+		assertEquals(-1, indexed.index(smdp.numberOfStates()));
+
+		TransitionDistribution<Integer> expected = new TransitionDistribution<Integer>();
+		TransitionDistribution<Integer> visited = new TransitionDistribution<Integer>();
+		for (int s = 0; s < indexed.numberOfStates(); s++) {
+			Integer state = indexed.state(s);
+			assertEquals(s, indexed.index(state));
+			for (int a = 0; a < indexed.numberOfActions(); a++) {
+				assertTrue(indexed.isValid(s, a));
+				smdp.transitions(state, indexed.action(a), expected);
+				BoxedSMDP.transitions(indexed, s, a, visited);
+				assertEquals(expected.size(), visited.size());
+				for (int k = 0; k < visited.size(); k++) {
+					int succ = visited.successor(k);
+					int d = visited.duration(k);
+					assertEquals(indexed.index(expected.successor(k)), succ);
+					assertEquals(expected.duration(k), d);
+					assertEquals(expected.tprob(k), visited.tprob(k), EPSILON);
+					assertEquals(expected.r(k), visited.r(k), EPSILON);
+					assertEquals(visited.tprob(k),
+							indexed.tprob(s, a, succ, d), EPSILON);
+					assertEquals(visited.r(k), indexed.r(s, a, succ, d),
+							EPSILON);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tests if {@link IndexedSMDP} reports successors that are not states of
+	 * the adapted SMDP with index -1.
+	 */
+	@Test
+	public void testIndexedSMDPReportsOutsideSuccessors() {
+		BoxedSMDP smdp = new BoxedSMDP(new AbstractIntMDP(Optimization.MAXIMIZE) {
+			@Override
+			public int numberOfStates() {
+				return 1;
+			}
+
+			@Override
+			public int numberOfActions() {
+				return 1;
+			}
+
+			@Override
+			public double r(int state, int action, int nextState) {
+				return (nextState == BoxedSMDP.OUTSIDE) ? 1 : 0;
+			}
+
+			@Override
+			public double tprob(int state, int action, int nextState) {
+				return 0.5;
+			}
+
+			@Override
+			public void successors(int state, int action,
+					SuccessorVisitor visitor) {
+				visitor.visit(0, 1, 0.5, 0);
+				visitor.visit(BoxedSMDP.OUTSIDE, 1, 0.5, 1);
+			}
+		});
+		IndexedSMDP<Integer, Integer> indexed = new IndexedSMDP<Integer, Integer>(
+				smdp);
+		TransitionDistribution<Integer> dist = new TransitionDistribution<Integer>();
+		BoxedSMDP.transitions(indexed, 0, 0, dist);
+		assertEquals(2, dist.size());
+		assertEquals(Integer.valueOf(0), dist.successor(0));
+		assertEquals(Integer.valueOf(-1), dist.successor(1));
+		assertEquals(1, dist.r(1), EPSILON);
+	}
+
+	/**
+	 * Tests if boxing an {@link IndexedSMDP} gives back an SMDP with the same
+	 * optimal values as the original.
+	 */
+	@Test
+	public void testBoxedIndexedSMDPHasTheSameOptimalValues() {
+		ChainMDP mdp = new ChainMDP();
+		BoxedSMDP boxed = new BoxedSMDP(new IndexedSMDP<Integer, Integer>(mdp));
+		DiscountedVFunction<Integer> expected = new ValueIteration<Integer, Integer>(
+				mdp, DF, 1000, EPSILON).run().greedy();
+		DiscountedVFunction<Integer> actual = new ValueIteration<Integer, Integer>(
+				boxed, DF, 1000, EPSILON).run().greedy();
+		for (Integer state : mdp.states()) {
+			assertEquals(expected.value(state), actual.value(state), 1e-6);
+		}
+	}
+}
@@ -0,0 +1,57 @@
+/**
+	SolverListener.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp;
+
+/**
+ * Receives progress reports from a solver. Instances are registered with the
+ * {@link SolverMonitor} of a {@link MonitoredSolver}. The monitor passed to
+ * the callbacks is reused for every report, so listeners should copy the
+ * values they want to keep instead of keeping a reference to it.
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+public interface SolverListener {
+
+	/**
+	 * Called after a solver completes a sweep.
+	 * 
+	 * @param monitor
+	 *            the monitor of the solver, describing the sweep that completed
+	 */
+	public void sweep(SolverMonitor monitor);
+
+	/**
+	 * Called when a solver finishes a call to its solve method.
+	 * 
+	 * @param monitor
+	 *            the monitor of the solver, describing the whole call
+	 */
+	public void finished(SolverMonitor monitor);
+}
@@ -0,0 +1,427 @@
+/**
+	SolverMonitor.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import jdk.jfr.EventType;
+
+import com.github.kingtim1.jmdp.metrics.SolveEvent;
+import com.github.kingtim1.jmdp.metrics.SolverSweepEvent;
+
+/**
+ * <p>
+ * Collects the progress of a solver and reports it to the registered
+ * {@link SolverListener}s. After every sweep the listeners can read the
+ * residual of the sweep, the number of backups performed, the number of
+ * successor entries touched by those backups, and the wall-clock and CPU time
+ * in nanoseconds, both for the sweep and accumulated since the solver was
+ * called.
+ * </p>
+ * 
+ * <p>
+ * The listeners registered when a solver calls {@link #start()} determine
+ * whether the call is monitored. If there are none, {@link #count(long, long)}
+ * and {@link #endSweep(double)} return immediately and no clock is read, so a
+ * solver without listeners runs at full speed. CPU time is measured for the
+ * thread that runs the solver, so it excludes work done by worker threads.
+ * </p>
+ * 
+ * <p>
+ * The monitor also emits a {@link SolverSweepEvent} for every sweep and a
+ * {@link SolveEvent} for every call while these Java Flight Recorder events
+ * are enabled in a recording. A call is monitored if it has listeners or if
+ * either event is enabled when it starts.
+ * </p>
+ * 
+ * <p>
+ * The solver-side methods ({@link #start()}, {@link #count(long, long)},
+ * {@link #endSweep(double)}, {@link #markTruncated()} and {@link #finish()})
+ * must be called by the thread that runs the solver.
+ * </p>
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+public class SolverMonitor {
+
+	private static final ThreadMXBean THREADS = ManagementFactory
+			.getThreadMXBean();
+	private static final EventType SWEEP_EVENT = EventType
+			.getEventType(SolverSweepEvent.class);
+	private static final EventType SOLVE_EVENT = EventType
+			.getEventType(SolveEvent.class);
+
+	private Object _solver;
+	private List<SolverListener> _listeners;
+	private boolean _running;
+	private boolean _truncated;
+	private SolverSweepEvent _sweepEvent;
+	private SolveEvent _solveEvent;
+
+	private int _sweeps;
+	private double _residual;
+	private long _backups;
+	private long _entries;
+	private long _totalBackups;
+	private long _totalEntries;
+
+	private long _startWall;
+	private long _startCpu;
+	private long _sweepStartWall;
+	private long _sweepStartCpu;
+	private long _sweepWall;
+	private long _sweepCpu;
+	private long _wall;
+	private long _cpu;
+
+	/**
+	 * Constructs a monitor for a solver.
+	 * 
+	 * @param solver
+	 *            the solver reporting to this monitor
+	 */
+	public SolverMonitor(Object solver) {
+		_solver = solver;
+		_listeners = new CopyOnWriteArrayList<SolverListener>();
+	}
+
+	/**
+	 * Returns the solver reporting to this monitor.
+	 * 
+	 * @return the solver
+	 */
+	public Object solver() {
+		return _solver;
+	}
+
+	/**
+	 * Adds a listener. The listener receives reports starting with the next
+	 * call to the solver.
+	 * 
+	 * @param l
+	 *            a listener
+	 */
+	public void addListener(SolverListener l) {
+		if (l == null) {
+			throw new NullPointerException("Listener cannot be null.");
+		}
+		_listeners.add(l);
+	}
+
+	/**
+	 * Removes a listener.
+	 * 
+	 * @param l
+	 *            a listener
+	 */
+	public void removeListener(SolverListener l) {
+		_listeners.remove(l);
+	}
+
+	/**
+	 * Returns true if at least one listener is registered.
+	 * 
+	 * @return true if there are listeners; otherwise false
+	 */
+	public boolean hasListeners() {
+		return !_listeners.isEmpty();
+	}
+
+	/**
+	 * Called by the solver when it starts solving. Resets the counters and
+	 * starts the clocks if there are listeners.
+	 * 
+	 * @return true if this call to the solver is monitored; otherwise false
+	 */
+	public boolean start() {
+		boolean sweepEvents = SWEEP_EVENT.isEnabled();
+		boolean solveEvents = SOLVE_EVENT.isEnabled();
+		_running = hasListeners() || sweepEvents || solveEvents;
+		_truncated = false;
+		_sweepEvent = null;
+		_solveEvent = null;
+		_sweeps = 0;
+		_residual = Double.NaN;
+		_backups = 0;
+		_entries = 0;
+		_totalBackups = 0;
+		_totalEntries = 0;
+		_sweepWall = 0;
+		_sweepCpu = 0;
+		_wall = 0;
+		_cpu = 0;
+		if (_running) {
+			_startWall = System.nanoTime();
+			_startCpu = cpuTime();
+			_sweepStartWall = _startWall;
+			_sweepStartCpu = _startCpu;
+			if (solveEvents) {
+				_solveEvent = new SolveEvent();
+				_solveEvent.begin();
+			}
+			if (sweepEvents) {
+				_sweepEvent = new SolverSweepEvent();
+				_sweepEvent.begin();
+			}
+		}
+		return _running;
+	}
+
+	/**
+	 * Returns true if the current call to the solver is monitored.
+	 * 
+	 * @return true if the current call is monitored; otherwise false
+	 */
+	public boolean isRunning() {
+		return _running;
+	}
+
+	/**
+	 * Called by the solver to count work done during the current sweep.
+	 * 
+	 * @param backups
+	 *            the number of backups performed
+	 * @param entries
+	 *            the number of successor entries touched by the backups
+	 */
+	public void count(long backups, long entries) {
+		if (_running) {
+			_backups += backups;
+			_entries += entries;
+		}
+	}
+
+	/**
+	 * Called by the solver when it completes a sweep. Notifies the listeners.
+	 * 
+	 * @param residual
+	 *            the residual of the sweep (usually the largest change of a
+	 *            value) or {@link Double#NaN} if the solver does not compute
+	 *            one
+	 */
+	public void endSweep(double residual) {
+		if (!_running) {
+			return;
+		}
+		long wall = System.nanoTime();
+		long cpu = cpuTime();
+		_sweeps++;
+		_residual = residual;
+		_totalBackups += _backups;
+		_totalEntries += _entries;
+		_sweepWall = wall - _sweepStartWall;
+		_sweepCpu = (cpu < 0) ? -1 : cpu - _sweepStartCpu;
+		_wall = wall - _startWall;
+		_cpu = (cpu < 0) ? -1 : cpu - _startCpu;
+
+		if (_sweepEvent != null) {
+			_sweepEvent.end();
+			if (_sweepEvent.shouldCommit()) {
+				_sweepEvent.solver = _solver.getClass();
+				_sweepEvent.sweep = _sweeps;
+				_sweepEvent.residual = _residual;
+				_sweepEvent.backups = _backups;
+				_sweepEvent.entries = _entries;
+				_sweepEvent.commit();
+			}
+		}
+		for (SolverListener l : _listeners) {
+			l.sweep(this);
+		}
+
+		_backups = 0;
+		_entries = 0;
+		_sweepStartWall = System.nanoTime();
+		_sweepStartCpu = cpuTime();
+		if (_sweepEvent != null) {
+			_sweepEvent = new SolverSweepEvent();
+			_sweepEvent.begin();
+		}
+	}
+
+	/**
+	 * Called by the solver when it stops because it reached its iteration or
+	 * backup limit before meeting its convergence criterion. Unlike the other
+	 * solver-side methods, the flag is recorded even if the call is not
+	 * monitored.
+	 */
+	public void markTruncated() {
+		_truncated = true;
+	}
+
+	/**
+	 * Called by the solver when it finishes. Work counted after the last
+	 * sweep is added to the totals, and the listeners are notified.
+	 */
+	public void finish() {
+		if (!_running) {
+			return;
+		}
+		long wall = System.nanoTime();
+		long cpu = cpuTime();
+		_totalBackups += _backups;
+		_totalEntries += _entries;
+		_backups = 0;
+		_entries = 0;
+		_wall = wall - _startWall;
+		_cpu = (cpu < 0) ? -1 : cpu - _startCpu;
+		_running = false;
+		_sweepEvent = null;
+
+		if (_solveEvent != null) {
+			_solveEvent.end();
+			if (_solveEvent.shouldCommit()) {
+				_solveEvent.solver = _solver.getClass();
+				_solveEvent.sweeps = _sweeps;
+				_solveEvent.residual = _residual;
+				_solveEvent.backups = _totalBackups;
+				_solveEvent.entries = _totalEntries;
+				_solveEvent.truncated = _truncated;
+				_solveEvent.commit();
+			}
+			_solveEvent = null;
+		}
+		for (SolverListener l : _listeners) {
+			l.finished(this);
+		}
+	}
+
+	/**
+	 * Returns the number of sweeps completed since the solver started.
+	 * 
+	 * @return the number of completed sweeps
+	 */
+	public int sweeps() {
+		return _sweeps;
+	}
+
+	/**
+	 * Returns true if the current or last call to the solver stopped at its
+	 * iteration or backup limit before it converged.
+	 * 
+	 * @return true if the call was truncated; otherwise false
+	 */
+	public boolean isTruncated() {
+		return _truncated;
+	}
+
+	/**
+	 * Returns the residual of the last completed sweep.
+	 * 
+	 * @return the residual of the last sweep or {@link Double#NaN}
+	 */
+	public double residual() {
+		return _residual;
+	}
+
+	/**
+	 * Returns the number of backups performed during the last sweep.
+	 * 
+	 * @return the number of backups of the last sweep
+	 */
+	public long backups() {
+		return _backups;
+	}
+
+	/**
+	 * Returns the number of successor entries touched during the last sweep.
+	 * 
+	 * @return the number of entries of the last sweep
+	 */
+	public long entries() {
+		return _entries;
+	}
+
+	/**
+	 * Returns the wall-clock time of the last sweep in nanoseconds.
+	 * 
+	 * @return the wall-clock time of the last sweep
+	 */
+	public long sweepWallNanos() {
+		return _sweepWall;
+	}
+
+	/**
+	 * Returns the CPU time of the last sweep in nanoseconds.
+	 * 
+	 * @return the CPU time of the last sweep or -1 if CPU time is not
+	 *         available
+	 */
+	public long sweepCpuNanos() {
+		return _sweepCpu;
+	}
+
+	/**
+	 * Returns the number of backups performed since the solver started.
+	 * 
+	 * @return the total number of backups
+	 */
+	public long totalBackups() {
+		return _totalBackups;
+	}
+
+	/**
+	 * Returns the number of successor entries touched since the solver
+	 * started.
+	 * 
+	 * @return the total number of entries
+	 */
+	public long totalEntries() {
+		return _totalEntries;
+	}
+
+	/**
+	 * Returns the wall-clock time since the solver started in nanoseconds.
+	 * 
+	 * @return the total wall-clock time
+	 */
+	public long wallNanos() {
+		return _wall;
+	}
+
+	/**
+	 * Returns the CPU time since the solver started in nanoseconds.
+	 * 
+	 * @return the total CPU time or -1 if CPU time is not available
+	 */
+	public long cpuNanos() {
+		return _cpu;
+	}
+
+	private static long cpuTime() {
+		if (THREADS.isCurrentThreadCpuTimeSupported()) {
+			return THREADS.getCurrentThreadCpuTime();
+		}
+		return -1;
+	}
+}
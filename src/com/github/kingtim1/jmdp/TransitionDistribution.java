@@ -0,0 +1,154 @@
+/**
+	TransitionDistribution.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp;
+
+import java.util.Arrays;
+
+/**
+ * A reusable buffer holding the outcome distribution of a state-action pair as
+ * a list of (successor, duration, probability, reinforcement) tuples. It is
+ * filled by {@link FiniteStateSMDP#transitions(Object, Object, TransitionDistribution)}.
+ * The buffer is owned by the caller and grows as needed, so a solver can
+ * allocate one buffer and reuse it for every backup.
+ * 
+ * @author Timothy A. Mann
+ *
+ * @param <S>
+ *            the state type
+ */
+public class TransitionDistribution<S> {
+
+	public static final int DEFAULT_CAPACITY = 8;
+
+	private Object[] _successors;
+	private int[] _durations;
+	private double[] _tprobs;
+	private double[] _rs;
+	private int _size;
+
+	/**
+	 * Constructs an empty buffer with the default capacity.
+	 */
+	public TransitionDistribution() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructs an empty buffer.
+	 * 
+	 * @param capacity
+	 *            the initial number of tuples that can be stored without
+	 *            growing the buffer
+	 */
+	public TransitionDistribution(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException(
+					"Expected a positive capacity. Found " + capacity + ".");
+		}
+		_successors = new Object[capacity];
+		_durations = new int[capacity];
+		_tprobs = new double[capacity];
+		_rs = new double[capacity];
+		_size = 0;
+	}
+
+	/**
+	 * Removes all tuples from this buffer.
+	 */
+	public void clear() {
+		Arrays.fill(_successors, 0, _size, null);
+		_size = 0;
+	}
+
+	/**
+	 * Appends a tuple to this buffer.
+	 * 
+	 * @param successor
+	 *            the state where the action terminates
+	 * @param duration
+	 *            the duration of the action
+	 * @param tprob
+	 *            the probability of (successor, duration)
+	 * @param r
+	 *            the reinforcement received for (successor, duration)
+	 */
+	public void add(S successor, int duration, double tprob, double r) {
+		if (_size == _durations.length) {
+			int capacity = 2 * _size;
+			_successors = Arrays.copyOf(_successors, capacity);
+			_durations = Arrays.copyOf(_durations, capacity);
+			_tprobs = Arrays.copyOf(_tprobs, capacity);
+			_rs = Arrays.copyOf(_rs, capacity);
+		}
+		_successors[_size] = successor;
+		_durations[_size] = duration;
+		_tprobs[_size] = tprob;
+		_rs[_size] = r;
+		_size++;
+	}
+
+	/**
+	 * Returns the number of tuples in this buffer.
+	 * 
+	 * @return the number of tuples
+	 */
+	public int size() {
+		return _size;
+	}
+
+	@SuppressWarnings("unchecked")
+	public S successor(int i) {
+		return (S) _successors[i];
+	}
+
+	public int duration(int i) {
+		return _durations[i];
+	}
+
+	public double tprob(int i) {
+		return _tprobs[i];
+	}
+
+	public double r(int i) {
+		return _rs[i];
+	}
+
+	/**
+	 * Returns the expected reinforcement of the distribution in this buffer.
+	 * 
+	 * @return the expected reinforcement
+	 */
+	public double avgR() {
+		double ravg = 0;
+		for (int i = 0; i < _size; i++) {
+			ravg += _tprobs[i] * _rs[i];
+		}
+		return ravg;
+	}
+}
@@ -0,0 +1,150 @@
+/**
+	TransitionDistributionTests.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.kingtim1.jmdp.actions.ListActionSet;
+import com.github.kingtim1.jmdp.discounted.DiscountFactor;
+import com.github.kingtim1.jmdp.discounted.MapVFunction;
+import com.github.kingtim1.jmdp.util.Optimization;
+
+public class TransitionDistributionTests {
+
+	public static final DiscountFactor DF = new DiscountFactor(0.5);
+	public static final double EPSILON = 1e-12;
+
+	/**
+	 * Tests if a {@link TransitionDistribution} keeps its tuples in order as
+	 * it grows past its capacity, and if clearing it empties it and drops its
+	 * references to states.
+	 */
+	@Test
+	public void testTransitionDistributionGrowsAndClears() {
+		TransitionDistribution<String> dist = new TransitionDistribution<String>(
+				1);
+		for (int i = 0; i < 5; i++) {
+			dist.add("s" + i, i + 1, 0.2, i);
+		}
+		assertEquals(5, dist.size());
+		for (int i = 0; i < 5; i++) {
+			assertEquals("s" + i, dist.successor(i));
+			assertEquals(i + 1, dist.duration(i));
+			assertEquals(0.2, dist.tprob(i), EPSILON);
+			assertEquals(i, dist.r(i), EPSILON);
+		}
+		assertEquals(2, dist.avgR(), EPSILON);
+
+		dist.clear();
+		assertEquals(0, dist.size());
+		assertNull(dist.successor(0));
+		assertEquals(0, dist.avgR(), EPSILON);
+		dist.add("t", 1, 1, 3);
+		assertEquals(1, dist.size());
+		assertEquals("t", dist.successor(0));
+	}
+
+	/**
+	 * Tests if a {@link TransitionDistribution} rejects a non-positive
+	 * capacity.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testTransitionDistributionRejectsZeroCapacity() {
+		new TransitionDistribution<String>(0);
+	}
+
+	/**
+	 * Tests if the default
+	 * {@link FiniteStateSMDP#transitions(Object, Object, TransitionDistribution)}
+	 * skips successors with zero probability, and if <code>avgR</code> and
+	 * <code>avgNextV</code> give the same results with and without a
+	 * caller-supplied buffer.
+	 */
+	@Test
+	public void testDefaultTransitionsSkipZeroProbabilitySuccessors() {
+		FiniteStateMDP<Integer, Integer> mdp = new FiniteStateMDP<Integer, Integer>(
+				ListActionSet.<Integer> buildActionSet(1),
+				Optimization.MAXIMIZE) {
+			@Override
+			public double r(Integer state, Integer action, Integer nextState) {
+				return nextState;
+			}
+
+			@Override
+			public double tprob(Integer state, Integer action,
+					Integer nextState) {
+				return (nextState == 0) ? 0.25 : (nextState == 1) ? 0 : 0.75;
+			}
+
+			@Override
+			public Iterable<Integer> states() {
+				List<Integer> states = new ArrayList<Integer>();
+				for (int s = 0; s < 3; s++) {
+					states.add(s);
+				}
+				return states;
+			}
+
+			@Override
+			public int numberOfStates() {
+				return 3;
+			}
+
+			@Override
+			public Iterable<Integer> successors(Integer state, Integer action) {
+				return states();
+			}
+		};
+
+		TransitionDistribution<Integer> dist = new TransitionDistribution<Integer>();
+		mdp.transitions(0, 0, dist);
+		assertEquals(2, dist.size());
+		assertEquals(Integer.valueOf(0), dist.successor(0));
+		assertEquals(0.25, dist.tprob(0), EPSILON);
+		assertEquals(Integer.valueOf(2), dist.successor(1));
+		assertEquals(0.75, dist.tprob(1), EPSILON);
+
+		MapVFunction<Integer> vfunc = new MapVFunction<Integer>(0);
+		vfunc.set(0, 4);
+		vfunc.set(1, 100);
+		vfunc.set(2, 8);
+		double avgR = 0.75 * 2;
+		double avgNextV = 0.5 * (0.25 * 4 + 0.75 * 8);
+		assertEquals(avgR, FiniteStateSMDP.avgR(mdp, 0, 0), EPSILON);
+		assertEquals(avgR, FiniteStateSMDP.avgR(mdp, 0, 0, dist), EPSILON);
+		assertEquals(avgNextV, FiniteStateSMDP.avgNextV(mdp, 0, 0, vfunc, DF),
+				EPSILON);
+		assertEquals(avgNextV,
+				FiniteStateSMDP.avgNextV(mdp, 0, 0, vfunc, DF, dist), EPSILON);
+	}
+}
@@ -37,7 +37,9 @@ import org.apache.commons.math3.geometry.euclidean.oned.Interval;
 import com.github.kingtim1.jmdp.ActionSet;
 import com.github.kingtim1.jmdp.FiniteStateSMDP;
 import com.github.kingtim1.jmdp.RBoundedSMDP;
+import com.github.kingtim1.jmdp.TransitionDistribution;
 import com.github.kingtim1.jmdp.discounted.DiscountFactor;
+import com.github.kingtim1.jmdp.metrics.EstimatorUpdateEvent;
 import com.github.kingtim1.jmdp.util.MapUtil;
 import com.github.kingtim1.jmdp.util.Optimization;
 
@@ -302,6 +304,79 @@ public class SMDPEstimator<S, A> extends FiniteStateSMDP<S, A> implements
 		return tstates;
 	}
 
+	/**
+	 * Fills the buffer directly from the sample counts of a "known"
+	 * state-action pair, instead of looking up the counts once per call to
+	 * {@link #tprob} and {@link #r}. The distribution of an "unknown"
+	 * state-action pair is computed by the default implementation.
+	 */
+	@Override
+	public void transitions(S state, A action, TransitionDistribution<S> dist) {
+		int saCount = counts(state, action);
+		if (saCount < numSamplesUntilKnown()) {
+			super.transitions(state, action, dist);
+			return;
+		}
+
+		dist.clear();
+		Map<A, Map<S, Map<Integer, Integer>>> aCounts = _sasdCounts.get(state);
+		Map<S, Map<Integer, Integer>> asCounts = (aCounts == null) ? null
+				: aCounts.get(action);
+		if (asCounts == null) {
+			return;
+		}
+		Map<A, Map<S, Map<Integer, Double>>> aRSum = _rsum.get(state);
+		Map<S, Map<Integer, Double>> asRSum = (aRSum == null) ? null : aRSum
+				.get(action);
+		for (Map.Entry<S, Map<Integer, Integer>> sEntry : asCounts.entrySet()) {
+			S tstate = sEntry.getKey();
+			Map<Integer, Double> asdRSum = (asRSum == null) ? null : asRSum
+					.get(tstate);
+			for (Map.Entry<Integer, Integer> dEntry : sEntry.getValue()
+					.entrySet()) {
+				int sasdCount = dEntry.getValue();
+				if (sasdCount == 0) {
+					continue;
+				}
+				Double rsum = (asdRSum == null) ? null : asdRSum.get(dEntry
+						.getKey());
+				double r = ((rsum == null) ? rmin() : rsum) / saCount;
+				dist.add(tstate, dEntry.getKey(), ((double) sasdCount)
+						/ saCount, r);
+			}
+		}
+	}
+
+	/**
+	 * Updates this estimator with a burst of samples. A
+	 * {@link EstimatorUpdateEvent} covering the burst is emitted while the
+	 * event is enabled in a Java Flight Recorder recording.
+	 * 
+	 * @param outcomes
+	 *            the samples
+	 */
+	public void update(Iterable<? extends ActionOutcome<S, A>> outcomes) {
+		EstimatorUpdateEvent event = new EstimatorUpdateEvent();
+		boolean enabled = event.isEnabled();
+		event.begin();
+		int samples = 0;
+		int newlyKnown = 0;
+		for (ActionOutcome<S, A> outcome : outcomes) {
+			update(outcome);
+			samples++;
+			if (enabled && counts(outcome.state(), outcome.action()) == _m) {
+				newlyKnown++;
+			}
+		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.samples = samples;
+			event.states = _states.size();
+			event.newlyKnownPairs = newlyKnown;
+			event.commit();
+		}
+	}
+
 	public void update(ActionOutcome<S, A> outcome) {
 		update(outcome.state(), outcome.action(), outcome.terminalState(),
 				outcome.r(), outcome.duration());
@@ -0,0 +1,695 @@
+/**
+	Bisimulation.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.compiled;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.github.kingtim1.jmdp.ActionSet;
+import com.github.kingtim1.jmdp.FiniteStateSMDP;
+import com.github.kingtim1.jmdp.StationaryPolicy;
+import com.github.kingtim1.jmdp.discounted.DiscountFactor;
+import com.github.kingtim1.jmdp.discounted.DiscountedVFunction;
+import com.github.kingtim1.jmdp.discounted.MapVFunction;
+
+/**
+ * <p>
+ * Minimizes a finite-state SMDP by bisimulation. Two states are bisimilar if
+ * they have the same valid actions and, for every action, the same expected
+ * reinforcement and the same probability of reaching every class of bisimilar
+ * states after every duration. Bisimilar states have the same optimal value,
+ * so the SMDP can be solved on the quotient model (one state per class) and the
+ * solution lifted back to the original states.
+ * </p>
+ * 
+ * <p>
+ * The coarsest bisimulation is computed by partition refinement in the style
+ * of Paige and Tarjan. The initial partition groups states by their actions
+ * and expected reinforcements. A worklist holds the classes that have not yet
+ * been used as splitters. Processing a splitter C traverses only the
+ * transitions into C, and splits every class whose members reach C with
+ * different probabilities. When a class that is not on the worklist splits,
+ * all pieces except the largest are added to the worklist (the probability of
+ * reaching the largest piece follows from the others), so every state is part
+ * of a splitter O(log n) times.
+ * </p>
+ * 
+ * <p>
+ * Reinforcements and probabilities are compared by sorting the values that
+ * are being compared and cutting them into groups wherever two neighboring
+ * values differ by more than the tolerance, scaled by the magnitude of the
+ * values when it exceeds 1. With the default tolerance this only absorbs
+ * floating point round-off, including the round-off of large reinforcements.
+ * A larger tolerance gives an approximate (epsilon-) bisimulation, which
+ * merges states whose dynamics are nearly equal; because groups are chained
+ * through neighbors, the extremes of a group may differ by more than the
+ * tolerance. The quotient then uses the dynamics of one representative per
+ * class.
+ * </p>
+ * 
+ * @author Timothy A. Mann
+ *
+ * @param <S>
+ *            the state type
+ * @param <A>
+ *            the action type
+ */
+public class Bisimulation<S, A> {
+
+	/**
+	 * The default tolerance, which treats values as equal if they differ by
+	 * floating point round-off.
+	 */
+	public static final double EXACT_TOLERANCE = 1e-12;
+
+	/**
+	 * The quotient state that receives the probability mass which the original
+	 * SMDP sends to states outside of its state set. It is not a state of the
+	 * quotient, so its value is 0.
+	 */
+	public static final Integer EXIT = -1;
+
+	private CompiledSMDP<S, A> _model;
+	private double _tolerance;
+
+	private int[] _blockOf;
+	private List<int[]> _blocks;
+
+	private int[] _rowState;
+	private int[] _predBegin;
+	private int[] _predEntry;
+	private int[] _entryRow;
+
+	private QuotientSMDP _quotient;
+
+	/**
+	 * Computes the coarsest bisimulation of an SMDP.
+	 * 
+	 * @param smdp
+	 *            a finite-state SMDP
+	 */
+	public Bisimulation(FiniteStateSMDP<S, A> smdp) {
+		this(new CompiledSMDP<S, A>(smdp), EXACT_TOLERANCE);
+	}
+
+	/**
+	 * Computes the coarsest approximate bisimulation of an SMDP.
+	 * 
+	 * @param smdp
+	 *            a finite-state SMDP
+	 * @param tolerance
+	 *            the resolution at which reinforcements and probabilities are
+	 *            compared
+	 */
+	public Bisimulation(FiniteStateSMDP<S, A> smdp, double tolerance) {
+		this(new CompiledSMDP<S, A>(smdp), tolerance);
+	}
+
+	/**
+	 * Computes the coarsest approximate bisimulation of a compiled SMDP.
+	 * 
+	 * @param model
+	 *            a compiled SMDP
+	 * @param tolerance
+	 *            the resolution at which reinforcements and probabilities are
+	 *            compared
+	 */
+	public Bisimulation(CompiledSMDP<S, A> model, double tolerance) {
+		if (model == null) {
+			throw new NullPointerException("Model cannot be null.");
+		}
+		if (!(tolerance > 0)) {
+			throw new IllegalArgumentException(
+					"Expected a positive tolerance. Found " + tolerance + ".");
+		}
+		_model = model;
+		_tolerance = tolerance;
+
+		indexPredecessors();
+		initialPartition();
+		refine();
+
+		_rowState = null;
+		_predBegin = null;
+		_predEntry = null;
+		_entryRow = null;
+
+		_quotient = new QuotientSMDP();
+	}
+
+	/**
+	 * Builds the reverse adjacency (the entries leading into each state).
+	 */
+	private void indexPredecessors() {
+		int n = _model.numberOfStates();
+		_rowState = new int[_model.numberOfRows()];
+		_entryRow = new int[_model.numberOfEntries()];
+		_predBegin = new int[n + 1];
+		for (int s = 0; s < n; s++) {
+			for (int row = _model.rowBegin(s); row < _model.rowEnd(s); row++) {
+				_rowState[row] = s;
+				for (int e = _model.entryBegin(row); e < _model.entryEnd(row); e++) {
+					_entryRow[e] = row;
+					_predBegin[_model.successor(e) + 1]++;
+				}
+			}
+		}
+		for (int s = 0; s < n; s++) {
+			_predBegin[s + 1] += _predBegin[s];
+		}
+		int[] fill = _predBegin.clone();
+		_predEntry = new int[_model.numberOfEntries()];
+		for (int e = 0; e < _predEntry.length; e++) {
+			_predEntry[fill[_model.successor(e)]++] = e;
+		}
+	}
+
+	/**
+	 * Groups the states by their actions and expected reinforcements.
+	 */
+	private void initialPartition() {
+		int n = _model.numberOfStates();
+		double[] rs = new double[_model.numberOfRows()];
+		for (int row = 0; row < rs.length; row++) {
+			rs[row] = _model.r(row);
+		}
+		int[] rClass = cluster(rs, rs.length);
+
+		Map<List<Long>, List<Integer>> groups = new LinkedHashMap<List<Long>, List<Integer>>();
+		for (int s = 0; s < n; s++) {
+			List<Long> key = new ArrayList<Long>();
+			for (int row = _model.rowBegin(s); row < _model.rowEnd(s); row++) {
+				key.add((long) _model.actionIndex(row));
+				key.add((long) rClass[row]);
+			}
+			List<Integer> group = groups.get(key);
+			if (group == null) {
+				group = new ArrayList<Integer>();
+				groups.put(key, group);
+			}
+			group.add(s);
+		}
+
+		_blockOf = new int[n];
+		_blocks = new ArrayList<int[]>(groups.size());
+		for (List<Integer> group : groups.values()) {
+			int[] members = new int[group.size()];
+			for (int i = 0; i < members.length; i++) {
+				members[i] = group.get(i);
+				_blockOf[members[i]] = _blocks.size();
+			}
+			_blocks.add(members);
+		}
+	}
+
+	/**
+	 * Splits classes until every class reaches every other class with the
+	 * same probabilities from all of its members.
+	 */
+	private void refine() {
+		Deque<Integer> worklist = new ArrayDeque<Integer>();
+		List<Boolean> onWorklist = new ArrayList<Boolean>();
+		for (int b = 0; b < _blocks.size(); b++) {
+			worklist.add(b);
+			onWorklist.add(Boolean.TRUE);
+		}
+
+		// There are never more classes than states
+		int[] mark = new int[_model.numberOfStates()];
+		int stamp = 0;
+		while (!worklist.isEmpty()) {
+			int splitter = worklist.poll();
+			onWorklist.set(splitter, Boolean.FALSE);
+			stamp++;
+
+			// Probability of reaching the splitter from each (row, duration)
+			Map<Integer, TreeMap<Integer, Double>> mass = new HashMap<Integer, TreeMap<Integer, Double>>();
+			List<Integer> touchedBlocks = new ArrayList<Integer>();
+			for (int t : _blocks.get(splitter)) {
+				for (int k = _predBegin[t]; k < _predBegin[t + 1]; k++) {
+					int e = _predEntry[k];
+					int row = _entryRow[e];
+					TreeMap<Integer, Double> rowMass = mass.get(row);
+					if (rowMass == null) {
+						rowMass = new TreeMap<Integer, Double>();
+						mass.put(row, rowMass);
+					}
+					Double m = rowMass.get(_model.duration(e));
+					rowMass.put(_model.duration(e), (m == null ? 0 : m)
+							+ _model.tprob(e));
+
+					int b = _blockOf[_rowState[row]];
+					if (mark[b] != stamp) {
+						mark[b] = stamp;
+						touchedBlocks.add(b);
+					}
+				}
+			}
+
+			for (int b : touchedBlocks) {
+				int[] members = _blocks.get(b);
+				if (members.length < 2) {
+					continue;
+				}
+				// Group the masses of all members before comparing them
+				int numMasses = 0;
+				for (int s : members) {
+					for (int row = _model.rowBegin(s); row < _model.rowEnd(s); row++) {
+						TreeMap<Integer, Double> rowMass = mass.get(row);
+						if (rowMass != null) {
+							numMasses += rowMass.size();
+						}
+					}
+				}
+				double[] masses = new double[numMasses];
+				numMasses = 0;
+				for (int s : members) {
+					for (int row = _model.rowBegin(s); row < _model.rowEnd(s); row++) {
+						TreeMap<Integer, Double> rowMass = mass.get(row);
+						if (rowMass != null) {
+							for (Double m : rowMass.values()) {
+								masses[numMasses++] = m;
+							}
+						}
+					}
+				}
+				int[] massClass = cluster(masses, numMasses);
+
+				Map<List<Long>, List<Integer>> groups = new LinkedHashMap<List<Long>, List<Integer>>();
+				int k = 0;
+				for (int s : members) {
+					List<Long> key = new ArrayList<Long>();
+					int rowBegin = _model.rowBegin(s);
+					for (int row = rowBegin; row < _model.rowEnd(s); row++) {
+						TreeMap<Integer, Double> rowMass = mass.get(row);
+						if (rowMass == null) {
+							continue;
+						}
+						for (Map.Entry<Integer, Double> dm : rowMass.entrySet()) {
+							// Mass within the tolerance of 0 is no mass
+							if (Math.abs(dm.getValue()) > _tolerance) {
+								key.add((long) (row - rowBegin));
+								key.add((long) dm.getKey());
+								key.add((long) massClass[k]);
+							}
+							k++;
+						}
+					}
+					List<Integer> group = groups.get(key);
+					if (group == null) {
+						group = new ArrayList<Integer>();
+						groups.put(key, group);
+					}
+					group.add(s);
+				}
+				if (groups.size() < 2) {
+					continue;
+				}
+
+				List<List<Integer>> pieces = new ArrayList<List<Integer>>(
+						groups.values());
+				int largest = 0;
+				for (int i = 1; i < pieces.size(); i++) {
+					if (pieces.get(i).size() > pieces.get(largest).size()) {
+						largest = i;
+					}
+				}
+				boolean wasOnWorklist = onWorklist.get(b);
+				for (int i = 0; i < pieces.size(); i++) {
+					List<Integer> piece = pieces.get(i);
+					int[] pieceMembers = new int[piece.size()];
+					for (int j = 0; j < pieceMembers.length; j++) {
+						pieceMembers[j] = piece.get(j);
+					}
+					int id;
+					if (i == largest) {
+						id = b;
+						_blocks.set(b, pieceMembers);
+					} else {
+						id = _blocks.size();
+						_blocks.add(pieceMembers);
+						onWorklist.add(Boolean.FALSE);
+					}
+					for (int s : pieceMembers) {
+						_blockOf[s] = id;
+					}
+					if ((wasOnWorklist || i != largest) && !onWorklist.get(id)) {
+						worklist.add(id);
+						onWorklist.set(id, Boolean.TRUE);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the group of each of the first <code>count</code> values. The
+	 * sorted values are cut between two neighbors a &lt; b whenever
+	 * <code>b - a &gt; tolerance * max(1, |a|, |b|)</code>, so equal values and
+	 * values that differ by round-off share a group regardless of their
+	 * magnitude.
+	 */
+	private int[] cluster(double[] values, int count) {
+		double[] sorted = Arrays.copyOf(values, count);
+		Arrays.sort(sorted);
+		int[] sortedClass = new int[count];
+		for (int i = 1; i < count; i++) {
+			double a = sorted[i - 1];
+			double b = sorted[i];
+			double scale = Math.max(1, Math.max(Math.abs(a), Math.abs(b)));
+			sortedClass[i] = sortedClass[i - 1]
+					+ ((b - a > _tolerance * scale) ? 1 : 0);
+		}
+		int[] classes = new int[count];
+		for (int i = 0; i < count; i++) {
+			classes[i] = sortedClass[Arrays.binarySearch(sorted, values[i])];
+		}
+		return classes;
+	}
+
+	/**
+	 * Returns the number of bisimulation classes.
+	 * 
+	 * @return the number of classes
+	 */
+	public int numberOfBlocks() {
+		return _blocks.size();
+	}
+
+	/**
+	 * Returns the class of a state. The class is a state of the quotient.
+	 * 
+	 * @param state
+	 *            a state of the original SMDP
+	 * @return the index of its class
+	 */
+	public int block(S state) {
+		int s = _model.index(state);
+		if (s < 0) {
+			throw new IllegalArgumentException("Unknown state " + state + ".");
+		}
+		return _blockOf[s];
+	}
+
+	/**
+	 * Returns the original states that belong to a class.
+	 * 
+	 * @param block
+	 *            the index of a class
+	 * @return the members of the class
+	 */
+	public List<S> members(int block) {
+		int[] members = _blocks.get(block);
+		List<S> states = new ArrayList<S>(members.length);
+		for (int s : members) {
+			states.add(_model.state(s));
+		}
+		return states;
+	}
+
+	/**
+	 * Returns the quotient SMDP, which has one state per class. Solutions of
+	 * the quotient can be lifted back to the original states with
+	 * {@link #liftValues(DiscountedVFunction)} and
+	 * {@link #liftPolicy(StationaryPolicy)}.
+	 * 
+	 * @return the quotient SMDP
+	 */
+	public FiniteStateSMDP<Integer, A> quotient() {
+		return _quotient;
+	}
+
+	/**
+	 * Expands a value function of the quotient to the original states.
+	 * 
+	 * @param vfunc
+	 *            a value function of the quotient
+	 * @return the value function that gives every state the value of its
+	 *         class
+	 */
+	public DiscountedVFunction<S> liftValues(DiscountedVFunction<Integer> vfunc) {
+		MapVFunction<S> lifted = new MapVFunction<S>(0);
+		for (int s = 0; s < _blockOf.length; s++) {
+			lifted.set(_model.state(s), vfunc.value(_blockOf[s]));
+		}
+		return lifted;
+	}
+
+	/**
+	 * Expands a policy of the quotient to the original states.
+	 * 
+	 * @param policy
+	 *            a policy of the quotient
+	 * @return the policy that selects at every state what the quotient policy
+	 *         selects at its class
+	 */
+	public StationaryPolicy<S, A> liftPolicy(
+			final StationaryPolicy<Integer, A> policy) {
+		return new StationaryPolicy<S, A>() {
+			@Override
+			public A policy(S state, Integer timestep) {
+				return policy.policy(block(state), timestep);
+			}
+
+			@Override
+			public A policy(S state) {
+				return policy.policy(block(state));
+			}
+
+			@Override
+			public double aprob(S state, A action) {
+				return policy.aprob(block(state), action);
+			}
+
+			@Override
+			public boolean isDeterministic() {
+				return policy.isDeterministic();
+			}
+		};
+	}
+
+	/**
+	 * The quotient SMDP. Class b behaves like the first member of b, with the
+	 * probabilities of reaching the members of each class summed.
+	 */
+	private class QuotientSMDP extends FiniteStateSMDP<Integer, A> {
+
+		private List<Integer> _states;
+		private int[] _entryBegin;
+		private int[] _entryEnd;
+		private int[] _successors;
+		private int[] _durations;
+		private double[] _tprobs;
+
+		public QuotientSMDP() {
+			super(new QuotientActionSet(), _model.opType());
+			int m = _blocks.size();
+			_states = new ArrayList<Integer>(m);
+			for (int b = 0; b < m; b++) {
+				_states.add(b);
+			}
+
+			int numRows = _model.numberOfRows();
+			// Only the rows of the representatives have entries
+			_entryBegin = new int[numRows];
+			_entryEnd = new int[numRows];
+			List<Integer> succs = new ArrayList<Integer>();
+			List<Integer> durs = new ArrayList<Integer>();
+			List<Double> probs = new ArrayList<Double>();
+			for (int b = 0; b < m; b++) {
+				int rep = _blocks.get(b)[0];
+				for (int row = _model.rowBegin(rep); row < _model.rowEnd(rep); row++) {
+					_entryBegin[row] = succs.size();
+					Map<Long, Double> merged = new LinkedHashMap<Long, Double>();
+					double total = 0;
+					for (int e = _model.entryBegin(row); e < _model.entryEnd(row); e++) {
+						long key = ((long) _blockOf[_model.successor(e)] << 32)
+								| _model.duration(e);
+						Double p = merged.get(key);
+						merged.put(key, (p == null ? 0 : p) + _model.tprob(e));
+						total += _model.tprob(e);
+					}
+					if (1 - total > EXACT_TOLERANCE) {
+						merged.put(((long) EXIT << 32) | 1, 1 - total);
+					}
+					for (Map.Entry<Long, Double> entry : merged.entrySet()) {
+						succs.add((int) (entry.getKey() >> 32));
+						durs.add((int) (long) entry.getKey());
+						probs.add(entry.getValue());
+					}
+					_entryEnd[row] = succs.size();
+				}
+			}
+			_successors = new int[succs.size()];
+			_durations = new int[succs.size()];
+			_tprobs = new double[succs.size()];
+			for (int e = 0; e < _successors.length; e++) {
+				_successors[e] = succs.get(e);
+				_durations[e] = durs.get(e);
+				_tprobs[e] = probs.get(e);
+			}
+		}
+
+		private int row(Integer block, A action) {
+			if (block == null || block < 0 || block >= _blocks.size()) {
+				return -1;
+			}
+			return _model.row(_blocks.get(block)[0], action);
+		}
+
+		@Override
+		public double r(Integer state, A action, Integer terminalState,
+				Integer duration) {
+			int row = row(state, action);
+			return row < 0 ? 0 : _model.r(row);
+		}
+
+		@Override
+		public double tprob(Integer state, A action, Integer terminalState,
+				Integer duration) {
+			int row = row(state, action);
+			if (row < 0) {
+				return 0;
+			}
+			for (int e = _entryBegin[row]; e < _entryEnd[row]; e++) {
+				if (_successors[e] == terminalState.intValue()
+						&& _durations[e] == duration.intValue()) {
+					return _tprobs[e];
+				}
+			}
+			return 0;
+		}
+
+		@Override
+		public double dtprob(Integer state, A action, Integer terminalState,
+				Integer duration, DiscountFactor gamma) {
+			return Math.pow(gamma.doubleValue(), duration)
+					* tprob(state, action, terminalState, duration);
+		}
+
+		@Override
+		public int maxActionDuration() {
+			return _model.maxActionDuration();
+		}
+
+		@Override
+		public Iterable<Integer> durations(Integer state, A action,
+				Integer terminalState) {
+			List<Integer> durations = new ArrayList<Integer>();
+			int row = row(state, action);
+			if (row >= 0) {
+				for (int e = _entryBegin[row]; e < _entryEnd[row]; e++) {
+					if (_successors[e] == terminalState.intValue()) {
+						durations.add(_durations[e]);
+					}
+				}
+			}
+			return durations;
+		}
+
+		@Override
+		public Iterable<Integer> states() {
+			return Collections.unmodifiableList(_states);
+		}
+
+		@Override
+		public int numberOfStates() {
+			return _states.size();
+		}
+
+		@Override
+		public Iterable<Integer> successors(Integer state, A action) {
+			List<Integer> succs = new ArrayList<Integer>();
+			int row = row(state, action);
+			if (row >= 0) {
+				for (int e = _entryBegin[row]; e < _entryEnd[row]; e++) {
+					if (!succs.contains(_successors[e])) {
+						succs.add(_successors[e]);
+					}
+				}
+			}
+			return succs;
+		}
+	}
+
+	/**
+	 * The actions of a class are the actions of its members.
+	 */
+	private class QuotientActionSet implements ActionSet<Integer, A> {
+
+		private ActionSet<S, A> _actionSet = _model.actionSet();
+
+		private S representative(Integer block) {
+			return _model.state(_blocks.get(block)[0]);
+		}
+
+		@Override
+		public boolean isValid(Integer state, A action) {
+			return _actionSet.isValid(representative(state), action);
+		}
+
+		@Override
+		public List<Integer> indices(Integer state) {
+			return _actionSet.indices(representative(state));
+		}
+
+		@Override
+		public List<A> actions(Integer state) {
+			return _actionSet.actions(representative(state));
+		}
+
+		@Override
+		public A uniformRandom(Integer state) {
+			return _actionSet.uniformRandom(representative(state));
+		}
+
+		@Override
+		public A action(Integer index) {
+			return _actionSet.action(index);
+		}
+
+		@Override
+		public Integer index(A action) {
+			return _actionSet.index(action);
+		}
+
+		@Override
+		public int numberOfActions() {
+			return _actionSet.numberOfActions();
+		}
+	}
+}
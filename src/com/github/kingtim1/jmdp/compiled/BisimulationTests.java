@@ -0,0 +1,118 @@
+/**
+	BisimulationTests.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.compiled;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.github.kingtim1.jmdp.AbstractIntMDP;
+import com.github.kingtim1.jmdp.BoxedSMDP;
+import com.github.kingtim1.jmdp.discounted.DiscountFactor;
+import com.github.kingtim1.jmdp.discounted.DiscountedVFunction;
+import com.github.kingtim1.jmdp.discounted.ValueIteration;
+import com.github.kingtim1.jmdp.util.Optimization;
+
+public class BisimulationTests {
+
+	public static final DiscountFactor DF = new DiscountFactor(0.5);
+
+	/**
+	 * Tests if {@link Bisimulation} separates states whose reinforcements are
+	 * distinct but larger than 1e7, merges states whose reinforcements differ
+	 * only by round-off, and if the quotient lifts to the values of the
+	 * original SMDP.
+	 */
+	@Test
+	public void testLargeReinforcementsAreComparedRelatively() {
+		BoxedSMDP smdp = selfLoopMDP(1e7, 2e7, 1e7 + 1e-8, 3e7);
+		Bisimulation<Integer, Integer> bisim = new Bisimulation<Integer, Integer>(
+				smdp);
+		assertEquals(3, bisim.numberOfBlocks());
+		assertEquals(bisim.block(0), bisim.block(2));
+		assertTrue(bisim.block(0) != bisim.block(1));
+		assertTrue(bisim.block(1) != bisim.block(3));
+
+		DiscountedVFunction<Integer> expected = new ValueIteration<Integer, Integer>(
+				smdp, DF, 1000, 1e-6).run().greedy();
+		DiscountedVFunction<Integer> lifted = bisim
+				.liftValues(new ValueIteration<Integer, Integer>(bisim
+						.quotient(), DF, 1000, 1e-6).run().greedy());
+		for (Integer state : smdp.states()) {
+			assertEquals(expected.value(state), lifted.value(state), 1);
+		}
+	}
+
+	/**
+	 * Tests if {@link Bisimulation} merges reinforcements that differ by less
+	 * than the tolerance even when a multiple of the tolerance lies between
+	 * them.
+	 */
+	@Test
+	public void testValuesWithinToleranceAreMerged() {
+		BoxedSMDP smdp = selfLoopMDP(0.149, 0.151, 0.5);
+		Bisimulation<Integer, Integer> bisim = new Bisimulation<Integer, Integer>(
+				smdp, 0.1);
+		assertEquals(2, bisim.numberOfBlocks());
+		assertEquals(bisim.block(0), bisim.block(1));
+	}
+
+	/**
+	 * Returns an MDP with one action whose states loop back to themselves
+	 * with the specified reinforcements.
+	 */
+	private static BoxedSMDP selfLoopMDP(final double... rewards) {
+		return new BoxedSMDP(new AbstractIntMDP(Optimization.MAXIMIZE) {
+			@Override
+			public int numberOfStates() {
+				return rewards.length;
+			}
+
+			@Override
+			public int numberOfActions() {
+				return 1;
+			}
+
+			@Override
+			public double r(int state, int action, int nextState) {
+				return rewards[state];
+			}
+
+			@Override
+			public double tprob(int state, int action, int nextState) {
+				return (nextState == state) ? 1 : 0;
+			}
+
+			@Override
+			public void successors(int state, int action,
+					SuccessorVisitor visitor) {
+				visitor.visit(state, 1, 1, rewards[state]);
+			}
+		});
+	}
+}
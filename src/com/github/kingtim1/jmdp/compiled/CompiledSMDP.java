@@ -0,0 +1,1029 @@
+/**
+	CompiledSMDP.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.compiled;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.kingtim1.jmdp.ActionSet;
+import com.github.kingtim1.jmdp.BoxedSMDP;
+import com.github.kingtim1.jmdp.FiniteStateSMDP;
+import com.github.kingtim1.jmdp.IntSMDP;
+import com.github.kingtim1.jmdp.StationaryPolicy;
+import com.github.kingtim1.jmdp.TransitionDistribution;
+import com.github.kingtim1.jmdp.discounted.DiscountFactor;
+import com.github.kingtim1.jmdp.util.Optimization;
+
+/**
+ * <p>
+ * A finite-state SMDP compiled into compressed sparse row (CSR) arrays. Each
+ * state is assigned an index in the order returned by
+ * {@link FiniteStateSMDP#states()} and each valid state-action pair is assigned
+ * a row. The rows of a state are stored contiguously. A row stores the action
+ * index (see {@link ActionSet#index(Object)}), the expected immediate
+ * reinforcement of the state-action pair, and a list of entries. Each entry is
+ * a (successor index, duration, undiscounted probability) triple.
+ * </p>
+ * 
+ * <p>
+ * Compiling a model calls
+ * {@link FiniteStateSMDP#transitions(Object, Object, TransitionDistribution)}
+ * exactly once per state-action pair. Solvers that sweep the
+ * same model many times can then work on primitive arrays. Successor states
+ * that are not returned by {@link FiniteStateSMDP#states()} (such as the dummy
+ * state of an SMDP estimator) are treated like the map-based solvers treat
+ * them: their value is fixed at 0, so their entries are dropped, but the
+ * reinforcement received when reaching them still counts toward the expected
+ * reinforcement of the row.
+ * </p>
+ * 
+ * <p>
+ * The arrays can be stored outside of the Java heap with
+ * {@link #offHeap(OffHeapArena)} or {@link #of(IntSMDP, OffHeapArena)}, so
+ * that very large models do not add to the work of the garbage collector. An
+ * off-heap model is used by the solvers exactly like a heap model, and it
+ * stays valid until its arena is closed (see {@link OffHeapArena#close()} for
+ * why the arena must not be closed while the model is in use). Rows and
+ * entries are still indexed by <code>int</code>s. Off-heap models are
+ * instances of a private subclass that overrides the accessors, so the
+ * accessors of a heap model read its arrays without testing where the model
+ * is stored.
+ * </p>
+ * 
+ * @author Timothy A. Mann
+ *
+ * @param <S>
+ *            the state type
+ * @param <A>
+ *            the action type
+ */
+public class CompiledSMDP<S, A> {
+
+	private static final String CHANGED_TRANSITIONS = "The SMDP reported "
+			+ "different transitions while it was compiled.";
+
+	private List<S> _states;
+	private Map<S, Integer> _indices;
+	private ActionSet<S, A> _actionSet;
+	private Optimization _opType;
+	private int _maxDuration;
+
+	private int[] _stateRows;
+	private int[] _rowActions;
+	private double[] _rowR;
+	private int[] _rowEntries;
+	private int[] _successors;
+	private int[] _durations;
+	private double[] _tprobs;
+
+	private int _numRows;
+	private int _numEntries;
+
+	/**
+	 * Compiles a finite-state SMDP.
+	 * 
+	 * @param smdp
+	 *            a finite-state SMDP
+	 */
+	public CompiledSMDP(FiniteStateSMDP<S, A> smdp) {
+		if (smdp == null) {
+			throw new NullPointerException("Cannot compile a null SMDP.");
+		}
+		List<S> states = new ArrayList<S>(smdp.numberOfStates());
+		for (S state : smdp.states()) {
+			states.add(state);
+		}
+		init(states, smdp.actionSet(), smdp.opType());
+
+		TransitionDistribution<S> dist = new TransitionDistribution<S>();
+		for (int s = 0; s < states.size(); s++) {
+			S state = states.get(s);
+			beginState(s);
+			for (A action : smdp.actions(state)) {
+				beginRow(_actionSet.index(action));
+				smdp.transitions(state, action, dist);
+				for (int k = 0; k < dist.size(); k++) {
+					Integer tindex = _indices.get(dist.successor(k));
+					if (tindex != null) {
+						addEntry(tindex.intValue(), dist.duration(k),
+								dist.tprob(k));
+					}
+				}
+				endRow(dist.avgR());
+			}
+		}
+		finish();
+	}
+
+	private CompiledSMDP() {
+	}
+
+	/**
+	 * Compiles a primitive SMDP. The states and actions of the compiled model
+	 * are the integer indices of the primitive SMDP, so the compiled model can
+	 * be passed to every solver that accepts a {@link CompiledSMDP}. The
+	 * transitions are read through
+	 * {@link IntSMDP#successors(int, int, IntSMDP.SuccessorVisitor)} without
+	 * boxing.
+	 * 
+	 * @param model
+	 *            a primitive SMDP
+	 * @return the compiled model
+	 */
+	public static CompiledSMDP<Integer, Integer> of(IntSMDP model) {
+		if (model == null) {
+			throw new NullPointerException("Cannot compile a null SMDP.");
+		}
+		BoxedSMDP boxed = new BoxedSMDP(model);
+		List<Integer> states = new ArrayList<Integer>(model.numberOfStates());
+		for (Integer state : boxed.states()) {
+			states.add(state);
+		}
+		final CompiledSMDP<Integer, Integer> compiled = new CompiledSMDP<Integer, Integer>();
+		compiled.init(states, boxed.actionSet(), model.opType());
+
+		final double[] ravg = new double[1];
+		IntSMDP.SuccessorVisitor visitor = new IntSMDP.SuccessorVisitor() {
+			@Override
+			public void visit(int successor, int duration, double tprob,
+					double r) {
+				if (tprob == 0) {
+					return;
+				}
+				ravg[0] += tprob * r;
+				if (successor >= 0) {
+					compiled.addEntry(successor, duration, tprob);
+				}
+			}
+		};
+		for (int s = 0; s < states.size(); s++) {
+			compiled.beginState(s);
+			for (int a = 0; a < model.numberOfActions(); a++) {
+				if (!model.isValid(s, a)) {
+					continue;
+				}
+				compiled.beginRow(a);
+				ravg[0] = 0;
+				model.successors(s, a, visitor);
+				compiled.endRow(ravg[0]);
+			}
+		}
+		compiled.finish();
+		return compiled;
+	}
+
+	/**
+	 * Compiles a primitive SMDP directly into off-heap arrays. The transitions
+	 * are read twice through
+	 * {@link IntSMDP#successors(int, int, IntSMDP.SuccessorVisitor)}: once to
+	 * count the rows and entries and once to fill arrays of exactly that
+	 * size, so the transitions never occupy the Java heap. The states are
+	 * their own indices, so no map from states to indices is built either.
+	 * 
+	 * @param model
+	 *            a primitive SMDP that reports the same transitions every time
+	 * @param arena
+	 *            the arena that allocates (and later frees) the arrays
+	 * @return the compiled model
+	 */
+	public static CompiledSMDP<Integer, Integer> of(IntSMDP model,
+			OffHeapArena arena) {
+		if (model == null) {
+			throw new NullPointerException("Cannot compile a null SMDP.");
+		}
+		int n = model.numberOfStates();
+		OffHeapWriter counter = new OffHeapWriter(null);
+		long rows = 0;
+		for (int s = 0; s < n; s++) {
+			for (int a = 0; a < model.numberOfActions(); a++) {
+				if (model.isValid(s, a)) {
+					rows++;
+					model.successors(s, a, counter);
+				}
+			}
+		}
+		if (rows >= Integer.MAX_VALUE || counter.entries >= Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Expected fewer than "
+					+ Integer.MAX_VALUE + " rows and entries. Found " + rows
+					+ " rows and " + counter.entries + " entries.");
+		}
+
+		OffHeapModel<Integer, Integer> storage = new OffHeapModel<Integer, Integer>(
+				arena, n, (int) rows, (int) counter.entries);
+		CompiledSMDP<Integer, Integer> compiled = storage;
+		compiled._states = new IndexList(n);
+		compiled._indices = null;
+		compiled._actionSet = new BoxedSMDP(model).actionSet();
+		compiled._opType = model.opType();
+
+		OffHeapWriter writer = new OffHeapWriter(storage);
+		int row = 0;
+		for (int s = 0; s < n; s++) {
+			storage.stateRows.set(s, row);
+			for (int a = 0; a < model.numberOfActions(); a++) {
+				if (!model.isValid(s, a)) {
+					continue;
+				}
+				if (row == rows) {
+					throw new IllegalStateException(CHANGED_TRANSITIONS);
+				}
+				storage.rowActions.set(row, a);
+				storage.rowEntries.set(row, (int) writer.entries);
+				writer.ravg = 0;
+				model.successors(s, a, writer);
+				storage.rowR.set(row, writer.ravg);
+				row++;
+			}
+		}
+		if (row != rows || writer.entries != counter.entries) {
+			throw new IllegalStateException(CHANGED_TRANSITIONS);
+		}
+		storage.stateRows.set(n, row);
+		storage.rowEntries.set(row, (int) writer.entries);
+		compiled._numRows = row;
+		compiled._numEntries = (int) writer.entries;
+		compiled._maxDuration = writer.maxDuration;
+		return compiled;
+	}
+
+	/**
+	 * Returns a copy of this model whose arrays are stored off-heap. The
+	 * states, the action set and the optimization type are shared with this
+	 * model.
+	 * 
+	 * @param arena
+	 *            the arena that allocates (and later frees) the arrays
+	 * @return an off-heap copy of this model
+	 */
+	public CompiledSMDP<S, A> offHeap(OffHeapArena arena) {
+		OffHeapModel<S, A> storage = new OffHeapModel<S, A>(arena,
+				_states.size(), _numRows, _numEntries);
+		CompiledSMDP<S, A> copy = storage;
+		copy._states = _states;
+		copy._indices = _indices;
+		copy._actionSet = _actionSet;
+		copy._opType = _opType;
+		copy._maxDuration = _maxDuration;
+		copy._numRows = _numRows;
+		copy._numEntries = _numEntries;
+		storage.stateRows.copyFrom(_stateRows, 0, 0, _stateRows.length);
+		storage.rowActions.copyFrom(_rowActions, 0, 0, _numRows);
+		storage.rowR.copyFrom(_rowR, 0, 0, _numRows);
+		storage.rowEntries.copyFrom(_rowEntries, 0, 0, _numRows + 1);
+		storage.successors.copyFrom(_successors, 0, 0, _numEntries);
+		storage.durations.copyFrom(_durations, 0, 0, _numEntries);
+		storage.tprobs.copyFrom(_tprobs, 0, 0, _numEntries);
+		return copy;
+	}
+
+	/**
+	 * Wraps off-heap arrays that already hold a compiled model, such as the
+	 * column blocks of a file mapped by {@link ModelFile}.
+	 * 
+	 * @param states
+	 *            the states ordered by their indices or null if the states are
+	 *            the integers <code>0, 1, ..., numStates - 1</code>
+	 * @param durations
+	 *            the duration of each entry or null if every duration is 1
+	 */
+	@SuppressWarnings("unchecked")
+	static <S, A> CompiledSMDP<S, A> wrap(int numStates, List<S> states,
+			ActionSet<S, A> actionSet, Optimization opType, int maxDuration,
+			OffHeapIntArray stateRows, OffHeapIntArray rowActions,
+			OffHeapDoubleArray rowR, OffHeapIntArray rowEntries,
+			OffHeapIntArray successors, OffHeapIntArray durations,
+			OffHeapDoubleArray tprobs) {
+		CompiledSMDP<S, A> model = new OffHeapModel<S, A>(stateRows,
+				rowActions, rowR, rowEntries, successors, durations, tprobs);
+		if (states == null) {
+			model._states = (List<S>) new IndexList(numStates);
+			model._indices = null;
+		} else {
+			model._states = states;
+			model._indices = new HashMap<S, Integer>();
+			for (int s = 0; s < states.size(); s++) {
+				model._indices.put(states.get(s), s);
+			}
+		}
+		model._actionSet = actionSet;
+		model._opType = opType;
+		model._maxDuration = maxDuration;
+		model._numRows = (int) rowActions.length();
+		model._numEntries = (int) successors.length();
+		return model;
+	}
+
+	/**
+	 * Returns true if the arrays of this model are stored off-heap.
+	 * 
+	 * @return true if this model is stored off-heap; otherwise false
+	 */
+	public boolean isOffHeap() {
+		return false;
+	}
+
+	/**
+	 * Builds a heap copy of this model in which the state with index
+	 * <code>order[i]</code> receives index <code>i</code> (see
+	 * {@link StateOrdering#apply(CompiledSMDP)}).
+	 *
+	 * @param order
+	 *            the original index of each reordered state
+	 * @param inverse
+	 *            the reordered index of each original state
+	 */
+	CompiledSMDP<S, A> permute(int[] order, int[] inverse) {
+		List<S> states = new ArrayList<S>(order.length);
+		for (int i = 0; i < order.length; i++) {
+			states.add(state(order[i]));
+		}
+		CompiledSMDP<S, A> model = new CompiledSMDP<S, A>();
+		model.init(states, _actionSet, _opType);
+		for (int i = 0; i < order.length; i++) {
+			int s = order[i];
+			model.beginState(i);
+			for (int row = rowBegin(s); row < rowEnd(s); row++) {
+				model.beginRow(actionIndex(row));
+				for (int e = entryBegin(row); e < entryEnd(row); e++) {
+					model.addEntry(inverse[successor(e)], duration(e), tprob(e));
+				}
+				model.endRow(r(row));
+			}
+		}
+		model.finish();
+		return model;
+	}
+
+	private void init(List<S> states, ActionSet<S, A> actionSet,
+			Optimization opType) {
+		_actionSet = actionSet;
+		_opType = opType;
+		_maxDuration = 1;
+
+		_states = states;
+		_indices = new HashMap<S, Integer>();
+		for (int s = 0; s < states.size(); s++) {
+			_indices.put(states.get(s), s);
+		}
+
+		int n = _states.size();
+		_stateRows = new int[n + 1];
+		_rowActions = new int[Math.max(1, n)];
+		_rowR = new double[_rowActions.length];
+		_rowEntries = new int[_rowActions.length + 1];
+		_successors = new int[Math.max(1, 2 * n)];
+		_durations = new int[_successors.length];
+		_tprobs = new double[_successors.length];
+		_numRows = 0;
+		_numEntries = 0;
+	}
+
+	private void beginState(int s) {
+		_stateRows[s] = _numRows;
+	}
+
+	private void beginRow(int actionIndex) {
+		if (_numRows == _rowActions.length) {
+			int capacity = 2 * _numRows;
+			_rowActions = Arrays.copyOf(_rowActions, capacity);
+			_rowR = Arrays.copyOf(_rowR, capacity);
+			_rowEntries = Arrays.copyOf(_rowEntries, capacity + 1);
+		}
+		_rowActions[_numRows] = actionIndex;
+		_rowEntries[_numRows] = _numEntries;
+	}
+
+	private void addEntry(int successor, int duration, double tprob) {
+		if (_numEntries == _successors.length) {
+			int capacity = 2 * _numEntries;
+			_successors = Arrays.copyOf(_successors, capacity);
+			_durations = Arrays.copyOf(_durations, capacity);
+			_tprobs = Arrays.copyOf(_tprobs, capacity);
+		}
+		_successors[_numEntries] = successor;
+		_durations[_numEntries] = duration;
+		_tprobs[_numEntries] = tprob;
+		_maxDuration = Math.max(_maxDuration, duration);
+		_numEntries++;
+	}
+
+	private void endRow(double r) {
+		_rowR[_numRows] = r;
+		_numRows++;
+	}
+
+	private void finish() {
+		int row = _numRows;
+		int entry = _numEntries;
+		_stateRows[_states.size()] = row;
+		_rowEntries[row] = entry;
+
+		_rowActions = Arrays.copyOf(_rowActions, row);
+		_rowR = Arrays.copyOf(_rowR, row);
+		_rowEntries = Arrays.copyOf(_rowEntries, row + 1);
+		_successors = Arrays.copyOf(_successors, entry);
+		_durations = Arrays.copyOf(_durations, entry);
+		_tprobs = Arrays.copyOf(_tprobs, entry);
+	}
+
+	/**
+	 * Returns the number of states in this model.
+	 * 
+	 * @return the number of states
+	 */
+	public int numberOfStates() {
+		return _states.size();
+	}
+
+	/**
+	 * Returns the number of rows (valid state-action pairs) in this model.
+	 * 
+	 * @return the number of rows
+	 */
+	public int numberOfRows() {
+		return _numRows;
+	}
+
+	/**
+	 * Returns the number of (successor, duration, probability) entries over all
+	 * rows of this model.
+	 * 
+	 * @return the number of entries
+	 */
+	public int numberOfEntries() {
+		return _numEntries;
+	}
+
+	/**
+	 * Returns the state with the specified index.
+	 * 
+	 * @param index
+	 *            a state index in [0, numberOfStates())
+	 * @return the state with the specified index
+	 */
+	public S state(int index) {
+		return _states.get(index);
+	}
+
+	/**
+	 * Returns the index of a state or -1 if the state is not part of this
+	 * model.
+	 * 
+	 * @param state
+	 *            a state
+	 * @return the index of <code>state</code> or -1
+	 */
+	public int index(S state) {
+		if (_indices == null) {
+			// The states are their own indices (see of(IntSMDP, OffHeapArena))
+			if (!(state instanceof Integer)) {
+				return -1;
+			}
+			int i = ((Integer) state).intValue();
+			return (i >= 0 && i < _states.size()) ? i : -1;
+		}
+		Integer index = _indices.get(state);
+		if (index == null) {
+			return -1;
+		} else {
+			return index.intValue();
+		}
+	}
+
+	/**
+	 * Returns true if the states of this model are the integers
+	 * <code>0, 1, ..., numberOfStates() - 1</code> and no map from states to
+	 * indices is kept.
+	 */
+	boolean hasIndexStates() {
+		return _indices == null;
+	}
+
+	/**
+	 * Returns the states of this model ordered by their indices.
+	 * 
+	 * @return an unmodifiable list of states
+	 */
+	public List<S> states() {
+		return Collections.unmodifiableList(_states);
+	}
+
+	/**
+	 * Returns the first row of a state.
+	 * 
+	 * @param state
+	 *            a state index
+	 * @return the index of the first row of <code>state</code>
+	 */
+	public int rowBegin(int state) {
+		return _stateRows[state];
+	}
+
+	/**
+	 * Returns one past the last row of a state.
+	 * 
+	 * @param state
+	 *            a state index
+	 * @return one past the index of the last row of <code>state</code>
+	 */
+	public int rowEnd(int state) {
+		return _stateRows[state + 1];
+	}
+
+	/**
+	 * Returns the index of the action associated with a row.
+	 * 
+	 * @param row
+	 *            a row index
+	 * @return the action index of <code>row</code>
+	 */
+	public int actionIndex(int row) {
+		return _rowActions[row];
+	}
+
+	/**
+	 * Returns the action associated with a row.
+	 * 
+	 * @param row
+	 *            a row index
+	 * @return the action of <code>row</code>
+	 */
+	public A action(int row) {
+		return _actionSet.action(actionIndex(row));
+	}
+
+	/**
+	 * Returns the row of a state-action pair or -1 if the action is not valid
+	 * at the state.
+	 * 
+	 * @param state
+	 *            a state index
+	 * @param action
+	 *            an action
+	 * @return the row of (state, action) or -1
+	 */
+	public int row(int state, A action) {
+		int aindex = _actionSet.index(action);
+		int rowEnd = rowEnd(state);
+		for (int row = rowBegin(state); row < rowEnd; row++) {
+			if (actionIndex(row) == aindex) {
+				return row;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the expected immediate reinforcement of a row.
+	 * 
+	 * @param row
+	 *            a row index
+	 * @return the expected reinforcement of the state-action pair
+	 */
+	public double r(int row) {
+		return _rowR[row];
+	}
+
+	/**
+	 * Returns the first entry of a row.
+	 * 
+	 * @param row
+	 *            a row index
+	 * @return the index of the first entry of <code>row</code>
+	 */
+	public int entryBegin(int row) {
+		return _rowEntries[row];
+	}
+
+	/**
+	 * Returns one past the last entry of a row.
+	 * 
+	 * @param row
+	 *            a row index
+	 * @return one past the index of the last entry of <code>row</code>
+	 */
+	public int entryEnd(int row) {
+		return _rowEntries[row + 1];
+	}
+
+	/**
+	 * Returns the successor state index of an entry.
+	 * 
+	 * @param entry
+	 *            an entry index
+	 * @return the index of the successor state
+	 */
+	public int successor(int entry) {
+		return _successors[entry];
+	}
+
+	/**
+	 * Returns the duration of an entry.
+	 * 
+	 * @param entry
+	 *            an entry index
+	 * @return the duration of the entry
+	 */
+	public int duration(int entry) {
+		return _durations[entry];
+	}
+
+	/**
+	 * Returns the undiscounted transition probability of an entry.
+	 * 
+	 * @param entry
+	 *            an entry index
+	 * @return the probability of the entry
+	 */
+	public double tprob(int entry) {
+		return _tprobs[entry];
+	}
+
+	/**
+	 * Returns the expected discounted return of a row with respect to a
+	 * state-value function. This method performs no allocation.
+	 * 
+	 * @param row
+	 *            a row index
+	 * @param values
+	 *            the value of each state
+	 * @param discounts
+	 *            the table returned by {@link #discounts(DiscountFactor)}
+	 * @return the action-value of the row
+	 */
+	public double qvalue(int row, double[] values, double[] discounts) {
+		double q = _rowR[row];
+		int entryEnd = _rowEntries[row + 1];
+		for (int e = _rowEntries[row]; e < entryEnd; e++) {
+			q += _tprobs[e] * discounts[_durations[e]]
+					* values[_successors[e]];
+		}
+		return q;
+	}
+
+	/**
+	 * Computes the action-values of a row with respect to several state-value
+	 * functions at once. The value functions and discount tables are
+	 * interleaved: the value of state <code>s</code> under function
+	 * <code>j</code> is <code>values[s * k + j]</code> and the discount of
+	 * duration <code>d</code> is <code>discounts[d * k + j]</code>. Only the
+	 * functions listed in the first <code>numColumns</code> elements of
+	 * <code>columns</code> are evaluated, and the action-value of function
+	 * <code>j</code> is written to <code>q[j]</code>. This method performs no
+	 * allocation.
+	 * 
+	 * @param row
+	 *            a row index
+	 * @param values
+	 *            the interleaved values of each state
+	 * @param discounts
+	 *            the interleaved discount tables
+	 * @param k
+	 *            the number of interleaved functions
+	 * @param columns
+	 *            the functions to evaluate
+	 * @param numColumns
+	 *            the number of functions to evaluate
+	 * @param q
+	 *            receives the action-value of each evaluated function
+	 */
+	public void qvalues(int row, double[] values, double[] discounts, int k,
+			int[] columns, int numColumns, double[] q) {
+		double r = _rowR[row];
+		for (int c = 0; c < numColumns; c++) {
+			q[columns[c]] = r;
+		}
+		int entryEnd = _rowEntries[row + 1];
+		for (int e = _rowEntries[row]; e < entryEnd; e++) {
+			int sbase = _successors[e] * k;
+			int dbase = _durations[e] * k;
+			double tprob = _tprobs[e];
+			for (int c = 0; c < numColumns; c++) {
+				int j = columns[c];
+				q[j] += tprob * discounts[dbase + j] * values[sbase + j];
+			}
+		}
+	}
+
+	/**
+	 * Returns the greedy Bellman backup of a state with respect to a
+	 * state-value function, or 0 if the state has no valid actions. This
+	 * method performs no allocation.
+	 * 
+	 * @param state
+	 *            a state index
+	 * @param values
+	 *            the value of each state
+	 * @param discounts
+	 *            the table returned by {@link #discounts(DiscountFactor)}
+	 * @return the new value of the state
+	 */
+	public double backup(int state, double[] values, double[] discounts) {
+		int rowBegin = rowBegin(state);
+		int rowEnd = rowEnd(state);
+		double best = 0;
+		for (int row = rowBegin; row < rowEnd; row++) {
+			double q = qvalue(row, values, discounts);
+			if (row == rowBegin || _opType.firstIsBetter(q, best)) {
+				best = q;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the largest duration of any entry in this model.
+	 * 
+	 * @return the largest duration (at least 1)
+	 */
+	public int maxActionDuration() {
+		return _maxDuration;
+	}
+
+	/**
+	 * Returns the action set of the compiled SMDP.
+	 * 
+	 * @return an action set
+	 */
+	public ActionSet<S, A> actionSet() {
+		return _actionSet;
+	}
+
+	/**
+	 * Returns the optimization type of the compiled SMDP.
+	 * 
+	 * @return MINIMIZE or MAXIMIZE
+	 */
+	public Optimization opType() {
+		return _opType;
+	}
+
+	/**
+	 * Returns the table <code>[1, gamma, gamma^2, ..., gamma^D]</code> where
+	 * <code>D</code> is {@link #maxActionDuration()}, so that the discounted
+	 * probability of an entry is
+	 * <code>discounts[duration(e)] * tprob(e)</code>.
+	 * 
+	 * @param df
+	 *            a discount factor
+	 * @return the powers of the discount factor indexed by duration
+	 */
+	public double[] discounts(DiscountFactor df) {
+		double[] discounts = new double[_maxDuration + 1];
+		discounts[0] = 1;
+		for (int d = 1; d <= _maxDuration; d++) {
+			discounts[d] = discounts[d - 1] * df.doubleValue();
+		}
+		return discounts;
+	}
+
+	/**
+	 * Returns the probability that a policy selects the action of each row.
+	 * 
+	 * @param policy
+	 *            a stationary policy
+	 * @return an array with one action probability per row
+	 */
+	public double[] rowWeights(StationaryPolicy<S, A> policy) {
+		double[] weights = new double[numberOfRows()];
+		for (int s = 0; s < numberOfStates(); s++) {
+			S state = _states.get(s);
+			if (policy.isDeterministic()) {
+				int row = row(s, policy.policy(state));
+				if (row >= 0) {
+					weights[row] = 1;
+				}
+			} else {
+				for (int row = rowBegin(s); row < rowEnd(s); row++) {
+					weights[row] = policy.aprob(state, action(row));
+				}
+			}
+		}
+		return weights;
+	}
+
+
+	/**
+	 * A model whose arrays are stored off-heap. It overrides every accessor
+	 * that reads the arrays. The durations are null when every duration is 1.
+	 */
+	private static final class OffHeapModel<S, A> extends CompiledSMDP<S, A> {
+		private final OffHeapIntArray stateRows;
+		private final OffHeapIntArray rowActions;
+		private final OffHeapDoubleArray rowR;
+		private final OffHeapIntArray rowEntries;
+		private final OffHeapIntArray successors;
+		private final OffHeapIntArray durations;
+		private final OffHeapDoubleArray tprobs;
+
+		public OffHeapModel(OffHeapArena arena, int numStates, int numRows,
+				int numEntries) {
+			stateRows = arena.allocateInts(numStates + 1);
+			rowActions = arena.allocateInts(numRows);
+			rowR = arena.allocateDoubles(numRows);
+			rowEntries = arena.allocateInts(numRows + 1);
+			successors = arena.allocateInts(numEntries);
+			durations = arena.allocateInts(numEntries);
+			tprobs = arena.allocateDoubles(numEntries);
+		}
+
+		public OffHeapModel(OffHeapIntArray stateRows,
+				OffHeapIntArray rowActions, OffHeapDoubleArray rowR,
+				OffHeapIntArray rowEntries, OffHeapIntArray successors,
+				OffHeapIntArray durations, OffHeapDoubleArray tprobs) {
+			this.stateRows = stateRows;
+			this.rowActions = rowActions;
+			this.rowR = rowR;
+			this.rowEntries = rowEntries;
+			this.successors = successors;
+			this.durations = durations;
+			this.tprobs = tprobs;
+		}
+
+		@Override
+		public CompiledSMDP<S, A> offHeap(OffHeapArena arena) {
+			throw new IllegalStateException(
+					"Expected a model stored on the heap. Found an off-heap model.");
+		}
+
+		@Override
+		public boolean isOffHeap() {
+			return true;
+		}
+
+		@Override
+		public int rowBegin(int state) {
+			return stateRows.get(state);
+		}
+
+		@Override
+		public int rowEnd(int state) {
+			return stateRows.get(state + 1);
+		}
+
+		@Override
+		public int actionIndex(int row) {
+			return rowActions.get(row);
+		}
+
+		@Override
+		public double r(int row) {
+			return rowR.get(row);
+		}
+
+		@Override
+		public int entryBegin(int row) {
+			return rowEntries.get(row);
+		}
+
+		@Override
+		public int entryEnd(int row) {
+			return rowEntries.get(row + 1);
+		}
+
+		@Override
+		public int successor(int entry) {
+			return successors.get(entry);
+		}
+
+		@Override
+		public int duration(int entry) {
+			return (durations == null) ? 1 : durations.get(entry);
+		}
+
+		@Override
+		public double tprob(int entry) {
+			return tprobs.get(entry);
+		}
+
+		@Override
+		public double qvalue(int row, double[] values, double[] discounts) {
+			double q = rowR.get(row);
+			int entryEnd = rowEntries.get(row + 1);
+			if (durations == null) {
+				double gamma = discounts[1];
+				for (int e = rowEntries.get(row); e < entryEnd; e++) {
+					q += tprobs.get(e) * gamma * values[successors.get(e)];
+				}
+				return q;
+			}
+			for (int e = rowEntries.get(row); e < entryEnd; e++) {
+				q += tprobs.get(e) * discounts[durations.get(e)]
+						* values[successors.get(e)];
+			}
+			return q;
+		}
+
+		@Override
+		public void qvalues(int row, double[] values, double[] discounts,
+				int k, int[] columns, int numColumns, double[] q) {
+			double r = rowR.get(row);
+			for (int c = 0; c < numColumns; c++) {
+				q[columns[c]] = r;
+			}
+			int entryEnd = rowEntries.get(row + 1);
+			for (int e = rowEntries.get(row); e < entryEnd; e++) {
+				int sbase = successors.get(e) * k;
+				int dbase = duration(e) * k;
+				double tprob = tprobs.get(e);
+				for (int c = 0; c < numColumns; c++) {
+					int j = columns[c];
+					q[j] += tprob * discounts[dbase + j] * values[sbase + j];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Counts the entries of a primitive SMDP or writes them to off-heap
+	 * arrays.
+	 */
+	private static class OffHeapWriter implements IntSMDP.SuccessorVisitor {
+		private final OffHeapModel<?, ?> storage;
+		private long entries;
+		private double ravg;
+		private int maxDuration;
+
+		public OffHeapWriter(OffHeapModel<?, ?> storage) {
+			this.storage = storage;
+			maxDuration = 1;
+		}
+
+		@Override
+		public void visit(int successor, int duration, double tprob, double r) {
+			if (tprob == 0) {
+				return;
+			}
+			ravg += tprob * r;
+			if (successor < 0) {
+				return;
+			}
+			if (storage != null) {
+				if (entries == storage.successors.length()) {
+					throw new IllegalStateException(CHANGED_TRANSITIONS);
+				}
+				storage.successors.set(entries, successor);
+				storage.durations.set(entries, duration);
+				storage.tprobs.set(entries, tprob);
+				maxDuration = Math.max(maxDuration, duration);
+			}
+			entries++;
+		}
+	}
+
+	/**
+	 * The states <code>0, 1, ..., size - 1</code> of a model compiled from a
+	 * primitive SMDP.
+	 */
+	static class IndexList extends AbstractList<Integer> {
+		private final int size;
+
+		public IndexList(int size) {
+			this.size = size;
+		}
+
+		@Override
+		public Integer get(int index) {
+			if (index < 0 || index >= size) {
+				throw new IndexOutOfBoundsException("Expected index in [0, "
+						+ size + "). Found " + index + ".");
+			}
+			return index;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+}
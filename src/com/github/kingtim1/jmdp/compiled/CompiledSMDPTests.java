@@ -0,0 +1,204 @@
+/**
+	CompiledSMDPTests.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.compiled;
+
+import static com.github.kingtim1.jmdp.discounted.ClassicalMDPAlgorithmTests.vfuncsAreEqual;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.kingtim1.jmdp.BoxedSMDP;
+import com.github.kingtim1.jmdp.discounted.AsyncValueIteration;
+import com.github.kingtim1.jmdp.discounted.DiscountFactor;
+import com.github.kingtim1.jmdp.discounted.DiscountedVFunction;
+import com.github.kingtim1.jmdp.discounted.OffHeapQFunction;
+import com.github.kingtim1.jmdp.discounted.OffHeapVFunction;
+import com.github.kingtim1.jmdp.discounted.ValueIteration;
+import com.github.kingtim1.jmdp.lib.mdps.GarnetMDP;
+
+public class CompiledSMDPTests {
+
+	public static final DiscountFactor DF = new DiscountFactor(0.95);
+	public static final int VI_MAX_ITERATIONS = 100;
+	public static final double VALUE_EPSILON = 0.05;
+	public static final double CONVERGENCE_THRESHOLD = 0;
+	public static final double PROB_EPSILON = Math.pow(10, -4);
+
+	/**
+	 * Tests if solvers produce the same values on heap and off-heap compiled
+	 * models, and that an off-heap model cannot be used after its arena is
+	 * closed.
+	 */
+	@Test
+	public void testOffHeapModelsMatchHeapModels() {
+		GarnetMDP mdp = new GarnetMDP(100, 4, 5, 1);
+		CompiledSMDP<Integer, Integer> heap = CompiledSMDP.of(mdp);
+		CompiledSMDP<Integer, Integer> offHeap;
+		try (OffHeapArena arena = new OffHeapArena()) {
+			List<CompiledSMDP<Integer, Integer>> models = new ArrayList<CompiledSMDP<Integer, Integer>>();
+			models.add(heap.offHeap(arena));
+			models.add(CompiledSMDP.of(mdp, arena));
+			DiscountedVFunction<Integer> expected = new AsyncValueIteration<Integer, Integer>(
+					heap, DF, VI_MAX_ITERATIONS, CONVERGENCE_THRESHOLD, 1)
+					.run().greedy();
+			for (CompiledSMDP<Integer, Integer> model : models) {
+				assertTrue(model.isOffHeap());
+				assertEquals(heap.numberOfEntries(), model.numberOfEntries());
+				DiscountedVFunction<Integer> vfunc = new AsyncValueIteration<Integer, Integer>(
+						model, DF, VI_MAX_ITERATIONS, CONVERGENCE_THRESHOLD, 1)
+						.run().greedy();
+				assertTrue(vfuncsAreEqual(heap.states(), expected, vfunc,
+						PROB_EPSILON));
+			}
+			offHeap = models.get(1);
+		}
+		try {
+			offHeap.tprob(0);
+			fail("Expected an IllegalStateException.");
+		} catch (IllegalStateException ex) {
+		}
+	}
+
+	/**
+	 * Tests if the batched action-values of heap and off-heap compiled models
+	 * match the action-values computed one value function at a time.
+	 */
+	@Test
+	public void testBatchedQValuesMatchQValues() {
+		GarnetMDP mdp = new GarnetMDP(50, 3, 4, 1);
+		CompiledSMDP<Integer, Integer> heap = CompiledSMDP.of(mdp);
+		int n = heap.numberOfStates();
+		DiscountFactor[] dfs = { new DiscountFactor(0.5), DF };
+		int k = dfs.length;
+		double[][] values = new double[k][n];
+		double[][] discounts = new double[k][];
+		double[] interleaved = new double[n * k];
+		double[] interleavedDiscounts = new double[(heap.maxActionDuration() + 1)
+				* k];
+		for (int j = 0; j < k; j++) {
+			discounts[j] = heap.discounts(dfs[j]);
+			for (int d = 0; d < discounts[j].length; d++) {
+				interleavedDiscounts[d * k + j] = discounts[j][d];
+			}
+			for (int s = 0; s < n; s++) {
+				values[j][s] = (s * 7 + j * 3) % 11;
+				interleaved[s * k + j] = values[j][s];
+			}
+		}
+		int[] columns = { 1, 0 };
+		double[] q = new double[k];
+		try (OffHeapArena arena = new OffHeapArena()) {
+			List<CompiledSMDP<Integer, Integer>> models = new ArrayList<CompiledSMDP<Integer, Integer>>();
+			models.add(heap);
+			models.add(heap.offHeap(arena));
+			for (CompiledSMDP<Integer, Integer> model : models) {
+				for (int row = 0; row < model.numberOfRows(); row++) {
+					model.qvalues(row, interleaved, interleavedDiscounts, k,
+							columns, k, q);
+					for (int j = 0; j < k; j++) {
+						assertEquals(
+								model.qvalue(row, values[j], discounts[j]),
+								q[j], PROB_EPSILON);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tests if {@link OffHeapVFunction} and {@link OffHeapQFunction} return
+	 * the same values as the heap computations they copy, return the default
+	 * value for unknown states, and cannot be read after their arena is
+	 * closed.
+	 */
+	@Test
+	public void testOffHeapValueFunctionsMatchHeapValues() {
+		GarnetMDP mdp = new GarnetMDP(100, 4, 5, 1);
+		CompiledSMDP<Integer, Integer> model = CompiledSMDP.of(mdp);
+		DiscountedVFunction<Integer> expected = new ValueIteration<Integer, Integer>(
+				new BoxedSMDP(mdp), DF, VI_MAX_ITERATIONS,
+				CONVERGENCE_THRESHOLD).run().greedy();
+		double[] values = new double[model.numberOfStates()];
+		for (int s = 0; s < values.length; s++) {
+			values[s] = expected.value(s);
+		}
+		double[] discounts = model.discounts(DF);
+
+		OffHeapVFunction<Integer> vfunc;
+		OffHeapQFunction<Integer, Integer> qfunc;
+		try (OffHeapArena arena = new OffHeapArena()) {
+			vfunc = OffHeapVFunction.copyOf(model, expected, arena);
+			assertTrue(vfuncsAreEqual(model.states(), expected, vfunc, 0));
+			assertEquals(0, vfunc.value(-1), 0);
+			vfunc.set(0, 42);
+			assertEquals(42, vfunc.value(0), 0);
+			try {
+				vfunc.set(-1, 0);
+				fail("Expected an exception for an unknown state.");
+			} catch (IllegalArgumentException ex) {
+				// expected
+			}
+			try {
+				new OffHeapVFunction<Integer>(model, arena.allocateDoubles(1), 0);
+				fail("Expected an exception for an array of the wrong length.");
+			} catch (IllegalArgumentException ex) {
+				// expected
+			}
+
+			qfunc = OffHeapQFunction.backup(model, values, DF, arena);
+			for (int s = 0; s < model.numberOfStates(); s++) {
+				for (int row = model.rowBegin(s); row < model.rowEnd(s); row++) {
+					assertEquals(model.qvalue(row, values, discounts),
+							qfunc.value(s, model.action(row)), 0);
+				}
+				double greedyValue = qfunc.greedyValue(s);
+				assertEquals(model.backup(s, values, discounts), greedyValue, 0);
+				int greedyRow = model.row(s, qfunc.greedyAction(s));
+				assertEquals(greedyValue, model.qvalue(greedyRow, values,
+						discounts), 0);
+				assertEquals(1, qfunc.aprob(s, qfunc.policy(s)), 0);
+			}
+			assertEquals(0, qfunc.value(-1, 0), 0);
+			assertTrue(vfuncsAreEqual(model.states(), expected,
+					qfunc.greedy(), VALUE_EPSILON));
+		}
+		try {
+			vfunc.value(0);
+			fail("Expected an IllegalStateException.");
+		} catch (IllegalStateException ex) {
+		}
+		try {
+			qfunc.greedyValue(0);
+			fail("Expected an IllegalStateException.");
+		} catch (IllegalStateException ex) {
+		}
+	}
+}
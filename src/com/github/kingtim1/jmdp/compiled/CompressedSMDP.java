@@ -0,0 +1,786 @@
+/**
+	CompressedSMDP.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.compiled;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.kingtim1.jmdp.ActionSet;
+import com.github.kingtim1.jmdp.discounted.DiscountFactor;
+import com.github.kingtim1.jmdp.util.Optimization;
+
+/**
+ * <p>
+ * A compressed, read-only copy of a {@link CompiledSMDP} for models that are
+ * too large to keep compiled in memory. A compiled model spends 16 bytes per entry (a
+ * successor, a duration and a probability); this model usually spends 4 to 6:
+ * </p>
+ * <ul>
+ * <li>The entries of each row are sorted by successor and each successor is
+ * stored as its difference to the previous successor. The first successor is
+ * stored as the zigzag-encoded difference to the state itself. A header byte
+ * gives the number of bytes (1 to 4) of the first difference and of the
+ * others, which are chosen per row, so local successors take a single byte.
+ * Unlike a per-entry varint, fixed widths within a row are decoded without
+ * branches. Durations other than 1 follow the successors of their row as
+ * varints.</li>
+ * <li>If the model has at most {@link #MAX_DICTIONARY_SIZE} distinct
+ * probabilities, each probability is a 16-bit index into a dictionary and no
+ * information is lost. Otherwise each probability is quantized to a multiple
+ * of <code>1 / 65535</code>. The quantized probabilities of a row are rounded
+ * (by largest remainder) so that they sum to the original probability mass of
+ * the row rounded to the same grid.</li>
+ * <li>The expected reinforcement of each row is a 16-bit index into a
+ * dictionary of rewards if there are at most {@link #MAX_DICTIONARY_SIZE}
+ * distinct rewards, and a double otherwise. Rewards are never quantized.</li>
+ * </ul>
+ * <p>
+ * Entries can only be decoded in order, so this model offers
+ * {@link #qvalue(int, double[], double[])} and
+ * {@link #backup(int, double[], double[])} instead of per-entry accessors.
+ * Both decode the entries in their inner loop without allocating.
+ * </p>
+ * <p>
+ * Compression trades speed for memory. Decoding costs more than the memory
+ * traffic it saves: a sweep over a grid world with a million states and 16
+ * successors per row took about twice as long as a sweep over the compiled
+ * model (see <code>CompressedModelBenchmark</code>). Use this model when the
+ * compiled model does not fit in memory, and discard the compiled model once
+ * the compressed copy is built.
+ * </p>
+ * 
+ * @author Timothy A. Mann
+ *
+ * @param <S>
+ *            the state type
+ * @param <A>
+ *            the action type
+ */
+public class CompressedSMDP<S, A> {
+
+	/**
+	 * The largest number of distinct probabilities or rewards that are stored
+	 * in a dictionary.
+	 */
+	public static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+	/**
+	 * The largest quantized probability. A quantized probability
+	 * <code>c</code> stands for <code>c / QUANTIZATION_STEPS</code>.
+	 */
+	public static final int QUANTIZATION_STEPS = 65535;
+
+	private static final double QUANTUM = 1.0 / QUANTIZATION_STEPS;
+
+	private static final VarHandle INTS = MethodHandles.byteArrayViewVarHandle(
+			int[].class, ByteOrder.LITTLE_ENDIAN);
+
+	private List<S> _states;
+	private Map<S, Integer> _indices;
+	private ActionSet<S, A> _actionSet;
+	private Optimization _opType;
+	private int _maxDuration;
+	private boolean _hasDurations;
+
+	private int[] _stateRows;
+	private int[] _rowActions;
+	private int[] _rowEntries;
+	private int[] _rowBytes;
+	private byte[] _successors;
+	private char[] _tprobCodes;
+	private double[] _tprobTable;
+	private char[] _rCodes;
+	private double[] _rTable;
+	private double[] _rowR;
+
+	/**
+	 * Compresses a compiled model. The probabilities are stored in a dictionary
+	 * if the model has few enough distinct probabilities and quantized
+	 * otherwise.
+	 * 
+	 * @param model
+	 *            a compiled model (stored on the heap or off-heap)
+	 */
+	public CompressedSMDP(CompiledSMDP<S, A> model) {
+		this(model, false);
+	}
+
+	/**
+	 * Compresses a compiled model.
+	 * 
+	 * @param model
+	 *            a compiled model (stored on the heap or off-heap)
+	 * @param quantize
+	 *            true to always quantize the probabilities; false to store
+	 *            them in a dictionary when possible
+	 */
+	public CompressedSMDP(CompiledSMDP<S, A> model, boolean quantize) {
+		if (model == null) {
+			throw new NullPointerException("Cannot compress a null model.");
+		}
+		int n = model.numberOfStates();
+		int numRows = model.numberOfRows();
+		int numEntries = model.numberOfEntries();
+
+		_states = model.states();
+		if (!model.hasIndexStates()) {
+			_indices = new HashMap<S, Integer>();
+			for (int s = 0; s < n; s++) {
+				_indices.put(model.state(s), s);
+			}
+		}
+		_actionSet = model.actionSet();
+		_opType = model.opType();
+		_maxDuration = model.maxActionDuration();
+		_hasDurations = _maxDuration > 1;
+
+		_stateRows = new int[n + 1];
+		for (int s = 0; s <= n; s++) {
+			_stateRows[s] = (s < n) ? model.rowBegin(s) : numRows;
+		}
+		_rowActions = new int[numRows];
+		for (int row = 0; row < numRows; row++) {
+			_rowActions[row] = model.actionIndex(row);
+		}
+		compressRewards(model);
+
+		_tprobTable = quantize ? null : tprobDictionary(model);
+		Map<Double, Integer> tprobCodes = null;
+		if (_tprobTable != null) {
+			tprobCodes = new HashMap<Double, Integer>();
+			for (int i = 0; i < _tprobTable.length; i++) {
+				tprobCodes.put(_tprobTable[i], i);
+			}
+		}
+
+		_rowEntries = new int[numRows + 1];
+		_rowBytes = new int[numRows + 1];
+		_tprobCodes = new char[numEntries];
+		ByteSink sink = new ByteSink(numEntries + 16);
+		long[] order = new long[16];
+		long[] remainders = new long[16];
+		int[] deltas = new int[16];
+		for (int s = 0; s < n; s++) {
+			for (int row = _stateRows[s]; row < _stateRows[s + 1]; row++) {
+				int entryBegin = model.entryBegin(row);
+				int k = model.entryEnd(row) - entryBegin;
+				if (order.length < k) {
+					order = new long[Math.max(k, 2 * order.length)];
+					remainders = new long[order.length];
+					deltas = new int[order.length];
+				}
+				// Sort the entries of the row by successor
+				for (int i = 0; i < k; i++) {
+					order[i] = ((long) model.successor(entryBegin + i) << 32)
+							| i;
+				}
+				Arrays.sort(order, 0, k);
+
+				_rowEntries[row] = entryBegin;
+				_rowBytes[row] = sink.size();
+				int bits = 0;
+				for (int i = 0; i < k; i++) {
+					int successor = (int) (order[i] >> 32);
+					if (i == 0) {
+						int delta = successor - s;
+						deltas[i] = (delta << 1) ^ (delta >> 31);
+					} else {
+						deltas[i] = successor - (int) (order[i - 1] >> 32);
+						bits |= deltas[i];
+					}
+				}
+				if (k > 0) {
+					int firstWidth = width(deltas[0]);
+					int width = width(bits);
+					sink.putByte((firstWidth - 1) | ((width - 1) << 2));
+					sink.putFixed(deltas[0], firstWidth);
+					for (int i = 1; i < k; i++) {
+						sink.putFixed(deltas[i], width);
+					}
+				}
+				for (int i = 0; i < k; i++) {
+					int e = entryBegin + (int) order[i];
+					if (_hasDurations) {
+						sink.putVarint(model.duration(e));
+					}
+					if (tprobCodes != null) {
+						_tprobCodes[entryBegin + i] = (char) tprobCodes.get(
+								model.tprob(e)).intValue();
+					}
+				}
+				if (tprobCodes == null) {
+					quantizeRow(model, entryBegin, k, order, remainders);
+				}
+			}
+		}
+		_rowEntries[numRows] = numEntries;
+		_rowBytes[numRows] = sink.size();
+		// Padding so that a 4 byte read at the last delta stays in bounds
+		sink.putFixed(0, 3);
+		_successors = sink.toByteArray();
+	}
+
+	/**
+	 * Returns the number of bytes (1 to 4) needed by an unsigned integer.
+	 */
+	private static int width(int value) {
+		return Math.max(1, (39 - Integer.numberOfLeadingZeros(value)) / 8);
+	}
+
+	private void compressRewards(CompiledSMDP<S, A> model) {
+		int numRows = model.numberOfRows();
+		Map<Double, Integer> codes = new HashMap<Double, Integer>();
+		for (int row = 0; row < numRows && codes.size() <= MAX_DICTIONARY_SIZE; row++) {
+			Double r = model.r(row);
+			if (!codes.containsKey(r)) {
+				codes.put(r, codes.size());
+			}
+		}
+		if (codes.size() > MAX_DICTIONARY_SIZE) {
+			_rowR = new double[numRows];
+			for (int row = 0; row < numRows; row++) {
+				_rowR[row] = model.r(row);
+			}
+			return;
+		}
+		_rTable = new double[codes.size()];
+		for (Map.Entry<Double, Integer> code : codes.entrySet()) {
+			_rTable[code.getValue()] = code.getKey();
+		}
+		_rCodes = new char[numRows];
+		for (int row = 0; row < numRows; row++) {
+			_rCodes[row] = (char) codes.get(model.r(row)).intValue();
+		}
+	}
+
+	/**
+	 * Returns the distinct probabilities of a model, or null if there are too
+	 * many for a dictionary.
+	 */
+	private static double[] tprobDictionary(CompiledSMDP<?, ?> model) {
+		Map<Double, Integer> codes = new HashMap<Double, Integer>();
+		for (int e = 0; e < model.numberOfEntries(); e++) {
+			Double tprob = model.tprob(e);
+			if (!codes.containsKey(tprob)) {
+				if (codes.size() == MAX_DICTIONARY_SIZE) {
+					return null;
+				}
+				codes.put(tprob, codes.size());
+			}
+		}
+		double[] table = new double[codes.size()];
+		for (Map.Entry<Double, Integer> code : codes.entrySet()) {
+			table[code.getValue()] = code.getKey();
+		}
+		return table;
+	}
+
+	/**
+	 * Quantizes the probabilities of a row (whose entries are listed in
+	 * successor order) so that they sum to the quantized mass of the row.
+	 */
+	private void quantizeRow(CompiledSMDP<S, A> model, int entryBegin, int k,
+			long[] order, long[] remainders) {
+		double mass = 0;
+		long total = 0;
+		for (int i = 0; i < k; i++) {
+			double scaled = model.tprob(entryBegin + (int) order[i])
+					* QUANTIZATION_STEPS;
+			mass += scaled;
+			long code = (long) Math.floor(scaled);
+			total += code;
+			_tprobCodes[entryBegin + i] = (char) code;
+			// Sort by descending remainder, then by position
+			long remainder = (long) ((scaled - code) * (1L << 31));
+			remainders[i] = ((((1L << 31) - 1) - remainder) << 32) | i;
+		}
+		long deficit = Math.min(Math.round(mass), QUANTIZATION_STEPS)
+				- total;
+		if (deficit <= 0) {
+			return;
+		}
+		Arrays.sort(remainders, 0, k);
+		for (int j = 0; j < deficit && j < k; j++) {
+			int i = (int) remainders[j];
+			_tprobCodes[entryBegin + i]++;
+		}
+	}
+
+	/**
+	 * Returns true if the probabilities of this model are stored in a
+	 * dictionary (without loss) rather than quantized.
+	 * 
+	 * @return true if the probabilities are exact; otherwise false
+	 */
+	public boolean isLossless() {
+		return _tprobTable != null;
+	}
+
+	/**
+	 * Returns the number of bytes used by the arrays of this model (not
+	 * counting the states and the action set).
+	 * 
+	 * @return the size of the arrays in bytes
+	 */
+	public long bytes() {
+		long bytes = 4L * (_stateRows.length + _rowActions.length
+				+ _rowEntries.length + _rowBytes.length);
+		bytes += _successors.length + 2L * _tprobCodes.length;
+		if (_tprobTable != null) {
+			bytes += 8L * _tprobTable.length;
+		}
+		if (_rowR != null) {
+			bytes += 8L * _rowR.length;
+		} else {
+			bytes += 2L * _rCodes.length + 8L * _rTable.length;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns the number of states in this model.
+	 * 
+	 * @return the number of states
+	 */
+	public int numberOfStates() {
+		return _stateRows.length - 1;
+	}
+
+	/**
+	 * Returns the number of rows (valid state-action pairs) in this model.
+	 * 
+	 * @return the number of rows
+	 */
+	public int numberOfRows() {
+		return _rowActions.length;
+	}
+
+	/**
+	 * Returns the number of entries over all rows of this model.
+	 * 
+	 * @return the number of entries
+	 */
+	public int numberOfEntries() {
+		return _tprobCodes.length;
+	}
+
+	/**
+	 * Returns the state with the specified index.
+	 * 
+	 * @param index
+	 *            a state index in [0, numberOfStates())
+	 * @return the state with the specified index
+	 */
+	public S state(int index) {
+		return _states.get(index);
+	}
+
+	/**
+	 * Returns the index of a state or -1 if the state is not part of this
+	 * model.
+	 * 
+	 * @param state
+	 *            a state
+	 * @return the index of <code>state</code> or -1
+	 */
+	public int index(S state) {
+		if (_indices == null) {
+			if (!(state instanceof Integer)) {
+				return -1;
+			}
+			int i = ((Integer) state).intValue();
+			return (i >= 0 && i < numberOfStates()) ? i : -1;
+		}
+		Integer index = _indices.get(state);
+		if (index == null) {
+			return -1;
+		} else {
+			return index.intValue();
+		}
+	}
+
+	/**
+	 * Returns the states of this model ordered by their indices.
+	 * 
+	 * @return an unmodifiable list of states
+	 */
+	public List<S> states() {
+		return Collections.unmodifiableList(_states);
+	}
+
+	/**
+	 * Returns the first row of a state.
+	 * 
+	 * @param state
+	 *            a state index
+	 * @return the index of the first row of <code>state</code>
+	 */
+	public int rowBegin(int state) {
+		return _stateRows[state];
+	}
+
+	/**
+	 * Returns one past the last row of a state.
+	 * 
+	 * @param state
+	 *            a state index
+	 * @return one past the index of the last row of <code>state</code>
+	 */
+	public int rowEnd(int state) {
+		return _stateRows[state + 1];
+	}
+
+	/**
+	 * Returns the index of the action associated with a row.
+	 * 
+	 * @param row
+	 *            a row index
+	 * @return the action index of <code>row</code>
+	 */
+	public int actionIndex(int row) {
+		return _rowActions[row];
+	}
+
+	/**
+	 * Returns the action associated with a row.
+	 * 
+	 * @param row
+	 *            a row index
+	 * @return the action of <code>row</code>
+	 */
+	public A action(int row) {
+		return _actionSet.action(_rowActions[row]);
+	}
+
+	/**
+	 * Returns the expected immediate reinforcement of a row.
+	 * 
+	 * @param row
+	 *            a row index
+	 * @return the expected reinforcement of the state-action pair
+	 */
+	public double r(int row) {
+		if (_rowR != null) {
+			return _rowR[row];
+		}
+		return _rTable[_rCodes[row]];
+	}
+
+	/**
+	 * Returns the expected discounted return of a row with respect to a
+	 * state-value function. This method performs no allocation, but it
+	 * searches for the state of the row; {@link #backup(int, double[], double[])}
+	 * does not.
+	 * 
+	 * @param row
+	 *            a row index
+	 * @param values
+	 *            the value of each state
+	 * @param discounts
+	 *            the table returned by {@link #discounts(DiscountFactor)}
+	 * @return the action-value of the row
+	 */
+	public double qvalue(int row, double[] values, double[] discounts) {
+		int state = Arrays.binarySearch(_stateRows, row);
+		if (state < 0) {
+			state = -state - 2;
+		} else {
+			// Skip states without rows
+			while (_stateRows[state + 1] == row) {
+				state++;
+			}
+		}
+		return qvalue(state, row, values, discounts);
+	}
+
+	private double qvalue(int state, int row, double[] values,
+			double[] discounts) {
+		double q = r(row);
+		int entryBegin = _rowEntries[row];
+		int entryEnd = _rowEntries[row + 1];
+		if (entryBegin == entryEnd) {
+			return q;
+		}
+		if (_hasDurations) {
+			return q + durationsQ(state, row, values, discounts);
+		}
+		int pos = _rowBytes[row];
+		double sum;
+		if (_tprobTable == null) {
+			sum = QUANTUM
+					* quantizedSum(state, pos, entryBegin, entryEnd, values);
+		} else {
+			sum = dictionarySum(state, pos, entryBegin, entryEnd, values);
+		}
+		return q + discounts[1] * sum;
+	}
+
+	/**
+	 * Returns the sum of code times value over the entries of a row with
+	 * quantized probabilities.
+	 */
+	private double quantizedSum(int state, int pos, int entryBegin,
+			int entryEnd, double[] values) {
+		byte[] bytes = _successors;
+		char[] codes = _tprobCodes;
+		int header = bytes[pos];
+		int firstWidth = (header & 3) + 1;
+		int width = ((header >> 2) & 3) + 1;
+		int mask = (int) ((1L << (8 * width)) - 1);
+		int z = (int) INTS.get(bytes, pos + 1)
+				& (int) ((1L << (8 * firstWidth)) - 1);
+		int successor = state + ((z >>> 1) ^ -(z & 1));
+		pos += 1 + firstWidth;
+		double sum = codes[entryBegin] * values[successor];
+		// Two sums halve the chain of dependent additions
+		double sum2 = 0;
+		int e = entryBegin + 1;
+		for (; e + 1 < entryEnd; e += 2) {
+			successor += (int) INTS.get(bytes, pos) & mask;
+			sum += codes[e] * values[successor];
+			successor += (int) INTS.get(bytes, pos + width) & mask;
+			sum2 += codes[(e + 1)] * values[successor];
+			pos += 2 * width;
+		}
+		if (e < entryEnd) {
+			successor += (int) INTS.get(bytes, pos) & mask;
+			sum += codes[e] * values[successor];
+		}
+		return sum + sum2;
+	}
+
+	/**
+	 * Returns the sum of probability times value over the entries of a row
+	 * with probabilities stored in the dictionary.
+	 */
+	private double dictionarySum(int state, int pos, int entryBegin,
+			int entryEnd, double[] values) {
+		byte[] bytes = _successors;
+		char[] codes = _tprobCodes;
+		double[] table = _tprobTable;
+		int header = bytes[pos];
+		int firstWidth = (header & 3) + 1;
+		int width = ((header >> 2) & 3) + 1;
+		int mask = (int) ((1L << (8 * width)) - 1);
+		int z = (int) INTS.get(bytes, pos + 1)
+				& (int) ((1L << (8 * firstWidth)) - 1);
+		int successor = state + ((z >>> 1) ^ -(z & 1));
+		pos += 1 + firstWidth;
+		double sum = table[codes[entryBegin]] * values[successor];
+		// Two sums halve the chain of dependent additions
+		double sum2 = 0;
+		int e = entryBegin + 1;
+		for (; e + 1 < entryEnd; e += 2) {
+			successor += (int) INTS.get(bytes, pos) & mask;
+			sum += table[codes[e]] * values[successor];
+			successor += (int) INTS.get(bytes, pos + width) & mask;
+			sum2 += table[codes[(e + 1)]] * values[successor];
+			pos += 2 * width;
+		}
+		if (e < entryEnd) {
+			successor += (int) INTS.get(bytes, pos) & mask;
+			sum += table[codes[e]] * values[successor];
+		}
+		return sum + sum2;
+	}
+
+	/**
+	 * The discounted expected value of the successors of a row whose
+	 * successors are followed by durations.
+	 */
+	private double durationsQ(int state, int row, double[] values,
+			double[] discounts) {
+		byte[] bytes = _successors;
+		char[] codes = _tprobCodes;
+		double[] table = _tprobTable;
+		int entryBegin = _rowEntries[row];
+		int entryEnd = _rowEntries[row + 1];
+		int pos = _rowBytes[row];
+		int header = bytes[pos];
+		int firstWidth = (header & 3) + 1;
+		int width = ((header >> 2) & 3) + 1;
+		int mask = (int) ((1L << (8 * width)) - 1);
+		int z = (int) INTS.get(bytes, pos + 1)
+				& (int) ((1L << (8 * firstWidth)) - 1);
+		int successor = state + ((z >>> 1) ^ -(z & 1));
+		pos += 1 + firstWidth;
+		// The durations follow the successors of the row
+		int dpos = pos + width * (entryEnd - entryBegin - 1);
+		double sum = 0;
+		for (int e = entryBegin; e < entryEnd; e++) {
+			if (e > entryBegin) {
+				successor += (int) INTS.get(bytes, pos) & mask;
+				pos += width;
+			}
+			int b = bytes[dpos++];
+			int d = b & 0x7f;
+			for (int shift = 7; b < 0; shift += 7) {
+				b = bytes[dpos++];
+				d |= (b & 0x7f) << shift;
+			}
+			double tprob = (table == null) ? codes[e] * QUANTUM
+					: table[codes[e]];
+			sum += tprob * discounts[d] * values[successor];
+		}
+		return sum;
+	}
+
+	/**
+	 * Returns the greedy Bellman backup of a state with respect to a
+	 * state-value function, or 0 if the state has no valid actions. This
+	 * method performs no allocation.
+	 * 
+	 * @param state
+	 *            a state index
+	 * @param values
+	 *            the value of each state
+	 * @param discounts
+	 *            the table returned by {@link #discounts(DiscountFactor)}
+	 * @return the new value of the state
+	 */
+	public double backup(int state, double[] values, double[] discounts) {
+		int rowBegin = _stateRows[state];
+		int rowEnd = _stateRows[state + 1];
+		double best = 0;
+		for (int row = rowBegin; row < rowEnd; row++) {
+			double q = qvalue(state, row, values, discounts);
+			if (row == rowBegin || _opType.firstIsBetter(q, best)) {
+				best = q;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the largest duration of any entry in this model.
+	 * 
+	 * @return the largest duration (at least 1)
+	 */
+	public int maxActionDuration() {
+		return _maxDuration;
+	}
+
+	/**
+	 * Returns the action set of the compressed model.
+	 * 
+	 * @return an action set
+	 */
+	public ActionSet<S, A> actionSet() {
+		return _actionSet;
+	}
+
+	/**
+	 * Returns the optimization type of the compressed model.
+	 * 
+	 * @return MINIMIZE or MAXIMIZE
+	 */
+	public Optimization opType() {
+		return _opType;
+	}
+
+	/**
+	 * Returns the table <code>[1, gamma, gamma^2, ..., gamma^D]</code> where
+	 * <code>D</code> is {@link #maxActionDuration()}.
+	 * 
+	 * @param df
+	 *            a discount factor
+	 * @return the powers of the discount factor indexed by duration
+	 */
+	public double[] discounts(DiscountFactor df) {
+		double[] discounts = new double[_maxDuration + 1];
+		discounts[0] = 1;
+		for (int d = 1; d <= _maxDuration; d++) {
+			discounts[d] = discounts[d - 1] * df.doubleValue();
+		}
+		return discounts;
+	}
+
+	/**
+	 * A growable byte array.
+	 */
+	private static class ByteSink {
+		private byte[] bytes;
+		private int size;
+
+		public ByteSink(int capacity) {
+			bytes = new byte[capacity];
+		}
+
+		public void putByte(int value) {
+			ensure(1);
+			bytes[size++] = (byte) value;
+		}
+
+		/**
+		 * Appends the low <code>width</code> bytes of a value in little-endian
+		 * order.
+		 */
+		public void putFixed(int value, int width) {
+			ensure(width);
+			for (int i = 0; i < width; i++) {
+				bytes[size++] = (byte) (value >>> (8 * i));
+			}
+		}
+
+		public void putVarint(int value) {
+			ensure(5);
+			while ((value & ~0x7f) != 0) {
+				bytes[size++] = (byte) ((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			bytes[size++] = (byte) value;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public byte[] toByteArray() {
+			return Arrays.copyOf(bytes, size);
+		}
+
+		private void ensure(int count) {
+			if (bytes.length - size < count) {
+				long capacity = Math.min(2L * bytes.length + count,
+						Integer.MAX_VALUE - 8);
+				if (capacity - size < count) {
+					throw new IllegalStateException(
+							"Expected fewer than 2^31 bytes of successors.");
+				}
+				bytes = Arrays.copyOf(bytes, (int) capacity);
+			}
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/**
+	CompressedSMDPTests.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.compiled;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.kingtim1.jmdp.BoxedSMDP;
+import com.github.kingtim1.jmdp.discounted.DiscountFactor;
+import com.github.kingtim1.jmdp.discounted.DiscountedVFunction;
+import com.github.kingtim1.jmdp.discounted.ValueIteration;
+import com.github.kingtim1.jmdp.lib.mdps.GarnetMDP;
+import com.github.kingtim1.jmdp.lib.mdps.RandomSMDP;
+
+public class CompressedSMDPTests {
+
+	public static final DiscountFactor DF = new DiscountFactor(0.95);
+	public static final int VI_MAX_ITERATIONS = 100;
+	public static final double CONVERGENCE_THRESHOLD = 0;
+	public static final double PROB_EPSILON = Math.pow(10, -4);
+
+	/**
+	 * Tests if compressed models back up the same values as the compiled
+	 * models they were built from (exactly with dictionary-coded
+	 * probabilities and approximately with quantized ones), and if sweeps
+	 * over a compressed model converge to the value function found by compiled
+	 * {@link ValueIteration}.
+	 */
+	@Test
+	public void testCompressedModelsMatchCompiledModels() {
+		List<CompiledSMDP<Integer, Integer>> models = new ArrayList<CompiledSMDP<Integer, Integer>>();
+		models.add(CompiledSMDP.of(new GarnetMDP(100, 4, 5, 1)));
+		models.add(CompiledSMDP.of(new RandomSMDP(100, 3, 5, 50, 1.5, 2)));
+		for (CompiledSMDP<Integer, Integer> model : models) {
+			double[] discounts = model.discounts(DF);
+			double[] values = new double[model.numberOfStates()];
+			for (int s = 0; s < values.length; s++) {
+				values[s] = s % 7;
+			}
+			for (boolean quantize : new boolean[] { false, true }) {
+				CompressedSMDP<Integer, Integer> compressed = new CompressedSMDP<Integer, Integer>(
+						model, quantize);
+				assertEquals(!quantize, compressed.isLossless());
+				double epsilon = quantize ? PROB_EPSILON : 1e-12;
+				for (int s = 0; s < values.length; s++) {
+					assertEquals(model.backup(s, values, discounts),
+							compressed.backup(s, values, discounts), epsilon);
+				}
+			}
+		}
+
+		BoxedSMDP smdp = new BoxedSMDP(new RandomSMDP(100, 3, 5, 50, 1.5, 2));
+		ValueIteration<Integer, Integer> vi = new ValueIteration<Integer, Integer>(
+				smdp, DF, VI_MAX_ITERATIONS, CONVERGENCE_THRESHOLD);
+		vi.setCompiled(true);
+		DiscountedVFunction<Integer> expected = vi.run().greedy();
+		CompressedSMDP<Integer, Integer> compressed = new CompressedSMDP<Integer, Integer>(
+				new CompiledSMDP<Integer, Integer>(smdp));
+		double[] discounts = compressed.discounts(DF);
+		double[] values = new double[compressed.numberOfStates()];
+		for (int i = 0; i < VI_MAX_ITERATIONS; i++) {
+			for (int s = 0; s < values.length; s++) {
+				values[s] = compressed.backup(s, values, discounts);
+			}
+		}
+		for (int s = 0; s < values.length; s++) {
+			assertEquals(expected.value(compressed.state(s)), values[s],
+					PROB_EPSILON);
+		}
+	}
+}
@@ -0,0 +1,435 @@
+/**
+	MemoizingSMDP.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.compiled;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.github.kingtim1.jmdp.FiniteStateSMDP;
+import com.github.kingtim1.jmdp.TransitionDistribution;
+import com.github.kingtim1.jmdp.discounted.DiscountFactor;
+
+/**
+ * <p>
+ * A decorator that caches the outcome distributions of another
+ * {@link FiniteStateSMDP}. This is useful when <code>tprob</code> or
+ * <code>r</code> are expensive to compute (for example, if they are estimated
+ * by a simulator) and a solver queries the same state-action pairs many
+ * times.
+ * </p>
+ * 
+ * <p>
+ * The first time a state-action pair is accessed, its distribution is read
+ * with a single call to
+ * {@link FiniteStateSMDP#transitions(Object, Object, TransitionDistribution)}
+ * and stored as a row of primitive arrays. All other methods of this class
+ * answer from that row. The cache holds at most a fixed number of
+ * (successor, duration) entries, and every row is also charged
+ * {@link #ROW_CHARGE} entries for its own overhead, so rows without entries
+ * count toward the budget too. When it is full, rows are evicted with the
+ * CLOCK algorithm: every row has a reference bit that is set by each access,
+ * and a clock hand sweeps the rows, clearing set bits and evicting the first
+ * row whose bit is already clear.
+ * </p>
+ * 
+ * <p>
+ * Instances can be shared by several solver threads. Cache hits do not
+ * lock or allocate: each thread looks rows up with its own reusable key.
+ * Insertions and evictions are serialized, and the distribution of a
+ * missing row is computed outside the lock (two threads that miss the same
+ * row at the same time may both compute it).
+ * </p>
+ * 
+ * @author Timothy A. Mann
+ *
+ * @param <S>
+ *            the state type
+ * @param <A>
+ *            the action type
+ */
+public class MemoizingSMDP<S, A> extends FiniteStateSMDP<S, A> {
+
+	/**
+	 * The default maximum number of cached entries.
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 1 << 20;
+
+	/**
+	 * The number of entries charged for each cached row in addition to its
+	 * (successor, duration) entries. This approximates the memory of the
+	 * row's arrays, its key and its map node.
+	 */
+	public static final int ROW_CHARGE = 4;
+
+	/**
+	 * The key of a state-action pair. Keys stored in the cache are never
+	 * modified; the per-thread probe keys are reset before every lookup.
+	 */
+	private static class Key {
+		private Object _state;
+		private Object _action;
+		private int _hash;
+
+		public Key(Object state, Object action) {
+			set(state, action);
+		}
+
+		public void set(Object state, Object action) {
+			_state = state;
+			_action = action;
+			_hash = 31 * state.hashCode() + action.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return _hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) obj;
+			return _state.equals(key._state) && _action.equals(key._action);
+		}
+	}
+
+	/**
+	 * A cached distribution.
+	 */
+	private static class Row {
+		private final Key _key;
+		private final Object[] _successors;
+		private final int[] _durations;
+		private final double[] _tprobs;
+		private final double[] _rs;
+		private volatile boolean _referenced;
+
+		public Row(Key key, TransitionDistribution<?> dist) {
+			_key = key;
+			int size = dist.size();
+			_successors = new Object[size];
+			_durations = new int[size];
+			_tprobs = new double[size];
+			_rs = new double[size];
+			for (int k = 0; k < size; k++) {
+				_successors[k] = dist.successor(k);
+				_durations[k] = dist.duration(k);
+				_tprobs[k] = dist.tprob(k);
+				_rs[k] = dist.r(k);
+			}
+		}
+
+		public int size() {
+			return _durations.length;
+		}
+
+		/**
+		 * Returns the number of entries charged against the budget.
+		 */
+		public long charge() {
+			return _durations.length + ROW_CHARGE;
+		}
+
+		/**
+		 * Returns the entry of (successor, duration) or -1.
+		 */
+		public int find(Object successor, int duration) {
+			for (int k = 0; k < _durations.length; k++) {
+				if (_durations[k] == duration
+						&& _successors[k].equals(successor)) {
+					return k;
+				}
+			}
+			return -1;
+		}
+	}
+
+	private FiniteStateSMDP<S, A> _smdp;
+	private long _maxEntries;
+
+	private ConcurrentHashMap<Key, Row> _rows;
+	private ThreadLocal<Key> _probe;
+	private List<Row> _clock;
+	private int _hand;
+	private long _entries;
+	private long _charge;
+
+	private LongAdder _hits;
+	private LongAdder _misses;
+	private LongAdder _evictions;
+
+	/**
+	 * Constructs a memoizing decorator with the default memory budget.
+	 * 
+	 * @param smdp
+	 *            the SMDP whose distributions are cached
+	 */
+	public MemoizingSMDP(FiniteStateSMDP<S, A> smdp) {
+		this(smdp, DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * Constructs a memoizing decorator.
+	 * 
+	 * @param smdp
+	 *            the SMDP whose distributions are cached
+	 * @param maxEntries
+	 *            the maximum number of (successor, duration) entries held by
+	 *            the cache, including the {@link #ROW_CHARGE} entries charged
+	 *            for each row
+	 */
+	public MemoizingSMDP(FiniteStateSMDP<S, A> smdp, long maxEntries) {
+		super(smdp.actionSet(), smdp.opType());
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException(
+					"Expected a positive number of entries. Found "
+							+ maxEntries + ".");
+		}
+		_smdp = smdp;
+		_maxEntries = maxEntries;
+		_rows = new ConcurrentHashMap<Key, Row>();
+		_probe = new ThreadLocal<Key>() {
+			@Override
+			protected Key initialValue() {
+				return new Key(0, 0);
+			}
+		};
+		_clock = new ArrayList<Row>();
+		_hand = 0;
+		_entries = 0;
+		_charge = 0;
+		_hits = new LongAdder();
+		_misses = new LongAdder();
+		_evictions = new LongAdder();
+	}
+
+	/**
+	 * Returns the SMDP decorated by this instance.
+	 * 
+	 * @return the decorated SMDP
+	 */
+	public FiniteStateSMDP<S, A> smdp() {
+		return _smdp;
+	}
+
+	/**
+	 * Returns the number of accesses answered from the cache.
+	 * 
+	 * @return the number of cache hits
+	 */
+	public long hits() {
+		return _hits.sum();
+	}
+
+	/**
+	 * Returns the number of accesses that had to compute a distribution.
+	 * 
+	 * @return the number of cache misses
+	 */
+	public long misses() {
+		return _misses.sum();
+	}
+
+	/**
+	 * Returns the number of rows evicted from the cache.
+	 * 
+	 * @return the number of evictions
+	 */
+	public long evictions() {
+		return _evictions.sum();
+	}
+
+	/**
+	 * Returns the number of (successor, duration) entries currently cached.
+	 * 
+	 * @return the number of cached entries
+	 */
+	public synchronized long cachedEntries() {
+		return _entries;
+	}
+
+	/**
+	 * Returns the number of rows currently cached.
+	 * 
+	 * @return the number of cached rows
+	 */
+	public synchronized int cachedRows() {
+		return _clock.size();
+	}
+
+	/**
+	 * Returns the number of entries currently charged against the budget:
+	 * the cached entries plus {@link #ROW_CHARGE} for each cached row.
+	 * 
+	 * @return the charged number of entries
+	 */
+	public synchronized long chargedEntries() {
+		return _charge;
+	}
+
+	/**
+	 * Removes all rows from the cache. The counters are not reset.
+	 */
+	public synchronized void clear() {
+		_rows.clear();
+		_clock.clear();
+		_hand = 0;
+		_entries = 0;
+		_charge = 0;
+	}
+
+	/**
+	 * Returns the cached row of a state-action pair, computing and caching it
+	 * if necessary.
+	 */
+	private Row row(S state, A action) {
+		Key probe = _probe.get();
+		probe.set(state, action);
+		Row row = _rows.get(probe);
+		if (row != null) {
+			row._referenced = true;
+			_hits.increment();
+			return row;
+		}
+		_misses.increment();
+		TransitionDistribution<S> dist = new TransitionDistribution<S>();
+		_smdp.transitions(state, action, dist);
+		row = new Row(new Key(state, action), dist);
+		insert(row);
+		return row;
+	}
+
+	private synchronized void insert(Row row) {
+		if (row.charge() > _maxEntries || _rows.containsKey(row._key)) {
+			return;
+		}
+		while (_charge + row.charge() > _maxEntries) {
+			if (_hand >= _clock.size()) {
+				_hand = 0;
+			}
+			Row candidate = _clock.get(_hand);
+			if (candidate._referenced) {
+				candidate._referenced = false;
+				_hand++;
+			} else {
+				// Move the last row into the evicted slot
+				Row last = _clock.remove(_clock.size() - 1);
+				if (_hand < _clock.size()) {
+					_clock.set(_hand, last);
+				}
+				_rows.remove(candidate._key);
+				_entries -= candidate.size();
+				_charge -= candidate.charge();
+				_evictions.increment();
+			}
+		}
+		_clock.add(row);
+		_rows.put(row._key, row);
+		_entries += row.size();
+		_charge += row.charge();
+	}
+
+	@Override
+	public void transitions(S state, A action, TransitionDistribution<S> dist) {
+		Row row = row(state, action);
+		dist.clear();
+		for (int k = 0; k < row.size(); k++) {
+			@SuppressWarnings("unchecked")
+			S successor = (S) row._successors[k];
+			dist.add(successor, row._durations[k], row._tprobs[k], row._rs[k]);
+		}
+	}
+
+	@Override
+	public double r(S state, A action, S terminalState, Integer duration) {
+		Row row = row(state, action);
+		int k = row.find(terminalState, duration);
+		return (k < 0) ? 0 : row._rs[k];
+	}
+
+	@Override
+	public double tprob(S state, A action, S terminalState, Integer duration) {
+		Row row = row(state, action);
+		int k = row.find(terminalState, duration);
+		return (k < 0) ? 0 : row._tprobs[k];
+	}
+
+	@Override
+	public double dtprob(S state, A action, S terminalState, Integer duration,
+			DiscountFactor gamma) {
+		return Math.pow(gamma.doubleValue(), duration)
+				* tprob(state, action, terminalState, duration);
+	}
+
+	@Override
+	public int maxActionDuration() {
+		return _smdp.maxActionDuration();
+	}
+
+	@Override
+	public Iterable<Integer> durations(S state, A action, S terminalState) {
+		Row row = row(state, action);
+		List<Integer> durations = new ArrayList<Integer>();
+		for (int k = 0; k < row.size(); k++) {
+			if (row._successors[k].equals(terminalState)) {
+				durations.add(row._durations[k]);
+			}
+		}
+		return durations;
+	}
+
+	@Override
+	public Iterable<S> states() {
+		return _smdp.states();
+	}
+
+	@Override
+	public int numberOfStates() {
+		return _smdp.numberOfStates();
+	}
+
+	@Override
+	public Iterable<S> successors(S state, A action) {
+		Row row = row(state, action);
+		List<S> successors = new ArrayList<S>(row.size());
+		for (int k = 0; k < row.size(); k++) {
+			@SuppressWarnings("unchecked")
+			S successor = (S) row._successors[k];
+			if (!successors.contains(successor)) {
+				successors.add(successor);
+			}
+		}
+		return successors;
+	}
+
+}
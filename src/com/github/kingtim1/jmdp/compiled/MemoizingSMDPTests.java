@@ -0,0 +1,202 @@
+/**
+	MemoizingSMDPTests.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.compiled;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.github.kingtim1.jmdp.AbstractIntMDP;
+import com.github.kingtim1.jmdp.BoxedSMDP;
+import com.github.kingtim1.jmdp.TransitionDistribution;
+import com.github.kingtim1.jmdp.lib.mdps.GarnetMDP;
+import com.github.kingtim1.jmdp.util.Optimization;
+
+public class MemoizingSMDPTests {
+
+	public static final int NUM_THREADS = 4;
+	public static final int PASSES = 20;
+
+	/**
+	 * Tests if {@link MemoizingSMDP} evicts the first unreferenced row under
+	 * the clock hand and spares rows that were accessed since the hand last
+	 * passed them.
+	 */
+	@Test
+	public void testClockEvictsUnreferencedRows() {
+		MemoizingSMDP<Integer, Integer> memo = new MemoizingSMDP<Integer, Integer>(
+				cycleMDP(4, true), 2 * (1 + MemoizingSMDP.ROW_CHARGE));
+		TransitionDistribution<Integer> dist = new TransitionDistribution<Integer>();
+
+		memo.transitions(0, 0, dist);
+		memo.transitions(1, 0, dist);
+		memo.transitions(0, 0, dist);
+		assertEquals(1, memo.hits());
+		assertEquals(2, memo.misses());
+		assertEquals(0, memo.evictions());
+
+		// Row 0 was referenced, so the hand clears its bit and evicts row 1
+		memo.transitions(2, 0, dist);
+		assertEquals(1, memo.evictions());
+		memo.transitions(0, 0, dist);
+		assertEquals(2, memo.hits());
+		memo.transitions(1, 0, dist);
+		assertEquals(4, memo.misses());
+
+		// Row 0 was referenced again, so row 2 is evicted next
+		assertEquals(2, memo.evictions());
+		memo.transitions(0, 0, dist);
+		assertEquals(3, memo.hits());
+		assertEquals(1, dist.size());
+		assertEquals(Integer.valueOf(1), dist.successor(0));
+	}
+
+	/**
+	 * Tests if rows without entries are charged against the memory budget of
+	 * {@link MemoizingSMDP}, so that the number of cached rows is bounded.
+	 */
+	@Test
+	public void testEmptyRowsCountTowardTheBudget() {
+		int numStates = 10;
+		int maxRows = 3;
+		MemoizingSMDP<Integer, Integer> memo = new MemoizingSMDP<Integer, Integer>(
+				cycleMDP(numStates, false), maxRows * MemoizingSMDP.ROW_CHARGE);
+		TransitionDistribution<Integer> dist = new TransitionDistribution<Integer>();
+
+		for (int s = 0; s < numStates; s++) {
+			memo.transitions(s, 0, dist);
+			assertEquals(0, dist.size());
+		}
+		assertEquals(maxRows, memo.cachedRows());
+		assertEquals(0, memo.cachedEntries());
+		assertEquals(maxRows * MemoizingSMDP.ROW_CHARGE, memo.chargedEntries());
+		assertEquals(numStates - maxRows, memo.evictions());
+	}
+
+	/**
+	 * Tests if several threads sharing a {@link MemoizingSMDP} with a budget
+	 * smaller than the model always read the distributions of the decorated
+	 * model and if every access is counted exactly once.
+	 */
+	@Test
+	public void testThreadsShareTheCache() throws InterruptedException {
+		final BoxedSMDP smdp = new BoxedSMDP(new GarnetMDP(50, 4, 5, 1));
+		final long maxEntries = 600;
+		final MemoizingSMDP<Integer, Integer> memo = new MemoizingSMDP<Integer, Integer>(
+				smdp, maxEntries);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		Thread[] threads = new Thread[NUM_THREADS];
+		for (int i = 0; i < NUM_THREADS; i++) {
+			final int offset = i * 13;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						TransitionDistribution<Integer> expected = new TransitionDistribution<Integer>();
+						TransitionDistribution<Integer> actual = new TransitionDistribution<Integer>();
+						int n = smdp.numberOfStates();
+						for (int p = 0; p < PASSES; p++) {
+							for (int j = 0; j < n; j++) {
+								Integer state = (j + offset) % n;
+								for (Integer action : smdp.actions(state)) {
+									smdp.transitions(state, action, expected);
+									memo.transitions(state, action, actual);
+									assertEquals(expected.size(), actual.size());
+									for (int k = 0; k < expected.size(); k++) {
+										assertEquals(expected.successor(k),
+												actual.successor(k));
+										assertEquals(expected.tprob(k),
+												actual.tprob(k), 0);
+										assertEquals(expected.r(k),
+												actual.r(k), 0);
+									}
+								}
+							}
+						}
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+
+		long accesses = (long) NUM_THREADS * PASSES * smdp.numberOfStates()
+				* smdp.actionSet().numberOfActions();
+		assertEquals(accesses, memo.hits() + memo.misses());
+		assertTrue(memo.evictions() > 0);
+		assertTrue(memo.chargedEntries() <= maxEntries);
+	}
+
+	/**
+	 * Returns an MDP with a single action that moves from each state to the
+	 * next state of a cycle, or that has no successors at all.
+	 */
+	private static BoxedSMDP cycleMDP(final int numStates,
+			final boolean hasSuccessors) {
+		return new BoxedSMDP(new AbstractIntMDP(Optimization.MAXIMIZE) {
+			@Override
+			public int numberOfStates() {
+				return numStates;
+			}
+
+			@Override
+			public int numberOfActions() {
+				return 1;
+			}
+
+			@Override
+			public double r(int state, int action, int nextState) {
+				return 0;
+			}
+
+			@Override
+			public double tprob(int state, int action, int nextState) {
+				return (hasSuccessors && nextState == (state + 1) % numStates) ? 1
+						: 0;
+			}
+
+			@Override
+			public void successors(int state, int action,
+					SuccessorVisitor visitor) {
+				if (hasSuccessors) {
+					visitor.visit((state + 1) % numStates, 1, 1, 0);
+				}
+			}
+		});
+	}
+}
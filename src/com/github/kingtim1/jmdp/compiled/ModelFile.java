@@ -0,0 +1,644 @@
+/**
+	ModelFile.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.compiled;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.kingtim1.jmdp.FiniteStateSMDP;
+import com.github.kingtim1.jmdp.actions.ListActionSet;
+import com.github.kingtim1.jmdp.util.Optimization;
+
+/**
+ * Reads and writes compiled models in a versioned binary format that can be
+ * memory-mapped. A model file starts with a fixed header followed by column
+ * blocks, one per array of a {@link CompiledSMDP}:
+ * 
+ * <pre>
+ * header          {@value #HEADER_BYTES} bytes (see below)
+ * state dict      the states encoded by a {@link Codec} (absent if the states are 0, 1, ..., n - 1)
+ * action dict     the actions encoded by a {@link Codec} in action index order
+ * state rows      int[numStates + 1]
+ * row actions     int[numRows]
+ * row r           double[numRows]
+ * row entries     int[numRows + 1]
+ * successors      int[numEntries]
+ * tprobs          double[numEntries]
+ * durations       int[numEntries] (absent if every duration is 1)
+ * </pre>
+ * 
+ * The header holds the magic bytes <code>JMDP</code>, the format version, a
+ * set of flags, the number of states, actions, rows and entries, the largest
+ * duration, and the offset of every block. Numbers are little-endian and
+ * every block starts at a multiple of 8 bytes.
+ * <p>
+ * {@link #map(Path, Codec, Codec, OffHeapArena)} maps the column blocks with
+ * {@link FileChannel#map(FileChannel.MapMode, long, long)} and wraps them as
+ * the off-heap arrays of a {@link CompiledSMDP} without reading them, so
+ * the transitions are never parsed and their pages are only read when a
+ * solver first touches them. Only the state and action dictionaries are
+ * decoded when the file is opened. The mapping is released when the arena is
+ * closed.
+ * </p>
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+public final class ModelFile {
+
+	/**
+	 * The version of the format written by this class.
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * The size of the header in bytes.
+	 */
+	public static final int HEADER_BYTES = 128;
+
+	private static final byte[] MAGIC = { 'J', 'M', 'D', 'P' };
+
+	private static final int FLAG_DURATIONS = 1;
+	private static final int FLAG_INDEX_STATES = 2;
+	private static final int FLAG_MINIMIZE = 4;
+
+	static final int STATE_DICT = 0;
+	static final int ACTION_DICT = 1;
+	static final int STATE_ROWS = 2;
+	static final int ROW_ACTIONS = 3;
+	static final int ROW_R = 4;
+	static final int ROW_ENTRIES = 5;
+	static final int SUCCESSORS = 6;
+	static final int TPROBS = 7;
+	static final int DURATIONS = 8;
+	static final int NUM_BLOCKS = 9;
+
+	/**
+	 * Encodes and decodes the states or actions of a model file.
+	 * 
+	 * @param <T>
+	 *            the type of value
+	 */
+	public interface Codec<T> {
+		public void write(T value, DataOutput out) throws IOException;
+
+		public T read(DataInput in) throws IOException;
+	}
+
+	/**
+	 * Encodes integers as 4 bytes.
+	 */
+	public static final Codec<Integer> INTEGERS = new Codec<Integer>() {
+		@Override
+		public void write(Integer value, DataOutput out) throws IOException {
+			out.writeInt(value.intValue());
+		}
+
+		@Override
+		public Integer read(DataInput in) throws IOException {
+			return in.readInt();
+		}
+	};
+
+	/**
+	 * Encodes strings in modified UTF-8 (see {@link DataOutput#writeUTF}).
+	 */
+	public static final Codec<String> STRINGS = new Codec<String>() {
+		@Override
+		public void write(String value, DataOutput out) throws IOException {
+			out.writeUTF(value);
+		}
+
+		@Override
+		public String read(DataInput in) throws IOException {
+			return in.readUTF();
+		}
+	};
+
+	private ModelFile() {
+	}
+
+	/**
+	 * Compiles a finite-state SMDP and writes it to a file.
+	 * 
+	 * @param smdp
+	 *            a finite-state SMDP
+	 * @param stateCodec
+	 *            encodes the states
+	 * @param actionCodec
+	 *            encodes the actions
+	 * @param file
+	 *            the file to (over)write
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public static <S, A> void write(FiniteStateSMDP<S, A> smdp,
+			Codec<? super S> stateCodec, Codec<? super A> actionCodec,
+			Path file) throws IOException {
+		write(new CompiledSMDP<S, A>(smdp), stateCodec, actionCodec, file);
+	}
+
+	/**
+	 * Writes a compiled model (stored on the heap or off-heap) to a file. If
+	 * the states of the model are the integers <code>0, 1, ..., n - 1</code>
+	 * the state dictionary is omitted and the state codec is not used.
+	 * 
+	 * @param model
+	 *            a compiled model
+	 * @param stateCodec
+	 *            encodes the states
+	 * @param actionCodec
+	 *            encodes the actions
+	 * @param file
+	 *            the file to (over)write
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public static <S, A> void write(CompiledSMDP<S, A> model,
+			Codec<? super S> stateCodec, Codec<? super A> actionCodec,
+			Path file) throws IOException {
+		int numStates = model.numberOfStates();
+		int numActions = model.actionSet().numberOfActions();
+		int numRows = model.numberOfRows();
+		int numEntries = model.numberOfEntries();
+		boolean indexStates = hasIndexStates(model);
+		boolean hasDurations = model.maxActionDuration() > 1;
+
+		ByteArrayOutputStream stateDict = new ByteArrayOutputStream();
+		if (!indexStates) {
+			DataOutputStream out = new DataOutputStream(stateDict);
+			for (S state : model.states()) {
+				stateCodec.write(state, out);
+			}
+			out.flush();
+		}
+		ByteArrayOutputStream actionDict = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(actionDict);
+		for (int a = 0; a < numActions; a++) {
+			actionCodec.write(model.actionSet().action(a), out);
+		}
+		out.flush();
+
+		long[] sizes = new long[NUM_BLOCKS];
+		sizes[STATE_DICT] = stateDict.size();
+		sizes[ACTION_DICT] = actionDict.size();
+		sizes[STATE_ROWS] = 4L * (numStates + 1);
+		sizes[ROW_ACTIONS] = 4L * numRows;
+		sizes[ROW_R] = 8L * numRows;
+		sizes[ROW_ENTRIES] = 4L * (numRows + 1);
+		sizes[SUCCESSORS] = 4L * numEntries;
+		sizes[TPROBS] = 8L * numEntries;
+		sizes[DURATIONS] = hasDurations ? 4L * numEntries : 0;
+		long[] offsets = new long[NUM_BLOCKS];
+		long position = HEADER_BYTES;
+		for (int b = 0; b < NUM_BLOCKS; b++) {
+			offsets[b] = position;
+			position = align(position + sizes[b]);
+		}
+
+		int flags = (hasDurations ? FLAG_DURATIONS : 0)
+				| (indexStates ? FLAG_INDEX_STATES : 0)
+				| (model.opType().equals(Optimization.MINIMIZE) ? FLAG_MINIMIZE
+						: 0);
+
+		FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			BlockWriter w = new BlockWriter(channel);
+			w.putBytes(MAGIC);
+			w.putInt(VERSION);
+			w.putInt(flags);
+			w.putInt(numStates);
+			w.putInt(numActions);
+			w.putInt(numRows);
+			w.putInt(numEntries);
+			w.putInt(model.maxActionDuration());
+			for (int b = 0; b < NUM_BLOCKS; b++) {
+				w.putLong(offsets[b]);
+			}
+			w.putLong(position);
+
+			w.padTo(offsets[STATE_DICT]);
+			w.putBytes(stateDict.toByteArray());
+			w.padTo(offsets[ACTION_DICT]);
+			w.putBytes(actionDict.toByteArray());
+			w.padTo(offsets[STATE_ROWS]);
+			for (int s = 0; s < numStates; s++) {
+				w.putInt(model.rowBegin(s));
+			}
+			w.putInt(numRows);
+			w.padTo(offsets[ROW_ACTIONS]);
+			for (int row = 0; row < numRows; row++) {
+				w.putInt(model.actionIndex(row));
+			}
+			w.padTo(offsets[ROW_R]);
+			for (int row = 0; row < numRows; row++) {
+				w.putDouble(model.r(row));
+			}
+			w.padTo(offsets[ROW_ENTRIES]);
+			for (int row = 0; row < numRows; row++) {
+				w.putInt(model.entryBegin(row));
+			}
+			w.putInt(numEntries);
+			w.padTo(offsets[SUCCESSORS]);
+			for (int e = 0; e < numEntries; e++) {
+				w.putInt(model.successor(e));
+			}
+			w.padTo(offsets[TPROBS]);
+			for (int e = 0; e < numEntries; e++) {
+				w.putDouble(model.tprob(e));
+			}
+			if (hasDurations) {
+				w.padTo(offsets[DURATIONS]);
+				for (int e = 0; e < numEntries; e++) {
+					w.putInt(model.duration(e));
+				}
+			}
+			w.padTo(position);
+			w.flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Maps a model file whose states and actions are integers, such as a file
+	 * written from a model compiled by
+	 * {@link CompiledSMDP#of(com.github.kingtim1.jmdp.IntSMDP)}.
+	 * 
+	 * @param file
+	 *            a model file
+	 * @param arena
+	 *            the arena that owns the mapping
+	 * @return the mapped model
+	 * @throws IOException
+	 *             if the file cannot be read or is not a valid model file
+	 */
+	public static CompiledSMDP<Integer, Integer> map(Path file,
+			OffHeapArena arena) throws IOException {
+		return map(file, INTEGERS, INTEGERS, arena);
+	}
+
+	/**
+	 * Maps a model file into memory. The column blocks are not read until
+	 * they are used, and the returned model stays valid until the arena is
+	 * closed. The returned model is read-only; its action set is a
+	 * {@link ListActionSet} of the decoded actions.
+	 * 
+	 * @param file
+	 *            a model file
+	 * @param stateCodec
+	 *            decodes the states (not used if the states are their own
+	 *            indices)
+	 * @param actionCodec
+	 *            decodes the actions
+	 * @param arena
+	 *            the arena that owns the mapping
+	 * @return the mapped model
+	 * @throws IOException
+	 *             if the file cannot be read or is not a valid model file
+	 */
+	public static <S, A> CompiledSMDP<S, A> map(Path file,
+			Codec<? extends S> stateCodec, Codec<? extends A> actionCodec,
+			OffHeapArena arena) throws IOException {
+		if (!arena.isAlive()) {
+			throw OffHeapArray.closed();
+		}
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			Header header = Header.read(channel);
+			List<S> states = readStates(channel, header, stateCodec);
+			DataInputStream in = dictionary(channel, header.offsets,
+					ACTION_DICT);
+			List<A> actions = new ArrayList<A>(header.numActions);
+			for (int a = 0; a < header.numActions; a++) {
+				actions.add(actionCodec.read(in));
+			}
+
+			long[] offsets = header.offsets;
+			OffHeapIntArray stateRows = mapInts(channel, offsets, STATE_ROWS,
+					header.numStates + 1L, arena);
+			OffHeapIntArray rowActions = mapInts(channel, offsets,
+					ROW_ACTIONS, header.numRows, arena);
+			OffHeapDoubleArray rowR = mapDoubles(channel, offsets, ROW_R,
+					header.numRows, arena);
+			OffHeapIntArray rowEntries = mapInts(channel, offsets,
+					ROW_ENTRIES, header.numRows + 1L, arena);
+			OffHeapIntArray successors = mapInts(channel, offsets,
+					SUCCESSORS, header.numEntries, arena);
+			OffHeapDoubleArray tprobs = mapDoubles(channel, offsets, TPROBS,
+					header.numEntries, arena);
+			OffHeapIntArray durations = null;
+			if (header.hasDurations()) {
+				durations = mapInts(channel, offsets, DURATIONS,
+						header.numEntries, arena);
+			}
+
+			return CompiledSMDP.wrap(header.numStates, states,
+					new ListActionSet<S, A>(actions), header.opType(),
+					header.maxDuration, stateRows, rowActions, rowR,
+					rowEntries, successors, durations, tprobs);
+		} finally {
+			// Mappings stay valid after their channel is closed
+			channel.close();
+		}
+	}
+
+	/**
+	 * Decodes the state dictionary of a model file, or returns null if the
+	 * states are their own indices.
+	 */
+	static <S> List<S> readStates(FileChannel channel, Header header,
+			Codec<? extends S> stateCodec) throws IOException {
+		if ((header.flags & FLAG_INDEX_STATES) != 0) {
+			return null;
+		}
+		DataInputStream in = dictionary(channel, header.offsets, STATE_DICT);
+		List<S> states = new ArrayList<S>(header.numStates);
+		for (int s = 0; s < header.numStates; s++) {
+			states.add(stateCodec.read(in));
+		}
+		return states;
+	}
+
+	/**
+	 * The header of a model file.
+	 */
+	static class Header {
+		int flags;
+		int numStates;
+		int numActions;
+		int numRows;
+		int numEntries;
+		int maxDuration;
+		/**
+		 * The offset of every block followed by the size of the file.
+		 */
+		long[] offsets;
+
+		boolean hasDurations() {
+			return (flags & FLAG_DURATIONS) != 0;
+		}
+
+		Optimization opType() {
+			return ((flags & FLAG_MINIMIZE) != 0) ? Optimization.MINIMIZE
+					: Optimization.MAXIMIZE;
+		}
+
+		static Header read(FileChannel channel) throws IOException {
+			long fileSize = channel.size();
+			if (fileSize < HEADER_BYTES) {
+				throw new IOException("Expected a model file of at least "
+						+ HEADER_BYTES + " bytes. Found " + fileSize
+						+ " bytes.");
+			}
+			ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES).order(
+					ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, buffer, 0);
+			buffer.flip();
+			for (int i = 0; i < MAGIC.length; i++) {
+				if (buffer.get() != MAGIC[i]) {
+					throw new IOException(
+							"Expected a model file starting with JMDP. Found a different file.");
+				}
+			}
+			int version = buffer.getInt();
+			if (version != VERSION) {
+				throw new IOException("Expected model file version "
+						+ VERSION + ". Found version " + version + ".");
+			}
+			Header header = new Header();
+			header.flags = buffer.getInt();
+			header.numStates = buffer.getInt();
+			header.numActions = buffer.getInt();
+			header.numRows = buffer.getInt();
+			header.numEntries = buffer.getInt();
+			header.maxDuration = buffer.getInt();
+			long[] offsets = new long[NUM_BLOCKS + 1];
+			for (int b = 0; b <= NUM_BLOCKS; b++) {
+				offsets[b] = buffer.getLong();
+			}
+			if (offsets[NUM_BLOCKS] != fileSize) {
+				throw new IOException("Expected a model file of "
+						+ offsets[NUM_BLOCKS] + " bytes. Found " + fileSize
+						+ " bytes.");
+			}
+			for (int b = 0; b < NUM_BLOCKS; b++) {
+				if (offsets[b] < HEADER_BYTES
+						|| offsets[b] > offsets[b + 1]) {
+					throw new IOException("Expected increasing block offsets. Found offset "
+							+ offsets[b] + " for block " + b + ".");
+				}
+			}
+			header.offsets = offsets;
+			return header;
+		}
+	}
+
+	/**
+	 * Fills the remaining bytes of a buffer from a channel starting at a file
+	 * position.
+	 */
+	static void readFully(FileChannel channel, ByteBuffer buffer,
+			long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int n = channel.read(buffer, position);
+			if (n < 0) {
+				throw new IOException("Unexpected end of model file.");
+			}
+			position += n;
+		}
+	}
+
+	private static boolean hasIndexStates(CompiledSMDP<?, ?> model) {
+		List<?> states = model.states();
+		for (int s = 0; s < states.size(); s++) {
+			Object state = states.get(s);
+			if (!(state instanceof Integer) || ((Integer) state).intValue() != s) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static long align(long position) {
+		return (position + 7) & ~7L;
+	}
+
+	private static DataInputStream dictionary(FileChannel channel,
+			long[] offsets, int block) throws IOException {
+		long size = offsets[block + 1] - offsets[block];
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Expected a dictionary of at most "
+					+ Integer.MAX_VALUE + " bytes. Found " + size + " bytes.");
+		}
+		ByteBuffer buffer = ByteBuffer.allocate((int) size);
+		readFully(channel, buffer, offsets[block]);
+		buffer.flip();
+		return new DataInputStream(new BufferInputStream(buffer));
+	}
+
+	private static OffHeapIntArray mapInts(FileChannel channel,
+			long[] offsets, int block, long length, OffHeapArena arena)
+			throws IOException {
+		ByteBuffer[] buffers = mapBlock(channel, offsets, block, length, 4);
+		OffHeapIntArray array = new OffHeapIntArray(length, buffers);
+		arena.adopt(array, 4 * length);
+		return array;
+	}
+
+	private static OffHeapDoubleArray mapDoubles(FileChannel channel,
+			long[] offsets, int block, long length, OffHeapArena arena)
+			throws IOException {
+		ByteBuffer[] buffers = mapBlock(channel, offsets, block, length, 8);
+		OffHeapDoubleArray array = new OffHeapDoubleArray(length, buffers);
+		arena.adopt(array, 8 * length);
+		return array;
+	}
+
+	private static ByteBuffer[] mapBlock(FileChannel channel, long[] offsets,
+			int block, long length, int elementBytes) throws IOException {
+		if (offsets[block] + length * elementBytes > offsets[block + 1]) {
+			throw new IOException("Expected " + length * elementBytes
+					+ " bytes in block " + block + ". Found "
+					+ (offsets[block + 1] - offsets[block]) + " bytes.");
+		}
+		int numChunks = (int) ((length + OffHeapArray.CHUNK_SIZE - 1) >>> OffHeapArray.CHUNK_BITS);
+		ByteBuffer[] buffers = new ByteBuffer[numChunks];
+		for (int c = 0; c < numChunks; c++) {
+			long first = (long) c << OffHeapArray.CHUNK_BITS;
+			long size = Math.min(OffHeapArray.CHUNK_SIZE, length - first);
+			buffers[c] = channel.map(FileChannel.MapMode.READ_ONLY,
+					offsets[block] + first * elementBytes,
+					size * elementBytes).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		return buffers;
+	}
+
+	/**
+	 * Writes little-endian numbers to a channel through a buffer.
+	 */
+	private static class BlockWriter {
+		private final FileChannel channel;
+		private final ByteBuffer buffer;
+		private long position;
+
+		public BlockWriter(FileChannel channel) {
+			this.channel = channel;
+			buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		public void putInt(int value) throws IOException {
+			ensure(4);
+			buffer.putInt(value);
+			position += 4;
+		}
+
+		public void putLong(long value) throws IOException {
+			ensure(8);
+			buffer.putLong(value);
+			position += 8;
+		}
+
+		public void putDouble(double value) throws IOException {
+			ensure(8);
+			buffer.putDouble(value);
+			position += 8;
+		}
+
+		public void putBytes(byte[] bytes) throws IOException {
+			for (int i = 0; i < bytes.length; i++) {
+				ensure(1);
+				buffer.put(bytes[i]);
+			}
+			position += bytes.length;
+		}
+
+		public void padTo(long target) throws IOException {
+			while (position < target) {
+				ensure(1);
+				buffer.put((byte) 0);
+				position++;
+			}
+		}
+
+		public void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		private void ensure(int bytes) throws IOException {
+			if (buffer.remaining() < bytes) {
+				flush();
+			}
+		}
+	}
+
+	/**
+	 * Reads the bytes of a buffer as a stream.
+	 */
+	private static class BufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		public BufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? (buffer.get() & 0xff) : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) {
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int n = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, n);
+			return n;
+		}
+	}
+}
@@ -0,0 +1,125 @@
+/**
+	ModelFileTests.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.compiled;
+
+import static com.github.kingtim1.jmdp.discounted.ClassicalMDPAlgorithmTests.vfuncsAreEqual;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.kingtim1.jmdp.discounted.AsyncValueIteration;
+import com.github.kingtim1.jmdp.discounted.DiscountFactor;
+import com.github.kingtim1.jmdp.discounted.DiscountedVFunction;
+import com.github.kingtim1.jmdp.discounted.StreamingValueIteration;
+import com.github.kingtim1.jmdp.lib.mdps.GarnetMDP;
+import com.github.kingtim1.jmdp.lib.mdps.RandomSMDP;
+
+public class ModelFileTests {
+
+	public static final DiscountFactor DF = new DiscountFactor(0.95);
+	public static final int VI_MAX_ITERATIONS = 100;
+	public static final double VALUE_EPSILON = 0.05;
+	public static final double CONVERGENCE_THRESHOLD = 0;
+	public static final double PROB_EPSILON = Math.pow(10, -4);
+
+	/**
+	 * Tests if models written by {@link ModelFile} and mapped back into memory
+	 * have the same entries and values as the models they were written from.
+	 */
+	@Test
+	public void testMappedModelFilesMatchCompiledModels() throws IOException {
+		List<CompiledSMDP<Integer, Integer>> models = new ArrayList<CompiledSMDP<Integer, Integer>>();
+		models.add(CompiledSMDP.of(new GarnetMDP(100, 4, 5, 1)));
+		models.add(CompiledSMDP.of(new RandomSMDP(100, 3, 5, 50, 1.5, 2)));
+		Path file = Files.createTempFile("jmdp", ".model");
+		try {
+			for (CompiledSMDP<Integer, Integer> model : models) {
+				ModelFile.write(model, ModelFile.INTEGERS,
+						ModelFile.INTEGERS, file);
+				try (OffHeapArena arena = new OffHeapArena()) {
+					CompiledSMDP<Integer, Integer> mapped = ModelFile.map(
+							file, arena);
+					assertEquals(model.numberOfRows(), mapped.numberOfRows());
+					assertEquals(model.maxActionDuration(),
+							mapped.maxActionDuration());
+					for (int e = 0; e < model.numberOfEntries(); e++) {
+						assertEquals(model.successor(e), mapped.successor(e));
+						assertEquals(model.duration(e), mapped.duration(e));
+						assertEquals(model.tprob(e), mapped.tprob(e), 0);
+					}
+					DiscountedVFunction<Integer> expected = new AsyncValueIteration<Integer, Integer>(
+							model, DF, VI_MAX_ITERATIONS,
+							CONVERGENCE_THRESHOLD, 1).run().greedy();
+					DiscountedVFunction<Integer> vfunc = new AsyncValueIteration<Integer, Integer>(
+							mapped, DF, VI_MAX_ITERATIONS,
+							CONVERGENCE_THRESHOLD, 1).run().greedy();
+					assertTrue(vfuncsAreEqual(model.states(), expected, vfunc,
+							PROB_EPSILON));
+				}
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * Tests if {@link StreamingValueIteration} computes the same values as
+	 * {@link AsyncValueIteration} when the model file is read in many small
+	 * blocks.
+	 */
+	@Test
+	public void testStreamingValueIterationMatchesAsyncValueIteration()
+			throws IOException {
+		CompiledSMDP<Integer, Integer> model = CompiledSMDP.of(new RandomSMDP(
+				200, 3, 5, 50, 1.5, 2));
+		Path file = Files.createTempFile("jmdp", ".model");
+		try {
+			ModelFile.write(model, ModelFile.INTEGERS, ModelFile.INTEGERS,
+					file);
+			DiscountedVFunction<Integer> expected = new AsyncValueIteration<Integer, Integer>(
+					model, DF, VI_MAX_ITERATIONS, CONVERGENCE_THRESHOLD, 1)
+					.run().greedy();
+			try (ModelStream<Integer> stream = ModelStream.open(file, 1024)) {
+				assertTrue(stream.numberOfBlocks() > 2);
+				DiscountedVFunction<Integer> vfunc = new StreamingValueIteration<Integer>(
+						stream, DF, VI_MAX_ITERATIONS, CONVERGENCE_THRESHOLD)
+						.run();
+				assertTrue(vfuncsAreEqual(model.states(), expected, vfunc,
+						VALUE_EPSILON));
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
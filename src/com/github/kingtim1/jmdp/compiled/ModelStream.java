@@ -0,0 +1,744 @@
+/**
+	ModelStream.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.compiled;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.github.kingtim1.jmdp.discounted.DiscountFactor;
+import com.github.kingtim1.jmdp.util.Optimization;
+
+/**
+ * <p>
+ * Reads the transitions of a {@link ModelFile} sequentially in blocks of
+ * consecutive states, so that a solver can sweep a model that does not fit in
+ * memory. Each block holds the rows and entries of its states and is at most
+ * a fixed number of bytes (unless a single state needs more). Only the block
+ * boundaries and the state dictionary are kept in memory.
+ * </p>
+ * 
+ * <p>
+ * The blocks are read with an {@link AsynchronousFileChannel} into two
+ * buffers. While a solver works on one block, the next block is read into the
+ * other buffer, so I/O overlaps with computation. Because the blocks are
+ * ordered by state, a solver that updates values in place (Gauss-Seidel) sees
+ * the new values of earlier states, within a block and across blocks. A
+ * model that fits into the two buffers is only read once.
+ * </p>
+ * 
+ * <p>
+ * A sweep looks like:
+ * 
+ * <pre>
+ * stream.rewind();
+ * for (ModelStream.Block block = stream.next(); block != null; block = stream.next()) {
+ * 	for (int s = block.stateBegin(); s &lt; block.stateEnd(); s++) {
+ * 		values[s] = block.backup(s, values, discounts);
+ * 	}
+ * }
+ * </pre>
+ * 
+ * A stream is not thread-safe.
+ * </p>
+ * 
+ * @author Timothy A. Mann
+ *
+ * @param <S>
+ *            the state type
+ */
+public class ModelStream<S> implements AutoCloseable {
+
+	/**
+	 * The default size of a block in bytes.
+	 */
+	public static final int DEFAULT_BLOCK_BYTES = 1 << 24;
+
+	private ModelFile.Header _header;
+	private List<S> _states;
+	private Map<S, Integer> _indices;
+	private AsynchronousFileChannel _channel;
+
+	private int[] _blockStates;
+	private int[] _blockRows;
+	private int[] _blockEntries;
+
+	private Block[] _buffers;
+	private Block _pending;
+	private int _nextBlock;
+
+	/**
+	 * Opens a model file whose states are integers, such as a file written
+	 * from a model compiled by
+	 * {@link CompiledSMDP#of(com.github.kingtim1.jmdp.IntSMDP)}.
+	 * 
+	 * @param file
+	 *            a model file
+	 * @param blockBytes
+	 *            the size of a block in bytes
+	 * @return a stream over the blocks of the file
+	 * @throws IOException
+	 *             if the file cannot be read or is not a valid model file
+	 */
+	public static ModelStream<Integer> open(Path file, int blockBytes)
+			throws IOException {
+		return new ModelStream<Integer>(file, ModelFile.INTEGERS, blockBytes);
+	}
+
+	/**
+	 * Opens a model file. The rows and entries of every state are read once to
+	 * find the block boundaries.
+	 * 
+	 * @param file
+	 *            a model file
+	 * @param stateCodec
+	 *            decodes the states (not used if the states are their own
+	 *            indices)
+	 * @param blockBytes
+	 *            the size of a block in bytes
+	 * @throws IOException
+	 *             if the file cannot be read or is not a valid model file
+	 */
+	public ModelStream(Path file, ModelFile.Codec<? extends S> stateCodec,
+			int blockBytes) throws IOException {
+		if (blockBytes <= 0) {
+			throw new IllegalArgumentException(
+					"Expected a positive block size. Found " + blockBytes + ".");
+		}
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			_header = ModelFile.Header.read(channel);
+			_states = ModelFile.readStates(channel, _header, stateCodec);
+			partition(channel, blockBytes);
+		} finally {
+			channel.close();
+		}
+		if (_states != null) {
+			_indices = new HashMap<S, Integer>();
+			for (int s = 0; s < _states.size(); s++) {
+				_indices.put(_states.get(s), s);
+			}
+		}
+
+		int capacity = 0;
+		for (int b = 0; b < numberOfBlocks(); b++) {
+			capacity = Math.max(capacity, blockBytes(_blockStates[b + 1]
+					- _blockStates[b], _blockRows[b + 1] - _blockRows[b],
+					_blockEntries[b + 1] - _blockEntries[b]));
+		}
+		_channel = AsynchronousFileChannel.open(file, StandardOpenOption.READ);
+		_buffers = new Block[2];
+		for (int i = 0; i < _buffers.length; i++) {
+			_buffers[i] = new Block(_channel, _header, capacity);
+		}
+	}
+
+	/**
+	 * Splits the states into blocks by reading the state rows and row entries
+	 * columns once.
+	 */
+	private void partition(FileChannel channel, int blockBytes)
+			throws IOException {
+		int n = _header.numStates;
+		ColumnReader stateRows = new ColumnReader(channel,
+				_header.offsets[ModelFile.STATE_ROWS]);
+		ColumnReader rowEntries = new ColumnReader(channel,
+				_header.offsets[ModelFile.ROW_ENTRIES]);
+		List<int[]> bounds = new ArrayList<int[]>();
+
+		int stateBegin = 0;
+		int rowBegin = stateRows.next();
+		int entry = rowEntries.next();
+		int row = rowBegin;
+		int entryBegin = entry;
+		int lastRow = rowBegin;
+		int lastEntry = entry;
+		for (int s = 0; s < n; s++) {
+			int rowEnd = stateRows.next();
+			while (row < rowEnd) {
+				entry = rowEntries.next();
+				row++;
+			}
+			if (s > stateBegin
+					&& blockBytes(s + 1 - stateBegin, rowEnd - rowBegin, entry
+							- entryBegin) > blockBytes) {
+				bounds.add(new int[] { stateBegin, rowBegin, entryBegin });
+				stateBegin = s;
+				rowBegin = lastRow;
+				entryBegin = lastEntry;
+			}
+			lastRow = rowEnd;
+			lastEntry = entry;
+		}
+		if (n > 0) {
+			bounds.add(new int[] { stateBegin, rowBegin, entryBegin });
+		}
+		if (lastRow != _header.numRows || lastEntry != _header.numEntries) {
+			throw new IOException("Expected " + _header.numRows + " rows and "
+					+ _header.numEntries + " entries. Found " + lastRow
+					+ " rows and " + lastEntry + " entries.");
+		}
+
+		int numBlocks = bounds.size();
+		_blockStates = new int[numBlocks + 1];
+		_blockRows = new int[numBlocks + 1];
+		_blockEntries = new int[numBlocks + 1];
+		for (int b = 0; b < numBlocks; b++) {
+			_blockStates[b] = bounds.get(b)[0];
+			_blockRows[b] = bounds.get(b)[1];
+			_blockEntries[b] = bounds.get(b)[2];
+		}
+		_blockStates[numBlocks] = n;
+		_blockRows[numBlocks] = lastRow;
+		_blockEntries[numBlocks] = lastEntry;
+	}
+
+	/**
+	 * Returns the number of bytes needed by a block.
+	 */
+	private int blockBytes(int numStates, int numRows, int numEntries) {
+		long bytes = 8L * numRows + 8L * numEntries + 4L * (numStates + 1)
+				+ 4L * (numRows + 1) + 4L * numEntries;
+		if (_header.hasDurations()) {
+			bytes += 4L * numEntries;
+		}
+		if (bytes > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(
+					"Expected blocks of at most " + Integer.MAX_VALUE
+							+ " bytes. Found a state that needs " + bytes
+							+ " bytes.");
+		}
+		return (int) bytes;
+	}
+
+	/**
+	 * Returns the number of states in the model.
+	 * 
+	 * @return the number of states
+	 */
+	public int numberOfStates() {
+		return _header.numStates;
+	}
+
+	/**
+	 * Returns the number of rows (valid state-action pairs) in the model.
+	 * 
+	 * @return the number of rows
+	 */
+	public int numberOfRows() {
+		return _header.numRows;
+	}
+
+	/**
+	 * Returns the number of entries over all rows of the model.
+	 * 
+	 * @return the number of entries
+	 */
+	public int numberOfEntries() {
+		return _header.numEntries;
+	}
+
+	/**
+	 * Returns the number of blocks in a sweep.
+	 * 
+	 * @return the number of blocks
+	 */
+	public int numberOfBlocks() {
+		return _blockStates.length - 1;
+	}
+
+	/**
+	 * Returns the largest duration of any entry in the model.
+	 * 
+	 * @return the largest duration (at least 1)
+	 */
+	public int maxActionDuration() {
+		return _header.maxDuration;
+	}
+
+	/**
+	 * Returns the optimization type of the model.
+	 * 
+	 * @return MINIMIZE or MAXIMIZE
+	 */
+	public Optimization opType() {
+		return _header.opType();
+	}
+
+	/**
+	 * Returns the states of the model ordered by their indices.
+	 * 
+	 * @return an unmodifiable list of states
+	 */
+	@SuppressWarnings("unchecked")
+	public List<S> states() {
+		if (_states == null) {
+			return (List<S>) new CompiledSMDP.IndexList(_header.numStates);
+		}
+		return Collections.unmodifiableList(_states);
+	}
+
+	/**
+	 * Returns the index of a state or -1 if the state is not part of the
+	 * model.
+	 * 
+	 * @param state
+	 *            a state
+	 * @return the index of <code>state</code> or -1
+	 */
+	public int index(S state) {
+		if (_indices == null) {
+			if (!(state instanceof Integer)) {
+				return -1;
+			}
+			int i = ((Integer) state).intValue();
+			return (i >= 0 && i < _header.numStates) ? i : -1;
+		}
+		Integer index = _indices.get(state);
+		if (index == null) {
+			return -1;
+		} else {
+			return index.intValue();
+		}
+	}
+
+	/**
+	 * Returns the table <code>[1, gamma, gamma^2, ..., gamma^D]</code> where
+	 * <code>D</code> is {@link #maxActionDuration()}.
+	 * 
+	 * @param df
+	 *            a discount factor
+	 * @return the powers of the discount factor indexed by duration
+	 */
+	public double[] discounts(DiscountFactor df) {
+		double[] discounts = new double[_header.maxDuration + 1];
+		discounts[0] = 1;
+		for (int d = 1; d <= _header.maxDuration; d++) {
+			discounts[d] = discounts[d - 1] * df.doubleValue();
+		}
+		return discounts;
+	}
+
+	/**
+	 * Starts a new sweep and begins reading the first block.
+	 * 
+	 * @throws IOException
+	 *             if the model file cannot be read
+	 */
+	public void rewind() throws IOException {
+		if (_pending != null) {
+			// Finish the reads of an abandoned sweep before reusing a buffer
+			_pending.await();
+			_pending = null;
+		}
+		_nextBlock = 0;
+		if (numberOfBlocks() > 0) {
+			_pending = load(0);
+		}
+	}
+
+	/**
+	 * Returns the next block of the current sweep and begins reading the block
+	 * after it. The returned block is valid until the next call to this
+	 * method.
+	 * 
+	 * @return the next block or null at the end of the sweep
+	 * @throws IOException
+	 *             if the model file cannot be read
+	 */
+	public Block next() throws IOException {
+		if (_pending == null) {
+			return null;
+		}
+		Block block = _pending;
+		block.await();
+		_nextBlock++;
+		_pending = (_nextBlock < numberOfBlocks()) ? load(_nextBlock) : null;
+		return block;
+	}
+
+	private Block load(int b) throws IOException {
+		if (!_channel.isOpen()) {
+			throw new IOException("The model stream is closed.");
+		}
+		Block block = _buffers[b & 1];
+		if (block._block != b) {
+			block.load(b, _blockStates[b], _blockStates[b + 1], _blockRows[b],
+					_blockRows[b + 1], _blockEntries[b], _blockEntries[b + 1]);
+		}
+		return block;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (_pending != null) {
+				_pending.await();
+				_pending = null;
+			}
+		} finally {
+			_channel.close();
+		}
+	}
+
+	/**
+	 * The rows and entries of a range of consecutive states. Every index used
+	 * by a block is an index of the whole model.
+	 */
+	public static final class Block {
+		private final AsynchronousFileChannel _channel;
+		private final ModelFile.Header _header;
+		private final ByteBuffer _buffer;
+		private final ByteBuffer[] _regions;
+		private final long[] _positions;
+		private final List<Future<Integer>> _reads;
+		private int _block;
+
+		private int _stateBegin;
+		private int _stateEnd;
+		private int _rowBase;
+		private int _entryBase;
+		private DoubleBuffer _rowR;
+		private DoubleBuffer _tprobs;
+		private IntBuffer _stateRows;
+		private IntBuffer _rowEntries;
+		private IntBuffer _successors;
+		private IntBuffer _durations;
+
+		private Block(AsynchronousFileChannel channel,
+				ModelFile.Header header, int capacity) {
+			_channel = channel;
+			_header = header;
+			_buffer = ByteBuffer.allocateDirect(capacity).order(
+					ByteOrder.LITTLE_ENDIAN);
+			_regions = new ByteBuffer[6];
+			_positions = new long[_regions.length];
+			_reads = new ArrayList<Future<Integer>>(_regions.length);
+			_block = -1;
+		}
+
+		/**
+		 * Starts reading a block into this buffer.
+		 */
+		private void load(int b, int stateBegin, int stateEnd, int rowBegin,
+				int rowEnd, int entryBegin, int entryEnd) {
+			_block = -1;
+			_stateBegin = stateBegin;
+			_stateEnd = stateEnd;
+			_rowBase = rowBegin;
+			_entryBase = entryBegin;
+			int numRows = rowEnd - rowBegin;
+			int numEntries = entryEnd - entryBegin;
+			long[] offsets = _header.offsets;
+
+			int at = 0;
+			at = region(0, at, 8 * numRows, offsets[ModelFile.ROW_R] + 8L
+					* _rowBase);
+			at = region(1, at, 8 * numEntries, offsets[ModelFile.TPROBS]
+					+ 8L * _entryBase);
+			at = region(2, at, 4 * (_stateEnd - _stateBegin + 1),
+					offsets[ModelFile.STATE_ROWS] + 4L * _stateBegin);
+			at = region(3, at, 4 * (numRows + 1),
+					offsets[ModelFile.ROW_ENTRIES] + 4L * _rowBase);
+			at = region(4, at, 4 * numEntries, offsets[ModelFile.SUCCESSORS]
+					+ 4L * _entryBase);
+			region(5, at, _header.hasDurations() ? 4 * numEntries : 0,
+					offsets[ModelFile.DURATIONS] + 4L * _entryBase);
+
+			_reads.clear();
+			for (int i = 0; i < _regions.length; i++) {
+				_reads.add(_channel.read(_regions[i], _positions[i]));
+			}
+			_block = b;
+		}
+
+		private int region(int i, int at, int bytes, long position) {
+			ByteBuffer region = _buffer.duplicate();
+			region.limit(at + bytes).position(at);
+			_regions[i] = region.slice().order(ByteOrder.LITTLE_ENDIAN);
+			_positions[i] = position;
+			return at + bytes;
+		}
+
+		/**
+		 * Waits for the reads of this block to finish.
+		 */
+		private void await() throws IOException {
+			if (_reads.isEmpty()) {
+				return;
+			}
+			try {
+				for (int i = 0; i < _regions.length; i++) {
+					ByteBuffer region = _regions[i];
+					int n = _reads.get(i).get();
+					while (region.hasRemaining()) {
+						if (n < 0) {
+							throw new IOException(
+									"Unexpected end of model file.");
+						}
+						n = _channel.read(region,
+								_positions[i] + region.position()).get();
+					}
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				_block = -1;
+				throw new InterruptedIOException(
+						"Interrupted while reading a model file.");
+			} catch (ExecutionException ex) {
+				_block = -1;
+				throw new IOException("Failed to read a model file.",
+						ex.getCause());
+			} finally {
+				_reads.clear();
+			}
+			_rowR = view(0).asDoubleBuffer();
+			_tprobs = view(1).asDoubleBuffer();
+			_stateRows = view(2).asIntBuffer();
+			_rowEntries = view(3).asIntBuffer();
+			_successors = view(4).asIntBuffer();
+			_durations = _header.hasDurations() ? view(5).asIntBuffer()
+					: null;
+		}
+
+		private ByteBuffer view(int i) {
+			ByteBuffer region = _regions[i].duplicate().order(
+					ByteOrder.LITTLE_ENDIAN);
+			region.flip();
+			return region;
+		}
+
+		/**
+		 * Returns the first state of this block.
+		 * 
+		 * @return the index of the first state
+		 */
+		public int stateBegin() {
+			return _stateBegin;
+		}
+
+		/**
+		 * Returns one past the last state of this block.
+		 * 
+		 * @return one past the index of the last state
+		 */
+		public int stateEnd() {
+			return _stateEnd;
+		}
+
+		/**
+		 * Returns the first row of a state in this block.
+		 * 
+		 * @param state
+		 *            a state index in [stateBegin(), stateEnd())
+		 * @return the index of the first row of <code>state</code>
+		 */
+		public int rowBegin(int state) {
+			return _stateRows.get(state - _stateBegin);
+		}
+
+		/**
+		 * Returns one past the last row of a state in this block.
+		 * 
+		 * @param state
+		 *            a state index in [stateBegin(), stateEnd())
+		 * @return one past the index of the last row of <code>state</code>
+		 */
+		public int rowEnd(int state) {
+			return _stateRows.get(state - _stateBegin + 1);
+		}
+
+		/**
+		 * Returns the expected immediate reinforcement of a row.
+		 * 
+		 * @param row
+		 *            a row of a state in this block
+		 * @return the expected reinforcement of the state-action pair
+		 */
+		public double r(int row) {
+			return _rowR.get(row - _rowBase);
+		}
+
+		/**
+		 * Returns the first entry of a row.
+		 * 
+		 * @param row
+		 *            a row of a state in this block
+		 * @return the index of the first entry of <code>row</code>
+		 */
+		public int entryBegin(int row) {
+			return _rowEntries.get(row - _rowBase);
+		}
+
+		/**
+		 * Returns one past the last entry of a row.
+		 * 
+		 * @param row
+		 *            a row of a state in this block
+		 * @return one past the index of the last entry of <code>row</code>
+		 */
+		public int entryEnd(int row) {
+			return _rowEntries.get(row - _rowBase + 1);
+		}
+
+		/**
+		 * Returns the successor state index of an entry.
+		 * 
+		 * @param entry
+		 *            an entry of a row in this block
+		 * @return the index of the successor state
+		 */
+		public int successor(int entry) {
+			return _successors.get(entry - _entryBase);
+		}
+
+		/**
+		 * Returns the duration of an entry.
+		 * 
+		 * @param entry
+		 *            an entry of a row in this block
+		 * @return the duration of the entry
+		 */
+		public int duration(int entry) {
+			return (_durations == null) ? 1 : _durations.get(entry
+					- _entryBase);
+		}
+
+		/**
+		 * Returns the undiscounted transition probability of an entry.
+		 * 
+		 * @param entry
+		 *            an entry of a row in this block
+		 * @return the probability of the entry
+		 */
+		public double tprob(int entry) {
+			return _tprobs.get(entry - _entryBase);
+		}
+
+		/**
+		 * Returns the expected discounted return of a row with respect to a
+		 * state-value function. This method performs no allocation.
+		 * 
+		 * @param row
+		 *            a row of a state in this block
+		 * @param values
+		 *            the value of each state
+		 * @param discounts
+		 *            the table returned by
+		 *            {@link ModelStream#discounts(DiscountFactor)}
+		 * @return the action-value of the row
+		 */
+		public double qvalue(int row, double[] values, double[] discounts) {
+			int local = row - _rowBase;
+			double q = _rowR.get(local);
+			int entryBegin = _rowEntries.get(local) - _entryBase;
+			int entryEnd = _rowEntries.get(local + 1) - _entryBase;
+			for (int e = entryBegin; e < entryEnd; e++) {
+				int d = (_durations == null) ? 1 : _durations.get(e);
+				q += _tprobs.get(e) * discounts[d]
+						* values[_successors.get(e)];
+			}
+			return q;
+		}
+
+		/**
+		 * Returns the greedy Bellman backup of a state with respect to a
+		 * state-value function, or 0 if the state has no valid actions. This
+		 * method performs no allocation.
+		 * 
+		 * @param state
+		 *            a state index in [stateBegin(), stateEnd())
+		 * @param values
+		 *            the value of each state
+		 * @param discounts
+		 *            the table returned by
+		 *            {@link ModelStream#discounts(DiscountFactor)}
+		 * @return the new value of the state
+		 */
+		public double backup(int state, double[] values, double[] discounts) {
+			Optimization opType = _header.opType();
+			int rowBegin = rowBegin(state);
+			int rowEnd = rowEnd(state);
+			double best = 0;
+			for (int row = rowBegin; row < rowEnd; row++) {
+				double q = qvalue(row, values, discounts);
+				if (row == rowBegin || opType.firstIsBetter(q, best)) {
+					best = q;
+				}
+			}
+			return best;
+		}
+	}
+
+	/**
+	 * Reads the integers of a column sequentially through a buffer.
+	 */
+	private static class ColumnReader {
+		private final FileChannel channel;
+		private final ByteBuffer buffer;
+		private long position;
+
+		public ColumnReader(FileChannel channel, long position) {
+			this.channel = channel;
+			this.position = position;
+			buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.flip();
+		}
+
+		public int next() throws IOException {
+			if (buffer.remaining() < 4) {
+				buffer.compact();
+				int n = channel.read(buffer, position);
+				if (n < 0) {
+					throw new IOException("Unexpected end of model file.");
+				}
+				position += n;
+				buffer.flip();
+				if (buffer.remaining() < 4) {
+					return next();
+				}
+			}
+			return buffer.getInt();
+		}
+	}
+}
@@ -0,0 +1,160 @@
+/**
+	OffHeapArena.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.compiled;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Owns a group of {@link OffHeapArray}s and frees all of them at once when it
+ * is closed, so the lifetime of off-heap models and value functions can be
+ * scoped with a try-with-resources statement:
+ * 
+ * <pre>
+ * try (OffHeapArena arena = new OffHeapArena()) {
+ * 	CompiledSMDP&lt;Integer, Integer&gt; model = CompiledSMDP.of(smdp, arena);
+ * 	...
+ * }
+ * </pre>
+ * 
+ * Accessing an array after its arena is closed throws an
+ * {@link IllegalStateException} in the thread that closed it and in threads
+ * that synchronize with that thread after the close (for example by joining
+ * it). An arena is not thread-safe, and it must not be closed while other
+ * threads may still access its arrays (see {@link #close()}).
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+public class OffHeapArena implements AutoCloseable {
+
+	private List<OffHeapArray> _arrays;
+	private long _bytes;
+	private boolean _closed;
+
+	public OffHeapArena() {
+		_arrays = new ArrayList<OffHeapArray>();
+		_bytes = 0;
+		_closed = false;
+	}
+
+	/**
+	 * Allocates a zero-filled off-heap array of <code>int</code> values.
+	 * 
+	 * @param length
+	 *            the number of elements
+	 * @return a new array owned by this arena
+	 */
+	public OffHeapIntArray allocateInts(long length) {
+		checkAlive();
+		OffHeapIntArray array = new OffHeapIntArray(length);
+		register(array, 4L * length);
+		return array;
+	}
+
+	/**
+	 * Allocates a zero-filled off-heap array of <code>double</code> values.
+	 * 
+	 * @param length
+	 *            the number of elements
+	 * @return a new array owned by this arena
+	 */
+	public OffHeapDoubleArray allocateDoubles(long length) {
+		checkAlive();
+		OffHeapDoubleArray array = new OffHeapDoubleArray(length);
+		register(array, 8L * length);
+		return array;
+	}
+
+	/**
+	 * Returns the number of bytes allocated or mapped by this arena that have
+	 * not been freed.
+	 * 
+	 * @return the number of allocated bytes
+	 */
+	public long bytesAllocated() {
+		return _bytes;
+	}
+
+	/**
+	 * Returns true if this arena has not been closed.
+	 * 
+	 * @return true if this arena can allocate arrays; otherwise false
+	 */
+	public boolean isAlive() {
+		return !_closed;
+	}
+
+	/**
+	 * Frees every array allocated by this arena. Closing an arena more than
+	 * once has no effect.
+	 * <p>
+	 * Precondition: no other thread is reading or writing an array of this
+	 * arena, or will do so without first synchronizing with the closing
+	 * thread. The arrays do not use volatile fields or locks on their access
+	 * path, so a concurrent access is not guaranteed to see that the arena was
+	 * closed, and it may read memory that was already returned to the
+	 * operating system, which can crash the JVM. Solvers that share an
+	 * off-heap model or value function across worker threads must finish (or
+	 * be joined) before the arena is closed.
+	 * </p>
+	 */
+	@Override
+	public void close() {
+		if (_closed) {
+			return;
+		}
+		_closed = true;
+		for (OffHeapArray array : _arrays) {
+			array.release();
+		}
+		_arrays.clear();
+		_bytes = 0;
+	}
+
+	/**
+	 * Takes ownership of an array whose buffers were created elsewhere, such
+	 * as memory-mapped regions of a file.
+	 */
+	void adopt(OffHeapArray array, long bytes) {
+		checkAlive();
+		register(array, bytes);
+	}
+
+	private void register(OffHeapArray array, long bytes) {
+		_arrays.add(array);
+		_bytes += bytes;
+	}
+
+	private void checkAlive() {
+		if (_closed) {
+			throw new IllegalStateException(
+					"Cannot allocate from a closed arena.");
+		}
+	}
+}
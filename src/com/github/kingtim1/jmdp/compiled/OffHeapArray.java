@@ -0,0 +1,174 @@
+/**
+	OffHeapArray.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.compiled;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A fixed-length array stored outside of the Java heap and indexed by longs,
+ * so that it can hold more than 2<sup>31</sup> elements. The memory is split
+ * into direct buffers of at most {@link #CHUNK_SIZE} elements in the native
+ * byte order (or in the byte order of the file for arrays mapped by
+ * {@link ModelFile}). Off-heap arrays are created by an {@link OffHeapArena}
+ * and remain valid until the arena is closed. Every access after that throws
+ * an {@link IllegalStateException}.
+ * <p>
+ * Off-heap memory is not scanned or copied by the garbage collector, but it
+ * counts toward the limit set by <code>-XX:MaxDirectMemorySize</code> (which
+ * defaults to the maximum heap size).
+ * </p>
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+public abstract class OffHeapArray {
+
+	/**
+	 * The base 2 logarithm of {@link #CHUNK_SIZE}.
+	 */
+	public static final int CHUNK_BITS = 27;
+
+	/**
+	 * The number of elements stored in each direct buffer.
+	 */
+	public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+	static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private static final Object UNSAFE;
+	private static final Method INVOKE_CLEANER;
+
+	static {
+		Object unsafe = null;
+		Method invokeCleaner = null;
+		try {
+			Class<?> c = Class.forName("sun.misc.Unsafe");
+			Field f = c.getDeclaredField("theUnsafe");
+			f.setAccessible(true);
+			unsafe = f.get(null);
+			invokeCleaner = c.getMethod("invokeCleaner", ByteBuffer.class);
+		} catch (Exception ex) {
+			// The buffers will be freed by the garbage collector instead
+			unsafe = null;
+			invokeCleaner = null;
+		}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+
+	private long _length;
+	private ByteBuffer[] _buffers;
+
+	/**
+	 * Wraps buffers that were allocated elsewhere (such as memory-mapped
+	 * regions of a file). Every buffer except the last must hold exactly
+	 * {@link #CHUNK_SIZE} elements.
+	 */
+	OffHeapArray(long length, ByteBuffer[] buffers) {
+		_length = length;
+		_buffers = buffers;
+	}
+
+	OffHeapArray(long length, int elementBytes) {
+		if (length < 0) {
+			throw new IllegalArgumentException(
+					"Expected non-negative length. Found " + length + ".");
+		}
+		_length = length;
+		int numChunks = (int) ((length + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+		_buffers = new ByteBuffer[numChunks];
+		try {
+			for (int c = 0; c < numChunks; c++) {
+				long remaining = length - ((long) c << CHUNK_BITS);
+				int size = (int) Math.min(CHUNK_SIZE, remaining);
+				_buffers[c] = ByteBuffer.allocateDirect(size * elementBytes)
+						.order(ByteOrder.nativeOrder());
+			}
+		} catch (OutOfMemoryError ex) {
+			release();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Returns the number of elements in this array.
+	 * 
+	 * @return the length of this array
+	 */
+	public long length() {
+		return _length;
+	}
+
+	/**
+	 * Returns true until the arena that allocated this array is closed.
+	 * 
+	 * @return true if this array can be accessed; otherwise false
+	 */
+	public boolean isAlive() {
+		return _buffers != null;
+	}
+
+	ByteBuffer[] buffers() {
+		return _buffers;
+	}
+
+	/**
+	 * Invalidates the typed views of the buffers.
+	 */
+	abstract void invalidate();
+
+	/**
+	 * Invalidates this array and frees its memory.
+	 */
+	void release() {
+		ByteBuffer[] buffers = _buffers;
+		_buffers = null;
+		invalidate();
+		if (buffers == null || INVOKE_CLEANER == null) {
+			return;
+		}
+		for (ByteBuffer b : buffers) {
+			if (b == null) {
+				continue;
+			}
+			try {
+				INVOKE_CLEANER.invoke(UNSAFE, b);
+			} catch (Exception ex) {
+				// Leave the buffer to the garbage collector
+			}
+		}
+	}
+
+	static IllegalStateException closed() {
+		return new IllegalStateException(
+				"Cannot access an off-heap array after its arena is closed.");
+	}
+}
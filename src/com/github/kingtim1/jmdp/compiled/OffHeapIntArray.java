@@ -0,0 +1,173 @@
+/**
+	OffHeapIntArray.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.compiled;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * An off-heap array of <code>int</code> values (see {@link OffHeapArray}).
+ * New arrays are filled with zeros.
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+public final class OffHeapIntArray extends OffHeapArray {
+
+	private IntBuffer[] _chunks;
+	private IntBuffer _single;
+
+	OffHeapIntArray(long length) {
+		super(length, 4);
+		init();
+	}
+
+	OffHeapIntArray(long length, ByteBuffer[] buffers) {
+		super(length, buffers);
+		init();
+	}
+
+	private void init() {
+		_chunks = new IntBuffer[buffers().length];
+		for (int c = 0; c < _chunks.length; c++) {
+			_chunks[c] = buffers()[c].asIntBuffer();
+		}
+		// Arrays that fit in one chunk skip the chunk lookup
+		_single = (_chunks.length == 1) ? _chunks[0] : null;
+	}
+
+	/**
+	 * Returns an element of this array.
+	 * 
+	 * @param index
+	 *            an index in <code>[0, length())</code>
+	 * @return the element at <code>index</code>
+	 */
+	public int get(long index) {
+		IntBuffer single = _single;
+		if (single != null && (index >>> CHUNK_BITS) == 0) {
+			return single.get((int) index);
+		}
+		return chunks()[(int) (index >>> CHUNK_BITS)].get((int) index
+				& CHUNK_MASK);
+	}
+
+	/**
+	 * Sets an element of this array.
+	 * 
+	 * @param index
+	 *            an index in <code>[0, length())</code>
+	 * @param value
+	 *            the new value of the element
+	 */
+	public void set(long index, int value) {
+		IntBuffer single = _single;
+		if (single != null && (index >>> CHUNK_BITS) == 0) {
+			single.put((int) index, value);
+			return;
+		}
+		chunks()[(int) (index >>> CHUNK_BITS)].put((int) index & CHUNK_MASK,
+				value);
+	}
+
+	/**
+	 * Copies a range of a heap array into this array.
+	 * 
+	 * @param src
+	 *            the source array
+	 * @param srcOffset
+	 *            the first element of <code>src</code> to copy
+	 * @param index
+	 *            the index of this array receiving the first element
+	 * @param count
+	 *            the number of elements to copy
+	 */
+	public void copyFrom(int[] src, int srcOffset, long index, int count) {
+		IntBuffer[] chunks = chunks();
+		if (index < 0 || count < 0 || index + count > length()) {
+			throw new IndexOutOfBoundsException("Expected a range within [0, "
+					+ length() + "). Found [" + index + ", " + (index + count)
+					+ ").");
+		}
+		while (count > 0) {
+			int offset = (int) index & CHUNK_MASK;
+			int n = Math.min(count, CHUNK_SIZE - offset);
+			IntBuffer chunk = chunks[(int) (index >>> CHUNK_BITS)].duplicate();
+			chunk.position(offset);
+			chunk.put(src, srcOffset, n);
+			srcOffset += n;
+			index += n;
+			count -= n;
+		}
+	}
+
+	/**
+	 * Copies a range of this array into a heap array.
+	 * 
+	 * @param index
+	 *            the index of the first element to copy
+	 * @param dst
+	 *            the destination array
+	 * @param dstOffset
+	 *            the element of <code>dst</code> receiving the first element
+	 * @param count
+	 *            the number of elements to copy
+	 */
+	public void copyTo(long index, int[] dst, int dstOffset, int count) {
+		IntBuffer[] chunks = chunks();
+		if (index < 0 || count < 0 || index + count > length()) {
+			throw new IndexOutOfBoundsException("Expected a range within [0, "
+					+ length() + "). Found [" + index + ", " + (index + count)
+					+ ").");
+		}
+		while (count > 0) {
+			int offset = (int) index & CHUNK_MASK;
+			int n = Math.min(count, CHUNK_SIZE - offset);
+			IntBuffer chunk = chunks[(int) (index >>> CHUNK_BITS)].duplicate();
+			chunk.position(offset);
+			chunk.get(dst, dstOffset, n);
+			dstOffset += n;
+			index += n;
+			count -= n;
+		}
+	}
+
+	private IntBuffer[] chunks() {
+		IntBuffer[] chunks = _chunks;
+		if (chunks == null) {
+			throw closed();
+		}
+		return chunks;
+	}
+
+	@Override
+	void invalidate() {
+		_chunks = null;
+		_single = null;
+	}
+}
@@ -0,0 +1,74 @@
+/**
+	Reordering.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.compiled;
+
+/**
+ * The state orderings that a solver can apply to a compiled model before
+ * sweeping it (see {@link StateOrdering}). Breadth-first ordering is the
+ * cheaper of the two and placed successors at least as well as reverse
+ * Cuthill-McKee on the grid, DAG and random models of the
+ * <code>StateOrderingBenchmark</code>.
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+public enum Reordering {
+	/**
+	 * Keep the order of {@link com.github.kingtim1.jmdp.FiniteStateSMDP#states()}.
+	 */
+	NONE,
+	/**
+	 * Number the states in breadth-first order (see
+	 * {@link StateOrdering#breadthFirst(CompiledSMDP)}).
+	 */
+	BREADTH_FIRST,
+	/**
+	 * Number the states in reverse Cuthill-McKee order (see
+	 * {@link StateOrdering#reverseCuthillMcKee(CompiledSMDP)}).
+	 */
+	REVERSE_CUTHILL_MCKEE;
+
+	/**
+	 * Returns a model whose states are numbered by this ordering.
+	 * 
+	 * @param model
+	 *            a compiled model
+	 * @return the reordered model (or <code>model</code> itself for
+	 *         {@link #NONE})
+	 */
+	public <S, A> CompiledSMDP<S, A> apply(CompiledSMDP<S, A> model) {
+		switch (this) {
+		case BREADTH_FIRST:
+			return StateOrdering.breadthFirst(model).apply(model);
+		case REVERSE_CUTHILL_MCKEE:
+			return StateOrdering.reverseCuthillMcKee(model).apply(model);
+		default:
+			return model;
+		}
+	}
+}
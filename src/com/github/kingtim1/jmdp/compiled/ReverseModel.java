@@ -0,0 +1,119 @@
+/**
+	ReverseModel.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.compiled;
+
+/**
+ * The reverse adjacency of a {@link CompiledSMDP}: for each state, the rows
+ * that reach it with positive probability. Algorithms that only update the
+ * states affected by a change use it to find the predecessors of a state.
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+public class ReverseModel {
+
+	private int[] _rowState;
+	private int[] _predBegin;
+	private int[] _predRows;
+
+	/**
+	 * Constructs the reverse adjacency of a compiled model.
+	 * 
+	 * @param model
+	 *            a compiled model
+	 */
+	public ReverseModel(CompiledSMDP<?, ?> model) {
+		int n = model.numberOfStates();
+		_rowState = new int[model.numberOfRows()];
+		_predBegin = new int[n + 1];
+		for (int s = 0; s < n; s++) {
+			for (int row = model.rowBegin(s); row < model.rowEnd(s); row++) {
+				_rowState[row] = s;
+				for (int e = model.entryBegin(row); e < model.entryEnd(row); e++) {
+					_predBegin[model.successor(e) + 1]++;
+				}
+			}
+		}
+		for (int s = 0; s < n; s++) {
+			_predBegin[s + 1] += _predBegin[s];
+		}
+		int[] fill = _predBegin.clone();
+		_predRows = new int[_predBegin[n]];
+		for (int row = 0; row < _rowState.length; row++) {
+			for (int e = model.entryBegin(row); e < model.entryEnd(row); e++) {
+				_predRows[fill[model.successor(e)]++] = row;
+			}
+		}
+	}
+
+	/**
+	 * Returns the state that a row belongs to.
+	 * 
+	 * @param row
+	 *            a row
+	 * @return the state index of the row
+	 */
+	public int state(int row) {
+		return _rowState[row];
+	}
+
+	/**
+	 * Returns the first index into {@link #predecessor(int)} for a state.
+	 * 
+	 * @param state
+	 *            a state index
+	 * @return the first predecessor index of the state
+	 */
+	public int predBegin(int state) {
+		return _predBegin[state];
+	}
+
+	/**
+	 * Returns the end index into {@link #predecessor(int)} for a state.
+	 * 
+	 * @param state
+	 *            a state index
+	 * @return the exclusive end predecessor index of the state
+	 */
+	public int predEnd(int state) {
+		return _predBegin[state + 1];
+	}
+
+	/**
+	 * Returns a row that reaches a state. A row appears once per entry, so it
+	 * may appear more than once for the same state.
+	 * 
+	 * @param k
+	 *            a predecessor index
+	 * @return a row
+	 */
+	public int predecessor(int k) {
+		return _predRows[k];
+	}
+}
@@ -0,0 +1,285 @@
+/**
+	StateAggregation.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.compiled;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * A hierarchy of state aggregations of a compiled SMDP. Level 0 contains the
+ * states of the model. Each further level partitions the states of the level
+ * above it into aggregates, so level <code>l + 1</code> has one state per
+ * aggregate of level <code>l</code>.
+ * </p>
+ * 
+ * <p>
+ * A hierarchy can be supplied by the user (as one aggregate map per level) or
+ * computed automatically with {@link #pairwise(CompiledSMDP, int)}.
+ * </p>
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+public class StateAggregation {
+
+	private int[] _sizes;
+	private int[][] _maps;
+
+	/**
+	 * Constructs a hierarchy of aggregations from one aggregate map per level.
+	 * The map of level <code>l</code> assigns each state of level
+	 * <code>l</code> to an aggregate index. The aggregate indices of a level
+	 * must be 0, 1, ..., m - 1 with every index used at least once.
+	 * 
+	 * @param numberOfStates
+	 *            the number of states at level 0
+	 * @param maps
+	 *            the aggregate map of each level
+	 */
+	public StateAggregation(int numberOfStates, List<int[]> maps) {
+		if (maps == null) {
+			throw new NullPointerException("Aggregate maps cannot be null.");
+		}
+		_sizes = new int[maps.size() + 1];
+		_maps = new int[maps.size()][];
+		_sizes[0] = numberOfStates;
+		for (int l = 0; l < maps.size(); l++) {
+			int[] map = maps.get(l);
+			if (map == null || map.length != _sizes[l]) {
+				throw new IllegalArgumentException("Expected an aggregate map of length "
+						+ _sizes[l] + " at level " + l + ". Found "
+						+ (map == null ? null : map.length) + ".");
+			}
+			int m = 0;
+			for (int s = 0; s < map.length; s++) {
+				if (map[s] < 0) {
+					throw new IllegalArgumentException(
+							"Expected nonnegative aggregate indices. Found "
+									+ map[s] + ".");
+				}
+				m = Math.max(m, map[s] + 1);
+			}
+			boolean[] used = new boolean[m];
+			for (int s = 0; s < map.length; s++) {
+				used[map[s]] = true;
+			}
+			for (int i = 0; i < m; i++) {
+				if (!used[i]) {
+					throw new IllegalArgumentException("Aggregate " + i
+							+ " at level " + l + " is empty.");
+				}
+			}
+			_maps[l] = map.clone();
+			_sizes[l + 1] = m;
+		}
+	}
+
+	/**
+	 * Returns the number of levels including level 0.
+	 * 
+	 * @return the number of levels
+	 */
+	public int numberOfLevels() {
+		return _sizes.length;
+	}
+
+	/**
+	 * Returns the number of states at a level.
+	 * 
+	 * @param level
+	 *            a level
+	 * @return the number of states at the level
+	 */
+	public int numberOfStates(int level) {
+		return _sizes[level];
+	}
+
+	/**
+	 * Returns the aggregate that a state of a level belongs to. The aggregate
+	 * is a state of the next level.
+	 * 
+	 * @param level
+	 *            a level other than the last
+	 * @param state
+	 *            the index of a state at the level
+	 * @return the index of its aggregate at <code>level + 1</code>
+	 */
+	public int aggregate(int level, int state) {
+		return _maps[level][state];
+	}
+
+	/**
+	 * Returns a copy of the aggregate map of a level.
+	 * 
+	 * @param level
+	 *            a level other than the last
+	 * @return the aggregate of every state of the level
+	 */
+	public int[] aggregates(int level) {
+		return _maps[level].clone();
+	}
+
+	/**
+	 * Constructs a single-level aggregation from a user-supplied assignment of
+	 * states to aggregates.
+	 * 
+	 * @param model
+	 *            a compiled SMDP
+	 * @param aggregates
+	 *            the aggregate index of every state of <code>model</code>
+	 * @return the aggregation
+	 */
+	public static <S> StateAggregation fromMap(CompiledSMDP<S, ?> model,
+			Map<S, Integer> aggregates) {
+		int[] map = new int[model.numberOfStates()];
+		for (int s = 0; s < map.length; s++) {
+			Integer a = aggregates.get(model.state(s));
+			if (a == null) {
+				throw new IllegalArgumentException(
+						"Expected an aggregate for every state. Found none for "
+								+ model.state(s) + ".");
+			}
+			map[s] = a.intValue();
+		}
+		List<int[]> maps = new ArrayList<int[]>(1);
+		maps.add(map);
+		return new StateAggregation(map.length, maps);
+	}
+
+	/**
+	 * Computes a hierarchy by repeated pairwise aggregation. At each level,
+	 * every state that is not yet matched is paired with the unmatched
+	 * neighbor it is most strongly coupled to, where the coupling of two
+	 * states is the transition probability between them (in either direction)
+	 * averaged over the actions. Levels are added until at most
+	 * <code>coarsestSize</code> states remain or no more pairs can be formed.
+	 * 
+	 * @param model
+	 *            a compiled SMDP
+	 * @param coarsestSize
+	 *            the size below which no further level is added
+	 * @return the aggregation hierarchy
+	 */
+	public static StateAggregation pairwise(CompiledSMDP<?, ?> model,
+			int coarsestSize) {
+		int n = model.numberOfStates();
+		int numEdges = 0;
+		int[] src = new int[Math.max(1, model.numberOfEntries())];
+		int[] dst = new int[src.length];
+		double[] weight = new double[src.length];
+		for (int s = 0; s < n; s++) {
+			int rowBegin = model.rowBegin(s);
+			int rowEnd = model.rowEnd(s);
+			for (int row = rowBegin; row < rowEnd; row++) {
+				int entryEnd = model.entryEnd(row);
+				for (int e = model.entryBegin(row); e < entryEnd; e++) {
+					int t = model.successor(e);
+					if (t != s) {
+						src[numEdges] = s;
+						dst[numEdges] = t;
+						weight[numEdges] = model.tprob(e) / (rowEnd - rowBegin);
+						numEdges++;
+					}
+				}
+			}
+		}
+
+		List<int[]> maps = new ArrayList<int[]>();
+		while (n > coarsestSize && numEdges > 0) {
+			// Symmetric adjacency lists in CSR form
+			int[] begin = new int[n + 1];
+			for (int k = 0; k < numEdges; k++) {
+				begin[src[k] + 1]++;
+				begin[dst[k] + 1]++;
+			}
+			for (int s = 0; s < n; s++) {
+				begin[s + 1] += begin[s];
+			}
+			int[] fill = begin.clone();
+			int[] adj = new int[2 * numEdges];
+			double[] adjWeight = new double[2 * numEdges];
+			for (int k = 0; k < numEdges; k++) {
+				adj[fill[src[k]]] = dst[k];
+				adjWeight[fill[src[k]]++] = weight[k];
+				adj[fill[dst[k]]] = src[k];
+				adjWeight[fill[dst[k]]++] = weight[k];
+			}
+
+			int[] map = new int[n];
+			Arrays.fill(map, -1);
+			double[] coupling = new double[n];
+			int m = 0;
+			for (int s = 0; s < n; s++) {
+				if (map[s] >= 0) {
+					continue;
+				}
+				for (int k = begin[s]; k < begin[s + 1]; k++) {
+					coupling[adj[k]] += adjWeight[k];
+				}
+				int best = -1;
+				for (int k = begin[s]; k < begin[s + 1]; k++) {
+					int t = adj[k];
+					if (map[t] < 0 && (best < 0 || coupling[t] > coupling[best])) {
+						best = t;
+					}
+				}
+				for (int k = begin[s]; k < begin[s + 1]; k++) {
+					coupling[adj[k]] = 0;
+				}
+				map[s] = m;
+				if (best >= 0) {
+					map[best] = m;
+				}
+				m++;
+			}
+			if (m == n) {
+				break;
+			}
+			maps.add(map);
+
+			int kept = 0;
+			for (int k = 0; k < numEdges; k++) {
+				int a = map[src[k]];
+				int b = map[dst[k]];
+				if (a != b) {
+					src[kept] = a;
+					dst[kept] = b;
+					weight[kept] = weight[k];
+					kept++;
+				}
+			}
+			numEdges = kept;
+			n = m;
+		}
+		return new StateAggregation(model.numberOfStates(), maps);
+	}
+}
@@ -0,0 +1,329 @@
+/**
+	StateOrdering.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.compiled;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A permutation of the state indices of a compiled SMDP. A sweep over a
+ * compiled model reads the values of the successors of each state, so it is
+ * cheapest when the successors of a state have indices close to the index of
+ * the state. Models compiled from states returned in hash order have no such
+ * locality, and a sweep over a model that does not fit in the processor caches
+ * then misses the cache on almost every entry.
+ * </p>
+ * 
+ * <p>
+ * {@link #reverseCuthillMcKee(CompiledSMDP)} and
+ * {@link #breadthFirst(CompiledSMDP)} compute orderings that place connected
+ * states near each other, and {@link #apply(CompiledSMDP)} builds the
+ * reordered model. The reordered model has the same states as the original
+ * model (only their indices change), so value functions and action-value
+ * functions computed from it are looked up by state exactly like those of the
+ * original model. Arrays indexed by state index can be moved between the two
+ * orders with {@link #toOriginal(double[])} and
+ * {@link #toReordered(double[])}.
+ * </p>
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+public class StateOrdering {
+
+	private int[] _order;
+	private int[] _inverse;
+
+	/**
+	 * Constructs an ordering from a permutation of the state indices.
+	 * 
+	 * @param order
+	 *            <code>order[i]</code> is the original index of the state that
+	 *            receives index <code>i</code>
+	 */
+	public StateOrdering(int[] order) {
+		if (order == null) {
+			throw new NullPointerException("The order cannot be null.");
+		}
+		_order = order.clone();
+		_inverse = new int[order.length];
+		Arrays.fill(_inverse, -1);
+		for (int i = 0; i < order.length; i++) {
+			int s = order[i];
+			if (s < 0 || s >= order.length || _inverse[s] >= 0) {
+				throw new IllegalArgumentException(
+						"Expected a permutation of 0, 1, ..., "
+								+ (order.length - 1) + ". Found " + s
+								+ " at position " + i + ".");
+			}
+			_inverse[s] = i;
+		}
+	}
+
+	/**
+	 * Computes the reverse Cuthill-McKee ordering of the states of a model.
+	 * The transitions are treated as an undirected graph. Each connected
+	 * component is traversed breadth-first from its state of smallest degree,
+	 * visiting the neighbors of a state in order of increasing degree, and the
+	 * resulting order is reversed. The ordering keeps the bandwidth of the
+	 * transition graph (the largest distance between the indices of a state
+	 * and a successor) small.
+	 * 
+	 * @param model
+	 *            a compiled model
+	 * @return the reverse Cuthill-McKee ordering of the states of the model
+	 */
+	public static StateOrdering reverseCuthillMcKee(CompiledSMDP<?, ?> model) {
+		int n = model.numberOfStates();
+		int[] begin = new int[n + 1];
+		for (int s = 0; s < n; s++) {
+			for (int e = model.entryBegin(model.rowBegin(s)); e < model
+					.entryBegin(model.rowEnd(s)); e++) {
+				int t = model.successor(e);
+				if (t != s) {
+					begin[s + 1]++;
+					begin[t + 1]++;
+				}
+			}
+		}
+		for (int s = 0; s < n; s++) {
+			begin[s + 1] += begin[s];
+		}
+		int[] fill = Arrays.copyOf(begin, n);
+		int[] neighbors = new int[begin[n]];
+		for (int s = 0; s < n; s++) {
+			for (int e = model.entryBegin(model.rowBegin(s)); e < model
+					.entryBegin(model.rowEnd(s)); e++) {
+				int t = model.successor(e);
+				if (t != s) {
+					neighbors[fill[s]++] = t;
+					neighbors[fill[t]++] = s;
+				}
+			}
+		}
+
+		// Sort states by degree so that each component starts at the state of
+		// smallest degree that has not been visited yet
+		long[] keys = new long[n];
+		for (int s = 0; s < n; s++) {
+			keys[s] = key(begin[s + 1] - begin[s], s);
+		}
+		long[] starts = keys.clone();
+		Arrays.sort(starts);
+
+		int[] order = new int[n];
+		boolean[] visited = new boolean[n];
+		int head = 0;
+		int tail = 0;
+		for (int k = 0; k < n; k++) {
+			int start = (int) starts[k];
+			if (visited[start]) {
+				continue;
+			}
+			visited[start] = true;
+			order[tail++] = start;
+			while (head < tail) {
+				int s = order[head++];
+				int first = tail;
+				for (int j = begin[s]; j < begin[s + 1]; j++) {
+					int t = neighbors[j];
+					if (!visited[t]) {
+						visited[t] = true;
+						keys[tail++] = key(begin[t + 1] - begin[t], t);
+					}
+				}
+				Arrays.sort(keys, first, tail);
+				for (int j = first; j < tail; j++) {
+					order[j] = (int) keys[j];
+				}
+			}
+		}
+
+		for (int i = 0, j = n - 1; i < j; i++, j--) {
+			int tmp = order[i];
+			order[i] = order[j];
+			order[j] = tmp;
+		}
+		return new StateOrdering(order);
+	}
+
+	private static long key(int degree, int state) {
+		return ((long) degree << 32) | state;
+	}
+
+	/**
+	 * Computes a breadth-first ordering of the states of a model. Starting
+	 * from the unvisited state with the smallest index, the states are
+	 * numbered in the order they are reached through the transitions of the
+	 * model. The ordering is cheaper to compute than
+	 * {@link #reverseCuthillMcKee(CompiledSMDP)} and places the successors of
+	 * a state next to each other.
+	 * 
+	 * @param model
+	 *            a compiled model
+	 * @return a breadth-first ordering of the states of the model
+	 */
+	public static StateOrdering breadthFirst(CompiledSMDP<?, ?> model) {
+		int n = model.numberOfStates();
+		int[] order = new int[n];
+		boolean[] visited = new boolean[n];
+		int head = 0;
+		int tail = 0;
+		for (int start = 0; start < n; start++) {
+			if (visited[start]) {
+				continue;
+			}
+			visited[start] = true;
+			order[tail++] = start;
+			while (head < tail) {
+				int s = order[head++];
+				for (int e = model.entryBegin(model.rowBegin(s)); e < model
+						.entryBegin(model.rowEnd(s)); e++) {
+					int t = model.successor(e);
+					if (!visited[t]) {
+						visited[t] = true;
+						order[tail++] = t;
+					}
+				}
+			}
+		}
+		return new StateOrdering(order);
+	}
+
+	/**
+	 * Returns the average distance between the index of a state and the
+	 * indices of its successors over all entries of a model. A smaller
+	 * distance means that a sweep touches fewer distinct cache lines of the
+	 * value array at a time.
+	 * 
+	 * @param model
+	 *            a compiled model
+	 * @return the average distance between the indices of states and their
+	 *         successors
+	 */
+	public static double averageSuccessorDistance(CompiledSMDP<?, ?> model) {
+		double sum = 0;
+		for (int s = 0; s < model.numberOfStates(); s++) {
+			for (int e = model.entryBegin(model.rowBegin(s)); e < model
+					.entryBegin(model.rowEnd(s)); e++) {
+				sum += Math.abs(model.successor(e) - s);
+			}
+		}
+		return sum / Math.max(1, model.numberOfEntries());
+	}
+
+	/**
+	 * Returns the number of states permuted by this ordering.
+	 * 
+	 * @return the number of states
+	 */
+	public int numberOfStates() {
+		return _order.length;
+	}
+
+	/**
+	 * Returns the original index of the state with a reordered index.
+	 * 
+	 * @param index
+	 *            a reordered state index
+	 * @return the original index of the state
+	 */
+	public int original(int index) {
+		return _order[index];
+	}
+
+	/**
+	 * Returns the reordered index of the state with an original index.
+	 * 
+	 * @param index
+	 *            an original state index
+	 * @return the reordered index of the state
+	 */
+	public int reordered(int index) {
+		return _inverse[index];
+	}
+
+	/**
+	 * Builds a copy of a model whose states are numbered by this ordering. The
+	 * copy is stored on the heap and contains the same states, actions, rows
+	 * and entries as the model.
+	 * 
+	 * @param model
+	 *            a compiled model
+	 * @return the reordered model
+	 */
+	public <S, A> CompiledSMDP<S, A> apply(CompiledSMDP<S, A> model) {
+		if (model.numberOfStates() != _order.length) {
+			throw new IllegalArgumentException("Expected a model with "
+					+ _order.length + " states. Found "
+					+ model.numberOfStates() + ".");
+		}
+		return model.permute(_order, _inverse);
+	}
+
+	/**
+	 * Moves an array indexed by reordered state indices (such as the values
+	 * computed from a reordered model) into the original order.
+	 * 
+	 * @param values
+	 *            an array indexed by reordered state indices
+	 * @return a new array indexed by original state indices
+	 */
+	public double[] toOriginal(double[] values) {
+		checkLength(values);
+		double[] result = new double[values.length];
+		for (int i = 0; i < values.length; i++) {
+			result[_order[i]] = values[i];
+		}
+		return result;
+	}
+
+	/**
+	 * Moves an array indexed by original state indices into the reordered
+	 * order.
+	 * 
+	 * @param values
+	 *            an array indexed by original state indices
+	 * @return a new array indexed by reordered state indices
+	 */
+	public double[] toReordered(double[] values) {
+		checkLength(values);
+		double[] result = new double[values.length];
+		for (int i = 0; i < values.length; i++) {
+			result[i] = values[_order[i]];
+		}
+		return result;
+	}
+
+	private void checkLength(double[] values) {
+		if (values.length != _order.length) {
+			throw new IllegalArgumentException("Expected an array of length "
+					+ _order.length + ". Found " + values.length + ".");
+		}
+	}
+}
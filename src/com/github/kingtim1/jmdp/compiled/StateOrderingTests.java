@@ -0,0 +1,108 @@
+/**
+	StateOrderingTests.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.compiled;
+
+import static com.github.kingtim1.jmdp.discounted.ClassicalMDPAlgorithmTests.vfuncsAreEqual;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.github.kingtim1.jmdp.BoxedSMDP;
+import com.github.kingtim1.jmdp.discounted.DiscountFactor;
+import com.github.kingtim1.jmdp.discounted.DiscountedVFunction;
+import com.github.kingtim1.jmdp.discounted.ValueIteration;
+import com.github.kingtim1.jmdp.lib.mdps.GridWorldMDP;
+import com.github.kingtim1.jmdp.lib.mdps.RandomSMDP;
+
+public class StateOrderingTests {
+
+	public static final DiscountFactor DF = new DiscountFactor(0.95);
+	public static final int VI_MAX_ITERATIONS = 100;
+	public static final double VALUE_EPSILON = 0.05;
+	public static final double CONVERGENCE_THRESHOLD = 0;
+
+	/**
+	 * Tests if models reordered by a {@link StateOrdering} back up the same
+	 * values as the original models and if the locality-improving orderings
+	 * recover the locality of a shuffled grid world.
+	 */
+	@Test
+	public void testReorderedModelsMatchCompiledModels() {
+		CompiledSMDP<Integer, Integer> grid = CompiledSMDP
+				.of(new GridWorldMDP(20, 20, 0.2, 0.1, 1));
+		int[] shuffle = new int[grid.numberOfStates()];
+		for (int i = 0; i < shuffle.length; i++) {
+			shuffle[i] = (int) ((7919L * i) % shuffle.length);
+		}
+		CompiledSMDP<Integer, Integer> shuffled = new StateOrdering(shuffle)
+				.apply(grid);
+		double distance = StateOrdering.averageSuccessorDistance(shuffled);
+		assertTrue(StateOrdering.averageSuccessorDistance(StateOrdering
+				.reverseCuthillMcKee(shuffled).apply(shuffled)) < distance / 4);
+		assertTrue(StateOrdering.averageSuccessorDistance(StateOrdering
+				.breadthFirst(shuffled).apply(shuffled)) < distance / 4);
+
+		CompiledSMDP<Integer, Integer> model = CompiledSMDP
+				.of(new RandomSMDP(100, 3, 5, 50, 1.5, 2));
+		double[] discounts = model.discounts(DF);
+		double[] values = new double[model.numberOfStates()];
+		for (int s = 0; s < values.length; s++) {
+			values[s] = s % 7;
+		}
+		for (StateOrdering ordering : new StateOrdering[] {
+				StateOrdering.reverseCuthillMcKee(model),
+				StateOrdering.breadthFirst(model) }) {
+			CompiledSMDP<Integer, Integer> reordered = ordering.apply(model);
+			double[] rvalues = ordering.toReordered(values);
+			double[] rdiscounts = reordered.discounts(DF);
+			assertArrayEquals(values, ordering.toOriginal(rvalues), 0);
+			for (int s = 0; s < values.length; s++) {
+				int i = ordering.reordered(s);
+				assertEquals(s, ordering.original(i));
+				assertEquals(model.state(s), reordered.state(i));
+				assertEquals(model.backup(s, values, discounts),
+						reordered.backup(i, rvalues, rdiscounts), 1e-12);
+			}
+		}
+
+		BoxedSMDP smdp = new BoxedSMDP(new RandomSMDP(100, 3, 5, 50, 1.5, 2));
+		ValueIteration<Integer, Integer> vi = new ValueIteration<Integer, Integer>(
+				smdp, DF, VI_MAX_ITERATIONS, CONVERGENCE_THRESHOLD);
+		vi.setCompiled(true);
+		DiscountedVFunction<Integer> expected = vi.run().greedy();
+		for (Reordering reordering : Reordering.values()) {
+			ValueIteration<Integer, Integer> rvi = new ValueIteration<Integer, Integer>(
+					smdp, DF, VI_MAX_ITERATIONS, CONVERGENCE_THRESHOLD);
+			rvi.setCompiled(true);
+			rvi.setReordering(reordering);
+			assertEquals(reordering, rvi.reordering());
+			assertTrue(vfuncsAreEqual(smdp.states(), expected, rvi.run()
+					.greedy(), VALUE_EPSILON));
+		}
+	}
+}
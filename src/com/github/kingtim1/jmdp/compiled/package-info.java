@@ -0,0 +1,8 @@
+/**
+ * Array-based representations of finite-state SMDPs for solvers that sweep the same model many times.
+ */
+/**
+ * @author Timothy A. Mann
+ *
+ */
+package com.github.kingtim1.jmdp.compiled;
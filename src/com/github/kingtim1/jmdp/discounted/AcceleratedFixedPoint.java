@@ -0,0 +1,387 @@
+/**
+	AcceleratedFixedPoint.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.discounted;
+
+import com.github.kingtim1.jmdp.SolverMonitor;
+import com.github.kingtim1.jmdp.metrics.MatrixFactorizationEvent;
+
+/**
+ * <p>
+ * Finds the fixed point of a (Jacobi) Bellman operator with Anderson mixing or
+ * Nesterov momentum. Subclasses define the operator.
+ * </p>
+ * 
+ * <p>
+ * Every iteration proposes an extrapolated estimate y from the current estimate
+ * x and its backup T(x), and computes T(y). The proposal is accepted only if
+ * its residual <code>||T(y) - y||</code> is smaller than the residual of x.
+ * Otherwise the iteration falls back to the plain Bellman step y = T(x) and the
+ * history (or momentum) is discarded. The residual of the accepted estimates
+ * therefore never increases, and a rejected proposal costs one extra backup.
+ * </p>
+ * 
+ * <p>
+ * Every iteration ends a sweep of the {@link SolverMonitor} given to the
+ * constructor. Subclasses count the work of their backups with
+ * {@link SolverMonitor#count(long, long)}.
+ * </p>
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+abstract class AcceleratedFixedPoint {
+
+	/**
+	 * The squared fraction of a history column that must lie outside the span
+	 * of the previous columns for the least-squares problem to be solved.
+	 */
+	private static final double SINGULARITY_THRESHOLD = 1e-24;
+
+	private Acceleration _acceleration;
+	private int _history;
+	private double _momentum;
+	private SolverMonitor _monitor;
+
+	private int _backups;
+	private int _rejections;
+
+	// Anderson history: differences of successive residuals and backups
+	private double[][] _dF;
+	private double[][] _dG;
+	private int _size;
+	private int _next;
+
+	// least-squares workspace: the QR factors of dF and the mixing weights
+	private double[][] _q;
+	private double[][] _r;
+	private double[] _c;
+
+	/**
+	 * Constructs an accelerated fixed-point solver.
+	 * 
+	 * @param acceleration
+	 *            {@link Acceleration#ANDERSON} or {@link Acceleration#NESTEROV}
+	 * @param history
+	 *            the number of previous iterations mixed by Anderson
+	 *            acceleration
+	 * @param momentum
+	 *            the momentum of Nesterov acceleration
+	 * @param monitor
+	 *            the monitor that receives a sweep after every iteration
+	 */
+	public AcceleratedFixedPoint(Acceleration acceleration, int history,
+			double momentum, SolverMonitor monitor) {
+		if (acceleration == null || acceleration.equals(Acceleration.NONE)) {
+			throw new IllegalArgumentException(
+					"Expected Anderson or Nesterov acceleration. Found "
+							+ acceleration + ".");
+		}
+		if (history < 1) {
+			throw new IllegalArgumentException(
+					"Expected a positive history length. Found " + history
+							+ ".");
+		}
+		_acceleration = acceleration;
+		_history = history;
+		_momentum = momentum;
+		_monitor = monitor;
+	}
+
+	/**
+	 * Computes the Bellman backup of every value.
+	 * 
+	 * @param values
+	 *            the current estimate (must not be modified)
+	 * @param result
+	 *            receives the backed up values
+	 */
+	protected abstract void backup(double[] values, double[] result);
+
+	/**
+	 * Returns the number of backups performed by the last call to
+	 * {@link #solve(double[], int, double)}.
+	 * 
+	 * @return the number of backups
+	 */
+	public int backups() {
+		return _backups;
+	}
+
+	/**
+	 * Returns the number of extrapolated estimates that were rejected by the
+	 * safeguard during the last call to {@link #solve(double[], int, double)}.
+	 * 
+	 * @return the number of rejected estimates
+	 */
+	public int rejections() {
+		return _rejections;
+	}
+
+	/**
+	 * Iterates from an initial estimate until the residual drops below a
+	 * threshold or the maximum number of backups is reached.
+	 * 
+	 * @param initial
+	 *            the initial estimate (not modified)
+	 * @param maxBackups
+	 *            the maximum number of backups
+	 * @param theta
+	 *            the convergence threshold on the residual
+	 * @return the backup of the final estimate
+	 */
+	public double[] solve(double[] initial, int maxBackups, double theta) {
+		int n = initial.length;
+		double[] x = initial.clone();
+		double[] gx = new double[n];
+		double[] y = new double[n];
+		double[] gy = new double[n];
+		double[] gPrev = null;
+
+		_dF = new double[_history][];
+		_dG = new double[_history][];
+		if (_acceleration.equals(Acceleration.ANDERSON)) {
+			_q = new double[_history][n];
+			_r = new double[_history][_history];
+			_c = new double[_history];
+		}
+		_size = 0;
+		_next = 0;
+		_rejections = 0;
+
+		backup(x, gx);
+		_backups = 1;
+		double res = distance(gx, x);
+		while (res >= theta && _backups < maxBackups) {
+			boolean extrapolated;
+			if (_acceleration.equals(Acceleration.ANDERSON)) {
+				extrapolated = anderson(x, gx, y);
+			} else {
+				extrapolated = nesterov(gx, gPrev, y);
+			}
+			backup(y, gy);
+			_backups++;
+			double resY = distance(gy, y);
+
+			if (extrapolated && !(resY < res)) {
+				_rejections++;
+				if (_backups >= maxBackups) {
+					break;
+				}
+				_size = 0;
+				gPrev = null;
+				System.arraycopy(gx, 0, y, 0, n);
+				backup(y, gy);
+				_backups++;
+				resY = distance(gy, y);
+			}
+
+			if (_acceleration.equals(Acceleration.ANDERSON)) {
+				remember(x, gx, y, gy);
+			} else {
+				if (gPrev == null) {
+					gPrev = new double[n];
+				}
+				System.arraycopy(gx, 0, gPrev, 0, n);
+			}
+
+			double[] tmp = x;
+			x = y;
+			y = tmp;
+			tmp = gx;
+			gx = gy;
+			gy = tmp;
+			res = resY;
+			_monitor.endSweep(res);
+		}
+
+		_dF = null;
+		_dG = null;
+		_q = null;
+		_r = null;
+		_c = null;
+		return gx;
+	}
+
+	/**
+	 * Proposes <code>T(x) + momentum * (T(x) - T(x'))</code>, where x' is the
+	 * previous estimate.
+	 */
+	private boolean nesterov(double[] gx, double[] gPrev, double[] y) {
+		if (gPrev == null) {
+			System.arraycopy(gx, 0, y, 0, gx.length);
+			return false;
+		}
+		for (int s = 0; s < y.length; s++) {
+			y[s] = gx[s] + _momentum * (gx[s] - gPrev[s]);
+		}
+		return true;
+	}
+
+	/**
+	 * Proposes the Anderson (type II) mixing <code>T(x) - dG * c</code>, where
+	 * c minimizes <code>||(T(x) - x) - dF * c||</code>. The least-squares
+	 * problem is solved by a modified Gram-Schmidt QR factorization of dF into
+	 * the workspace allocated by {@link #solve(double[], int, double)}, so an
+	 * iteration allocates no arrays.
+	 */
+	private boolean anderson(double[] x, double[] gx, double[] y) {
+		int n = x.length;
+		System.arraycopy(gx, 0, y, 0, n);
+		if (_size == 0) {
+			return false;
+		}
+
+		MatrixFactorizationEvent event = new MatrixFactorizationEvent();
+		event.begin();
+		boolean singular = !factor(n);
+		event.finish(AcceleratedFixedPoint.class, MatrixFactorizationEvent.QR,
+				n, _size, 0);
+		if (singular) {
+			_size = 0;
+			return false;
+		}
+
+		// c = R^-1 Q^T (T(x) - x)
+		for (int j = 0; j < _size; j++) {
+			double[] q = _q[j];
+			double d = 0;
+			for (int s = 0; s < n; s++) {
+				d += q[s] * (gx[s] - x[s]);
+			}
+			_c[j] = d;
+		}
+		for (int j = _size - 1; j >= 0; j--) {
+			double cj = _c[j];
+			for (int k = j + 1; k < _size; k++) {
+				cj -= _r[j][k] * _c[k];
+			}
+			_c[j] = cj / _r[j][j];
+		}
+
+		for (int j = 0; j < _size; j++) {
+			double cj = _c[j];
+			double[] col = _dG[j];
+			for (int s = 0; s < n; s++) {
+				y[s] -= cj * col[s];
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Factors the first <code>_size</code> columns of dF into
+	 * <code>_q</code> and <code>_r</code>, returning false if the columns are
+	 * (numerically) linearly dependent.
+	 */
+	private boolean factor(int n) {
+		for (int j = 0; j < _size; j++) {
+			double[] q = _q[j];
+			double[] col = _dF[j];
+			double norm = 0;
+			for (int s = 0; s < n; s++) {
+				q[s] = col[s];
+				norm += col[s] * col[s];
+			}
+			for (int i = 0; i < j; i++) {
+				double[] qi = _q[i];
+				double d = 0;
+				for (int s = 0; s < n; s++) {
+					d += qi[s] * q[s];
+				}
+				_r[i][j] = d;
+				for (int s = 0; s < n; s++) {
+					q[s] -= d * qi[s];
+				}
+			}
+			double rjj = 0;
+			for (int s = 0; s < n; s++) {
+				rjj += q[s] * q[s];
+			}
+			if (!(rjj > SINGULARITY_THRESHOLD * norm)) {
+				return false;
+			}
+			rjj = Math.sqrt(rjj);
+			_r[j][j] = rjj;
+			for (int s = 0; s < n; s++) {
+				q[s] /= rjj;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Records the differences between the residuals and backups of two
+	 * successive estimates, overwriting the oldest pair when the history is
+	 * full.
+	 */
+	private void remember(double[] x, double[] gx, double[] y, double[] gy) {
+		int n = x.length;
+		if (_size == 0) {
+			_next = 0;
+		}
+		double[] df = _dF[_next];
+		double[] dg = _dG[_next];
+		if (df == null) {
+			df = new double[n];
+			dg = new double[n];
+			_dF[_next] = df;
+			_dG[_next] = dg;
+		}
+		for (int s = 0; s < n; s++) {
+			dg[s] = gy[s] - gx[s];
+			df[s] = dg[s] - (y[s] - x[s]);
+		}
+		_next = (_next + 1) % _history;
+		_size = Math.min(_size + 1, _history);
+	}
+
+	private static double distance(double[] a, double[] b) {
+		double d = 0;
+		for (int s = 0; s < a.length; s++) {
+			d = Math.max(d, Math.abs(a[s] - b[s]));
+		}
+		return d;
+	}
+
+	/**
+	 * Returns the default Nesterov momentum for a discount factor,
+	 * <code>(1 - sqrt(1 - gamma^2)) / gamma</code>.
+	 * 
+	 * @param df
+	 *            a discount factor
+	 * @return the default momentum
+	 */
+	public static double defaultMomentum(DiscountFactor df) {
+		double gamma = df.doubleValue();
+		if (gamma <= 0) {
+			return 0;
+		}
+		return (1 - Math.sqrt(1 - gamma * gamma)) / gamma;
+	}
+}
@@ -0,0 +1,58 @@
+/**
+	Acceleration.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.discounted;
+
+/**
+ * The fixed-point acceleration schemes supported by {@link ValueIteration} and
+ * {@link IterativePolicyEvaluation}.
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+public enum Acceleration {
+	/**
+	 * Plain (Gauss-Seidel) Bellman backups.
+	 */
+	NONE,
+	/**
+	 * Anderson mixing: each new estimate is the combination of the last few
+	 * Bellman backups whose residuals cancel best in the least-squares sense.
+	 */
+	ANDERSON,
+	/**
+	 * Nesterov momentum: each new estimate extrapolates the last Bellman
+	 * backup along the direction of the previous one.
+	 */
+	NESTEROV;
+
+	/**
+	 * The default number of previous iterations mixed by Anderson acceleration.
+	 */
+	public static final int DEFAULT_HISTORY = 5;
+}
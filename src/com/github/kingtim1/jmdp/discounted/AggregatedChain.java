@@ -0,0 +1,245 @@
+/**
+	AggregatedChain.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.discounted;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.DecompositionSolver;
+import org.apache.commons.math3.linear.LUDecomposition;
+
+import com.github.kingtim1.jmdp.compiled.CompiledSMDP;
+import com.github.kingtim1.jmdp.metrics.MatrixFactorizationEvent;
+
+/**
+ * The linear system <code>y = b + M y</code> at one level of a multigrid
+ * hierarchy, where M is a discounted (substochastic) transition matrix stored
+ * in compressed sparse row form. At the finest level M holds the discounted
+ * transition probabilities of a deterministic policy. Each coarser level is
+ * obtained by aggregation: <code>M' = R M P</code>, where P maps an aggregate's
+ * value to each of its members and R averages over the members of an
+ * aggregate.
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+class AggregatedChain {
+
+	private int _n;
+	private int[] _begin;
+	private int[] _col;
+	private double[] _val;
+	private DecompositionSolver _direct;
+
+	private AggregatedChain(int n, int[] begin, int[] col, double[] val) {
+		_n = n;
+		_begin = begin;
+		_col = col;
+		_val = val;
+	}
+
+	/**
+	 * Builds the discounted transition matrix of a deterministic policy.
+	 * 
+	 * @param model
+	 *            a compiled SMDP
+	 * @param rows
+	 *            the row selected at each state (or -1 if the state has no
+	 *            actions)
+	 * @param discounts
+	 *            the discount of each action duration
+	 * @return the chain of the policy
+	 */
+	public static AggregatedChain ofPolicy(CompiledSMDP<?, ?> model,
+			int[] rows, double[] discounts) {
+		int n = rows.length;
+		int[] begin = new int[n + 1];
+		for (int s = 0; s < n; s++) {
+			int row = rows[s];
+			begin[s + 1] = begin[s]
+					+ (row < 0 ? 0 : model.entryEnd(row) - model.entryBegin(row));
+		}
+		int[] col = new int[begin[n]];
+		double[] val = new double[begin[n]];
+		for (int s = 0; s < n; s++) {
+			int row = rows[s];
+			if (row < 0) {
+				continue;
+			}
+			int k = begin[s];
+			int entryEnd = model.entryEnd(row);
+			for (int e = model.entryBegin(row); e < entryEnd; e++) {
+				col[k] = model.successor(e);
+				val[k] = model.tprob(e) * discounts[model.duration(e)];
+				k++;
+			}
+		}
+		return new AggregatedChain(n, begin, col, val);
+	}
+
+	/**
+	 * Returns the number of states of this chain.
+	 * 
+	 * @return the number of states
+	 */
+	public int numberOfStates() {
+		return _n;
+	}
+
+	/**
+	 * Aggregates this chain.
+	 * 
+	 * @param map
+	 *            the aggregate of each state
+	 * @param m
+	 *            the number of aggregates
+	 * @return the aggregated chain
+	 */
+	public AggregatedChain aggregate(int[] map, int m) {
+		int[] memberBegin = new int[m + 1];
+		for (int s = 0; s < _n; s++) {
+			memberBegin[map[s] + 1]++;
+		}
+		for (int i = 0; i < m; i++) {
+			memberBegin[i + 1] += memberBegin[i];
+		}
+		int[] fill = memberBegin.clone();
+		int[] members = new int[_n];
+		for (int s = 0; s < _n; s++) {
+			members[fill[map[s]]++] = s;
+		}
+
+		double[] acc = new double[m];
+		int[] mark = new int[m];
+		int[] touched = new int[m];
+		int[] begin = new int[m + 1];
+		// Every entry of this chain adds at most one entry to the aggregate
+		int[] col = new int[_col.length];
+		double[] val = new double[_col.length];
+		int nnz = 0;
+		for (int i = 0; i < m; i++) {
+			int numTouched = 0;
+			for (int k = memberBegin[i]; k < memberBegin[i + 1]; k++) {
+				int s = members[k];
+				for (int e = _begin[s]; e < _begin[s + 1]; e++) {
+					int j = map[_col[e]];
+					if (mark[j] != i + 1) {
+						mark[j] = i + 1;
+						acc[j] = 0;
+						touched[numTouched++] = j;
+					}
+					acc[j] += _val[e];
+				}
+			}
+			double size = memberBegin[i + 1] - memberBegin[i];
+			for (int t = 0; t < numTouched; t++) {
+				int j = touched[t];
+				col[nnz] = j;
+				val[nnz] = acc[j] / size;
+				nnz++;
+			}
+			begin[i + 1] = nnz;
+		}
+		return new AggregatedChain(m, begin, Arrays.copyOf(col, nnz),
+				Arrays.copyOf(val, nnz));
+	}
+
+	/**
+	 * Performs Gauss-Seidel sweeps on <code>y = b + M y</code>.
+	 * 
+	 * @param y
+	 *            the current estimate (updated in place)
+	 * @param b
+	 *            the right-hand side
+	 * @param sweeps
+	 *            the number of sweeps
+	 * @return the largest change made by the last sweep
+	 */
+	public double gaussSeidel(double[] y, double[] b, int sweeps) {
+		double delta = 0;
+		for (int i = 0; i < sweeps; i++) {
+			delta = 0;
+			for (int s = 0; s < _n; s++) {
+				double v = b[s];
+				for (int e = _begin[s]; e < _begin[s + 1]; e++) {
+					v += _val[e] * y[_col[e]];
+				}
+				delta = Math.max(delta, Math.abs(v - y[s]));
+				y[s] = v;
+			}
+		}
+		return delta;
+	}
+
+	/**
+	 * Computes the residual <code>b + M y - y</code>.
+	 * 
+	 * @param y
+	 *            the current estimate
+	 * @param b
+	 *            the right-hand side
+	 * @param residual
+	 *            receives the residual
+	 */
+	public void residual(double[] y, double[] b, double[] residual) {
+		for (int s = 0; s < _n; s++) {
+			double v = b[s];
+			for (int e = _begin[s]; e < _begin[s + 1]; e++) {
+				v += _val[e] * y[_col[e]];
+			}
+			residual[s] = v - y[s];
+		}
+	}
+
+	/**
+	 * Solves <code>(I - M) y = b</code> directly with an LU decomposition,
+	 * which is computed on the first call and reused afterwards.
+	 * 
+	 * @param b
+	 *            the right-hand side
+	 * @return the solution
+	 */
+	public double[] solve(double[] b) {
+		if (_direct == null) {
+			Array2DRowRealMatrix a = new Array2DRowRealMatrix(_n, _n);
+			for (int s = 0; s < _n; s++) {
+				a.addToEntry(s, s, 1);
+				for (int e = _begin[s]; e < _begin[s + 1]; e++) {
+					a.addToEntry(s, _col[e], -_val[e]);
+				}
+			}
+			MatrixFactorizationEvent event = new MatrixFactorizationEvent();
+			event.begin();
+			_direct = new LUDecomposition(a).getSolver();
+			event.finish(getClass(), MatrixFactorizationEvent.LU, _n, _n, 0);
+		}
+		return _direct.solve(new ArrayRealVector(b, false)).toArray();
+	}
+}
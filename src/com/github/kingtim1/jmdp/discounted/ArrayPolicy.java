@@ -0,0 +1,139 @@
+/**
+	ArrayPolicy.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.discounted;
+
+import com.github.kingtim1.jmdp.DeterministicPolicy;
+import com.github.kingtim1.jmdp.StationaryPolicy;
+import com.github.kingtim1.jmdp.compiled.CompiledSMDP;
+
+/**
+ * A deterministic policy implemented by an array that stores the selected row
+ * of a {@link CompiledSMDP} for each state.
+ * 
+ * @author Timothy A. Mann
+ *
+ * @param <S>
+ *            the state type
+ * @param <A>
+ *            the action type
+ */
+public class ArrayPolicy<S, A> extends DeterministicPolicy<S, A> {
+
+	private CompiledSMDP<S, A> _model;
+	private int[] _rows;
+
+	/**
+	 * Constructs a policy from an array of rows.
+	 * 
+	 * @param model
+	 *            a compiled model
+	 * @param rows
+	 *            the row selected at each state of <code>model</code> or -1
+	 *            for states without valid actions (this array is not copied)
+	 */
+	public ArrayPolicy(CompiledSMDP<S, A> model, int[] rows) {
+		if (model == null) {
+			throw new NullPointerException("Model cannot be null.");
+		}
+		if (rows.length != model.numberOfStates()) {
+			throw new IllegalArgumentException("Expected "
+					+ model.numberOfStates() + " rows. Found " + rows.length
+					+ ".");
+		}
+		_model = model;
+		_rows = rows;
+	}
+
+	/**
+	 * Converts a policy into an array-backed policy for a compiled model. If
+	 * the policy is already an {@link ArrayPolicy} for the same model, then it
+	 * is returned unchanged. States where the policy returns null or an
+	 * invalid action are mapped to row -1.
+	 * 
+	 * @param model
+	 *            a compiled model
+	 * @param policy
+	 *            a deterministic policy
+	 * @return an array-backed policy
+	 */
+	public static <S, A> ArrayPolicy<S, A> fromPolicy(
+			CompiledSMDP<S, A> model, StationaryPolicy<S, A> policy) {
+		if (policy instanceof ArrayPolicy
+				&& ((ArrayPolicy<S, A>) policy).model() == model) {
+			return (ArrayPolicy<S, A>) policy;
+		}
+		int[] rows = new int[model.numberOfStates()];
+		for (int s = 0; s < rows.length; s++) {
+			A action = (policy == null) ? null : policy.policy(model.state(s));
+			rows[s] = (action == null) ? -1 : model.row(s, action);
+		}
+		return new ArrayPolicy<S, A>(model, rows);
+	}
+
+	/**
+	 * Returns the compiled model that this policy's rows refer to.
+	 * 
+	 * @return a compiled model
+	 */
+	public CompiledSMDP<S, A> model() {
+		return _model;
+	}
+
+	/**
+	 * Returns the row selected at a state.
+	 * 
+	 * @param state
+	 *            a state index
+	 * @return the selected row or -1
+	 */
+	public int row(int state) {
+		return _rows[state];
+	}
+
+	/**
+	 * Returns the array backing this policy.
+	 * 
+	 * @return the selected row indexed by state
+	 */
+	public int[] rows() {
+		return _rows;
+	}
+
+	@Override
+	public A policy(S state) {
+		int index = _model.index(state);
+		int row = (index < 0) ? -1 : _rows[index];
+		if (row < 0) {
+			return _model.actionSet().actions(state).get(0);
+		} else {
+			return _model.action(row);
+		}
+	}
+
+}
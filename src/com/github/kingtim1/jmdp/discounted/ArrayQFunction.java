@@ -0,0 +1,200 @@
+/**
+	ArrayQFunction.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.discounted;
+
+import com.github.kingtim1.jmdp.compiled.CompiledSMDP;
+import com.github.kingtim1.jmdp.util.Optimization;
+
+/**
+ * An action-value function implemented by an array indexed by the rows of a
+ * {@link CompiledSMDP}.
+ * 
+ * @author Timothy A. Mann
+ *
+ * @param <S>
+ *            the state type
+ * @param <A>
+ *            the action type
+ */
+public class ArrayQFunction<S, A> implements DiscountedQFunction<S, A> {
+
+	private CompiledSMDP<S, A> _model;
+	private double[] _qvals;
+	private double _defaultValue;
+
+	/**
+	 * Constructs an action-value function from an array of values.
+	 * 
+	 * @param model
+	 *            a compiled model that determines the row of each state-action
+	 *            pair
+	 * @param qvals
+	 *            an array containing the value of each row (this array is not
+	 *            copied)
+	 * @param defaultValue
+	 *            the value of states that are not part of <code>model</code>
+	 *            and of actions that are not valid at a state
+	 */
+	public ArrayQFunction(CompiledSMDP<S, A> model, double[] qvals,
+			double defaultValue) {
+		if (qvals.length != model.numberOfRows()) {
+			throw new IllegalArgumentException("Expected "
+					+ model.numberOfRows() + " values. Found " + qvals.length
+					+ ".");
+		}
+		_model = model;
+		_qvals = qvals;
+		_defaultValue = defaultValue;
+	}
+
+	/**
+	 * Constructs the action-value function obtained by applying one Bellman
+	 * backup to a state-value function.
+	 * 
+	 * @param model
+	 *            a compiled model
+	 * @param values
+	 *            the value of each state of <code>model</code>
+	 * @param df
+	 *            a discount factor
+	 * @return the action-values of all rows of <code>model</code>
+	 */
+	public static <S, A> ArrayQFunction<S, A> backup(CompiledSMDP<S, A> model,
+			double[] values, DiscountFactor df) {
+		double[] discounts = model.discounts(df);
+		double[] qvals = new double[model.numberOfRows()];
+		for (int row = 0; row < qvals.length; row++) {
+			qvals[row] = model.qvalue(row, values, discounts);
+		}
+		return new ArrayQFunction<S, A>(model, qvals, 0);
+	}
+
+	@Override
+	public double value(S state, A action, Integer timestep) {
+		return value(state, action);
+	}
+
+	@Override
+	public double greedyValue(S state, Integer timestep) {
+		return greedyValue(state);
+	}
+
+	@Override
+	public A greedyAction(S state, Integer timestep) {
+		return greedyAction(state);
+	}
+
+	@Override
+	public Optimization opType() {
+		return _model.opType();
+	}
+
+	@Override
+	public double value(S state, A action) {
+		int index = _model.index(state);
+		int row = (index < 0) ? -1 : _model.row(index, action);
+		if (row < 0) {
+			return _defaultValue;
+		} else {
+			return _qvals[row];
+		}
+	}
+
+	@Override
+	public double greedyValue(S state) {
+		int row = greedyRow(state);
+		if (row < 0) {
+			return _defaultValue;
+		} else {
+			return _qvals[row];
+		}
+	}
+
+	@Override
+	public A greedyAction(S state) {
+		int row = greedyRow(state);
+		if (row < 0) {
+			return _model.actionSet().actions(state).get(0);
+		} else {
+			return _model.action(row);
+		}
+	}
+
+	/**
+	 * Returns the row with the best value at a state or -1 if the state has no
+	 * rows.
+	 */
+	private int greedyRow(S state) {
+		int index = _model.index(state);
+		if (index < 0) {
+			return -1;
+		}
+		Optimization opType = _model.opType();
+		int best = -1;
+		for (int row = _model.rowBegin(index); row < _model.rowEnd(index); row++) {
+			if (best < 0 || opType.firstIsBetter(_qvals[row], _qvals[best])) {
+				best = row;
+			}
+		}
+		return best;
+	}
+
+	@Override
+	public DiscountedVFunction<S> greedy() {
+		return new DiscountedVFunction.GreedyQ<S, A>(this);
+	}
+
+	@Override
+	public A policy(S state) {
+		return greedyAction(state);
+	}
+
+	@Override
+	public double aprob(S state, A action) {
+		return policy(state).equals(action) ? 1 : 0;
+	}
+
+	@Override
+	public boolean isDeterministic() {
+		return true;
+	}
+
+	@Override
+	public A policy(S state, Integer timestep) {
+		return policy(state);
+	}
+
+	/**
+	 * Returns the array backing this action-value function.
+	 * 
+	 * @return the values indexed by row
+	 */
+	public double[] values() {
+		return _qvals;
+	}
+}
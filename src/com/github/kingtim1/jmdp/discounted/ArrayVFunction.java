@@ -0,0 +1,108 @@
+/**
+	ArrayVFunction.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.discounted;
+
+import com.github.kingtim1.jmdp.compiled.CompiledSMDP;
+
+/**
+ * A value function implemented by an array indexed by the states of a
+ * {@link CompiledSMDP}.
+ * 
+ * @author Timothy A. Mann
+ *
+ * @param <S>
+ *            the state type
+ */
+public class ArrayVFunction<S> implements DiscountedVFunction<S> {
+
+	private CompiledSMDP<S, ?> _model;
+	private double[] _values;
+	private double _defaultValue;
+
+	/**
+	 * Constructs a value function from an array of values.
+	 * 
+	 * @param model
+	 *            a compiled model that determines the index of each state
+	 * @param values
+	 *            an array containing the value of each state (this array is
+	 *            not copied)
+	 * @param defaultValue
+	 *            the value of states that are not part of <code>model</code>
+	 */
+	public ArrayVFunction(CompiledSMDP<S, ?> model, double[] values,
+			double defaultValue) {
+		if (values.length != model.numberOfStates()) {
+			throw new IllegalArgumentException("Expected " + model.numberOfStates()
+					+ " values. Found " + values.length + ".");
+		}
+		_model = model;
+		_values = values;
+		_defaultValue = defaultValue;
+	}
+
+	@Override
+	public double value(S state, Integer timestep) {
+		return value(state);
+	}
+
+	@Override
+	public double value(S state) {
+		int index = _model.index(state);
+		if (index < 0) {
+			return _defaultValue;
+		} else {
+			return _values[index];
+		}
+	}
+
+	/**
+	 * Sets the value at a specified state.
+	 * 
+	 * @param state
+	 *            a state of the compiled model
+	 * @param value
+	 *            the value of the state
+	 */
+	public void set(S state, double value) {
+		int index = _model.index(state);
+		if (index < 0) {
+			throw new IllegalArgumentException("Unknown state " + state + ".");
+		}
+		_values[index] = value;
+	}
+
+	/**
+	 * Returns the array backing this value function.
+	 * 
+	 * @return the values indexed by state index
+	 */
+	public double[] values() {
+		return _values;
+	}
+}
@@ -0,0 +1,558 @@
+/**
+	AsyncValueIteration.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.discounted;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.github.kingtim1.jmdp.DP;
+import com.github.kingtim1.jmdp.FiniteStateSMDP;
+import com.github.kingtim1.jmdp.MonitoredSolver;
+import com.github.kingtim1.jmdp.SolverMonitor;
+import com.github.kingtim1.jmdp.compiled.CompiledSMDP;
+
+/**
+ * <p>
+ * A multithreaded, asynchronous version of Value Iteration without barriers
+ * between sweeps. The states are partitioned into blocks of roughly equal work
+ * (number of rows plus number of transition entries), so that states with many
+ * successors end up in small blocks. The blocks are not owned by workers:
+ * every worker scans the shared list of blocks, starting at a different block
+ * for each worker, and claims the next free block that has sweeps left with a
+ * compare-and-set on the block's busy flag. Blocks are told apart by their residual
+ * (the largest change of a value in their last sweep): a block whose residual
+ * is still at least the convergence threshold is claimed before a converged
+ * one. A block that is busy with a slow worker is skipped and picked up again
+ * on a later pass, but no block is swept more than {@link #MAX_LAG} times
+ * ahead of the least swept block. Otherwise the other workers could use up
+ * their sweeps against stale values of a block whose worker was descheduled.
+ * A worker therefore waits only when every block it may sweep is busy (in
+ * the worst case, for one sweep of the least swept block); there is no round
+ * barrier. Because a block is only swept after its claim succeeds, two
+ * threads never sweep the same block at the same time.
+ * </p>
+ * 
+ * <p>
+ * All threads share one value array. Workers publish new values with relaxed
+ * (opaque) stores through a {@link VarHandle} and back up rows with
+ * {@link CompiledSMDP#qvalue(int, double[], double[])}, whose plain loads may
+ * see a stale value of a state (doubles are read and written atomically on
+ * the 64-bit JVMs this solver targets). Because the
+ * Bellman operator is a contraction in the max-norm, this kind of totally
+ * asynchronous iteration still converges as long as every state keeps being
+ * updated.
+ * </p>
+ * 
+ * <p>
+ * Termination is detected without locks. Each block remembers whether its
+ * last sweep changed a value by at least the convergence threshold, and an
+ * atomic counter holds the number of such "dirty" blocks. Block sweeps are
+ * stamped from a global atomic ticket counter, and a dirty sweep takes a fresh
+ * ticket after its writes. The workers stop when no block is dirty and every
+ * block was last swept after the last dirty sweep finished. Under total
+ * asynchrony a block may still be judged converged against values that kept
+ * changing by less than the threshold in many sweeps of its neighbors, so once
+ * the workers stop the residual of the shared values is verified with one
+ * sequential Bellman backup of every state. If it is not below the threshold
+ * the workers resume.
+ * </p>
+ * 
+ * <p>
+ * The workers run on a thread pool that the solver creates on its first run
+ * and reuses for every later run, or on an executor supplied by the caller.
+ * Because no worker waits for another, the solver also finishes on an
+ * executor with fewer threads than workers. {@link #close()} shuts down the
+ * pool created by the solver.
+ * </p>
+ * 
+ * @author Timothy A. Mann
+ *
+ * @param <S>
+ *            the state type
+ * @param <A>
+ *            the action type
+ */
+public class AsyncValueIteration<S, A> implements DP<DiscountedQFunction<S, A>>,
+		MonitoredSolver, AutoCloseable {
+
+	/**
+	 * The number of blocks created per worker thread.
+	 */
+	public static final int BLOCKS_PER_THREAD = 16;
+
+	/**
+	 * The number of sweeps that a block may run ahead of the least swept
+	 * block.
+	 */
+	public static final int MAX_LAG = 2;
+
+	private static final VarHandle VALUES = MethodHandles
+			.arrayElementVarHandle(double[].class);
+
+	private CompiledSMDP<S, A> _model;
+	private DiscountFactor _df;
+	private int _maxIterations;
+	private double _theta;
+	private int _numThreads;
+	private ExecutorService _executor;
+	private boolean _ownsExecutor;
+
+	private int[] _blocks;
+	private int[] _workerBlocks;
+	private long _blockSweeps;
+	private SolverMonitor _monitor;
+
+	/**
+	 * Constructs an asynchronous value iteration solver for an SMDP.
+	 * 
+	 * @param smdp
+	 *            a finite-state SMDP (compiled once by this constructor)
+	 * @param df
+	 *            a discount factor
+	 * @param maxIterations
+	 *            the maximum number of times each block is swept
+	 * @param convergenceThreshold
+	 *            the algorithm stops when a Bellman backup of every state
+	 *            changes no value by this threshold or more
+	 * @param numThreads
+	 *            the number of worker threads
+	 */
+	public AsyncValueIteration(FiniteStateSMDP<S, A> smdp, DiscountFactor df,
+			int maxIterations, double convergenceThreshold, int numThreads) {
+		this(new CompiledSMDP<S, A>(smdp), df, maxIterations,
+				convergenceThreshold, numThreads);
+	}
+
+	/**
+	 * Constructs an asynchronous value iteration solver for a compiled SMDP.
+	 * 
+	 * @param model
+	 *            a compiled SMDP
+	 * @param df
+	 *            a discount factor
+	 * @param maxIterations
+	 *            the maximum number of times each block is swept
+	 * @param convergenceThreshold
+	 *            the algorithm stops when a Bellman backup of every state
+	 *            changes no value by this threshold or more
+	 * @param numThreads
+	 *            the number of worker threads
+	 */
+	public AsyncValueIteration(CompiledSMDP<S, A> model, DiscountFactor df,
+			int maxIterations, double convergenceThreshold, int numThreads) {
+		this(model, df, maxIterations, convergenceThreshold, numThreads, null);
+	}
+
+	/**
+	 * Constructs an asynchronous value iteration solver for a compiled SMDP
+	 * whose workers run on an executor owned by the caller. The executor is
+	 * not shut down by {@link #close()}.
+	 * 
+	 * @param model
+	 *            a compiled SMDP
+	 * @param df
+	 *            a discount factor
+	 * @param maxIterations
+	 *            the maximum number of times each block is swept
+	 * @param convergenceThreshold
+	 *            the algorithm stops when a Bellman backup of every state
+	 *            changes no value by this threshold or more
+	 * @param numThreads
+	 *            the number of workers submitted to the executor
+	 * @param executor
+	 *            the executor that runs the workers (if null, the solver
+	 *            creates its own pool of <code>numThreads</code> threads)
+	 */
+	public AsyncValueIteration(CompiledSMDP<S, A> model, DiscountFactor df,
+			int maxIterations, double convergenceThreshold, int numThreads,
+			ExecutorService executor) {
+		if (model == null) {
+			throw new NullPointerException("Model cannot be null.");
+		}
+		if (numThreads < 1) {
+			throw new IllegalArgumentException(
+					"Expected a positive number of threads. Found "
+							+ numThreads + ".");
+		}
+		_model = model;
+		_df = df;
+		_maxIterations = maxIterations;
+		_theta = convergenceThreshold;
+		_numThreads = numThreads;
+		_executor = executor;
+		_ownsExecutor = (executor == null);
+		_monitor = new SolverMonitor(this);
+
+		partition();
+	}
+
+	/**
+	 * Splits the states into blocks of roughly equal work and assigns the
+	 * first block of its scan to each worker.
+	 */
+	private void partition() {
+		int n = _model.numberOfStates();
+		long work = _model.numberOfRows() + (long) _model.numberOfEntries();
+		int targetBlocks = Math.max(1,
+				Math.min(n, _numThreads * BLOCKS_PER_THREAD));
+		double blockWork = Math.max(1.0, (double) work / targetBlocks);
+
+		List<Integer> starts = new ArrayList<Integer>();
+		starts.add(0);
+		double acc = 0;
+		for (int s = 0; s < n; s++) {
+			int rowBegin = _model.rowBegin(s);
+			int rowEnd = _model.rowEnd(s);
+			acc += (rowEnd - rowBegin);
+			if (rowEnd > rowBegin) {
+				acc += _model.entryEnd(rowEnd - 1)
+						- _model.entryBegin(rowBegin);
+			}
+			if (acc >= blockWork && s + 1 < n) {
+				starts.add(s + 1);
+				acc = 0;
+			}
+		}
+		_blocks = new int[starts.size() + 1];
+		for (int b = 0; b < starts.size(); b++) {
+			_blocks[b] = starts.get(b);
+		}
+		_blocks[starts.size()] = n;
+
+		int numBlocks = starts.size();
+		_workerBlocks = new int[_numThreads];
+		for (int w = 0; w < _numThreads; w++) {
+			_workerBlocks[w] = (int) ((long) numBlocks * w / _numThreads);
+		}
+	}
+
+	/**
+	 * Returns the number of blocks the states are partitioned into.
+	 * 
+	 * @return the number of blocks
+	 */
+	public int numberOfBlocks() {
+		return _blocks.length - 1;
+	}
+
+	/**
+	 * Returns the total number of block sweeps performed by all threads during
+	 * the last call to {@link #run()}.
+	 * 
+	 * @return the number of block sweeps
+	 */
+	public long blockSweeps() {
+		return _blockSweeps;
+	}
+
+	/**
+	 * Returns the monitor of this solver. A sweep is reported each time the
+	 * workers stop to check the residual. CPU times only include the thread
+	 * that called {@link #run()}, not the worker threads.
+	 */
+	@Override
+	public SolverMonitor monitor() {
+		return _monitor;
+	}
+
+	@Override
+	public DiscountedQFunction<S, A> run() {
+		boolean monitored = _monitor.start();
+		double[] values = new double[_model.numberOfStates()];
+		double[] discounts = _model.discounts(_df);
+		_blockSweeps = 0;
+
+		if (_executor == null) {
+			_executor = WorkerPool.create(_numThreads, "async-value-iteration");
+		}
+		try {
+			int blockSweeps = 0;
+			double residual;
+			do {
+				final Sweeper sweeper = new Sweeper(values, _maxIterations
+						- blockSweeps, monitored);
+				List<Callable<Void>> workers = new ArrayList<Callable<Void>>(
+						_numThreads);
+				for (int w = 0; w < _numThreads; w++) {
+					final int worker = w;
+					workers.add(new Callable<Void>() {
+						@Override
+						public Void call() {
+							sweeper.work(worker);
+							return null;
+						}
+					});
+				}
+				for (Future<Void> f : _executor.invokeAll(workers)) {
+					f.get();
+				}
+				_blockSweeps += sweeper.sweeps.get();
+				blockSweeps += sweeper.minSweeps();
+				_monitor.count(sweeper.backups.get(), sweeper.entries.get());
+				residual = (blockSweeps < _maxIterations) ? residual(values,
+						discounts) : Double.NaN;
+				_monitor.endSweep(residual);
+			} while (blockSweeps < _maxIterations && residual >= _theta);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(
+					"Interrupted while running value iteration.", ex);
+		} catch (ExecutionException ex) {
+			throw new IllegalStateException("A value iteration worker failed.",
+					ex.getCause());
+		}
+
+		_monitor.finish();
+		return ArrayQFunction.backup(_model, values, _df);
+	}
+
+	/**
+	 * Shuts down the thread pool created by this solver. An executor supplied
+	 * by the caller is left running. The solver creates a new pool if it is
+	 * run again.
+	 */
+	@Override
+	public void close() {
+		if (_ownsExecutor && _executor != null) {
+			_executor.shutdown();
+			_executor = null;
+		}
+	}
+
+	/**
+	 * Returns the largest change that a (Jacobi) Bellman backup would make to
+	 * any value.
+	 */
+	private double residual(double[] values, double[] discounts) {
+		double residual = 0;
+		for (int s = 0; s < values.length; s++) {
+			if (_model.rowBegin(s) == _model.rowEnd(s)) {
+				continue;
+			}
+			double best = _model.backup(s, values, discounts);
+			residual = Math.max(residual, Math.abs(best - values[s]));
+		}
+		_monitor.count(values.length, _model.numberOfEntries());
+		return residual;
+	}
+
+	/**
+	 * The state shared by the worker threads during one run.
+	 */
+	private class Sweeper {
+		private final double[] values;
+		private final double[] discounts;
+		private final int numBlocks;
+
+		private final AtomicIntegerArray busy;
+		private final AtomicIntegerArray sweepCounts;
+		private final double[] residuals;
+		private final AtomicLongArray lastTicket;
+		private final boolean[] dirty;
+		private final AtomicInteger numDirty;
+		private final AtomicLong tickets;
+		private final AtomicLong lastDirtyTicket;
+		private final AtomicLong sweeps;
+		private final AtomicLong backups;
+		private final AtomicLong entries;
+		private volatile boolean done;
+
+		private final int maxSweeps;
+		private final boolean monitored;
+
+		public Sweeper(double[] values, int maxSweeps, boolean monitored) {
+			this.values = values;
+			this.maxSweeps = maxSweeps;
+			this.monitored = monitored;
+			discounts = _model.discounts(_df);
+			numBlocks = numberOfBlocks();
+
+			busy = new AtomicIntegerArray(numBlocks);
+			sweepCounts = new AtomicIntegerArray(numBlocks);
+			residuals = new double[numBlocks];
+			for (int b = 0; b < numBlocks; b++) {
+				residuals[b] = Double.POSITIVE_INFINITY;
+			}
+			lastTicket = new AtomicLongArray(numBlocks);
+			dirty = new boolean[numBlocks];
+			for (int b = 0; b < numBlocks; b++) {
+				dirty[b] = true;
+			}
+			numDirty = new AtomicInteger(numBlocks);
+			tickets = new AtomicLong();
+			lastDirtyTicket = new AtomicLong();
+			sweeps = new AtomicLong();
+			backups = new AtomicLong();
+			entries = new AtomicLong();
+			done = (maxSweeps < 1);
+		}
+
+		/**
+		 * Returns the number of sweeps completed by every block.
+		 */
+		public int minSweeps() {
+			int min = Integer.MAX_VALUE;
+			for (int b = 0; b < numBlocks; b++) {
+				min = Math.min(min, sweepCounts.get(b));
+			}
+			return min;
+		}
+
+		/**
+		 * The loop run by each worker: starting after the last block it swept,
+		 * claim the next free block that is not converged (or, if there is
+		 * none, the next free converged block) and sweep it, until the
+		 * workers are done or every block has been swept the maximum number
+		 * of times. Blocks more than {@link #MAX_LAG} sweeps ahead of the
+		 * least swept block are skipped. A worker only spins while every
+		 * block it may sweep is being swept by another worker.
+		 */
+		public void work(int worker) {
+			int next = _workerBlocks[worker];
+			while (!done) {
+				int maxCount = Math.min(maxSweeps, minSweeps() + MAX_LAG + 1);
+				int claim = -1;
+				int converged = -1;
+				boolean pending = false;
+				for (int i = 0; i < numBlocks; i++) {
+					int b = (next + i) % numBlocks;
+					int count = sweepCounts.get(b);
+					if (count >= maxSweeps) {
+						continue;
+					}
+					pending = true;
+					if (count >= maxCount || busy.get(b) != 0) {
+						continue;
+					}
+					if ((double) VALUES.getOpaque(residuals, b) >= _theta) {
+						claim = b;
+						break;
+					}
+					if (converged < 0) {
+						converged = b;
+					}
+				}
+				if (claim < 0) {
+					claim = converged;
+				}
+				if (!pending) {
+					done = true;
+				} else if (claim < 0) {
+					Thread.onSpinWait();
+				} else if (busy.compareAndSet(claim, 0, 1)) {
+					if (sweepCounts.get(claim) < maxSweeps) {
+						sweep(claim);
+						sweepCounts.incrementAndGet(claim);
+					}
+					busy.set(claim, 0);
+					next = (claim + 1) % numBlocks;
+				}
+			}
+		}
+
+		/**
+		 * Sweeps a block that is owned by the calling thread and updates the
+		 * convergence bookkeeping.
+		 */
+		private void sweep(int b) {
+			long ticket = tickets.getAndIncrement();
+			double residual = 0;
+			for (int s = _blocks[b]; s < _blocks[b + 1]; s++) {
+				residual = Math.max(residual, backup(s));
+			}
+			VALUES.setOpaque(residuals, b, residual);
+			sweeps.incrementAndGet();
+			if (monitored) {
+				count(b);
+			}
+
+			boolean isDirty = residual >= _theta;
+			if (isDirty) {
+				long after = tickets.getAndIncrement();
+				long last = lastDirtyTicket.get();
+				while (last < after
+						&& !lastDirtyTicket.compareAndSet(last, after)) {
+					last = lastDirtyTicket.get();
+				}
+			}
+			if (isDirty != dirty[b]) {
+				dirty[b] = isDirty;
+				if (isDirty) {
+					numDirty.incrementAndGet();
+				} else {
+					numDirty.decrementAndGet();
+				}
+			}
+			lastTicket.set(b, ticket);
+
+			if (numDirty.get() == 0) {
+				long lastDirty = lastDirtyTicket.get();
+				for (int c = 0; c < numBlocks; c++) {
+					if (lastTicket.get(c) <= lastDirty) {
+						return;
+					}
+				}
+				done = true;
+			}
+		}
+
+		/**
+		 * Counts the backups and successor entries of a block sweep.
+		 */
+		private void count(int b) {
+			int rowBegin = _model.rowBegin(_blocks[b]);
+			int rowEnd = _model.rowEnd(_blocks[b + 1] - 1);
+			backups.addAndGet(_blocks[b + 1] - _blocks[b]);
+			if (rowEnd > rowBegin) {
+				entries.addAndGet(_model.entryEnd(rowEnd - 1)
+						- _model.entryBegin(rowBegin));
+			}
+		}
+
+		/**
+		 * Performs a greedy Bellman backup at a state and returns the absolute
+		 * change of its value.
+		 */
+		private double backup(int s) {
+			double best = _model.backup(s, values, discounts);
+			double old = (double) VALUES.getOpaque(values, s);
+			VALUES.setOpaque(values, s, best);
+			return Math.abs(best - old);
+		}
+	}
+}
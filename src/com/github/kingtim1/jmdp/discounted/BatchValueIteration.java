@@ -0,0 +1,434 @@
+/**
+	BatchValueIteration.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.discounted;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.github.kingtim1.jmdp.DP;
+import com.github.kingtim1.jmdp.FiniteStateSMDP;
+import com.github.kingtim1.jmdp.MonitoredSolver;
+import com.github.kingtim1.jmdp.SolverMonitor;
+import com.github.kingtim1.jmdp.StationaryPolicy;
+import com.github.kingtim1.jmdp.compiled.CompiledSMDP;
+import com.github.kingtim1.jmdp.util.Optimization;
+
+/**
+ * <p>
+ * Solves the same SMDP for several discount factors at once. Each sweep
+ * traverses every (state, action) row of the model once and updates the value
+ * estimates of all discount factors that have not converged yet. The values are
+ * stored state-major (the values of a state for all discount factors are
+ * adjacent in memory), so the entries of a row are read once and reused for
+ * every discount factor.
+ * </p>
+ * 
+ * <p>
+ * Convergence is tracked separately for each discount factor. A discount factor
+ * whose estimate stops changing by more than the convergence threshold drops
+ * out of the sweep while the others continue. With warm-starting enabled, when
+ * a discount factor gamma converges, its solution V is used to build a
+ * candidate estimate for the next larger discount factor gamma'. The candidate
+ * is <code>T'V + c</code>, where T' is the Bellman operator under gamma' and the
+ * constant c is the MacQueen shift <code>gamma' / (1 - gamma') * (min(T'V - V) +
+ * max(T'V - V)) / 2</code>. Most of the difference between the value functions
+ * of nearby discount factors is such a constant, so the candidate is often much
+ * closer to the solution than the estimate obtained by sweeping from zero. The
+ * candidate replaces the current estimate only if its Bellman residual is
+ * smaller than the last change of the current estimate. This costs two extra
+ * Jacobi backups per converged discount factor.
+ * </p>
+ * 
+ * <p>
+ * The same sweep also evaluates a stationary policy under all discount factors
+ * (see {@link #eval(StationaryPolicy)}).
+ * </p>
+ * 
+ * @author Timothy A. Mann
+ *
+ * @param <S>
+ *            the state type
+ * @param <A>
+ *            the action type
+ */
+public class BatchValueIteration<S, A> implements
+		DP<List<DiscountedVFunction<S>>>, MonitoredSolver {
+
+	private CompiledSMDP<S, A> _model;
+	private List<DiscountFactor> _dfs;
+	private int[] _order;
+	private int _maxIterations;
+	private double _theta;
+	private boolean _warmStart;
+	private int[] _iterations;
+	private SolverMonitor _monitor;
+
+	/**
+	 * Constructs a batched solver for an SMDP.
+	 * 
+	 * @param smdp
+	 *            a finite-state SMDP (compiled once by this constructor)
+	 * @param dfs
+	 *            the discount factors to solve for
+	 * @param maxIterations
+	 *            the maximum number of sweeps
+	 * @param convergenceThreshold
+	 *            a discount factor is considered converged when no value
+	 *            changes by more than this threshold during a sweep
+	 */
+	public BatchValueIteration(FiniteStateSMDP<S, A> smdp,
+			List<DiscountFactor> dfs, int maxIterations,
+			double convergenceThreshold) {
+		this(new CompiledSMDP<S, A>(smdp), dfs, maxIterations,
+				convergenceThreshold);
+	}
+
+	/**
+	 * Constructs a batched solver for a compiled SMDP.
+	 * 
+	 * @param model
+	 *            a compiled SMDP
+	 * @param dfs
+	 *            the discount factors to solve for
+	 * @param maxIterations
+	 *            the maximum number of sweeps
+	 * @param convergenceThreshold
+	 *            a discount factor is considered converged when no value
+	 *            changes by more than this threshold during a sweep
+	 */
+	public BatchValueIteration(CompiledSMDP<S, A> model,
+			List<DiscountFactor> dfs, int maxIterations,
+			double convergenceThreshold) {
+		if (model == null) {
+			throw new NullPointerException("Model cannot be null.");
+		}
+		if (dfs == null || dfs.isEmpty()) {
+			throw new IllegalArgumentException(
+					"Expected at least one discount factor.");
+		}
+		_model = model;
+		_dfs = new ArrayList<DiscountFactor>(dfs);
+		_maxIterations = maxIterations;
+		_theta = convergenceThreshold;
+		_warmStart = true;
+
+		Integer[] order = new Integer[_dfs.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i, Integer j) {
+				return Double.compare(_dfs.get(i).doubleValue(), _dfs.get(j)
+						.doubleValue());
+			}
+		});
+		_order = new int[order.length];
+		for (int i = 0; i < order.length; i++) {
+			_order[i] = order[i];
+		}
+		_iterations = new int[_dfs.size()];
+		_monitor = new SolverMonitor(this);
+	}
+
+	/**
+	 * Returns the discount factors solved for by this instance.
+	 * 
+	 * @return the discount factors in the order given to the constructor
+	 */
+	public List<DiscountFactor> discountFactors() {
+		return Collections.unmodifiableList(_dfs);
+	}
+
+	/**
+	 * Enables or disables warm-starting from the neighboring discount factor.
+	 * Warm-starting is enabled by default.
+	 * 
+	 * @param warmStart
+	 *            true to enable warm-starting; false to disable it
+	 */
+	public void setWarmStart(boolean warmStart) {
+		_warmStart = warmStart;
+	}
+
+	/**
+	 * Returns true if warm-starting is enabled.
+	 * 
+	 * @return true if warm-starting is enabled; otherwise false
+	 */
+	public boolean isWarmStart() {
+		return _warmStart;
+	}
+
+	/**
+	 * Returns the number of sweeps that updated the estimate of a discount
+	 * factor during the last call to {@link #run()} or
+	 * {@link #eval(StationaryPolicy)}.
+	 * 
+	 * @param i
+	 *            the index of a discount factor in
+	 *            {@link #discountFactors()}
+	 * @return the number of sweeps performed for the discount factor
+	 */
+	public int iterations(int i) {
+		return _iterations[i];
+	}
+
+	/**
+	 * Returns the monitor of this solver. The residual of a sweep is the
+	 * largest change of a value over the discount factors that have not
+	 * converged, and each state counts as one backup per sweep.
+	 */
+	@Override
+	public SolverMonitor monitor() {
+		return _monitor;
+	}
+
+	/**
+	 * Computes the optimal value function for every discount factor.
+	 * 
+	 * @return the optimal value functions in the order of
+	 *         {@link #discountFactors()}
+	 */
+	@Override
+	public List<DiscountedVFunction<S>> run() {
+		return solve(null);
+	}
+
+	/**
+	 * Evaluates a stationary policy for every discount factor.
+	 * 
+	 * @param policy
+	 *            a stationary policy
+	 * @return the value functions of <code>policy</code> in the order of
+	 *         {@link #discountFactors()}
+	 */
+	public List<DiscountedVFunction<S>> eval(StationaryPolicy<S, A> policy) {
+		return solve(_model.rowWeights(policy));
+	}
+
+	/**
+	 * Runs the batched sweeps. If <code>weights</code> is null the sweeps
+	 * perform greedy backups; otherwise each row contributes to the backup of
+	 * its state in proportion to its weight.
+	 */
+	private List<DiscountedVFunction<S>> solve(double[] weights) {
+		_monitor.start();
+		int n = _model.numberOfStates();
+		int k = _order.length;
+		int maxDuration = _model.maxActionDuration();
+		Optimization opType = _model.opType();
+
+		double[] gammas = new double[k];
+		double[] discounts = new double[(maxDuration + 1) * k];
+		for (int j = 0; j < k; j++) {
+			gammas[j] = _dfs.get(_order[j]).doubleValue();
+			discounts[j] = 1;
+			for (int d = 1; d <= maxDuration; d++) {
+				discounts[d * k + j] = discounts[(d - 1) * k + j] * gammas[j];
+			}
+		}
+
+		double[] v = new double[n * k];
+		double[] q = new double[k];
+		double[] best = new double[k];
+		double[] delta = new double[k];
+		int[] sweeps = new int[k];
+		boolean[] converged = new boolean[k];
+		int[] active = new int[k];
+		int numActive = k;
+		for (int j = 0; j < k; j++) {
+			active[j] = j;
+		}
+
+		for (int i = 0; i < _maxIterations && numActive > 0; i++) {
+			for (int a = 0; a < numActive; a++) {
+				delta[active[a]] = 0;
+			}
+
+			long entries = 0;
+			for (int s = 0; s < n; s++) {
+				int rowBegin = _model.rowBegin(s);
+				int rowEnd = _model.rowEnd(s);
+				if (rowBegin == rowEnd) {
+					continue;
+				}
+
+				boolean first = true;
+				for (int a = 0; a < numActive; a++) {
+					best[active[a]] = 0;
+				}
+				for (int row = rowBegin; row < rowEnd; row++) {
+					double w = (weights == null) ? 1 : weights[row];
+					if (w == 0) {
+						continue;
+					}
+					_model.qvalues(row, v, discounts, k, active, numActive, q);
+					entries += _model.entryEnd(row) - _model.entryBegin(row);
+
+					if (weights == null) {
+						for (int a = 0; a < numActive; a++) {
+							int j = active[a];
+							if (first || opType.firstIsBetter(q[j], best[j])) {
+								best[j] = q[j];
+							}
+						}
+						first = false;
+					} else {
+						for (int a = 0; a < numActive; a++) {
+							int j = active[a];
+							best[j] += w * q[j];
+						}
+					}
+				}
+
+				int base = s * k;
+				for (int a = 0; a < numActive; a++) {
+					int j = active[a];
+					double oldV = v[base + j];
+					v[base + j] = best[j];
+					delta[j] = Math.max(delta[j], Math.abs(oldV - best[j]));
+				}
+			}
+
+			double residual = 0;
+			int stillActive = 0;
+			for (int a = 0; a < numActive; a++) {
+				int j = active[a];
+				residual = Math.max(residual, delta[j]);
+				sweeps[j]++;
+				if (delta[j] < _theta) {
+					converged[j] = true;
+				} else {
+					active[stillActive++] = j;
+				}
+			}
+			if (_warmStart && stillActive < numActive) {
+				for (int j = 0; j + 1 < k; j++) {
+					if (converged[j] && sweeps[j] == i + 1 && !converged[j + 1]) {
+						warmStart(v, n, k, j, j + 1, gammas, delta, weights);
+					}
+				}
+			}
+			numActive = stillActive;
+			_monitor.count(n, entries);
+			_monitor.endSweep(residual);
+		}
+
+		List<DiscountedVFunction<S>> vfuncs = new ArrayList<DiscountedVFunction<S>>(
+				k);
+		for (int i = 0; i < k; i++) {
+			vfuncs.add(null);
+		}
+		for (int j = 0; j < k; j++) {
+			double[] values = new double[n];
+			for (int s = 0; s < n; s++) {
+				values[s] = v[s * k + j];
+			}
+			vfuncs.set(_order[j], new ArrayVFunction<S>(_model, values, 0));
+			_iterations[_order[j]] = sweeps[j];
+		}
+		_monitor.finish();
+		return vfuncs;
+	}
+
+	/**
+	 * Replaces the estimate of discount factor <code>to</code> by a candidate
+	 * built from the converged estimate of discount factor <code>from</code>
+	 * when the Bellman residual of the candidate is smaller than the last change
+	 * of the current estimate.
+	 */
+	private void warmStart(double[] v, int n, int k, int from, int to,
+			double[] gammas, double[] delta, double[] weights) {
+		double gamma = gammas[to];
+		double[] discounts = new double[_model.maxActionDuration() + 1];
+		discounts[0] = 1;
+		for (int d = 1; d < discounts.length; d++) {
+			discounts[d] = discounts[d - 1] * gamma;
+		}
+
+		double[] candidate = new double[n];
+		for (int s = 0; s < n; s++) {
+			candidate[s] = v[s * k + from];
+		}
+		double[] backup = new double[n];
+		backup(candidate, discounts, weights, backup);
+		double lo = Double.POSITIVE_INFINITY;
+		double hi = Double.NEGATIVE_INFINITY;
+		for (int s = 0; s < n; s++) {
+			double diff = backup[s] - candidate[s];
+			lo = Math.min(lo, diff);
+			hi = Math.max(hi, diff);
+		}
+		double shift = (gamma < 1) ? gamma / (1 - gamma) * (lo + hi) / 2 : 0;
+		for (int s = 0; s < n; s++) {
+			candidate[s] = backup[s] + shift;
+		}
+
+		backup(candidate, discounts, weights, backup);
+		double residual = 0;
+		for (int s = 0; s < n; s++) {
+			residual = Math.max(residual, Math.abs(backup[s] - candidate[s]));
+		}
+		if (residual < delta[to]) {
+			for (int s = 0; s < n; s++) {
+				v[s * k + to] = candidate[s];
+			}
+			delta[to] = residual;
+		}
+	}
+
+	/**
+	 * Applies a single (Jacobi) Bellman backup for one discount factor to
+	 * every state.
+	 */
+	private void backup(double[] v, double[] discounts, double[] weights,
+			double[] out) {
+		for (int s = 0; s < v.length; s++) {
+			int rowBegin = _model.rowBegin(s);
+			int rowEnd = _model.rowEnd(s);
+			if (rowBegin == rowEnd) {
+				out[s] = v[s];
+			} else if (weights == null) {
+				out[s] = _model.backup(s, v, discounts);
+			} else {
+				double sum = 0;
+				for (int row = rowBegin; row < rowEnd; row++) {
+					if (weights[row] != 0) {
+						sum += weights[row] * _model.qvalue(row, v, discounts);
+					}
+				}
+				out[s] = sum;
+			}
+		}
+		_monitor.count(v.length, _model.numberOfEntries());
+	}
+}
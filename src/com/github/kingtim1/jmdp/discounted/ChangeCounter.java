@@ -0,0 +1,47 @@
+/**
+	ChangeCounter.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.discounted;
+
+/**
+ * A policy improvement step that counts the states whose action changed as a
+ * by-product of improving a policy. {@link PolicyIteration} uses the count to
+ * detect that the policy stopped changing without comparing policies.
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+interface ChangeCounter {
+
+	/**
+	 * Returns the number of states whose action changed during the last
+	 * policy improvement step.
+	 * 
+	 * @return the number of changed states
+	 */
+	public int numberOfChanges();
+}
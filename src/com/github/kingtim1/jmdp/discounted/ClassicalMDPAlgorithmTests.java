@@ -28,15 +28,35 @@
 package com.github.kingtim1.jmdp.discounted;
 
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
+import java.lang.management.ManagementFactory;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.Test;
 
+import com.github.kingtim1.jmdp.AbstractIntMDP;
+import com.github.kingtim1.jmdp.AbstractPolicyIteration;
+import com.github.kingtim1.jmdp.BoxedSMDP;
+import com.github.kingtim1.jmdp.DeterministicPolicy;
 import com.github.kingtim1.jmdp.FiniteStateSMDP;
+import com.github.kingtim1.jmdp.SolverListener;
+import com.github.kingtim1.jmdp.SolverMonitor;
 import com.github.kingtim1.jmdp.StationaryPolicy;
+import com.github.kingtim1.jmdp.compiled.Bisimulation;
+import com.github.kingtim1.jmdp.compiled.CompiledSMDP;
+import com.github.kingtim1.jmdp.compiled.StateAggregation;
 import com.github.kingtim1.jmdp.lib.mdps.ChainMDP;
+import com.github.kingtim1.jmdp.lib.mdps.GarnetMDP;
+import com.github.kingtim1.jmdp.lib.mdps.RandomSMDP;
+import com.github.kingtim1.jmdp.util.Optimization;
 
 /**
  * Provides tests for classical MDP algorithms in the discounted setting. The
@@ -57,6 +77,14 @@ public class ClassicalMDPAlgorithmTests {
 	public static final double CONVERGENCE_THRESHOLD = 0;
 	public static final double PROB_EPSILON = Math.pow(10, -4);
 
+	/**
+	 * The number of sweeps and the allocation budget of a sweep used by the
+	 * allocation tests. A single boxed value per backup of the 10,000 state
+	 * test model would exceed the budget by two orders of magnitude.
+	 */
+	public static final int ALLOCATION_SWEEPS = 20;
+	public static final long MAX_BYTES_PER_SWEEP = 1024;
+
 	/**
 	 * Tests whether {@link MatrixInversePolicyEvaluation} and
 	 * {@link IterativePolicyEvaluation} produce similar value functions for the
@@ -85,6 +113,211 @@ public class ClassicalMDPAlgorithmTests {
 				VALUE_EPSILON));
 	}
 
+	/**
+	 * Tests if {@link PropagatingPolicyEvaluation} and
+	 * {@link MatrixInversePolicyEvaluation} with a cached inverse produce the
+	 * same value functions as plain {@link MatrixInversePolicyEvaluation} when
+	 * a sequence of policies is evaluated.
+	 */
+	@Test
+	public void testIncrementalPolicyEvaluationMatchesMatrixInverse() {
+		ChainMDP mdp = new ChainMDP();
+		Map<Integer, Integer> pmap = new HashMap<Integer, Integer>();
+		for (Integer s : mdp.states()) {
+			pmap.put(s, ChainMDP.ACTION2);
+		}
+		MapPolicy<Integer, Integer> policy = new MapPolicy<Integer, Integer>(
+				pmap);
+
+		MatrixInversePolicyEvaluation<Integer, Integer> mipe = new MatrixInversePolicyEvaluation<Integer, Integer>(
+				mdp, DF);
+		MatrixInversePolicyEvaluation<Integer, Integer> cached = new MatrixInversePolicyEvaluation<Integer, Integer>(
+				mdp, DF, true);
+		PropagatingPolicyEvaluation<Integer, Integer> ppe = new PropagatingPolicyEvaluation<Integer, Integer>(
+				mdp, DF, PE_MAX_ITERATIONS, CONVERGENCE_THRESHOLD);
+
+		// Switch one state at a time to the optimal action
+		for (Integer s : mdp.states()) {
+			DiscountedVFunction<Integer> mipeVFunc = mipe.eval(policy);
+			assertTrue(vfuncsAreEqual(mdp.states(), mipeVFunc,
+					cached.eval(policy), VALUE_EPSILON));
+			assertTrue(vfuncsAreEqual(mdp.states(), mipeVFunc,
+					ppe.eval(policy), VALUE_EPSILON));
+			policy.set(s, ChainMDP.ACTION1);
+		}
+	}
+
+	/**
+	 * Tests if {@link MultiPolicyEvaluation} evaluates a batch of policies to
+	 * the same value functions as {@link IterativePolicyEvaluation}, both when
+	 * policies converge and are removed from the batch at different sweeps and
+	 * when the same instance evaluates a smaller batch afterwards.
+	 */
+	@Test
+	public void testMultiPolicyEvaluationMatchesIterativePolicyEvaluation() {
+		ChainMDP mdp = new ChainMDP();
+		double theta = 1e-6;
+		List<MapPolicy<Integer, Integer>> policies = new ArrayList<MapPolicy<Integer, Integer>>();
+		policies.add(mdp.optimalPolicy());
+		for (int a = 0; a < ChainMDP.NUM_ACTIONS; a++) {
+			Map<Integer, Integer> pmap = new HashMap<Integer, Integer>();
+			for (Integer s : mdp.states()) {
+				pmap.put(s, a);
+			}
+			policies.add(new MapPolicy<Integer, Integer>(pmap));
+		}
+
+		MultiPolicyEvaluation<Integer, Integer> mpe = new MultiPolicyEvaluation<Integer, Integer>(
+				mdp, DF, PE_MAX_ITERATIONS, theta);
+		IterativePolicyEvaluation<Integer, Integer> ipe = new IterativePolicyEvaluation<Integer, Integer>(
+				mdp, DF, PE_MAX_ITERATIONS, theta);
+
+		List<DiscountedVFunction<Integer>> vfuncs = mpe.eval(policies);
+		assertEquals(policies.size(), vfuncs.size());
+		int minIterations = Integer.MAX_VALUE;
+		int maxIterations = 0;
+		for (int j = 0; j < policies.size(); j++) {
+			assertTrue(vfuncsAreEqual(mdp.states(),
+					ipe.eval(policies.get(j)), vfuncs.get(j), VALUE_EPSILON));
+			minIterations = Math.min(minIterations, mpe.iterations(j));
+			maxIterations = Math.max(maxIterations, mpe.iterations(j));
+		}
+		// Some policies were removed from the groups before the others
+		assertTrue(minIterations < maxIterations);
+
+		policies.remove(0);
+		vfuncs = mpe.eval(policies);
+		assertEquals(policies.size(), vfuncs.size());
+		for (int j = 0; j < policies.size(); j++) {
+			assertTrue(vfuncsAreEqual(mdp.states(),
+					ipe.eval(policies.get(j)), vfuncs.get(j), VALUE_EPSILON));
+		}
+	}
+
+	/**
+	 * Tests if the cached inverse of {@link MatrixInversePolicyEvaluation} is
+	 * recomputed after {@link MatrixInversePolicyEvaluation#MAX_UPDATES}
+	 * consecutive updates and still matches the uncached evaluation.
+	 */
+	@Test
+	public void testCachedInverseIsRefreshedAfterMaxUpdates() {
+		ChainMDP mdp = new ChainMDP();
+		Map<Integer, Integer> pmap = new HashMap<Integer, Integer>();
+		for (Integer s : mdp.states()) {
+			pmap.put(s, ChainMDP.ACTION2);
+		}
+		MapPolicy<Integer, Integer> policy = new MapPolicy<Integer, Integer>(
+				pmap);
+
+		MatrixInversePolicyEvaluation<Integer, Integer> mipe = new MatrixInversePolicyEvaluation<Integer, Integer>(
+				mdp, DF);
+		MatrixInversePolicyEvaluation<Integer, Integer> cached = new MatrixInversePolicyEvaluation<Integer, Integer>(
+				mdp, DF, true);
+
+		boolean refreshed = false;
+		int lastUpdates = 0;
+		for (Integer s : mdp.states()) {
+			assertTrue(vfuncsAreEqual(mdp.states(), mipe.eval(policy),
+					cached.eval(policy), VALUE_EPSILON));
+			int updates = cached.updates();
+			assertTrue(updates <= MatrixInversePolicyEvaluation.MAX_UPDATES);
+			if (lastUpdates == MatrixInversePolicyEvaluation.MAX_UPDATES
+					&& updates == 0) {
+				refreshed = true;
+			}
+			lastUpdates = updates;
+			policy.set(s, ChainMDP.ACTION1);
+		}
+		assertTrue(refreshed);
+	}
+
+	/**
+	 * Tests if {@link PropagatingPolicyEvaluation} solves for undiscounted
+	 * absorbing states without dividing by zero and rejects absorbing states
+	 * with a nonzero reward.
+	 */
+	@Test
+	public void testPropagatingPolicyEvaluationHandlesUndiscountedSelfLoops() {
+		DiscountFactor undiscounted = new DiscountFactor(1);
+		BoxedSMDP goal = absorbingMDP(0);
+		PropagatingPolicyEvaluation<Integer, Integer> ppe = new PropagatingPolicyEvaluation<Integer, Integer>(
+				goal, undiscounted, PE_MAX_ITERATIONS, CONVERGENCE_THRESHOLD);
+		DiscountedVFunction<Integer> vfunc = ppe.eval(absorbingPolicy());
+		assertEquals(1, vfunc.value(0), 0);
+		assertEquals(0, vfunc.value(1), 0);
+
+		BoxedSMDP trap = absorbingMDP(1);
+		ppe = new PropagatingPolicyEvaluation<Integer, Integer>(trap,
+				undiscounted, PE_MAX_ITERATIONS, CONVERGENCE_THRESHOLD);
+		try {
+			ppe.eval(absorbingPolicy());
+			fail("Expected an exception for an unbounded value.");
+		} catch (IllegalStateException ex) {
+			// expected
+		}
+	}
+
+	/**
+	 * Tests if {@link PropagatingPolicyEvaluation} reports an evaluation that
+	 * stops at its backup limit as truncated.
+	 */
+	@Test
+	public void testPropagatingPolicyEvaluationReportsTruncation() {
+		ChainMDP mdp = new ChainMDP();
+		MapPolicy<Integer, Integer> policy = mdp.optimalPolicy();
+
+		PropagatingPolicyEvaluation<Integer, Integer> ppe = new PropagatingPolicyEvaluation<Integer, Integer>(
+				mdp, DF, 1, CONVERGENCE_THRESHOLD);
+		ppe.eval(policy);
+		assertTrue(ppe.monitor().isTruncated());
+
+		ppe = new PropagatingPolicyEvaluation<Integer, Integer>(mdp, DF,
+				PE_MAX_ITERATIONS, CONVERGENCE_THRESHOLD);
+		ppe.eval(policy);
+		assertFalse(ppe.monitor().isTruncated());
+	}
+
+	/**
+	 * Returns a two-state MDP with a single action where state 0 moves to
+	 * state 1 with reward 1 and state 1 returns to itself with probability 1.
+	 */
+	private static BoxedSMDP absorbingMDP(final double absorbingReward) {
+		return new BoxedSMDP(new AbstractIntMDP(Optimization.MAXIMIZE) {
+			@Override
+			public int numberOfStates() {
+				return 2;
+			}
+
+			@Override
+			public int numberOfActions() {
+				return 1;
+			}
+
+			@Override
+			public double r(int state, int action, int nextState) {
+				return (state == 0) ? 1 : absorbingReward;
+			}
+
+			@Override
+			public double tprob(int state, int action, int nextState) {
+				return (nextState == 1) ? 1 : 0;
+			}
+
+			@Override
+			public void successors(int state, int action,
+					SuccessorVisitor visitor) {
+				visitor.visit(1, 1, 1, r(state, action, 1));
+			}
+		});
+	}
+
+	private static MapPolicy<Integer, Integer> absorbingPolicy() {
+		Map<Integer, Integer> pmap = new HashMap<Integer, Integer>();
+		pmap.put(0, 0);
+		pmap.put(1, 0);
+		return new MapPolicy<Integer, Integer>(pmap);
+	}
+
 	public static <S> void printVFuncs(Iterable<S> states,
 			DiscountedVFunction<S>... vfuncs) {
 		DecimalFormat df = new DecimalFormat("0.000");
@@ -133,6 +366,43 @@ public class ClassicalMDPAlgorithmTests {
 		return same;
 	}
 
+	/**
+	 * Tests if a {@link SolverListener} registered with the monitor of
+	 * {@link ValueIteration} receives one report per sweep with the residual
+	 * and the number of backups, and if the totals reported when the solver
+	 * finishes agree with the per-sweep reports.
+	 */
+	@Test
+	public void testSolverListenerReceivesEverySweep() {
+		final ChainMDP mdp = new ChainMDP();
+		final List<Double> residuals = new ArrayList<Double>();
+		final long[] totals = new long[2];
+		ValueIteration<Integer, Integer> vi = new ValueIteration<Integer, Integer>(
+				mdp, DF, PE_MAX_ITERATIONS, CONVERGENCE_THRESHOLD);
+		vi.monitor().addListener(new SolverListener() {
+			@Override
+			public void sweep(SolverMonitor monitor) {
+				assertEquals(residuals.size() + 1, monitor.sweeps());
+				assertEquals(mdp.numberOfStates(), monitor.backups());
+				assertTrue(monitor.sweepWallNanos() >= 0);
+				residuals.add(monitor.residual());
+			}
+
+			@Override
+			public void finished(SolverMonitor monitor) {
+				totals[0] = monitor.totalBackups();
+				totals[1] = monitor.sweeps();
+			}
+		});
+		vi.run();
+
+		assertFalse(residuals.isEmpty());
+		assertTrue(residuals.size() <= PE_MAX_ITERATIONS);
+		assertTrue(residuals.get(residuals.size() - 1) < residuals.get(0));
+		assertEquals(residuals.size(), totals[1]);
+		assertEquals(residuals.size() * mdp.numberOfStates(), totals[0]);
+	}
+
 	/**
 	 * Tests if {@link PolicyIteration} produces the optimal policy for a
 	 * benchmark MDP.
@@ -150,6 +420,179 @@ public class ClassicalMDPAlgorithmTests {
 		assertTrue(policiesAreEqual(mdp, piPolicy, optimalPolicy, PROB_EPSILON));
 	}
 
+	/**
+	 * Tests if the value-stability rule of {@link PolicyIteration} stops the
+	 * algorithm when the policy only flips between actions whose values differ
+	 * by less than the tolerance, while the change count alone keeps going.
+	 */
+	@Test
+	public void testStabilityToleranceIgnoresSubToleranceFlips() {
+		// A single state whose second action is better by a rounding error
+		final BoxedSMDP smdp = new BoxedSMDP(new AbstractIntMDP(
+				Optimization.MAXIMIZE) {
+			@Override
+			public int numberOfStates() {
+				return 1;
+			}
+
+			@Override
+			public int numberOfActions() {
+				return 2;
+			}
+
+			@Override
+			public double r(int state, int action, int nextState) {
+				return 1 + action * 1e-9;
+			}
+
+			@Override
+			public double tprob(int state, int action, int nextState) {
+				return 1;
+			}
+
+			@Override
+			public void successors(int state, int action,
+					SuccessorVisitor visitor) {
+				visitor.visit(0, 1, 1, r(state, action, 0));
+			}
+		});
+		final int[] iterations = new int[2];
+		for (int i = 0; i < iterations.length; i++) {
+			final int run = i;
+			PolicyIteration<Integer, Integer> pi = new PolicyIteration<Integer, Integer>(
+					smdp, DF, PI_MAX_ITERATIONS) {
+				@Override
+				public DeterministicPolicy<Integer, Integer> initialPolicy() {
+					Map<Integer, Integer> pmap = new HashMap<Integer, Integer>();
+					pmap.put(0, 0);
+					return new MapPolicy<Integer, Integer>(pmap);
+				}
+			};
+			if (run == 1) {
+				pi.setStabilityTolerance(1e-6);
+			}
+			pi.addPolicyIterationListener(new AbstractPolicyIteration.PolicyIterationListener<Integer, Integer, StationaryPolicy<Integer, Integer>, DiscountedVFunction<Integer>>() {
+				@Override
+				public void initialEvaluation(
+						StationaryPolicy<Integer, Integer> policy,
+						DiscountedVFunction<Integer> vfunc,
+						long policyGenerationTimeInMillis,
+						long policyEvaluationTimeInMillis) {
+				}
+
+				@Override
+				public void iteration(int iteration,
+						StationaryPolicy<Integer, Integer> oldPolicy,
+						DiscountedVFunction<Integer> oldVFunc,
+						StationaryPolicy<Integer, Integer> newPolicy,
+						DiscountedVFunction<Integer> newVFunc,
+						long policyImprovementTimeInMillis,
+						long policyEvaluationTimeInMillis) {
+					iterations[run] = iteration;
+				}
+
+				@Override
+				public void finished(StationaryPolicy<Integer, Integer> policy,
+						DiscountedVFunction<Integer> vfunc) {
+				}
+			});
+			assertEquals(Integer.valueOf(1), pi.run().policy(0));
+		}
+		// The flip counts as a change without the tolerance, so a second
+		// iteration confirms that the policy is stable
+		assertEquals(2, iterations[0]);
+		assertEquals(1, iterations[1]);
+	}
+
+	/**
+	 * Tests if {@link PolicyIteration} produces an optimal policy when policy
+	 * improvement is performed by {@link ParallelPolicyImprovement}. Ties are
+	 * broken in favor of the previous policy, so the policies are compared by
+	 * their values. Also tests if the improvement step reuses an executor
+	 * supplied by the caller across calls and leaves it running when closed.
+	 */
+	@Test
+	public void testParallelPolicyIterationReturnsOptimalPolicy() {
+		ChainMDP mdp = new ChainMDP();
+		MapPolicy<Integer, Integer> optimalPolicy = mdp.optimalPolicy();
+
+		PolicyIteration<Integer, Integer> pi = new PolicyIteration<Integer, Integer>(
+				mdp, DF, PI_MAX_ITERATIONS, 4);
+
+		StationaryPolicy<Integer, Integer> piPolicy = pi.run();
+
+		MatrixInversePolicyEvaluation<Integer, Integer> mipe = new MatrixInversePolicyEvaluation<Integer, Integer>(
+				mdp, DF);
+		DiscountedVFunction<Integer> optimalVFunc = mipe.eval(optimalPolicy);
+		assertTrue(vfuncsAreEqual(mdp.states(), mipe.eval(piPolicy),
+				optimalVFunc, VALUE_EPSILON));
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			ParallelPolicyImprovement<Integer, Integer> ppi = new ParallelPolicyImprovement<Integer, Integer>(
+					new CompiledSMDP<Integer, Integer>(mdp), DF, 4, executor);
+			for (int i = 0; i < 2; i++) {
+				StationaryPolicy<Integer, Integer> improved = ppi.improve(
+						optimalPolicy, optimalVFunc);
+				assertEquals(0, ppi.numberOfChanges());
+				assertTrue(vfuncsAreEqual(mdp.states(), mipe.eval(improved),
+						optimalVFunc, VALUE_EPSILON));
+			}
+			ppi.close();
+			assertFalse(executor.isShutdown());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Tests if {@link ParallelPolicyImprovement} rejects an SMDP with a state
+	 * that has no valid actions instead of selecting no row for it.
+	 */
+	@Test
+	public void testParallelPolicyImprovementRejectsStatesWithoutActions() {
+		CompiledSMDP<Integer, Integer> model = CompiledSMDP
+				.of(new AbstractIntMDP(Optimization.MAXIMIZE) {
+					@Override
+					public int numberOfStates() {
+						return 2;
+					}
+
+					@Override
+					public int numberOfActions() {
+						return 1;
+					}
+
+					@Override
+					public boolean isValid(int state, int action) {
+						return state == 0;
+					}
+
+					@Override
+					public double r(int state, int action, int nextState) {
+						return 1;
+					}
+
+					@Override
+					public double tprob(int state, int action, int nextState) {
+						return (nextState == 1) ? 1 : 0;
+					}
+
+					@Override
+					public void successors(int state, int action,
+							SuccessorVisitor visitor) {
+						visitor.visit(1, 1, 1, 1);
+					}
+				});
+		assertEquals(model.rowBegin(1), model.rowEnd(1));
+		try {
+			new ParallelPolicyImprovement<Integer, Integer>(model, DF, 2);
+			fail("Expected an exception for a state without valid actions.");
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
 	/**
 	 * Tests if {@link ValueIteration} produces the optimal policy for a
 	 * benchmark MDP.
@@ -166,6 +609,271 @@ public class ClassicalMDPAlgorithmTests {
 		assertTrue(policiesAreEqual(mdp, viPolicy, optimalPolicy, PROB_EPSILON));
 	}
 
+	/**
+	 * Tests if compiled {@link ValueIteration} produces the optimal policy and
+	 * performs no allocation during its sweeps. The allocated bytes of the
+	 * solver's thread are sampled by a listener at the end of each sweep, so
+	 * the compilation of the model before the first sweep is not counted.
+	 */
+	@Test
+	public void testCompiledValueIterationDoesNotAllocatePerSweep() {
+		ChainMDP mdp = new ChainMDP();
+		ValueIteration<Integer, Integer> vi = new ValueIteration<Integer, Integer>(
+				mdp, DF, VI_MAX_ITERATIONS, CONVERGENCE_THRESHOLD);
+		vi.setCompiled(true);
+		assertTrue(policiesAreEqual(mdp, vi.run(), mdp.optimalPolicy(),
+				PROB_EPSILON));
+
+		AllocationRecorder recorder = new AllocationRecorder(
+				ALLOCATION_SWEEPS);
+		assumeTrue(recorder.isSupported());
+		ValueIteration<Integer, Integer> large = new ValueIteration<Integer, Integer>(
+				new BoxedSMDP(new GarnetMDP(10000, 4, 8, 1)), DF,
+				ALLOCATION_SWEEPS, CONVERGENCE_THRESHOLD);
+		large.setCompiled(true);
+		large.monitor().addListener(recorder);
+		large.run();
+		assertEquals(ALLOCATION_SWEEPS, recorder.sweeps());
+		assertTrue(recorder.maxBytesPerSweep() <= MAX_BYTES_PER_SWEEP);
+	}
+
+	/**
+	 * Tests if {@link ValueIteration} and {@link PolicyIteration} agree on
+	 * generated MDPs and SMDPs with many successors per state-action pair.
+	 */
+	@Test
+	public void testValueIterationMatchesPolicyIterationOnGeneratedModels() {
+		List<BoxedSMDP> smdps = new ArrayList<BoxedSMDP>();
+		smdps.add(new BoxedSMDP(new GarnetMDP(100, 4, 5, 1)));
+		smdps.add(new BoxedSMDP(new RandomSMDP(100, 3, 5, 50, 1.5, 2)));
+		for (BoxedSMDP smdp : smdps) {
+			ValueIteration<Integer, Integer> vi = new ValueIteration<Integer, Integer>(
+					smdp, DF, VI_MAX_ITERATIONS, CONVERGENCE_THRESHOLD);
+			PolicyIteration<Integer, Integer> pi = new PolicyIteration<Integer, Integer>(
+					smdp, DF, PI_MAX_ITERATIONS);
+			MatrixInversePolicyEvaluation<Integer, Integer> mipe = new MatrixInversePolicyEvaluation<Integer, Integer>(
+					smdp, DF);
+			assertTrue(vfuncsAreEqual(smdp.states(), vi.run().greedy(),
+					mipe.eval(pi.run()), VALUE_EPSILON));
+		}
+	}
+
+	/**
+	 * Tests if {@link BatchValueIteration} produces the same value functions as
+	 * {@link ValueIteration} and {@link MatrixInversePolicyEvaluation} for
+	 * several discount factors.
+	 */
+	@Test
+	public void testBatchValueIterationMatchesSingleDiscountFactorSolvers() {
+		ChainMDP mdp = new ChainMDP();
+		MapPolicy<Integer, Integer> optimalPolicy = mdp.optimalPolicy();
+		List<DiscountFactor> dfs = new ArrayList<DiscountFactor>();
+		dfs.add(DF);
+		dfs.add(new DiscountFactor(0.5));
+		dfs.add(new DiscountFactor(0.9));
+
+		BatchValueIteration<Integer, Integer> bvi = new BatchValueIteration<Integer, Integer>(
+				mdp, dfs, PE_MAX_ITERATIONS, CONVERGENCE_THRESHOLD);
+		List<DiscountedVFunction<Integer>> bviVFuncs = bvi.run();
+		List<DiscountedVFunction<Integer>> bpeVFuncs = bvi.eval(optimalPolicy);
+
+		for (int i = 0; i < dfs.size(); i++) {
+			ValueIteration<Integer, Integer> vi = new ValueIteration<Integer, Integer>(
+					mdp, dfs.get(i), PE_MAX_ITERATIONS, CONVERGENCE_THRESHOLD);
+			MatrixInversePolicyEvaluation<Integer, Integer> mipe = new MatrixInversePolicyEvaluation<Integer, Integer>(
+					mdp, dfs.get(i));
+
+			assertTrue(vfuncsAreEqual(mdp.states(), vi.run().greedy(),
+					bviVFuncs.get(i), VALUE_EPSILON));
+			assertTrue(vfuncsAreEqual(mdp.states(),
+					mipe.eval(optimalPolicy), bpeVFuncs.get(i), VALUE_EPSILON));
+		}
+	}
+
+	/**
+	 * Tests if {@link AsyncValueIteration} finds the same values and greedy
+	 * policy as {@link ValueIteration} with 1, 2 and 4 threads, across
+	 * repeated runs that reuse its pool, and on a caller-supplied executor
+	 * with fewer threads than workers.
+	 */
+	@Test
+	public void testAsyncValueIterationMatchesValueIteration() {
+		ChainMDP mdp = new ChainMDP();
+		MapPolicy<Integer, Integer> optimalPolicy = mdp.optimalPolicy();
+		ValueIteration<Integer, Integer> vi = new ValueIteration<Integer, Integer>(
+				mdp, DF, PE_MAX_ITERATIONS, CONVERGENCE_THRESHOLD);
+		DiscountedVFunction<Integer> viVFunc = vi.run().greedy();
+
+		for (int numThreads = 1; numThreads <= 4; numThreads *= 2) {
+			AsyncValueIteration<Integer, Integer> avi = new AsyncValueIteration<Integer, Integer>(
+					mdp, DF, PE_MAX_ITERATIONS, CONVERGENCE_THRESHOLD,
+					numThreads);
+			// The second run reuses the thread pool of the first
+			for (int run = 0; run < 2; run++) {
+				DiscountedQFunction<Integer, Integer> qfunc = avi.run();
+				assertTrue(vfuncsAreEqual(mdp.states(), viVFunc,
+						qfunc.greedy(), VALUE_EPSILON));
+				for (Integer state : mdp.states()) {
+					assertEquals(optimalPolicy.policy(state),
+							qfunc.greedyAction(state));
+				}
+			}
+			avi.close();
+		}
+
+		// No worker waits for another, so more workers than threads finish
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			AsyncValueIteration<Integer, Integer> avi = new AsyncValueIteration<Integer, Integer>(
+					new CompiledSMDP<Integer, Integer>(mdp), DF,
+					PE_MAX_ITERATIONS, CONVERGENCE_THRESHOLD, 4, executor);
+			assertTrue(vfuncsAreEqual(mdp.states(), viVFunc, avi.run()
+					.greedy(), VALUE_EPSILON));
+			avi.close();
+			assertFalse(executor.isShutdown());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Tests if {@link ValueIteration} and {@link IterativePolicyEvaluation}
+	 * converge to the optimal values under Anderson and Nesterov acceleration.
+	 */
+	@Test
+	public void testAcceleratedSolversMatchPlainSolvers() {
+		ChainMDP mdp = new ChainMDP();
+		MapPolicy<Integer, Integer> optimalPolicy = mdp.optimalPolicy();
+		MatrixInversePolicyEvaluation<Integer, Integer> mipe = new MatrixInversePolicyEvaluation<Integer, Integer>(
+				mdp, DF);
+		DiscountedVFunction<Integer> optimalVFunc = mipe.eval(optimalPolicy);
+
+		Acceleration[] accelerations = { Acceleration.ANDERSON,
+				Acceleration.NESTEROV };
+		for (Acceleration acceleration : accelerations) {
+			ValueIteration<Integer, Integer> vi = new ValueIteration<Integer, Integer>(
+					mdp, DF, PE_MAX_ITERATIONS, CONVERGENCE_THRESHOLD);
+			vi.setAcceleration(acceleration);
+			IterativePolicyEvaluation<Integer, Integer> ipe = new IterativePolicyEvaluation<Integer, Integer>(
+					mdp, DF, PE_MAX_ITERATIONS, CONVERGENCE_THRESHOLD);
+			ipe.setAcceleration(acceleration);
+
+			assertTrue(vfuncsAreEqual(mdp.states(), optimalVFunc, vi.run()
+					.greedy(), VALUE_EPSILON));
+			assertTrue(vfuncsAreEqual(mdp.states(), optimalVFunc,
+					ipe.eval(optimalPolicy), VALUE_EPSILON));
+		}
+	}
+
+	/**
+	 * Tests if {@link MultigridValueIteration} with a pairwise state
+	 * aggregation returns the optimal values and policy of the chain MDP.
+	 */
+	@Test
+	public void testMultigridValueIterationReturnsOptimalPolicy() {
+		ChainMDP mdp = new ChainMDP();
+		MapPolicy<Integer, Integer> optimalPolicy = mdp.optimalPolicy();
+		CompiledSMDP<Integer, Integer> model = new CompiledSMDP<Integer, Integer>(
+				mdp);
+		Map<Integer, Integer> pairs = new HashMap<Integer, Integer>();
+		for (Integer state : mdp.states()) {
+			pairs.put(state, state / 2);
+		}
+		MatrixInversePolicyEvaluation<Integer, Integer> mipe = new MatrixInversePolicyEvaluation<Integer, Integer>(
+				mdp, DF);
+
+		MultigridValueIteration<Integer, Integer> mgvi = new MultigridValueIteration<Integer, Integer>(
+				model, StateAggregation.fromMap(model, pairs), DF,
+				PE_MAX_ITERATIONS, CONVERGENCE_THRESHOLD);
+		DiscountedQFunction<Integer, Integer> qfunc = mgvi.run();
+
+		assertTrue(vfuncsAreEqual(mdp.states(), mipe.eval(optimalPolicy),
+				qfunc.greedy(), VALUE_EPSILON));
+		for (Integer state : mdp.states()) {
+			assertEquals(optimalPolicy.policy(state), qfunc.greedyAction(state));
+		}
+	}
+
+	/**
+	 * Tests if solving the {@link Bisimulation} quotient of the chain MDP and
+	 * lifting the result gives the optimal values and policy of the original
+	 * MDP.
+	 */
+	@Test
+	public void testBisimulationQuotientLiftsToOptimalSolution() {
+		ChainMDP mdp = new ChainMDP();
+		MapPolicy<Integer, Integer> optimalPolicy = mdp.optimalPolicy();
+		Bisimulation<Integer, Integer> bisim = new Bisimulation<Integer, Integer>(
+				mdp);
+		ValueIteration<Integer, Integer> vi = new ValueIteration<Integer, Integer>(
+				bisim.quotient(), DF, PE_MAX_ITERATIONS, CONVERGENCE_THRESHOLD);
+		DiscountedQFunction<Integer, Integer> qfunc = vi.run();
+		MatrixInversePolicyEvaluation<Integer, Integer> mipe = new MatrixInversePolicyEvaluation<Integer, Integer>(
+				mdp, DF);
+
+		assertTrue(vfuncsAreEqual(mdp.states(), mipe.eval(optimalPolicy),
+				bisim.liftValues(qfunc.greedy()), VALUE_EPSILON));
+		StationaryPolicy<Integer, Integer> lifted = bisim.liftPolicy(qfunc);
+		for (Integer state : mdp.states()) {
+			assertEquals(optimalPolicy.policy(state), lifted.policy(state));
+		}
+	}
+
+	/**
+	 * Records the number of bytes allocated by the solver's thread at the end
+	 * of each sweep. Recording itself does not allocate.
+	 */
+	private static class AllocationRecorder implements SolverListener {
+
+		private com.sun.management.ThreadMXBean _threads;
+		private long[] _allocated;
+		private int _sweeps;
+
+		public AllocationRecorder(int maxSweeps) {
+			java.lang.management.ThreadMXBean threads = ManagementFactory
+					.getThreadMXBean();
+			if (threads instanceof com.sun.management.ThreadMXBean) {
+				_threads = (com.sun.management.ThreadMXBean) threads;
+			}
+			_allocated = new long[maxSweeps];
+		}
+
+		public boolean isSupported() {
+			return _threads != null
+					&& _threads.isThreadAllocatedMemorySupported()
+					&& _threads.isThreadAllocatedMemoryEnabled();
+		}
+
+		@Override
+		public void sweep(SolverMonitor monitor) {
+			if (_sweeps < _allocated.length) {
+				_allocated[_sweeps] = _threads.getThreadAllocatedBytes(Thread
+						.currentThread().getId());
+			}
+			_sweeps++;
+		}
+
+		@Override
+		public void finished(SolverMonitor monitor) {
+		}
+
+		public int sweeps() {
+			return _sweeps;
+		}
+
+		/**
+		 * Returns the largest number of bytes allocated between the ends of
+		 * two consecutive sweeps.
+		 */
+		public long maxBytesPerSweep() {
+			long max = 0;
+			for (int i = 1; i < Math.min(_sweeps, _allocated.length); i++) {
+				max = Math.max(max, _allocated[i] - _allocated[i - 1]);
+			}
+			return max;
+		}
+	}
+
 	/**
 	 * Returns true if the given polices are equivalent. Returns false if the
 	 * policies differ.
@@ -28,11 +28,19 @@
 package com.github.kingtim1.jmdp.discounted;
 
 import com.github.kingtim1.jmdp.FiniteStateSMDP;
+import com.github.kingtim1.jmdp.MonitoredSolver;
+import com.github.kingtim1.jmdp.SolverMonitor;
 import com.github.kingtim1.jmdp.StationaryPolicy;
+import com.github.kingtim1.jmdp.TransitionDistribution;
+import com.github.kingtim1.jmdp.compiled.CompiledSMDP;
 
 /**
  * An iterative version of the policy evaluation algorithm using asynchronous
  * backups.
+ * <p>
+ * Anderson mixing or Nesterov momentum can be enabled with
+ * {@link #setAcceleration(Acceleration)}.
+ * </p>
  * 
  * @author Timothy A. Mann
  *
@@ -41,12 +49,17 @@ import com.github.kingtim1.jmdp.StationaryPolicy;
  * @param <A>
  *            the action type
  */
-public class IterativePolicyEvaluation<S, A> implements com.github.kingtim1.jmdp.PolicyEvaluation<S,A,StationaryPolicy<S,A>, DiscountedVFunction<S>> {
+public class IterativePolicyEvaluation<S, A> implements com.github.kingtim1.jmdp.PolicyEvaluation<S,A,StationaryPolicy<S,A>, DiscountedVFunction<S>>,
+		MonitoredSolver {
 
 	private FiniteStateSMDP<S, A> _smdp;
 	private DiscountFactor _df;
 	private int _maxIterations;
 	private double _theta;
+	private Acceleration _acceleration;
+	private int _history;
+	private TransitionDistribution<S> _dist;
+	private SolverMonitor _monitor;
 
 	public IterativePolicyEvaluation(FiniteStateSMDP<S, A> smdp,
 			DiscountFactor df,
@@ -56,6 +69,61 @@ public class IterativePolicyEvaluation<S, A> implements com.github.kingtim1.jmdp
 
 		_maxIterations = maxIterations;
 		_theta = convergenceThreshold;
+		_acceleration = Acceleration.NONE;
+		_history = Acceleration.DEFAULT_HISTORY;
+		_dist = new TransitionDistribution<S>();
+		_monitor = new SolverMonitor(this);
+	}
+
+	/**
+	 * Selects the fixed-point acceleration scheme. Accelerated runs compile
+	 * the SMDP and use Jacobi backups of all states, falling back to the plain
+	 * Bellman step whenever an accelerated step would increase the Bellman
+	 * residual. The default is {@link Acceleration#NONE}.
+	 * 
+	 * @param acceleration
+	 *            an acceleration scheme
+	 */
+	public void setAcceleration(Acceleration acceleration) {
+		if (acceleration == null) {
+			throw new NullPointerException("Acceleration cannot be null.");
+		}
+		_acceleration = acceleration;
+	}
+
+	/**
+	 * Returns the fixed-point acceleration scheme.
+	 * 
+	 * @return the acceleration scheme
+	 */
+	public Acceleration acceleration() {
+		return _acceleration;
+	}
+
+	/**
+	 * Sets the number of previous iterations mixed by Anderson acceleration.
+	 * The default is {@link Acceleration#DEFAULT_HISTORY}.
+	 * 
+	 * @param history
+	 *            a positive number of iterations
+	 */
+	public void setAndersonHistory(int history) {
+		if (history < 1) {
+			throw new IllegalArgumentException(
+					"Expected a positive history length. Found " + history
+							+ ".");
+		}
+		_history = history;
+	}
+
+	/**
+	 * Returns the number of previous iterations mixed by Anderson
+	 * acceleration.
+	 * 
+	 * @return the history length
+	 */
+	public int andersonHistory() {
+		return _history;
 	}
 
 	/**
@@ -70,50 +138,41 @@ public class IterativePolicyEvaluation<S, A> implements com.github.kingtim1.jmdp
 	 * @return the resulting Bellman backup
 	 */
 	private double backup(StationaryPolicy<S,A> policy, S state, DiscountedVFunction<S> vfunc) {
-		return rPi(policy, state) + avgNextV(policy, state, vfunc);
-	}
-
-	private double avgNextV(StationaryPolicy<S,A> policy, S state, DiscountedVFunction<S> vfunc) {
 		if (policy.isDeterministic()) {
 			A action = policy.policy(state);
-			return FiniteStateSMDP.avgNextV(_smdp, state, action, vfunc, _df);
+			double v = FiniteStateSMDP.backup(_smdp, state, action, vfunc, _df, _dist);
+			_monitor.count(1, _dist.size());
+			return v;
 		} else {
-			double avgV = 0;
+			double v = 0;
 			Iterable<A> actions = _smdp.actions(state);
 			for (A action : actions) {
 				double aprob = policy.aprob(state, action);
-				avgV += aprob * FiniteStateSMDP.avgNextV(_smdp, state, action, vfunc, _df);
+				if (aprob > 0) {
+					v += aprob * FiniteStateSMDP.backup(_smdp, state, action, vfunc, _df, _dist);
+					_monitor.count(0, _dist.size());
+				}
 			}
-			return avgV;
+			_monitor.count(1, 0);
+			return v;
 		}
 	}
 
-	/**
-	 * Returns the expected reinforcement at a specified state given the
-	 * distribution over actions selected by the policy.
-	 * 
-	 * @param policy stationary policy
-	 * @param state
-	 *            a state
-	 * @return the expected reinforcement at the specified state
-	 */
-	private double rPi(StationaryPolicy<S,A> policy, S state) {
-		if (policy.isDeterministic()) {
-			A action = policy.policy(state);
-			return FiniteStateSMDP.avgR(_smdp, state, action);
-		} else {
-			double ravg = 0;
-			Iterable<A> actions = _smdp.actions(state);
-			for (A action : actions) {
-				double aprob = policy.aprob(state, action);
-				ravg += aprob * FiniteStateSMDP.avgR(_smdp, state, action);
-			}
-			return ravg;
-		}
+	@Override
+	public SolverMonitor monitor() {
+		return _monitor;
 	}
 
 	@Override
 	public DiscountedVFunction<S> eval(StationaryPolicy<S, A> policy) {
+		_monitor.start();
+		if (!_acceleration.equals(Acceleration.NONE)) {
+			CompiledSMDP<S, A> model = new CompiledSMDP<S, A>(_smdp);
+			double[] values = accelerated(model, policy).solve(
+					new double[model.numberOfStates()], _maxIterations, _theta);
+			_monitor.finish();
+			return new ArrayVFunction<S>(model, values, 0);
+		}
 		MapVFunction<S> vfunc = new MapVFunction<S>(0);
 
 		for (int i = 0; i < _maxIterations; i++) {
@@ -125,14 +184,43 @@ public class IterativePolicyEvaluation<S, A> implements com.github.kingtim1.jmdp
 				vfunc.set(state, newV);
 				delta = Math.max(delta, Math.abs(oldV - newV));
 			}
+			_monitor.endSweep(delta);
 
 			if (delta < _theta) {
 				break;
 			}
 		}
 
+		_monitor.finish();
 		return vfunc;
 	}
 
+	private AcceleratedFixedPoint accelerated(final CompiledSMDP<S, A> model,
+			StationaryPolicy<S, A> policy) {
+		final double[] discounts = model.discounts(_df);
+		final double[] weights = model.rowWeights(policy);
+		return new AcceleratedFixedPoint(_acceleration, _history,
+				AcceleratedFixedPoint.defaultMomentum(_df), _monitor) {
+			@Override
+			protected void backup(double[] values, double[] result) {
+				long entries = 0;
+				for (int s = 0; s < result.length; s++) {
+					double v = 0;
+					int rowEnd = model.rowEnd(s);
+					for (int row = model.rowBegin(s); row < rowEnd; row++) {
+						double w = weights[row];
+						if (w == 0) {
+							continue;
+						}
+						entries += model.entryEnd(row) - model.entryBegin(row);
+						v += w * model.qvalue(row, values, discounts);
+					}
+					result[s] = v;
+				}
+				_monitor.count(result.length, entries);
+			}
+		};
+	}
+
 
 }
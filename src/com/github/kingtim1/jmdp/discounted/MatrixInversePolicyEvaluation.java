@@ -28,6 +28,7 @@
 package com.github.kingtim1.jmdp.discounted;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -36,15 +37,21 @@ import java.util.Random;
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.DecompositionSolver;
+import org.apache.commons.math3.linear.LUDecomposition;
 import org.apache.commons.math3.linear.MatrixUtils;
 import org.apache.commons.math3.linear.QRDecomposition;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.linear.RealVector;
+import org.apache.commons.math3.linear.SingularMatrixException;
 import org.apache.commons.math3.linear.SingularValueDecomposition;
 
 import com.github.kingtim1.jmdp.FiniteStateSMDP;
+import com.github.kingtim1.jmdp.MonitoredSolver;
 import com.github.kingtim1.jmdp.PolicyEvaluation;
+import com.github.kingtim1.jmdp.SolverMonitor;
 import com.github.kingtim1.jmdp.StationaryPolicy;
+import com.github.kingtim1.jmdp.TransitionDistribution;
+import com.github.kingtim1.jmdp.metrics.MatrixFactorizationEvent;
 
 /**
  * <p>
@@ -59,6 +66,17 @@ import com.github.kingtim1.jmdp.StationaryPolicy;
  * probability kernel with respect to $\pi$.
  * </p>
  * 
+ * <p>
+ * If the inverse is cached (see the three-argument constructor), then
+ * evaluating a policy that differs from the previously evaluated
+ * policy at $k$ states updates the cached inverse with the
+ * Sherman-Morrison-Woodbury formula in $O(n^2 k)$ time instead of inverting
+ * the matrix again in $O(n^3)$ time. This makes the last iterations of
+ * {@link PolicyIteration}, where only a few states change, much cheaper.
+ * Rounding errors accumulate with every update, so the inverse is recomputed
+ * from scratch after {@link #MAX_UPDATES} consecutive updates.
+ * </p>
+ * 
  * @author Timothy A. Mann
  *
  * @param <S>
@@ -67,11 +85,30 @@ import com.github.kingtim1.jmdp.StationaryPolicy;
  *            the action type
  */
 public class MatrixInversePolicyEvaluation<S, A> implements
-		PolicyEvaluation<S, A, StationaryPolicy<S, A>, DiscountedVFunction<S>> {
+		PolicyEvaluation<S, A, StationaryPolicy<S, A>, DiscountedVFunction<S>>,
+		MonitoredSolver {
+
+	/**
+	 * The largest fraction of rows that may change before the cached inverse
+	 * is recomputed instead of updated.
+	 */
+	public static final double MAX_UPDATE_FRACTION = 0.25;
+
+	/**
+	 * The largest number of consecutive Sherman-Morrison-Woodbury updates of
+	 * the cached inverse before it is recomputed.
+	 */
+	public static final int MAX_UPDATES = 8;
 
 	private FiniteStateSMDP<S, A> _smdp;
 	private DiscountFactor _df;
 
+	private boolean _cacheInverse;
+	private double[][] _lastA;
+	private RealMatrix _inverse;
+	private int _updates;
+	private SolverMonitor _monitor;
+
 	/**
 	 * Constructs a policy evaluator given an SMDP and a discount factor.
 	 * 
@@ -82,103 +119,98 @@ public class MatrixInversePolicyEvaluation<S, A> implements
 	 */
 	public MatrixInversePolicyEvaluation(FiniteStateSMDP<S, A> smdp,
 			DiscountFactor df) {
-		_smdp = smdp;
-		_df = df;
-	}
-
-	private RealMatrix gammaPPi(StationaryPolicy<S, A> policy, List<S> states) {
-		int n = _smdp.numberOfStates();
-		double[][] gpp = new double[n][n];
-
-		// Fill the matrix
-		for (int i = 0; i < n; i++) {
-			for (int j = 0; j < n; j++) {
-				gpp[i][j] = gammaPPi(policy, states, i, j);
-			}
-		}
-
-		return new Array2DRowRealMatrix(gpp);
+		this(smdp, df, false);
 	}
 
-	private double gammaPPi(StationaryPolicy<S, A> policy, List<S> states,
-			int statei, int statej) {
-		S state = states.get(statei);
-		S tstate = states.get(statej);
-
-		if (policy.isDeterministic()) {
-			A action = policy.policy(state);
-			return gammaPPi(state, action, tstate);
-		} else {
-			double pavg = 0;
-			Iterable<A> actions = _smdp.actions(state);
-			for (A action : actions) {
-				pavg += policy.aprob(state, action)
-						* gammaPPi(state, action, tstate);
-			}
-			return pavg;
-		}
-	}
-
-	private double gammaPPi(S state, A action, S terminalState) {
-		double gprob = 0;
-		Iterable<Integer> durs = _smdp.durations(state, action, terminalState);
-		for (Integer dur : durs) {
-			gprob += _smdp.dtprob(state, action, terminalState, dur, _df);
-		}
-		return gprob;
+	/**
+	 * Constructs a policy evaluator given an SMDP and a discount factor that
+	 * optionally caches the inverse of $I - P^{\pi}$ between calls to
+	 * {@link #eval(StationaryPolicy)}.
+	 * 
+	 * @param smdp
+	 *            a finite state SMDP model
+	 * @param df
+	 *            a discount factor
+	 * @param cacheInverse
+	 *            true to cache the inverse and update it when only a few
+	 *            states change; false to solve each policy from scratch
+	 */
+	public MatrixInversePolicyEvaluation(FiniteStateSMDP<S, A> smdp,
+			DiscountFactor df, boolean cacheInverse) {
+		_smdp = smdp;
+		_df = df;
+		_cacheInverse = cacheInverse;
+		_monitor = new SolverMonitor(this);
 	}
 
 	/**
-	 * Returns a vector containing the expected reinforcement with respect to
-	 * the policy at each state.
+	 * Fills the discounted transition matrix and the expected reinforcement
+	 * vector with respect to a policy. The distribution of each state-action
+	 * pair is computed with a single call to
+	 * {@link FiniteStateSMDP#transitions(Object, Object, TransitionDistribution)}.
 	 * 
+	 * @param policy
+	 *            a policy
 	 * @param states
-	 *            a list of states (this determines the order of the
-	 *            reinforcements in the returned vector)
-	 * @return a vector containing the immediate expected reinforcement at each
-	 *         state
+	 *            a list of states (this determines the order of the rows and
+	 *            columns)
+	 * @param gpp
+	 *            an n-by-n matrix that receives $P^{\pi}$
+	 * @param rp
+	 *            an n-vector that receives $R^{\pi}$
 	 */
-	private RealVector rPi(StationaryPolicy<S, A> policy, List<S> states) {
-		int n = _smdp.numberOfStates();
-		double[] rp = new double[n];
-
-		// Fill the vector
-		for (int i = 0; i < n; i++) {
-			rp[i] = rPi(policy, states, i);
+	private void fill(StationaryPolicy<S, A> policy, List<S> states,
+			double[][] gpp, double[] rp) {
+		Map<S, Integer> indices = new HashMap<S, Integer>();
+		for (int i = 0; i < states.size(); i++) {
+			indices.put(states.get(i), i);
+		}
+		TransitionDistribution<S> dist = new TransitionDistribution<S>();
+		for (int i = 0; i < states.size(); i++) {
+			S state = states.get(i);
+			if (policy.isDeterministic()) {
+				fill(state, policy.policy(state), 1, indices, dist, gpp[i], rp,
+						i);
+			} else {
+				Iterable<A> actions = _smdp.actions(state);
+				for (A action : actions) {
+					double aprob = policy.aprob(state, action);
+					if (aprob > 0) {
+						fill(state, action, aprob, indices, dist, gpp[i], rp, i);
+					}
+				}
+			}
 		}
+	}
 
-		return new ArrayRealVector(rp);
+	private void fill(S state, A action, double weight,
+			Map<S, Integer> indices, TransitionDistribution<S> dist,
+			double[] gppRow, double[] rp, int i) {
+		_smdp.transitions(state, action, dist);
+		_monitor.count(0, dist.size());
+		for (int k = 0; k < dist.size(); k++) {
+			double tprob = weight * dist.tprob(k);
+			rp[i] += tprob * dist.r(k);
+			Integer j = indices.get(dist.successor(k));
+			if (j != null) {
+				gppRow[j] += Math.pow(_df.doubleValue(), dist.duration(k))
+						* tprob;
+			}
+		}
 	}
 
 	/**
-	 * Returns the immediate, expected reinforcement at a specified state with
-	 * respect to the policy.
-	 * 
-	 * @param states
-	 *            a list of states
-	 * @param statei
-	 *            an index into the list of states (selects the state to compute
-	 *            the expected reward for)
-	 * @return the expected reward of the state index by statei
+	 * Returns the monitor of this solver. Each evaluation is reported as a
+	 * single sweep without a residual that backs up every state.
 	 */
-	private double rPi(StationaryPolicy<S, A> policy, List<S> states, int statei) {
-		S state = states.get(statei);
-		if (policy.isDeterministic()) {
-			A action = policy.policy(state);
-			return FiniteStateSMDP.avgR(_smdp, state, action);
-		} else {
-			Iterable<A> actions = _smdp.actions(state);
-			double ravg = 0;
-			for (A action : actions) {
-				double aprob = policy.aprob(state, action);
-				ravg += aprob * FiniteStateSMDP.avgR(_smdp, state, action);
-			}
-			return ravg;
-		}
+	@Override
+	public SolverMonitor monitor() {
+		return _monitor;
 	}
 
 	@Override
 	public DiscountedVFunction<S> eval(StationaryPolicy<S, A> policy) {
+		_monitor.start();
 		int n = _smdp.numberOfStates();
 		List<S> states = new ArrayList<S>(n);
 		Iterable<S> istates = _smdp.states();
@@ -187,15 +219,29 @@ public class MatrixInversePolicyEvaluation<S, A> implements
 		}
 
 		// Construct matrix A and vector b
+		double[][] gppData = new double[n][n];
+		double[] rpData = new double[n];
+		fill(policy, states, gppData, rpData);
+		_monitor.count(n, 0);
 		RealMatrix id = MatrixUtils.createRealIdentityMatrix(n);
-		RealMatrix gpp = gammaPPi(policy, states);
+		RealMatrix gpp = new Array2DRowRealMatrix(gppData, false);
 		RealMatrix A = id.subtract(gpp);
-		RealVector b = rPi(policy, states);
+		RealVector b = new ArrayRealVector(rpData, false);
 
 		// Solve for V^{\pi}
-		SingularValueDecomposition decomp = new SingularValueDecomposition(A);
-		DecompositionSolver dsolver = decomp.getSolver();
-		RealVector vpi = dsolver.solve(b);
+		RealVector vpi;
+		if (_cacheInverse) {
+			updateInverse(A);
+			vpi = _inverse.operate(b);
+		} else {
+			MatrixFactorizationEvent event = new MatrixFactorizationEvent();
+			event.begin();
+			SingularValueDecomposition decomp = new SingularValueDecomposition(A);
+			event.finish(getClass(), MatrixFactorizationEvent.SVD, n, n, 0);
+			DecompositionSolver dsolver = decomp.getSolver();
+			vpi = dsolver.solve(b);
+		}
+		_monitor.endSweep(Double.NaN);
 
 		// Construct the value function
 		Map<S, Double> valueMap = new HashMap<S, Double>();
@@ -205,7 +251,79 @@ public class MatrixInversePolicyEvaluation<S, A> implements
 			valueMap.put(state, val);
 		}
 
+		_monitor.finish();
 		return new MapVFunction<S>(valueMap, 0);
 	}
 
+	/**
+	 * Updates the cached inverse to the inverse of A. If only a few rows of A
+	 * changed since the last call and fewer than {@link #MAX_UPDATES} updates
+	 * were applied since the inverse was last computed, the Sherman-Morrison-Woodbury formula
+	 * <code>(M + U V)^{-1} = M^{-1} - M^{-1} U (I + V M^{-1} U)^{-1} V M^{-1}</code>
+	 * is applied, where U selects the changed rows and V holds their
+	 * differences.
+	 */
+	private void updateInverse(RealMatrix A) {
+		double[][] a = A.getData();
+		int n = a.length;
+		if (_inverse != null && _lastA.length == n) {
+			int k = 0;
+			int[] changed = new int[n];
+			for (int i = 0; i < n; i++) {
+				if (!Arrays.equals(a[i], _lastA[i])) {
+					changed[k++] = i;
+				}
+			}
+			if (k == 0) {
+				return;
+			}
+			if (k <= MAX_UPDATE_FRACTION * n && _updates < MAX_UPDATES) {
+				MatrixFactorizationEvent event = new MatrixFactorizationEvent();
+				event.begin();
+				// M^{-1} U and V M^{-1}
+				RealMatrix mu = new Array2DRowRealMatrix(n, k);
+				RealMatrix v = new Array2DRowRealMatrix(k, n);
+				for (int c = 0; c < k; c++) {
+					int i = changed[c];
+					mu.setColumnVector(c, _inverse.getColumnVector(i));
+					for (int j = 0; j < n; j++) {
+						v.setEntry(c, j, a[i][j] - _lastA[i][j]);
+					}
+				}
+				RealMatrix vm = v.multiply(_inverse);
+				RealMatrix capacitance = MatrixUtils.createRealIdentityMatrix(k)
+						.add(v.multiply(mu));
+				try {
+					RealMatrix x = new LUDecomposition(capacitance).getSolver()
+							.solve(vm);
+					_inverse = _inverse.subtract(mu.multiply(x));
+					_lastA = a;
+					_updates++;
+					return;
+				} catch (SingularMatrixException ex) {
+					// Fall through and recompute the inverse
+				} finally {
+					event.finish(getClass(), MatrixFactorizationEvent.WOODBURY,
+							n, n, k);
+				}
+			}
+		}
+		MatrixFactorizationEvent event = new MatrixFactorizationEvent();
+		event.begin();
+		_inverse = new SingularValueDecomposition(A).getSolver().getInverse();
+		event.finish(getClass(), MatrixFactorizationEvent.SVD, n, n, 0);
+		_lastA = a;
+		_updates = 0;
+	}
+
+	/**
+	 * Returns the number of Sherman-Morrison-Woodbury updates applied to the
+	 * cached inverse since it was last computed from scratch.
+	 * 
+	 * @return the number of updates of the cached inverse
+	 */
+	int updates() {
+		return _updates;
+	}
+
 }
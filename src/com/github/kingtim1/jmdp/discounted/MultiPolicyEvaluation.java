@@ -0,0 +1,362 @@
+/**
+	MultiPolicyEvaluation.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.discounted;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.github.kingtim1.jmdp.FiniteStateSMDP;
+import com.github.kingtim1.jmdp.MonitoredSolver;
+import com.github.kingtim1.jmdp.PolicyEvaluation;
+import com.github.kingtim1.jmdp.SolverMonitor;
+import com.github.kingtim1.jmdp.StationaryPolicy;
+import com.github.kingtim1.jmdp.compiled.CompiledSMDP;
+
+/**
+ * <p>
+ * Evaluates many stationary policies on the same SMDP in one pass over the
+ * model per sweep. The value estimates of all policies form a [states x
+ * policies] matrix stored state-major, so the values of a successor state for
+ * all policies are adjacent in memory.
+ * </p>
+ * 
+ * <p>
+ * Before sweeping, the policies are grouped by row: each (state, action) row
+ * stores the list of policies that select its action with positive probability
+ * together with the probabilities. During a sweep the entries of a row are read
+ * once and reused for every policy in its group, so deterministic policies that
+ * agree on the action of a state share the work of reading the transition row.
+ * Rows that no policy selects are never read. Convergence is tracked per policy
+ * and converged policies are no longer updated.
+ * </p>
+ * 
+ * @author Timothy A. Mann
+ *
+ * @param <S>
+ *            the state type
+ * @param <A>
+ *            the action type
+ */
+public class MultiPolicyEvaluation<S, A> implements
+		PolicyEvaluation<S, A, StationaryPolicy<S, A>, DiscountedVFunction<S>>,
+		MonitoredSolver {
+
+	private CompiledSMDP<S, A> _model;
+	private DiscountFactor _df;
+	private int _maxIterations;
+	private double _theta;
+	private int[] _iterations;
+	private SolverMonitor _monitor;
+
+	/**
+	 * Constructs a multi-policy evaluator for an SMDP.
+	 * 
+	 * @param smdp
+	 *            a finite-state SMDP (compiled once by this constructor)
+	 * @param df
+	 *            a discount factor
+	 * @param maxIterations
+	 *            the maximum number of sweeps
+	 * @param convergenceThreshold
+	 *            a policy is considered evaluated when none of its values
+	 *            changes by more than this threshold during a sweep
+	 */
+	public MultiPolicyEvaluation(FiniteStateSMDP<S, A> smdp, DiscountFactor df,
+			int maxIterations, double convergenceThreshold) {
+		this(new CompiledSMDP<S, A>(smdp), df, maxIterations,
+				convergenceThreshold);
+	}
+
+	/**
+	 * Constructs a multi-policy evaluator for a compiled SMDP.
+	 * 
+	 * @param model
+	 *            a compiled SMDP
+	 * @param df
+	 *            a discount factor
+	 * @param maxIterations
+	 *            the maximum number of sweeps
+	 * @param convergenceThreshold
+	 *            a policy is considered evaluated when none of its values
+	 *            changes by more than this threshold during a sweep
+	 */
+	public MultiPolicyEvaluation(CompiledSMDP<S, A> model, DiscountFactor df,
+			int maxIterations, double convergenceThreshold) {
+		if (model == null) {
+			throw new NullPointerException("Model cannot be null.");
+		}
+		if (df == null) {
+			throw new NullPointerException("Discount factor cannot be null.");
+		}
+		_model = model;
+		_df = df;
+		_maxIterations = maxIterations;
+		_theta = convergenceThreshold;
+		_iterations = new int[0];
+		_monitor = new SolverMonitor(this);
+	}
+
+	/**
+	 * Returns the number of sweeps that updated the estimate of a policy
+	 * during the last evaluation.
+	 * 
+	 * @param i
+	 *            the index of a policy in the list passed to
+	 *            {@link #eval(List)}
+	 * @return the number of sweeps performed for the policy
+	 */
+	public int iterations(int i) {
+		return _iterations[i];
+	}
+
+	/**
+	 * Returns the monitor of this solver. The residual of a sweep is the
+	 * largest change of a value over the policies that have not converged,
+	 * and each state counts as one backup per sweep.
+	 */
+	@Override
+	public SolverMonitor monitor() {
+		return _monitor;
+	}
+
+	@Override
+	public DiscountedVFunction<S> eval(StationaryPolicy<S, A> policy) {
+		return eval(Collections.singletonList(policy)).get(0);
+	}
+
+	/**
+	 * Evaluates several stationary policies.
+	 * 
+	 * @param policies
+	 *            a list of stationary policies
+	 * @return the value functions of the policies in the same order as
+	 *         <code>policies</code>
+	 */
+	public List<DiscountedVFunction<S>> eval(
+			List<? extends StationaryPolicy<S, A>> policies) {
+		_monitor.start();
+		int n = _model.numberOfStates();
+		int k = policies.size();
+		Groups groups = group(policies);
+		double[] discounts = _model.discounts(_df);
+
+		double[] v = new double[n * k];
+		double[] acc = new double[k];
+		double[] q = new double[k];
+		double[] delta = new double[k];
+		boolean[] active = new boolean[k];
+		int[] sweeps = new int[k];
+		int numActive = k;
+		Arrays.fill(active, true);
+
+		for (int i = 0; i < _maxIterations && numActive > 0; i++) {
+			Arrays.fill(delta, 0);
+
+			long entries = 0;
+			for (int s = 0; s < n; s++) {
+				int rowEnd = _model.rowEnd(s);
+				for (int row = _model.rowBegin(s); row < rowEnd; row++) {
+					int groupBegin = groups.begin[row];
+					int m = groups.begin[row + 1] - groupBegin;
+					if (m == 0) {
+						continue;
+					}
+					for (int g = 0; g < m; g++) {
+						q[g] = 0;
+					}
+					int entryBegin = _model.entryBegin(row);
+					int entryEnd = _model.entryEnd(row);
+					entries += entryEnd - entryBegin;
+					for (int e = entryBegin; e < entryEnd; e++) {
+						int sbase = _model.successor(e) * k;
+						double dprob = _model.tprob(e)
+								* discounts[_model.duration(e)];
+						for (int g = 0; g < m; g++) {
+							q[g] += dprob
+									* v[sbase + groups.policies[groupBegin + g]];
+						}
+					}
+					double r = _model.r(row);
+					for (int g = 0; g < m; g++) {
+						acc[groups.policies[groupBegin + g]] += groups.weights[groupBegin
+								+ g]
+								* (r + q[g]);
+					}
+				}
+
+				int base = s * k;
+				for (int j = 0; j < k; j++) {
+					if (active[j]) {
+						double oldV = v[base + j];
+						v[base + j] = acc[j];
+						delta[j] = Math.max(delta[j], Math.abs(oldV - acc[j]));
+					}
+					acc[j] = 0;
+				}
+			}
+
+			double residual = 0;
+			for (int j = 0; j < k; j++) {
+				if (active[j]) {
+					residual = Math.max(residual, delta[j]);
+					sweeps[j]++;
+					if (delta[j] < _theta) {
+						active[j] = false;
+						numActive--;
+						groups.remove(j);
+					}
+				}
+			}
+			_monitor.count(n, entries);
+			_monitor.endSweep(residual);
+		}
+
+		_iterations = sweeps;
+		List<DiscountedVFunction<S>> vfuncs = new ArrayList<DiscountedVFunction<S>>(
+				k);
+		for (int j = 0; j < k; j++) {
+			double[] values = new double[n];
+			for (int s = 0; s < n; s++) {
+				values[s] = v[s * k + j];
+			}
+			vfuncs.add(new ArrayVFunction<S>(_model, values, 0));
+		}
+		_monitor.finish();
+		return vfuncs;
+	}
+
+	/**
+	 * Builds the per-row groups of (policy, action probability) pairs.
+	 */
+	private Groups group(List<? extends StationaryPolicy<S, A>> policies) {
+		int n = _model.numberOfStates();
+		int k = policies.size();
+		Groups groups = new Groups(_model.numberOfRows(), n);
+
+		int[] rowCounts = new int[_model.numberOfRows()];
+		int[] stateRows = new int[k * _model.actionSet().numberOfActions()];
+		int[] statePolicies = new int[stateRows.length];
+		double[] stateWeights = new double[stateRows.length];
+
+		int size = 0;
+		for (int s = 0; s < n; s++) {
+			S state = _model.state(s);
+			int rowBegin = _model.rowBegin(s);
+			int rowEnd = _model.rowEnd(s);
+
+			// Collect the (row, policy, weight) triples of this state
+			int m = 0;
+			for (int j = 0; j < k; j++) {
+				StationaryPolicy<S, A> policy = policies.get(j);
+				if (policy.isDeterministic()) {
+					int row = _model.row(s, policy.policy(state));
+					if (row >= 0) {
+						stateRows[m] = row;
+						statePolicies[m] = j;
+						stateWeights[m] = 1;
+						m++;
+					}
+				} else {
+					for (int row = rowBegin; row < rowEnd; row++) {
+						double aprob = policy.aprob(state, _model.action(row));
+						if (aprob > 0) {
+							stateRows[m] = row;
+							statePolicies[m] = j;
+							stateWeights[m] = aprob;
+							m++;
+						}
+					}
+				}
+			}
+
+			// Counting sort by row (the rows of a state are contiguous)
+			for (int t = 0; t < m; t++) {
+				rowCounts[stateRows[t]]++;
+			}
+			for (int row = rowBegin; row < rowEnd; row++) {
+				groups.begin[row] = size;
+				size += rowCounts[row];
+				rowCounts[row] = groups.begin[row];
+			}
+			groups.ensureCapacity(size);
+			for (int t = 0; t < m; t++) {
+				int pos = rowCounts[stateRows[t]]++;
+				groups.policies[pos] = statePolicies[t];
+				groups.weights[pos] = stateWeights[t];
+			}
+		}
+		groups.begin[_model.numberOfRows()] = size;
+		return groups;
+	}
+
+	/**
+	 * The (policy, action probability) pairs of each row stored in CSR form.
+	 */
+	private static class Groups {
+		private int[] begin;
+		private int[] policies;
+		private double[] weights;
+
+		public Groups(int numRows, int capacity) {
+			begin = new int[numRows + 1];
+			policies = new int[Math.max(1, capacity)];
+			weights = new double[policies.length];
+		}
+
+		public void ensureCapacity(int capacity) {
+			if (capacity > policies.length) {
+				int newCapacity = Math.max(capacity, 2 * policies.length);
+				policies = Arrays.copyOf(policies, newCapacity);
+				weights = Arrays.copyOf(weights, newCapacity);
+			}
+		}
+
+		/**
+		 * Removes a policy from every group.
+		 */
+		public void remove(int policy) {
+			int size = 0;
+			int from = 0;
+			for (int row = 0; row + 1 < begin.length; row++) {
+				int to = begin[row + 1];
+				begin[row] = size;
+				for (int g = from; g < to; g++) {
+					if (policies[g] != policy) {
+						policies[size] = policies[g];
+						weights[size] = weights[g];
+						size++;
+					}
+				}
+				from = to;
+			}
+			begin[begin.length - 1] = size;
+		}
+	}
+}
@@ -0,0 +1,400 @@
+/**
+	MultigridValueIteration.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.discounted;
+
+import java.util.Arrays;
+
+import com.github.kingtim1.jmdp.DP;
+import com.github.kingtim1.jmdp.FiniteStateSMDP;
+import com.github.kingtim1.jmdp.MonitoredSolver;
+import com.github.kingtim1.jmdp.SolverMonitor;
+import com.github.kingtim1.jmdp.compiled.CompiledSMDP;
+import com.github.kingtim1.jmdp.compiled.StateAggregation;
+import com.github.kingtim1.jmdp.util.Optimization;
+
+/**
+ * <p>
+ * Value iteration accelerated by aggregation-based multigrid corrections.
+ * Gauss-Seidel Bellman backups quickly remove the error components that vary
+ * from state to state, but components that are smooth over large groups of
+ * states decay at rate gamma. Each V-cycle of this solver
+ * </p>
+ * <ol>
+ * <li>performs a few Gauss-Seidel Bellman backups (pre-smoothing),</li>
+ * <li>computes the greedy policy pi and the Bellman residual r = TV - V,</li>
+ * <li>approximates the error equation <code>e = r + gamma P_pi e</code> on
+ * the aggregated states (recursively, with the same smoothing/correction
+ * scheme on every coarser level and a direct solve on the coarsest one),</li>
+ * <li>adds the prolongated correction to V and</li>
+ * <li>performs a few more Gauss-Seidel Bellman backups (post-smoothing).</li>
+ * </ol>
+ * <p>
+ * The aggregation hierarchy is either supplied by the user or computed by
+ * pairwise aggregation of strongly coupled states (see
+ * {@link StateAggregation#pairwise(CompiledSMDP, int)}). The aggregated
+ * transition matrices are rebuilt only when the greedy policy changes.
+ * </p>
+ * <p>
+ * While the greedy policy is still changing, a correction can make the
+ * estimate worse. If the residual after the next pre-smoothing is not smaller
+ * than the residual before the correction, the correction is discarded and the
+ * solver continues with plain smoothing from the values it was added to.
+ * </p>
+ * 
+ * @author Timothy A. Mann
+ *
+ * @param <S>
+ *            the state type
+ * @param <A>
+ *            the action type
+ */
+public class MultigridValueIteration<S, A> implements
+		DP<DiscountedQFunction<S, A>>, MonitoredSolver {
+
+	/**
+	 * The number of states below which the automatic aggregation stops adding
+	 * levels.
+	 */
+	public static final int DEFAULT_COARSEST_SIZE = 64;
+	/**
+	 * The default number of Gauss-Seidel sweeps before and after each coarse
+	 * correction.
+	 */
+	public static final int DEFAULT_SMOOTHING_SWEEPS = 2;
+	/**
+	 * The largest coarsest level that is solved directly. Larger coarsest
+	 * levels are solved with Gauss-Seidel sweeps.
+	 */
+	public static final int MAX_DIRECT_SIZE = 512;
+
+	private CompiledSMDP<S, A> _model;
+	private StateAggregation _aggregation;
+	private DiscountFactor _df;
+	private int _maxIterations;
+	private double _theta;
+	private int _preSweeps;
+	private int _postSweeps;
+	private int _cycles;
+	private int _rejections;
+	private SolverMonitor _monitor;
+
+	private AggregatedChain[] _chains;
+
+	/**
+	 * Constructs a multigrid solver for an SMDP with an automatically computed
+	 * aggregation hierarchy.
+	 * 
+	 * @param smdp
+	 *            a finite-state SMDP (compiled once by this constructor)
+	 * @param df
+	 *            a discount factor
+	 * @param maxIterations
+	 *            the maximum number of V-cycles
+	 * @param convergenceThreshold
+	 *            the algorithm stops when no Bellman backup changes a value by
+	 *            this threshold or more
+	 */
+	public MultigridValueIteration(FiniteStateSMDP<S, A> smdp,
+			DiscountFactor df, int maxIterations, double convergenceThreshold) {
+		this(new CompiledSMDP<S, A>(smdp), df, maxIterations,
+				convergenceThreshold);
+	}
+
+	/**
+	 * Constructs a multigrid solver for a compiled SMDP with an automatically
+	 * computed aggregation hierarchy.
+	 * 
+	 * @param model
+	 *            a compiled SMDP
+	 * @param df
+	 *            a discount factor
+	 * @param maxIterations
+	 *            the maximum number of V-cycles
+	 * @param convergenceThreshold
+	 *            the algorithm stops when no Bellman backup changes a value by
+	 *            this threshold or more
+	 */
+	public MultigridValueIteration(CompiledSMDP<S, A> model,
+			DiscountFactor df, int maxIterations, double convergenceThreshold) {
+		this(model, StateAggregation.pairwise(model, DEFAULT_COARSEST_SIZE),
+				df, maxIterations, convergenceThreshold);
+	}
+
+	/**
+	 * Constructs a multigrid solver for a compiled SMDP with a user-supplied
+	 * aggregation hierarchy.
+	 * 
+	 * @param model
+	 *            a compiled SMDP
+	 * @param aggregation
+	 *            an aggregation hierarchy whose level 0 contains the states of
+	 *            <code>model</code>
+	 * @param df
+	 *            a discount factor
+	 * @param maxIterations
+	 *            the maximum number of V-cycles
+	 * @param convergenceThreshold
+	 *            the algorithm stops when no Bellman backup changes a value by
+	 *            this threshold or more
+	 */
+	public MultigridValueIteration(CompiledSMDP<S, A> model,
+			StateAggregation aggregation, DiscountFactor df,
+			int maxIterations, double convergenceThreshold) {
+		if (model == null) {
+			throw new NullPointerException("Model cannot be null.");
+		}
+		if (aggregation == null) {
+			throw new NullPointerException("Aggregation cannot be null.");
+		}
+		if (aggregation.numberOfStates(0) != model.numberOfStates()) {
+			throw new IllegalArgumentException(
+					"Expected an aggregation of " + model.numberOfStates()
+							+ " states. Found "
+							+ aggregation.numberOfStates(0) + ".");
+		}
+		_model = model;
+		_aggregation = aggregation;
+		_df = df;
+		_maxIterations = maxIterations;
+		_theta = convergenceThreshold;
+		_preSweeps = DEFAULT_SMOOTHING_SWEEPS;
+		_postSweeps = DEFAULT_SMOOTHING_SWEEPS;
+		_monitor = new SolverMonitor(this);
+	}
+
+	/**
+	 * Sets the number of Gauss-Seidel sweeps performed before and after each
+	 * coarse correction on every level.
+	 * 
+	 * @param preSweeps
+	 *            the number of sweeps before the coarse correction
+	 * @param postSweeps
+	 *            the number of sweeps after the coarse correction
+	 */
+	public void setSmoothingSweeps(int preSweeps, int postSweeps) {
+		if (preSweeps < 0 || postSweeps < 0) {
+			throw new IllegalArgumentException(
+					"Expected nonnegative numbers of smoothing sweeps. Found "
+							+ preSweeps + " and " + postSweeps + ".");
+		}
+		_preSweeps = preSweeps;
+		_postSweeps = postSweeps;
+	}
+
+	/**
+	 * Returns the aggregation hierarchy used by this solver.
+	 * 
+	 * @return the aggregation hierarchy
+	 */
+	public StateAggregation aggregation() {
+		return _aggregation;
+	}
+
+	/**
+	 * Returns the number of V-cycles performed by the last call to
+	 * {@link #run()}.
+	 * 
+	 * @return the number of V-cycles
+	 */
+	public int cycles() {
+		return _cycles;
+	}
+
+	/**
+	 * Returns the number of coarse corrections that were discarded during the
+	 * last call to {@link #run()} because they did not reduce the Bellman
+	 * residual.
+	 * 
+	 * @return the number of discarded corrections
+	 */
+	public int rejections() {
+		return _rejections;
+	}
+
+	/**
+	 * Returns the monitor of this solver. Each V-cycle is reported as one
+	 * sweep. Only the backups performed on the finest level are counted.
+	 */
+	@Override
+	public SolverMonitor monitor() {
+		return _monitor;
+	}
+
+	@Override
+	public DiscountedQFunction<S, A> run() {
+		_monitor.start();
+		int n = _model.numberOfStates();
+		double[] discounts = _model.discounts(_df);
+		double[] values = new double[n];
+		double[] residual = new double[n];
+		int[] rows = new int[n];
+		double[] saved = new double[n];
+		int[] chainRows = null;
+		int numLevels = _aggregation.numberOfLevels();
+		_chains = new AggregatedChain[numLevels];
+		_cycles = 0;
+		_rejections = 0;
+
+		boolean corrected = false;
+		double lastRes = Double.POSITIVE_INFINITY;
+		while (_cycles < _maxIterations) {
+			smooth(values, discounts, _preSweeps);
+			double res = greedyResidual(values, discounts, rows, residual);
+			if (corrected && !(res < lastRes)) {
+				// The last correction did not pay off: return to the values
+				// it was added to and smooth them instead
+				System.arraycopy(saved, 0, values, 0, n);
+				_rejections++;
+				corrected = false;
+			} else if (res < _theta) {
+				break;
+			} else if (numLevels > 1) {
+				if (!Arrays.equals(rows, chainRows)) {
+					_chains[0] = AggregatedChain.ofPolicy(_model, rows,
+							discounts);
+					for (int l = 1; l < numLevels; l++) {
+						_chains[l] = _chains[l - 1].aggregate(
+								_aggregation.aggregates(l - 1),
+								_aggregation.numberOfStates(l));
+					}
+					chainRows = rows.clone();
+				}
+				double[] y = correction(1, restrict(0, residual));
+				System.arraycopy(values, 0, saved, 0, n);
+				for (int s = 0; s < n; s++) {
+					values[s] += y[_aggregation.aggregate(0, s)];
+				}
+				corrected = true;
+				lastRes = res;
+			}
+
+			smooth(values, discounts, _postSweeps);
+			_cycles++;
+			_monitor.endSweep(res);
+		}
+		_chains = null;
+
+		_monitor.finish();
+		return ArrayQFunction.backup(_model, values, _df);
+	}
+
+
+	/**
+	 * Approximately solves the error equation <code>y = b + M y</code> of a
+	 * coarse level with a V-cycle.
+	 */
+	private double[] correction(int level, double[] b) {
+		AggregatedChain chain = _chains[level];
+		int n = chain.numberOfStates();
+		if (level == _chains.length - 1) {
+			if (n <= MAX_DIRECT_SIZE) {
+				return chain.solve(b);
+			}
+			double[] y = new double[n];
+			int i = 0;
+			while (i++ < _maxIterations && chain.gaussSeidel(y, b, 1) >= _theta) {
+				// sweep until the coarsest level converges
+			}
+			return y;
+		}
+
+		double[] y = new double[n];
+		chain.gaussSeidel(y, b, _preSweeps);
+		double[] residual = new double[n];
+		chain.residual(y, b, residual);
+		double[] z = correction(level + 1, restrict(level, residual));
+		for (int s = 0; s < n; s++) {
+			y[s] += z[_aggregation.aggregate(level, s)];
+		}
+		chain.gaussSeidel(y, b, _postSweeps);
+		return y;
+	}
+
+	/**
+	 * Averages a vector over the aggregates of a level.
+	 */
+	private double[] restrict(int level, double[] v) {
+		double[] sums = new double[_aggregation.numberOfStates(level + 1)];
+		int[] counts = new int[sums.length];
+		for (int s = 0; s < v.length; s++) {
+			int i = _aggregation.aggregate(level, s);
+			sums[i] += v[s];
+			counts[i]++;
+		}
+		for (int i = 0; i < sums.length; i++) {
+			sums[i] /= counts[i];
+		}
+		return sums;
+	}
+
+	/**
+	 * Performs Gauss-Seidel Bellman backups.
+	 */
+	private void smooth(double[] values, double[] discounts, int sweeps) {
+		for (int i = 0; i < sweeps; i++) {
+			for (int s = 0; s < values.length; s++) {
+				if (_model.rowBegin(s) < _model.rowEnd(s)) {
+					values[s] = _model.backup(s, values, discounts);
+				}
+			}
+			_monitor.count(values.length, _model.numberOfEntries());
+		}
+	}
+
+	/**
+	 * Computes the greedy row of every state and the residual of a (Jacobi)
+	 * Bellman backup. Returns the largest absolute residual.
+	 */
+	private double greedyResidual(double[] values, double[] discounts,
+			int[] rows, double[] residual) {
+		Optimization opType = _model.opType();
+		double maxResidual = 0;
+		for (int s = 0; s < values.length; s++) {
+			int rowBegin = _model.rowBegin(s);
+			int rowEnd = _model.rowEnd(s);
+			rows[s] = -1;
+			residual[s] = 0;
+			if (rowBegin == rowEnd) {
+				continue;
+			}
+			double best = 0;
+			for (int row = rowBegin; row < rowEnd; row++) {
+				double q = _model.qvalue(row, values, discounts);
+				if (row == rowBegin || opType.firstIsBetter(q, best)) {
+					best = q;
+					rows[s] = row;
+				}
+			}
+			residual[s] = best - values[s];
+			maxResidual = Math.max(maxResidual, Math.abs(residual[s]));
+		}
+		_monitor.count(values.length, _model.numberOfEntries());
+		return maxResidual;
+	}
+}
@@ -0,0 +1,209 @@
+/**
+	OffHeapQFunction.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.discounted;
+
+import com.github.kingtim1.jmdp.compiled.CompiledSMDP;
+import com.github.kingtim1.jmdp.compiled.OffHeapArena;
+import com.github.kingtim1.jmdp.compiled.OffHeapDoubleArray;
+import com.github.kingtim1.jmdp.util.Optimization;
+
+/**
+ * An action-value function stored in an {@link OffHeapDoubleArray} indexed by
+ * the rows of a {@link CompiledSMDP}. It stays valid until the arena of the
+ * array is closed.
+ * 
+ * @author Timothy A. Mann
+ *
+ * @param <S>
+ *            the state type
+ * @param <A>
+ *            the action type
+ */
+public class OffHeapQFunction<S, A> implements DiscountedQFunction<S, A> {
+
+	private CompiledSMDP<S, A> _model;
+	private OffHeapDoubleArray _qvals;
+	private double _defaultValue;
+
+	/**
+	 * Constructs an action-value function from an off-heap array of values.
+	 * 
+	 * @param model
+	 *            a compiled model that determines the row of each state-action
+	 *            pair
+	 * @param qvals
+	 *            an array containing the value of each row (this array is not
+	 *            copied)
+	 * @param defaultValue
+	 *            the value of states that are not part of <code>model</code>
+	 *            and of actions that are not valid at a state
+	 */
+	public OffHeapQFunction(CompiledSMDP<S, A> model, OffHeapDoubleArray qvals,
+			double defaultValue) {
+		if (qvals.length() != model.numberOfRows()) {
+			throw new IllegalArgumentException("Expected "
+					+ model.numberOfRows() + " values. Found "
+					+ qvals.length() + ".");
+		}
+		_model = model;
+		_qvals = qvals;
+		_defaultValue = defaultValue;
+	}
+
+	/**
+	 * Constructs the action-value function obtained by applying one Bellman
+	 * backup to a state-value function, storing the result off-heap.
+	 * 
+	 * @param model
+	 *            a compiled model
+	 * @param values
+	 *            the value of each state of <code>model</code>
+	 * @param df
+	 *            a discount factor
+	 * @param arena
+	 *            the arena that allocates the action-values
+	 * @return the action-values of all rows of <code>model</code>
+	 */
+	public static <S, A> OffHeapQFunction<S, A> backup(
+			CompiledSMDP<S, A> model, double[] values, DiscountFactor df,
+			OffHeapArena arena) {
+		double[] discounts = model.discounts(df);
+		OffHeapDoubleArray qvals = arena.allocateDoubles(model.numberOfRows());
+		for (int row = 0; row < model.numberOfRows(); row++) {
+			qvals.set(row, model.qvalue(row, values, discounts));
+		}
+		return new OffHeapQFunction<S, A>(model, qvals, 0);
+	}
+
+	@Override
+	public double value(S state, A action, Integer timestep) {
+		return value(state, action);
+	}
+
+	@Override
+	public double greedyValue(S state, Integer timestep) {
+		return greedyValue(state);
+	}
+
+	@Override
+	public A greedyAction(S state, Integer timestep) {
+		return greedyAction(state);
+	}
+
+	@Override
+	public Optimization opType() {
+		return _model.opType();
+	}
+
+	@Override
+	public double value(S state, A action) {
+		int index = _model.index(state);
+		int row = (index < 0) ? -1 : _model.row(index, action);
+		if (row < 0) {
+			return _defaultValue;
+		} else {
+			return _qvals.get(row);
+		}
+	}
+
+	@Override
+	public double greedyValue(S state) {
+		int row = greedyRow(state);
+		if (row < 0) {
+			return _defaultValue;
+		} else {
+			return _qvals.get(row);
+		}
+	}
+
+	@Override
+	public A greedyAction(S state) {
+		int row = greedyRow(state);
+		if (row < 0) {
+			return _model.actionSet().actions(state).get(0);
+		} else {
+			return _model.action(row);
+		}
+	}
+
+	/**
+	 * Returns the row with the best value at a state or -1 if the state has no
+	 * rows.
+	 */
+	private int greedyRow(S state) {
+		int index = _model.index(state);
+		if (index < 0) {
+			return -1;
+		}
+		Optimization opType = _model.opType();
+		int best = -1;
+		double bestQ = 0;
+		for (int row = _model.rowBegin(index); row < _model.rowEnd(index); row++) {
+			double q = _qvals.get(row);
+			if (best < 0 || opType.firstIsBetter(q, bestQ)) {
+				best = row;
+				bestQ = q;
+			}
+		}
+		return best;
+	}
+
+	@Override
+	public DiscountedVFunction<S> greedy() {
+		return new DiscountedVFunction.GreedyQ<S, A>(this);
+	}
+
+	@Override
+	public A policy(S state) {
+		return greedyAction(state);
+	}
+
+	@Override
+	public double aprob(S state, A action) {
+		return policy(state).equals(action) ? 1 : 0;
+	}
+
+	@Override
+	public boolean isDeterministic() {
+		return true;
+	}
+
+	@Override
+	public A policy(S state, Integer timestep) {
+		return policy(state);
+	}
+
+	/**
+	 * Returns the array backing this action-value function.
+	 * 
+	 * @return the values indexed by row
+	 */
+	public OffHeapDoubleArray values() {
+		return _qvals;
+	}
+}
@@ -0,0 +1,134 @@
+/**
+	OffHeapVFunction.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.discounted;
+
+import com.github.kingtim1.jmdp.compiled.CompiledSMDP;
+import com.github.kingtim1.jmdp.compiled.OffHeapArena;
+import com.github.kingtim1.jmdp.compiled.OffHeapDoubleArray;
+
+/**
+ * A value function stored in an {@link OffHeapDoubleArray} indexed by the
+ * states of a {@link CompiledSMDP}. It stays valid until the arena of the
+ * array is closed.
+ * 
+ * @author Timothy A. Mann
+ *
+ * @param <S>
+ *            the state type
+ */
+public class OffHeapVFunction<S> implements DiscountedVFunction<S> {
+
+	private CompiledSMDP<S, ?> _model;
+	private OffHeapDoubleArray _values;
+	private double _defaultValue;
+
+	/**
+	 * Constructs a value function from an off-heap array of values.
+	 * 
+	 * @param model
+	 *            a compiled model that determines the index of each state
+	 * @param values
+	 *            an array containing the value of each state (this array is
+	 *            not copied)
+	 * @param defaultValue
+	 *            the value of states that are not part of <code>model</code>
+	 */
+	public OffHeapVFunction(CompiledSMDP<S, ?> model,
+			OffHeapDoubleArray values, double defaultValue) {
+		if (values.length() != model.numberOfStates()) {
+			throw new IllegalArgumentException("Expected "
+					+ model.numberOfStates() + " values. Found "
+					+ values.length() + ".");
+		}
+		_model = model;
+		_values = values;
+		_defaultValue = defaultValue;
+	}
+
+	/**
+	 * Copies a state-value function computed by a solver off-heap.
+	 * 
+	 * @param model
+	 *            a compiled model
+	 * @param vfunc
+	 *            a state-value function
+	 * @param arena
+	 *            the arena that allocates the values
+	 * @return an off-heap copy of the values of the states of
+	 *         <code>model</code>
+	 */
+	public static <S> OffHeapVFunction<S> copyOf(CompiledSMDP<S, ?> model,
+			DiscountedVFunction<S> vfunc, OffHeapArena arena) {
+		OffHeapDoubleArray values = arena.allocateDoubles(model
+				.numberOfStates());
+		for (int s = 0; s < model.numberOfStates(); s++) {
+			values.set(s, vfunc.value(model.state(s)));
+		}
+		return new OffHeapVFunction<S>(model, values, 0);
+	}
+
+	@Override
+	public double value(S state, Integer timestep) {
+		return value(state);
+	}
+
+	@Override
+	public double value(S state) {
+		int index = _model.index(state);
+		if (index < 0) {
+			return _defaultValue;
+		} else {
+			return _values.get(index);
+		}
+	}
+
+	/**
+	 * Sets the value at a specified state.
+	 * 
+	 * @param state
+	 *            a state of the compiled model
+	 * @param value
+	 *            the value of the state
+	 */
+	public void set(S state, double value) {
+		int index = _model.index(state);
+		if (index < 0) {
+			throw new IllegalArgumentException("Unknown state " + state + ".");
+		}
+		_values.set(index, value);
+	}
+
+	/**
+	 * Returns the array backing this value function.
+	 * 
+	 * @return the values indexed by state index
+	 */
+	public OffHeapDoubleArray values() {
+		return _values;
+	}
+}
@@ -0,0 +1,335 @@
+/**
+	ParallelPolicyImprovement.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.discounted;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.github.kingtim1.jmdp.FiniteStateSMDP;
+import com.github.kingtim1.jmdp.PolicyImprovement;
+import com.github.kingtim1.jmdp.StationaryPolicy;
+import com.github.kingtim1.jmdp.compiled.CompiledSMDP;
+import com.github.kingtim1.jmdp.metrics.PolicyImprovementEvent;
+import com.github.kingtim1.jmdp.util.Optimization;
+
+/**
+ * Performs policy improvement on a {@link CompiledSMDP} by splitting the states
+ * among several threads. Unlike {@link StationaryPolicyImprovement}, which
+ * returns a {@link MapQFunction}, the result is an {@link ArrayPolicy} that
+ * only stores the greedy row of each state. The action-values are only kept if
+ * {@link #setRetainQValues(boolean)} is enabled.
+ * <p>
+ * Ties are broken in favor of the old policy's action, so a state only
+ * changes its action when another action is strictly better. The states whose
+ * action changed during the last call to {@link #improve} are available from
+ * {@link #changedStates()}.
+ * </p>
+ * <p>
+ * Every state must have at least one valid action, since a policy has to
+ * select one. The constructors reject models with a state that has none.
+ * </p>
+ * 
+ * <p>
+ * The workers run on a thread pool that this instance creates on its first
+ * call to {@link #improve} and reuses for every later call, or on an executor
+ * supplied by the caller. {@link #close()} shuts down the pool created by
+ * this instance.
+ * </p>
+ * 
+ * @author Timothy A. Mann
+ *
+ * @param <S>
+ *            the state type
+ * @param <A>
+ *            the action type
+ */
+public class ParallelPolicyImprovement<S, A> implements
+		PolicyImprovement<S, A, StationaryPolicy<S, A>, DiscountedVFunction<S>>,
+		ChangeCounter, AutoCloseable {
+
+	private CompiledSMDP<S, A> _model;
+	private DiscountFactor _df;
+	private double[] _discounts;
+	private int _numThreads;
+	private ExecutorService _executor;
+	private boolean _ownsExecutor;
+	private boolean _retainQValues;
+
+	private int[] _changedStates;
+	private ArrayQFunction<S, A> _qfunc;
+
+	/**
+	 * Constructs a parallel policy improvement step.
+	 * 
+	 * @param smdp
+	 *            a finite-state SMDP (compiled once by this constructor)
+	 * @param df
+	 *            a discount factor
+	 * @param numThreads
+	 *            the number of threads to use
+	 * @throws IllegalArgumentException
+	 *             if a state of the SMDP has no valid actions
+	 */
+	public ParallelPolicyImprovement(FiniteStateSMDP<S, A> smdp,
+			DiscountFactor df, int numThreads) {
+		this(new CompiledSMDP<S, A>(smdp), df, numThreads);
+	}
+
+	/**
+	 * Constructs a parallel policy improvement step for a compiled SMDP.
+	 * 
+	 * @param model
+	 *            a compiled SMDP
+	 * @param df
+	 *            a discount factor
+	 * @param numThreads
+	 *            the number of threads to use
+	 * @throws IllegalArgumentException
+	 *             if a state of the SMDP has no valid actions
+	 */
+	public ParallelPolicyImprovement(CompiledSMDP<S, A> model,
+			DiscountFactor df, int numThreads) {
+		this(model, df, numThreads, null);
+	}
+
+	/**
+	 * Constructs a parallel policy improvement step for a compiled SMDP whose
+	 * workers run on an executor owned by the caller. The executor is not shut
+	 * down by {@link #close()}.
+	 * 
+	 * @param model
+	 *            a compiled SMDP
+	 * @param df
+	 *            a discount factor
+	 * @param numThreads
+	 *            the number of workers that the states are split among
+	 * @param executor
+	 *            the executor that runs the workers (or null to let this
+	 *            instance create and own a pool)
+	 * @throws IllegalArgumentException
+	 *             if a state of the SMDP has no valid actions
+	 */
+	public ParallelPolicyImprovement(CompiledSMDP<S, A> model,
+			DiscountFactor df, int numThreads, ExecutorService executor) {
+		if (model == null) {
+			throw new NullPointerException("Model cannot be null.");
+		}
+		if (df == null) {
+			throw new NullPointerException(
+					"Cannot perform policy improvement with a null discount factor.");
+		}
+		if (numThreads < 1) {
+			throw new IllegalArgumentException(
+					"Expected a positive number of threads. Found "
+							+ numThreads + ".");
+		}
+		for (int s = 0; s < model.numberOfStates(); s++) {
+			if (model.rowBegin(s) == model.rowEnd(s)) {
+				throw new IllegalArgumentException(
+						"Expected at least one valid action in every state. Found none in state "
+								+ model.state(s) + ".");
+			}
+		}
+		_model = model;
+		_df = df;
+		_discounts = model.discounts(df);
+		_numThreads = numThreads;
+		_executor = executor;
+		_ownsExecutor = (executor == null);
+		_retainQValues = false;
+		_changedStates = new int[0];
+	}
+
+	public CompiledSMDP<S, A> model() {
+		return _model;
+	}
+
+	public DiscountFactor discountFactor() {
+		return _df;
+	}
+
+	/**
+	 * Determines whether the action-values computed by {@link #improve} are
+	 * kept. They are discarded by default.
+	 * 
+	 * @param retainQValues
+	 *            true to keep the action-values; false to discard them
+	 */
+	public void setRetainQValues(boolean retainQValues) {
+		_retainQValues = retainQValues;
+	}
+
+	/**
+	 * Returns the action-values computed by the last call to {@link #improve}
+	 * or null if they were not retained.
+	 * 
+	 * @return the last action-values or null
+	 */
+	public ArrayQFunction<S, A> qfunction() {
+		return _qfunc;
+	}
+
+	/**
+	 * Returns the indices of the states whose action changed during the last
+	 * call to {@link #improve}, in increasing order.
+	 * 
+	 * @return the changed state indices
+	 */
+	public int[] changedStates() {
+		return _changedStates;
+	}
+
+	/**
+	 * Returns the number of states whose action changed during the last call
+	 * to {@link #improve}.
+	 * 
+	 * @return the number of changed states
+	 */
+	@Override
+	public int numberOfChanges() {
+		return _changedStates.length;
+	}
+
+	@Override
+	public ArrayPolicy<S, A> improve(StationaryPolicy<S, A> oldPolicy,
+			DiscountedVFunction<S> vfunc) {
+		PolicyImprovementEvent event = new PolicyImprovementEvent();
+		event.begin();
+		final int n = _model.numberOfStates();
+		final double[] values = new double[n];
+		for (int s = 0; s < n; s++) {
+			values[s] = vfunc.value(_model.state(s));
+		}
+		final int[] oldRows = ArrayPolicy.fromPolicy(_model, oldPolicy)
+				.rows();
+		final int[] newRows = new int[n];
+		final double[] qvals = _retainQValues ? new double[_model
+				.numberOfRows()] : null;
+		final boolean[] changed = new boolean[n];
+
+		if (_executor == null) {
+			_executor = WorkerPool.create(_numThreads, "policy-improvement");
+		}
+		try {
+			List<Callable<Void>> workers = new ArrayList<Callable<Void>>(
+					_numThreads);
+			for (int w = 0; w < _numThreads; w++) {
+				final int begin = (int) ((long) n * w / _numThreads);
+				final int end = (int) ((long) n * (w + 1) / _numThreads);
+				workers.add(new Callable<Void>() {
+					@Override
+					public Void call() {
+						improve(begin, end, values, oldRows, newRows, qvals,
+								changed);
+						return null;
+					}
+				});
+			}
+			for (Future<Void> f : _executor.invokeAll(workers)) {
+				f.get();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(
+					"Interrupted while performing policy improvement.", ex);
+		} catch (ExecutionException ex) {
+			throw new IllegalStateException(
+					"A policy improvement worker failed.", ex.getCause());
+		}
+
+		int numChanged = 0;
+		for (int s = 0; s < n; s++) {
+			if (changed[s]) {
+				numChanged++;
+			}
+		}
+		_changedStates = new int[numChanged];
+		numChanged = 0;
+		for (int s = 0; s < n; s++) {
+			if (changed[s]) {
+				_changedStates[numChanged++] = s;
+			}
+		}
+		_qfunc = (qvals == null) ? null : new ArrayQFunction<S, A>(_model,
+				qvals, 0);
+
+		event.end();
+		if (event.shouldCommit()) {
+			event.improver = getClass();
+			event.states = n;
+			event.changedStates = numChanged;
+			event.threads = _numThreads;
+			event.commit();
+		}
+		return new ArrayPolicy<S, A>(_model, newRows);
+	}
+
+	/**
+	 * Shuts down the thread pool created by this instance. An executor
+	 * supplied by the caller is left running. A later call to {@link #improve}
+	 * creates a new pool.
+	 */
+	@Override
+	public void close() {
+		if (_ownsExecutor && _executor != null) {
+			_executor.shutdown();
+			_executor = null;
+		}
+	}
+
+	/**
+	 * Selects the greedy row of each state in [begin, end).
+	 */
+	private void improve(int begin, int end, double[] values, int[] oldRows,
+			int[] newRows, double[] qvals, boolean[] changed) {
+		Optimization opType = _model.opType();
+		for (int s = begin; s < end; s++) {
+			int oldRow = oldRows[s];
+			int best = -1;
+			double bestQ = 0;
+			for (int row = _model.rowBegin(s); row < _model.rowEnd(s); row++) {
+				double q = _model.qvalue(row, values, _discounts);
+				if (qvals != null) {
+					qvals[row] = q;
+				}
+				if (best < 0 || opType.firstIsBetter(q, bestQ)
+						|| (row == oldRow && !opType.firstIsBetter(bestQ, q))) {
+					best = row;
+					bestQ = q;
+				}
+			}
+			newRows[s] = best;
+			changed[s] = (best != oldRow);
+		}
+	}
+}
@@ -34,6 +34,7 @@ import com.github.kingtim1.jmdp.AbstractPolicyIteration;
 import com.github.kingtim1.jmdp.ActionSet;
 import com.github.kingtim1.jmdp.DeterministicPolicy;
 import com.github.kingtim1.jmdp.FiniteStateSMDP;
+import com.github.kingtim1.jmdp.PolicyEvaluation;
 import com.github.kingtim1.jmdp.StationaryPolicy;
 
 /**
@@ -52,8 +53,10 @@ public class PolicyIteration<S, A>
 
 	private FiniteStateSMDP<S, A> _smdp;
 	private int _maxIterations;
+	private double _stabilityTolerance;
+	private ChangeCounter _changeCounter;
 
-	private StationaryPolicy<S, A> _lastPolicy;
+	private DiscountedVFunction<S> _lastValue;
 
 	/**
 	 * Constructs an instance of Policy Iteration for an SMDP with a maximum
@@ -70,37 +73,149 @@ public class PolicyIteration<S, A>
 	 */
 	public PolicyIteration(FiniteStateSMDP<S, A> smdp, DiscountFactor df,
 			int maxIterations) {
-		super(new MatrixInversePolicyEvaluation<S, A>(smdp, df),
-				new StationaryPolicyImprovement<S, A>(smdp, df));
+		this(smdp, new MatrixInversePolicyEvaluation<S, A>(smdp, df), df,
+				maxIterations);
+	}
+
+	/**
+	 * Constructs an instance of Policy Iteration that evaluates policies with
+	 * the specified algorithm.
+	 * 
+	 * @param smdp
+	 *            an SMDP model
+	 * @param pe
+	 *            the policy evaluation algorithm
+	 * @param df
+	 *            the discount factor to use (can be 1)
+	 * @param maxIterations
+	 *            the maximum number of iterations to run. If maxIterations is
+	 *            non-positive, then this argument is ignored and the algorithm
+	 *            will run until the policy stops changing.
+	 */
+	public PolicyIteration(
+			FiniteStateSMDP<S, A> smdp,
+			PolicyEvaluation<S, A, StationaryPolicy<S, A>, DiscountedVFunction<S>> pe,
+			DiscountFactor df, int maxIterations) {
+		this(smdp, pe, maxIterations, new StationaryPolicyImprovement<S, A>(
+				smdp, df));
+	}
+
+	/**
+	 * Constructs an instance of Policy Iteration that performs policy
+	 * improvement with several threads (see {@link ParallelPolicyImprovement}
+	 * ) and updates the cached inverse of policy evaluation when only a few
+	 * states change.
+	 * 
+	 * @param smdp
+	 *            an SMDP model
+	 * @param df
+	 *            the discount factor to use (can be 1)
+	 * @param maxIterations
+	 *            the maximum number of iterations to run. If maxIterations is
+	 *            non-positive, then this argument is ignored and the algorithm
+	 *            will run until the policy stops changing.
+	 * @param numThreads
+	 *            the number of threads used for policy improvement (the pool
+	 *            is created on the first iteration and reused by every later
+	 *            iteration and run; its daemon threads exit when idle)
+	 */
+	public PolicyIteration(FiniteStateSMDP<S, A> smdp, DiscountFactor df,
+			int maxIterations, int numThreads) {
+		this(smdp, df, maxIterations, new ParallelPolicyImprovement<S, A>(
+				smdp, df, numThreads));
+	}
+
+	private PolicyIteration(
+			FiniteStateSMDP<S, A> smdp,
+			PolicyEvaluation<S, A, StationaryPolicy<S, A>, DiscountedVFunction<S>> pe,
+			int maxIterations, StationaryPolicyImprovement<S, A> improvement) {
+		super(pe, improvement);
 		_smdp = smdp;
 		_maxIterations = maxIterations;
+		_changeCounter = improvement;
 	}
 
+	private PolicyIteration(FiniteStateSMDP<S, A> smdp, DiscountFactor df,
+			int maxIterations, ParallelPolicyImprovement<S, A> improvement) {
+		super(new MatrixInversePolicyEvaluation<S, A>(smdp, df, true),
+				improvement);
+		_smdp = smdp;
+		_maxIterations = maxIterations;
+		_changeCounter = improvement;
+	}
+
+	/**
+	 * Sets the tolerance of the value-stability stopping rule. If the
+	 * tolerance is positive, then policy iteration also stops as soon as no
+	 * state's value changes by more than the tolerance between two
+	 * iterations. This prevents policy iteration from oscillating between
+	 * actions whose values are tied up to numerical error. The default
+	 * tolerance is 0, which disables the rule.
+	 * 
+	 * @param tolerance
+	 *            a non-negative tolerance
+	 */
+	public void setStabilityTolerance(double tolerance) {
+		if (tolerance < 0) {
+			throw new IllegalArgumentException(
+					"Expected a non-negative tolerance. Found " + tolerance
+							+ ".");
+		}
+		_stabilityTolerance = tolerance;
+	}
+
+	/**
+	 * Returns the tolerance of the value-stability stopping rule.
+	 * 
+	 * @return the stability tolerance (0 means disabled)
+	 */
+	public double stabilityTolerance() {
+		return _stabilityTolerance;
+	}
+
+	/**
+	 * Returns true once the policy stops changing. The number of changed
+	 * states is a by-product of the improvement step, so this test takes
+	 * constant time unless the value-stability rule is enabled.
+	 */
 	@Override
 	public boolean isFinished(StationaryPolicy<S, A> policy,
 			DiscountedVFunction<S> policyValue, int iteration) {
+		boolean finished;
 		if (_maxIterations > 0 && iteration >= _maxIterations) {
-			_lastPolicy = policy;
-			return true;
+			finished = true;
+		} else if (iteration == 0) {
+			finished = false;
+		} else {
+			finished = _changeCounter.numberOfChanges() == 0;
 		}
 
-		if (_lastPolicy != null) {
-			boolean policyChanged = false;
-			Iterable<S> states = _smdp.states();
-			for (S state : states) {
-				if (!_lastPolicy.policy(state).equals(policy.policy(state))) {
-					policyChanged = true;
-					break;
-				}
-			}
-
-			_lastPolicy = policy;
-			return !policyChanged;
-		} else {
-			_lastPolicy = policy;
-			return false;
+		if (!finished && iteration > 0 && _stabilityTolerance > 0) {
+			finished = maxChange(_lastValue, policyValue) <= _stabilityTolerance;
+		}
+
+		_lastValue = policyValue;
+		return finished;
+	}
+
+	private double maxChange(DiscountedVFunction<S> oldValue,
+			DiscountedVFunction<S> newValue) {
+		double maxChange = 0;
+		Iterable<S> states = _smdp.states();
+		for (S state : states) {
+			maxChange = Math.max(maxChange,
+					Math.abs(newValue.value(state) - oldValue.value(state)));
 		}
+		return maxChange;
+	}
 
+	/**
+	 * Returns the largest change of a state's value.
+	 */
+	@Override
+	protected double residual(DiscountedVFunction<S> oldVFunc,
+			DiscountedVFunction<S> newVFunc) {
+		return maxChange(oldVFunc, newVFunc);
 	}
 
 	@Override
@@ -0,0 +1,360 @@
+/**
+	PropagatingPolicyEvaluation.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.discounted;
+
+import com.github.kingtim1.jmdp.FiniteStateSMDP;
+import com.github.kingtim1.jmdp.MonitoredSolver;
+import com.github.kingtim1.jmdp.PolicyEvaluation;
+import com.github.kingtim1.jmdp.SolverMonitor;
+import com.github.kingtim1.jmdp.StationaryPolicy;
+import com.github.kingtim1.jmdp.compiled.CompiledSMDP;
+import com.github.kingtim1.jmdp.compiled.ReverseModel;
+
+/**
+ * <p>
+ * Incremental policy evaluation for deterministic policies. Given the value
+ * function of a previous policy and the states where the new policy selects a
+ * different action, only those states are backed up. Whenever the value of a
+ * state changes by more than the convergence threshold, the states whose
+ * selected action can reach it are queued for a backup. States that are not
+ * affected by the change are never touched.
+ * </p>
+ * 
+ * <p>
+ * Late in {@link PolicyIteration} only a few states change their action between
+ * iterations, so evaluating the new policy costs little more than the backups
+ * of the states whose values actually change. This instance remembers the
+ * last policy that it evaluated and its values, so {@link #eval} is
+ * incremental with respect to the previous call. The first call (or a call
+ * after {@link #reset()}) evaluates the policy from scratch.
+ * </p>
+ * 
+ * <p>
+ * The self-transitions of the selected action are solved for exactly instead
+ * of being iterated. Without discounting, a state whose selected action
+ * returns to it with probability 1 has value 0 if it receives no reward;
+ * otherwise its value is unbounded and {@link #eval} throws an
+ * {@link IllegalStateException}.
+ * </p>
+ * 
+ * <p>
+ * If an evaluation reaches its backup limit while states are still queued,
+ * it returns the values computed so far and reports the truncation through
+ * {@link SolverMonitor#isTruncated()}.
+ * </p>
+ * 
+ * @author Timothy A. Mann
+ *
+ * @param <S>
+ *            the state type
+ * @param <A>
+ *            the action type
+ */
+public class PropagatingPolicyEvaluation<S, A> implements
+		PolicyEvaluation<S, A, StationaryPolicy<S, A>, DiscountedVFunction<S>>,
+		MonitoredSolver {
+
+	private CompiledSMDP<S, A> _model;
+	private DiscountFactor _df;
+	private double[] _discounts;
+	private ReverseModel _reverse;
+	private double _theta;
+	private long _maxBackups;
+
+	private int[] _rows;
+	private double[] _values;
+	private long _backups;
+	private SolverMonitor _monitor;
+
+	/**
+	 * Constructs an incremental policy evaluator.
+	 * 
+	 * @param smdp
+	 *            a finite-state SMDP (compiled once by this constructor)
+	 * @param df
+	 *            a discount factor
+	 * @param maxIterations
+	 *            bounds the number of backups of each evaluation by
+	 *            <code>maxIterations</code> times the number of states (an
+	 *            evaluation that hits the bound is marked as truncated by the
+	 *            monitor)
+	 * @param convergenceThreshold
+	 *            a value must change by more than this threshold for its
+	 *            predecessors to be backed up
+	 */
+	public PropagatingPolicyEvaluation(FiniteStateSMDP<S, A> smdp,
+			DiscountFactor df, int maxIterations, double convergenceThreshold) {
+		this(new CompiledSMDP<S, A>(smdp), df, maxIterations,
+				convergenceThreshold);
+	}
+
+	/**
+	 * Constructs an incremental policy evaluator for a compiled SMDP.
+	 * 
+	 * @param model
+	 *            a compiled SMDP
+	 * @param df
+	 *            a discount factor
+	 * @param maxIterations
+	 *            bounds the number of backups of each evaluation by
+	 *            <code>maxIterations</code> times the number of states (an
+	 *            evaluation that hits the bound is marked as truncated by the
+	 *            monitor)
+	 * @param convergenceThreshold
+	 *            a value must change by more than this threshold for its
+	 *            predecessors to be backed up
+	 */
+	public PropagatingPolicyEvaluation(CompiledSMDP<S, A> model,
+			DiscountFactor df, int maxIterations, double convergenceThreshold) {
+		if (model == null) {
+			throw new NullPointerException("Model cannot be null.");
+		}
+		if (df == null) {
+			throw new NullPointerException(
+					"Cannot perform policy evaluation with a null discount factor.");
+		}
+		_model = model;
+		_df = df;
+		_discounts = model.discounts(df);
+		_reverse = new ReverseModel(model);
+		_maxBackups = (long) maxIterations * model.numberOfStates();
+		_theta = convergenceThreshold;
+		_monitor = new SolverMonitor(this);
+	}
+
+	public CompiledSMDP<S, A> model() {
+		return _model;
+	}
+
+	public DiscountFactor discountFactor() {
+		return _df;
+	}
+
+	/**
+	 * Forgets the last evaluated policy, so that the next call to
+	 * {@link #eval} evaluates its policy from scratch.
+	 */
+	public void reset() {
+		_rows = null;
+		_values = null;
+	}
+
+	/**
+	 * Returns the number of backups performed by the last evaluation.
+	 * 
+	 * @return the number of backups
+	 */
+	public long backups() {
+		return _backups;
+	}
+
+	/**
+	 * Returns the monitor of this solver. The backups are not organized in
+	 * sweeps, so a sweep is reported after every n backups (where n is the
+	 * number of states) and after the last backup. The residual of a sweep is
+	 * the largest change of a value among its backups. The monitor is marked
+	 * as truncated if the backup limit stopped the evaluation before every
+	 * queued state was backed up.
+	 */
+	@Override
+	public SolverMonitor monitor() {
+		return _monitor;
+	}
+
+	@Override
+	public ArrayVFunction<S> eval(StationaryPolicy<S, A> policy) {
+		if (!policy.isDeterministic()) {
+			throw new IllegalArgumentException(
+					"Expected a deterministic policy. Found a stochastic policy.");
+		}
+		ArrayPolicy<S, A> apolicy = ArrayPolicy.fromPolicy(_model, policy);
+		int[] rows = apolicy.rows();
+		int n = _model.numberOfStates();
+
+		int[] changed;
+		double[] values;
+		if (_rows == null) {
+			changed = new int[n];
+			for (int s = 0; s < n; s++) {
+				changed[s] = s;
+			}
+			values = new double[n];
+		} else {
+			int numChanged = 0;
+			for (int s = 0; s < n; s++) {
+				if (rows[s] != _rows[s]) {
+					numChanged++;
+				}
+			}
+			changed = new int[numChanged];
+			numChanged = 0;
+			for (int s = 0; s < n; s++) {
+				if (rows[s] != _rows[s]) {
+					changed[numChanged++] = s;
+				}
+			}
+			values = _values;
+		}
+
+		ArrayVFunction<S> vfunc = eval(apolicy, values, changed);
+		_rows = rows.clone();
+		_values = vfunc.values();
+		return vfunc;
+	}
+
+	/**
+	 * Evaluates a policy given the value function of a policy that differs
+	 * from it only at the specified states.
+	 * 
+	 * @param policy
+	 *            a policy for this instance's model
+	 * @param previousValues
+	 *            the value of each state under the previous policy (this array
+	 *            is not modified)
+	 * @param changedStates
+	 *            the indices of the states where the two policies select
+	 *            different actions
+	 * @return the value function of <code>policy</code>
+	 */
+	public ArrayVFunction<S> eval(ArrayPolicy<S, A> policy,
+			double[] previousValues, int[] changedStates) {
+		if (policy.model() != _model) {
+			throw new IllegalArgumentException(
+					"Expected a policy for this instance's model.");
+		}
+		int n = _model.numberOfStates();
+		if (previousValues.length != n) {
+			throw new IllegalArgumentException("Expected " + n
+					+ " values. Found " + previousValues.length + ".");
+		}
+		boolean monitored = _monitor.start();
+		int[] rows = policy.rows();
+		double[] values = previousValues.clone();
+
+		// A circular queue of the states waiting for a backup
+		int[] queue = new int[n];
+		boolean[] queued = new boolean[n];
+		int head = 0;
+		int size = 0;
+		for (int s : changedStates) {
+			if (!queued[s]) {
+				queued[s] = true;
+				queue[(head + size) % n] = s;
+				size++;
+			}
+		}
+
+		_backups = 0;
+		int sweepBackups = 0;
+		long sweepEntries = 0;
+		double delta = 0;
+		while (size > 0 && _backups < _maxBackups) {
+			int s = queue[head];
+			head = (head + 1) % n;
+			size--;
+			queued[s] = false;
+
+			double v = backup(rows[s], s, values);
+			_backups++;
+			double change = Math.abs(v - values[s]);
+			if (monitored) {
+				if (rows[s] >= 0) {
+					sweepEntries += _model.entryEnd(rows[s])
+							- _model.entryBegin(rows[s]);
+				}
+				delta = Math.max(delta, change);
+				if (++sweepBackups == n) {
+					_monitor.count(sweepBackups, sweepEntries);
+					_monitor.endSweep(delta);
+					sweepBackups = 0;
+					sweepEntries = 0;
+					delta = 0;
+				}
+			}
+			if (change > _theta) {
+				for (int k = _reverse.predBegin(s); k < _reverse.predEnd(s); k++) {
+					int row = _reverse.predecessor(k);
+					int p = _reverse.state(row);
+					if (!queued[p] && rows[p] == row) {
+						queued[p] = true;
+						queue[(head + size) % n] = p;
+						size++;
+					}
+				}
+			}
+			values[s] = v;
+		}
+		if (sweepBackups > 0) {
+			_monitor.count(sweepBackups, sweepEntries);
+			_monitor.endSweep(delta);
+		}
+		if (size > 0) {
+			_monitor.markTruncated();
+		}
+
+		_monitor.finish();
+		return new ArrayVFunction<S>(_model, values, 0);
+	}
+
+	/**
+	 * Returns the value of state s under a row given the values of the other
+	 * states, solving for the self-transition.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the row returns to s with probability 1 without
+	 *             discounting and has a nonzero reward
+	 */
+	private double backup(int row, int s, double[] values) {
+		if (row < 0) {
+			return 0;
+		}
+		double v = _model.r(row);
+		double self = 0;
+		int entryEnd = _model.entryEnd(row);
+		for (int e = _model.entryBegin(row); e < entryEnd; e++) {
+			int t = _model.successor(e);
+			double g = _model.tprob(e) * _discounts[_model.duration(e)];
+			if (t == s) {
+				self += g;
+			} else {
+				v += g * values[t];
+			}
+		}
+		if (self >= 1) {
+			// An undiscounted absorbing state
+			if (v != 0) {
+				throw new IllegalStateException("Expected a bounded value for state "
+						+ s + ". Found an undiscounted self-loop with reward "
+						+ v + ".");
+			}
+			return 0;
+		}
+		return v / (1 - self);
+	}
+}
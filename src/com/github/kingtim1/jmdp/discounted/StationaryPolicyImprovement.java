@@ -31,10 +31,14 @@ import com.github.kingtim1.jmdp.ActionSet;
 import com.github.kingtim1.jmdp.FiniteStateSMDP;
 import com.github.kingtim1.jmdp.PolicyImprovement;
 import com.github.kingtim1.jmdp.StationaryPolicy;
+import com.github.kingtim1.jmdp.TransitionDistribution;
+import com.github.kingtim1.jmdp.metrics.PolicyImprovementEvent;
 
 /**
  * Performs policy improvement with respect to stationary policies and a
- * state-value function.
+ * state-value function. The number of states whose greedy action differs from
+ * the action of the old policy is counted while the policy is improved (see
+ * {@link #numberOfChanges()}).
  * 
  * @author Timothy A. Mann
  *
@@ -44,10 +48,12 @@ import com.github.kingtim1.jmdp.StationaryPolicy;
  *            the action type
  */
 public class StationaryPolicyImprovement<S, A> implements
-		PolicyImprovement<S, A, StationaryPolicy<S, A>, DiscountedVFunction<S>> {
+		PolicyImprovement<S, A, StationaryPolicy<S, A>, DiscountedVFunction<S>>,
+		ChangeCounter {
 
 	private FiniteStateSMDP<S, A> _smdp;
 	private DiscountFactor _df;
+	private int _numChanges;
 
 	public StationaryPolicyImprovement(FiniteStateSMDP<S, A> smdp,
 			DiscountFactor df) {
@@ -70,23 +76,48 @@ public class StationaryPolicyImprovement<S, A> implements
 		return _df;
 	}
 
+	/**
+	 * Returns the number of states whose greedy action differed from the
+	 * action of the old policy during the last call to {@link #improve}.
+	 * 
+	 * @return the number of changed states
+	 */
+	@Override
+	public int numberOfChanges() {
+		return _numChanges;
+	}
+
 	@Override
 	public StationaryPolicy<S, A> improve(StationaryPolicy<S, A> oldPolicy,
 			DiscountedVFunction<S> vfunc) {
+		PolicyImprovementEvent event = new PolicyImprovementEvent();
+		event.begin();
 		MapQFunction<S, A> qfunc = new MapQFunction<S, A>(_smdp.actionSet(),
 				0.0, _smdp.opType());
 		Iterable<S> states = _smdp.states();
 		ActionSet<S, A> actionSet = _smdp.actionSet();
+		TransitionDistribution<S> dist = new TransitionDistribution<S>();
+		int numChanges = 0;
 		for (S state : states) {
 			for (A action : actionSet.actions(state)) {
-				double rAvg = FiniteStateSMDP.avgR(_smdp, state, action);
-				double avgNextV = FiniteStateSMDP.avgNextV(_smdp, state,
-						action, vfunc, _df);
-				double qval = rAvg + avgNextV;
+				double qval = FiniteStateSMDP.backup(_smdp, state, action,
+						vfunc, _df, dist);
 				qfunc.set(state, action, qval);
 			}
+			if (!qfunc.greedyAction(state).equals(oldPolicy.policy(state))) {
+				numChanges++;
+			}
+		}
+		_numChanges = numChanges;
+
+		event.end();
+		if (event.shouldCommit()) {
+			event.improver = getClass();
+			event.states = _smdp.numberOfStates();
+			event.changedStates = numChanges;
+			event.threads = 1;
+			event.commit();
 		}
-
 		return qfunc;
 	}
 
@@ -0,0 +1,156 @@
+/**
+	StreamingValueIteration.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.discounted;
+
+import java.io.IOException;
+
+import com.github.kingtim1.jmdp.DP;
+import com.github.kingtim1.jmdp.MonitoredSolver;
+import com.github.kingtim1.jmdp.SolverMonitor;
+import com.github.kingtim1.jmdp.compiled.ModelFile;
+import com.github.kingtim1.jmdp.compiled.ModelStream;
+
+/**
+ * Value Iteration for models that are too large to fit in memory. The model is
+ * stored in a {@link ModelFile} and every sweep reads it sequentially, block
+ * by block, through a {@link ModelStream}, which reads the next block while
+ * the current one is backed up. Only the value of each state is kept in
+ * memory. The states are swept in index order and their values are updated
+ * in place (Gauss-Seidel), exactly like the compiled path of
+ * {@link ValueIteration}.
+ * <p>
+ * Solving a model that fits in memory is faster with {@link ValueIteration}
+ * or {@link AsyncValueIteration} on a mapped model (see
+ * {@link ModelFile#map(java.nio.file.Path, ModelFile.Codec, ModelFile.Codec, com.github.kingtim1.jmdp.compiled.OffHeapArena)}
+ * ), because those read each block only once.
+ * </p>
+ * 
+ * @author Timothy A. Mann
+ *
+ * @param <S>
+ *            the state type
+ */
+public class StreamingValueIteration<S> implements
+		DP<DiscountedVFunction<S>>, MonitoredSolver {
+
+	private ModelStream<S> _stream;
+	private DiscountFactor _df;
+	private int _maxIterations;
+	private double _theta;
+	private SolverMonitor _monitor;
+
+	/**
+	 * Constructs a streaming value iteration solver. The stream is not closed
+	 * by the solver.
+	 * 
+	 * @param stream
+	 *            a stream over the blocks of a model file
+	 * @param df
+	 *            a discount factor
+	 * @param maxIterations
+	 *            the maximum number of sweeps
+	 * @param convergenceThreshold
+	 *            the solver stops after a sweep that changes no value by this
+	 *            much or more
+	 */
+	public StreamingValueIteration(ModelStream<S> stream, DiscountFactor df,
+			int maxIterations, double convergenceThreshold) {
+		if (stream == null) {
+			throw new NullPointerException("Cannot solve a null model stream.");
+		}
+		_stream = stream;
+		_df = df;
+		_maxIterations = maxIterations;
+		_theta = convergenceThreshold;
+		_monitor = new SolverMonitor(this);
+	}
+
+	@Override
+	public SolverMonitor monitor() {
+		return _monitor;
+	}
+
+	@Override
+	public DiscountedVFunction<S> run() {
+		_monitor.start();
+		int n = _stream.numberOfStates();
+		double[] values = new double[n];
+		double[] discounts = _stream.discounts(_df);
+
+		try {
+			for (int i = 0; i < _maxIterations; i++) {
+				double delta = 0;
+				_stream.rewind();
+				for (ModelStream.Block block = _stream.next(); block != null; block = _stream
+						.next()) {
+					for (int s = block.stateBegin(); s < block.stateEnd(); s++) {
+						double newV = block.backup(s, values, discounts);
+						delta = Math.max(delta, Math.abs(values[s] - newV));
+						values[s] = newV;
+					}
+				}
+				_monitor.count(n, _stream.numberOfEntries());
+				_monitor.endSweep(delta);
+
+				if (delta < _theta) {
+					break;
+				}
+			}
+		} catch (IOException ex) {
+			throw new IllegalStateException(
+					"Failed to read the model during value iteration.", ex);
+		}
+		_monitor.finish();
+		return new StreamVFunction<S>(_stream, values);
+	}
+
+	/**
+	 * The values computed by a run, indexed by the states of the stream.
+	 */
+	private static class StreamVFunction<S> implements DiscountedVFunction<S> {
+		private final ModelStream<S> stream;
+		private final double[] values;
+
+		public StreamVFunction(ModelStream<S> stream, double[] values) {
+			this.stream = stream;
+			this.values = values;
+		}
+
+		@Override
+		public double value(S state, Integer timestep) {
+			return value(state);
+		}
+
+		@Override
+		public double value(S state) {
+			int index = stream.index(state);
+			return (index < 0) ? 0 : values[index];
+		}
+	}
+}
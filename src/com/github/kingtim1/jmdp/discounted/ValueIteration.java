@@ -31,12 +31,29 @@ import com.github.kingtim1.jmdp.ActionSet;
 import com.github.kingtim1.jmdp.DP;
 import com.github.kingtim1.jmdp.FiniteStateMDP;
 import com.github.kingtim1.jmdp.FiniteStateSMDP;
+import com.github.kingtim1.jmdp.MonitoredSolver;
+import com.github.kingtim1.jmdp.SolverMonitor;
+import com.github.kingtim1.jmdp.TransitionDistribution;
+import com.github.kingtim1.jmdp.compiled.CompiledSMDP;
+import com.github.kingtim1.jmdp.compiled.Reordering;
 
 /**
  * Implements the classic Value Iteration (VI) algorithm with asynchronous
  * updates. VI starts with an arbitrary estimate of the optimal value function
  * and converges to the optimal value function as the number of iterations goes
  * to infinity.
+ * <p>
+ * With a discount factor close to 1 plain backups contract slowly. Anderson mixing or Nesterov
+ * momentum can be enabled with {@link #setAcceleration(Acceleration)}.
+ * </p>
+ * <p>
+ * By default each backup queries the SMDP and stores the values in a map,
+ * which allocates boxed states, values and iterators. After
+ * {@link #setCompiled(boolean)} the SMDP is compiled once per run and the
+ * sweeps back up primitive arrays without allocating. After
+ * {@link #setReordering(Reordering)} the states are renumbered so that
+ * successors are stored near their predecessors.
+ * </p>
  * 
  * @author Timothy A. Mann
  *
@@ -45,12 +62,19 @@ import com.github.kingtim1.jmdp.FiniteStateSMDP;
  * @param <A>
  *            the action type
  */
-public class ValueIteration<S, A> implements DP<DiscountedQFunction<S,A>> {
+public class ValueIteration<S, A> implements DP<DiscountedQFunction<S,A>>,
+		MonitoredSolver {
 
 	private FiniteStateSMDP<S, A> _smdp;
 	private DiscountFactor _df;
 	private int _maxIterations;
 	private double _theta;
+	private Acceleration _acceleration;
+	private int _history;
+	private boolean _compiled;
+	private Reordering _reordering;
+	private TransitionDistribution<S> _dist;
+	private SolverMonitor _monitor;
 
 	public ValueIteration(FiniteStateSMDP<S, A> smdp, DiscountFactor df,
 			int maxIterations, double convergenceThreshold) {
@@ -58,10 +82,139 @@ public class ValueIteration<S, A> implements DP<DiscountedQFunction<S,A>> {
 		_df = df;
 		_maxIterations = maxIterations;
 		_theta = convergenceThreshold;
+		_acceleration = Acceleration.NONE;
+		_reordering = Reordering.NONE;
+		_history = Acceleration.DEFAULT_HISTORY;
+		_dist = new TransitionDistribution<S>();
+		_monitor = new SolverMonitor(this);
+	}
+
+	/**
+	 * Selects the fixed-point acceleration scheme. Accelerated runs compile
+	 * the SMDP and use Jacobi backups of all states, falling back to the plain
+	 * Bellman step whenever an accelerated step would increase the Bellman
+	 * residual. The default is {@link Acceleration#NONE}.
+	 * 
+	 * @param acceleration
+	 *            an acceleration scheme
+	 */
+	public void setAcceleration(Acceleration acceleration) {
+		if (acceleration == null) {
+			throw new NullPointerException("Acceleration cannot be null.");
+		}
+		_acceleration = acceleration;
+	}
+
+	/**
+	 * Returns the fixed-point acceleration scheme.
+	 * 
+	 * @return the acceleration scheme
+	 */
+	public Acceleration acceleration() {
+		return _acceleration;
+	}
+
+	/**
+	 * Sets the number of previous iterations mixed by Anderson acceleration.
+	 * The default is {@link Acceleration#DEFAULT_HISTORY}.
+	 * 
+	 * @param history
+	 *            a positive number of iterations
+	 */
+	public void setAndersonHistory(int history) {
+		if (history < 1) {
+			throw new IllegalArgumentException(
+					"Expected a positive history length. Found " + history
+							+ ".");
+		}
+		_history = history;
+	}
+
+	/**
+	 * Returns the number of previous iterations mixed by Anderson
+	 * acceleration.
+	 * 
+	 * @return the history length
+	 */
+	public int andersonHistory() {
+		return _history;
+	}
+
+	/**
+	 * Selects whether unaccelerated runs compile the SMDP into a
+	 * {@link CompiledSMDP} and perform the (Gauss-Seidel) backups with
+	 * {@link CompiledSMDP#backup(int, double[], double[])}. Compiled sweeps
+	 * perform no allocation, at the cost of storing every transition of the
+	 * SMDP in arrays for the duration of the run. The default is false.
+	 * 
+	 * @param compiled
+	 *            true to back up a compiled copy of the SMDP; false to query
+	 *            the SMDP during every backup
+	 */
+	public void setCompiled(boolean compiled) {
+		_compiled = compiled;
+	}
+
+	/**
+	 * Returns true if unaccelerated runs back up a compiled copy of the SMDP.
+	 * 
+	 * @return true if the SMDP is compiled before sweeping; otherwise false
+	 */
+	public boolean isCompiled() {
+		return _compiled;
+	}
+
+	/**
+	 * Selects how compiled runs (see {@link #setCompiled(boolean)}) renumber
+	 * the states of the compiled SMDP before sweeping. Reordering pays off
+	 * when the order returned by {@link FiniteStateSMDP#states()} scatters the
+	 * successors of a state over a value array that does not fit in the
+	 * processor caches; {@link Reordering#BREADTH_FIRST} is usually the better
+	 * choice. The returned action-value function is indexed by state, so it
+	 * does not depend on the ordering. The default is {@link Reordering#NONE}.
+	 * 
+	 * @param reordering
+	 *            the ordering applied to the states of the compiled SMDP
+	 */
+	public void setReordering(Reordering reordering) {
+		if (reordering == null) {
+			throw new NullPointerException("Reordering cannot be null.");
+		}
+		_reordering = reordering;
+	}
+
+	/**
+	 * Returns the ordering applied to the states of compiled runs.
+	 * 
+	 * @return the state ordering
+	 */
+	public Reordering reordering() {
+		return _reordering;
+	}
+
+	@Override
+	public SolverMonitor monitor() {
+		return _monitor;
 	}
 
 	@Override
 	public DiscountedQFunction<S,A> run() {
+		_monitor.start();
+		if (!_acceleration.equals(Acceleration.NONE)) {
+			CompiledSMDP<S, A> model = new CompiledSMDP<S, A>(_smdp);
+			double[] values = accelerated(model).solve(
+					new double[model.numberOfStates()], _maxIterations, _theta);
+			DiscountedQFunction<S, A> qfunc = toQ(new ArrayVFunction<S>(model,
+					values, 0));
+			_monitor.finish();
+			return qfunc;
+		}
+		if (_compiled) {
+			DiscountedQFunction<S, A> qfunc = compiled(new CompiledSMDP<S, A>(
+					_smdp));
+			_monitor.finish();
+			return qfunc;
+		}
 		MapVFunction<S> vfunc = new MapVFunction<S>(0);
 
 		for (int i = 0; i < _maxIterations; i++) {
@@ -72,14 +225,58 @@ public class ValueIteration<S, A> implements DP<DiscountedQFunction<S,A>> {
 				double newV = backup(state, vfunc);
 				vfunc.set(state, newV);
 				delta = Math.max(delta, Math.abs(oldV - newV));
+				_monitor.count(1, 0);
+			}
+			_monitor.endSweep(delta);
+
+			if (delta < _theta) {
+				break;
+			}
+		}
+
+		DiscountedQFunction<S, A> qfunc = toQ(vfunc);
+		_monitor.finish();
+		return qfunc;
+	}
+
+	/**
+	 * Runs value iteration on the arrays of a compiled model.
+	 */
+	private DiscountedQFunction<S, A> compiled(CompiledSMDP<S, A> model) {
+		model = _reordering.apply(model);
+		int n = model.numberOfStates();
+		double[] values = new double[n];
+		double[] discounts = model.discounts(_df);
+		for (int i = 0; i < _maxIterations; i++) {
+			double delta = 0;
+			for (int s = 0; s < n; s++) {
+				double newV = model.backup(s, values, discounts);
+				delta = Math.max(delta, Math.abs(values[s] - newV));
+				values[s] = newV;
 			}
+			_monitor.count(n, model.numberOfEntries());
+			_monitor.endSweep(delta);
 
 			if (delta < _theta) {
 				break;
 			}
 		}
 
-		return toQ(vfunc);
+		return ArrayQFunction.backup(model, values, _df);
+	}
+
+	private AcceleratedFixedPoint accelerated(final CompiledSMDP<S, A> model) {
+		final double[] discounts = model.discounts(_df);
+		return new AcceleratedFixedPoint(_acceleration, _history,
+				AcceleratedFixedPoint.defaultMomentum(_df), _monitor) {
+			@Override
+			protected void backup(double[] values, double[] result) {
+				_monitor.count(result.length, model.numberOfEntries());
+				for (int s = 0; s < result.length; s++) {
+					result[s] = model.backup(s, values, discounts);
+				}
+			}
+		};
 	}
 	
 	public DiscountedQFunction<S,A> toQ(DiscountedVFunction<S> vfunc){
@@ -119,9 +316,10 @@ public class ValueIteration<S, A> implements DP<DiscountedQFunction<S,A>> {
 	}
 	
 	public double qbackup(S state, A action, DiscountedVFunction<S> vfunc){
-		double avgR = FiniteStateSMDP.avgR(_smdp, state, action);
-		double avgNextV = FiniteStateSMDP.avgNextV(_smdp, state, action, vfunc, _df);
-		return avgR + avgNextV;
+		double q = FiniteStateSMDP.backup(_smdp, state, action, vfunc, _df,
+				_dist);
+		_monitor.count(0, _dist.size());
+		return q;
 	}
 
 }
@@ -0,0 +1,83 @@
+/**
+	WorkerPool.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.discounted;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the thread pools owned by the multithreaded solvers. A solver
+ * creates its pool once and reuses it for every run. The threads are daemon
+ * threads that exit after {@link #KEEP_ALIVE_SECONDS} idle seconds, so a
+ * solver that is never closed does not keep the JVM alive or hold idle
+ * threads forever.
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+final class WorkerPool {
+
+	/**
+	 * The number of seconds an idle worker thread waits for new work.
+	 */
+	public static final long KEEP_ALIVE_SECONDS = 30;
+
+	private WorkerPool() {
+	}
+
+	/**
+	 * Creates a pool with a fixed number of daemon threads.
+	 * 
+	 * @param numThreads
+	 *            the number of threads
+	 * @param name
+	 *            the prefix of the thread names
+	 * @return a new thread pool
+	 */
+	public static ExecutorService create(int numThreads, final String name) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads,
+				numThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					private final AtomicInteger _count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, name + "-"
+								+ _count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+}
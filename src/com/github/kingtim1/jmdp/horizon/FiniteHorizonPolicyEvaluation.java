@@ -28,12 +28,17 @@
 package com.github.kingtim1.jmdp.horizon;
 
 import com.github.kingtim1.jmdp.FiniteStateSMDP;
+import com.github.kingtim1.jmdp.MonitoredSolver;
 import com.github.kingtim1.jmdp.PolicyEvaluation;
+import com.github.kingtim1.jmdp.SolverMonitor;
+import com.github.kingtim1.jmdp.TransitionDistribution;
 import com.github.kingtim1.jmdp.VFunction;
 import com.github.kingtim1.jmdp.discounted.DiscountFactor;
 
 /**
  * An implementation of policy evaluation for policies with a finite-horizon.
+ * Each timestep is reported to the {@link SolverMonitor} as one sweep without
+ * a residual.
  * 
  * @author Timothy A. Mann
  *
@@ -42,10 +47,12 @@ import com.github.kingtim1.jmdp.discounted.DiscountFactor;
  * @param <A>
  *            the action type
  */
-public class FiniteHorizonPolicyEvaluation<S, A> implements PolicyEvaluation<S,A,FiniteHorizonPolicy<S,A>, VFunction<S>> {
+public class FiniteHorizonPolicyEvaluation<S, A> implements PolicyEvaluation<S,A,FiniteHorizonPolicy<S,A>, VFunction<S>>,
+		MonitoredSolver {
 
 	private FiniteStateSMDP<S, A> _smdp;
 	private DiscountFactor _df;
+	private SolverMonitor _monitor;
 
 	public FiniteHorizonPolicyEvaluation(FiniteStateSMDP<S,A> smdp){
 		this(smdp, new DiscountFactor(1));
@@ -54,38 +61,41 @@ public class FiniteHorizonPolicyEvaluation<S, A> implements PolicyEvaluation<S,A
 	public FiniteHorizonPolicyEvaluation(FiniteStateSMDP<S, A> smdp, DiscountFactor df) {
 		_smdp = smdp;
 		_df = df;
+		_monitor = new SolverMonitor(this);
 	}
 
-	private double rPi(FiniteHorizonPolicy<S,A> policy, S state, Integer timestep) {
-		A action = policy.policy(state, timestep);
-		return FiniteStateSMDP.avgR(_smdp, state, action);
-	}
-	
-	private double avgNextV(FiniteHorizonPolicy<S,A> policy, S state, Integer timestep, VFunction<S> vfunc){
-		A action = policy.policy(state, timestep);
-		return FiniteStateSMDP.avgNextV(_smdp, state, action, timestep, vfunc, _df);
+	@Override
+	public SolverMonitor monitor() {
+		return _monitor;
 	}
 
 	@Override
 	public VFunction<S> eval(FiniteHorizonPolicy<S, A> policy) {
+		_monitor.start();
 		int horizon = policy.horizon();
 		MapVFunction<S> vfunc = new MapVFunction<S>(horizon, 0);
+		TransitionDistribution<S> dist = new TransitionDistribution<S>();
 		
 		for (int h = horizon - 1; h >= 0; h--) {
 
 			Iterable<S> states = _smdp.states();
 
 			for (S state : states) {
+				A action = policy.policy(state, h + 1);
 				double v = 0;
 				if (h == horizon - 1) {
-					v = rPi(policy, state, h);
+					_smdp.transitions(state, action, dist);
+					v = dist.avgR();
 				}else{
-					v = rPi(policy, state, h) + avgNextV(policy, state, h, vfunc);
+					v = FiniteStateSMDP.backup(_smdp, state, action, h, vfunc, _df, dist);
 				}
 				vfunc.set(state, h, v);
+				_monitor.count(1, dist.size());
 			}
+			_monitor.endSweep(Double.NaN);
 		}
 
+		_monitor.finish();
 		return vfunc;
 	}
 
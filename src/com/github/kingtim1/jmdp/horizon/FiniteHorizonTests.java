@@ -0,0 +1,107 @@
+/**
+	FiniteHorizonTests.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.horizon;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.github.kingtim1.jmdp.AbstractIntMDP;
+import com.github.kingtim1.jmdp.BoxedSMDP;
+import com.github.kingtim1.jmdp.StationaryPolicy;
+import com.github.kingtim1.jmdp.VFunction;
+import com.github.kingtim1.jmdp.discounted.MapPolicy;
+import com.github.kingtim1.jmdp.util.Optimization;
+
+public class FiniteHorizonTests {
+
+	public static final double VALUE_EPSILON = 1e-9;
+
+	/**
+	 * Tests if {@link FiniteHorizonPolicyEvaluation} queries a
+	 * {@link SequenceOfStationaryPolicies} with the 1-based timesteps
+	 * documented by {@link com.github.kingtim1.jmdp.Policy}, so that the first
+	 * decision uses the first policy of the sequence and the last decision uses
+	 * the last policy.
+	 */
+	@Test
+	public void testPolicyEvaluationQueriesOneBasedTimesteps() {
+		// A single state with two self-loop actions whose rewards differ
+		BoxedSMDP smdp = new BoxedSMDP(new AbstractIntMDP(
+				Optimization.MAXIMIZE) {
+			@Override
+			public int numberOfStates() {
+				return 1;
+			}
+
+			@Override
+			public int numberOfActions() {
+				return 2;
+			}
+
+			@Override
+			public double r(int state, int action, int nextState) {
+				return 2 - action;
+			}
+
+			@Override
+			public double tprob(int state, int action, int nextState) {
+				return 1;
+			}
+
+			@Override
+			public void successors(int state, int action,
+					SuccessorVisitor visitor) {
+				visitor.visit(0, 1, 1, r(state, action, 0));
+			}
+		});
+		List<StationaryPolicy<Integer, Integer>> seq = new ArrayList<StationaryPolicy<Integer, Integer>>();
+		seq.add(constantPolicy(0));
+		seq.add(constantPolicy(1));
+		SequenceOfStationaryPolicies<Integer, Integer> policy = new SequenceOfStationaryPolicies<Integer, Integer>(
+				seq);
+
+		FiniteHorizonPolicyEvaluation<Integer, Integer> pe = new FiniteHorizonPolicyEvaluation<Integer, Integer>(
+				smdp);
+		VFunction<Integer> vfunc = pe.eval(policy);
+
+		assertEquals(1, vfunc.value(0, 1), VALUE_EPSILON);
+		assertEquals(3, vfunc.value(0, 0), VALUE_EPSILON);
+	}
+
+	private static MapPolicy<Integer, Integer> constantPolicy(int action) {
+		Map<Integer, Integer> pmap = new HashMap<Integer, Integer>();
+		pmap.put(0, action);
+		return new MapPolicy<Integer, Integer>(pmap);
+	}
+}
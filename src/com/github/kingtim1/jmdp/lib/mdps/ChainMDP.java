@@ -29,13 +29,14 @@ package com.github.kingtim1.jmdp.lib.mdps;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
+import com.github.kingtim1.jmdp.BoxedSMDP;
 import com.github.kingtim1.jmdp.FiniteStateMDP;
+import com.github.kingtim1.jmdp.IntMDP;
 import com.github.kingtim1.jmdp.RBoundedSMDP;
+import com.github.kingtim1.jmdp.TransitionDistribution;
 import com.github.kingtim1.jmdp.actions.ListActionSet;
 import com.github.kingtim1.jmdp.discounted.MapPolicy;
 import com.github.kingtim1.jmdp.util.Optimization;
@@ -60,7 +61,8 @@ import com.github.kingtim1.jmdp.util.Optimization;
  * @author Timothy A. Mann
  *
  */
-public class ChainMDP extends FiniteStateMDP<Integer, Integer> implements RBoundedSMDP<Integer,Integer> {
+public class ChainMDP extends FiniteStateMDP<Integer, Integer> implements
+		RBoundedSMDP<Integer, Integer>, IntMDP {
 
 	public static final int DEFAULT_NUM_STATES = 20;
 	public static final int NUM_ACTIONS = 3;
@@ -90,8 +92,17 @@ public class ChainMDP extends FiniteStateMDP<Integer, Integer> implements RBound
 
 	@Override
 	public double r(Integer state, Integer action, Integer nextState) {
-		Integer lastState = new Integer(_numStates - 1);
-		if (nextState.equals(lastState)) {
+		return r(state.intValue(), action.intValue(), nextState.intValue());
+	}
+
+	@Override
+	public double tprob(Integer state, Integer action, Integer nextState) {
+		return tprob(state.intValue(), action.intValue(), nextState.intValue());
+	}
+
+	@Override
+	public double r(int state, int action, int nextState) {
+		if (nextState == _numStates - 1) {
 			return rmax();
 		} else {
 			return rmin();
@@ -99,22 +110,21 @@ public class ChainMDP extends FiniteStateMDP<Integer, Integer> implements RBound
 	}
 
 	@Override
-	public double tprob(Integer state, Integer action, Integer nextState) {
-		Integer statePlusOne = new Integer(state.intValue() + 1);
-		Integer lastState = new Integer(_numStates - 1);
-		Integer firstState = new Integer(0);
+	public double tprob(int state, int action, int nextState) {
+		int lastState = _numStates - 1;
+		int firstState = 0;
 
 		// From the last state we always transition back to the first state
-		if (state.equals(lastState)) {
-			return firstState.equals(nextState) ? 1 : 0;
+		if (state == lastState) {
+			return (nextState == firstState) ? 1 : 0;
 		}
 
 		// ACTION1 stays in the current state with probability 0.2 and moves to
 		// the next state with probability 0.8
-		if (action.equals(ACTION1)) {
-			if (state.equals(nextState)) {
+		if (action == ACTION1) {
+			if (nextState == state) {
 				return 0.2;
-			} else if (statePlusOne.equals(nextState)) {
+			} else if (nextState == state + 1) {
 				return 0.8;
 			}
 		}
@@ -122,19 +132,19 @@ public class ChainMDP extends FiniteStateMDP<Integer, Integer> implements RBound
 		// ACTION2 stays in the current state with probability 0.1, returns to
 		// the first state with probability 0.2, and moves forward with
 		// probability 0.7.
-		if (action.equals(ACTION2)) {
-			if (state.equals(nextState)) {
+		if (action == ACTION2) {
+			if (nextState == state) {
 				return 0.1;
-			} else if (firstState.equals(nextState)) {
+			} else if (nextState == firstState) {
 				return 0.2;
-			} else if (statePlusOne.equals(nextState)) {
+			} else if (nextState == state + 1) {
 				return 0.7;
 			}
 		}
 
 		// ACTION3 always returns to the first state
-		if (action.equals(ACTION3)) {
-			if (firstState.equals(nextState)) {
+		if (action == ACTION3) {
+			if (nextState == firstState) {
 				return 1;
 			}
 		}
@@ -143,6 +153,47 @@ public class ChainMDP extends FiniteStateMDP<Integer, Integer> implements RBound
 		return 0;
 	}
 
+	@Override
+	public double r(int state, int action, int terminalState, int duration) {
+		return (duration == 1) ? r(state, action, terminalState) : 0;
+	}
+
+	@Override
+	public double tprob(int state, int action, int terminalState, int duration) {
+		return (duration == 1) ? tprob(state, action, terminalState) : 0;
+	}
+
+	@Override
+	public boolean isValid(int state, int action) {
+		return action >= 0 && action < NUM_ACTIONS;
+	}
+
+	@Override
+	public void successors(int state, int action, SuccessorVisitor visitor) {
+		int lastState = _numStates - 1;
+		visit(state, action, 0, visitor);
+		if (state != 0) {
+			visit(state, action, state, visitor);
+		}
+		if (state != lastState) {
+			visit(state, action, state + 1, visitor);
+		}
+	}
+
+	private void visit(int state, int action, int nextState,
+			SuccessorVisitor visitor) {
+		double p = tprob(state, action, nextState);
+		if (p > 0) {
+			visitor.visit(nextState, 1, p, r(state, action, nextState));
+		}
+	}
+
+	@Override
+	public void transitions(Integer state, Integer action,
+			TransitionDistribution<Integer> dist) {
+		BoxedSMDP.transitions(this, state.intValue(), action.intValue(), dist);
+	}
+
 	@Override
 	public Iterable<Integer> states() {
 		List<Integer> states = new ArrayList<Integer>();
@@ -159,13 +210,14 @@ public class ChainMDP extends FiniteStateMDP<Integer, Integer> implements RBound
 
 	@Override
 	public Iterable<Integer> successors(Integer state, Integer action) {
-		Integer lastState = new Integer(_numStates - 1);
-		Integer firstState = new Integer(0);
-		Set<Integer> succs = new HashSet<Integer>();
-		succs.add(firstState);
-		succs.add(state);
-		if (!state.equals(lastState)) {
-			succs.add(state + 1);
+		int s = state.intValue();
+		List<Integer> succs = new ArrayList<Integer>(3);
+		succs.add(0);
+		if (s != 0) {
+			succs.add(state);
+		}
+		if (s != _numStates - 1) {
+			succs.add(s + 1);
 		}
 		return succs;
 	}
@@ -0,0 +1,171 @@
+/**
+	GarnetMDP.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.lib.mdps;
+
+import com.github.kingtim1.jmdp.AbstractIntMDP;
+import com.github.kingtim1.jmdp.util.Optimization;
+
+/**
+ * A Garnet (Generic Average Reward Non-stationary Environment Testbed) MDP.
+ * Every state-action pair transitions to <code>branching</code> distinct
+ * successors chosen uniformly at random, with transition probabilities drawn
+ * uniformly from the probability simplex, and receives a reinforcement drawn
+ * uniformly from [0, 1).
+ * <p>
+ * The transitions are computed on demand from a hash of the seed, the state
+ * and the action, so the memory used by this MDP does not depend on its size
+ * and two instances constructed with the same arguments describe the same
+ * MDP. Use {@link com.github.kingtim1.jmdp.BoxedSMDP} to solve it with the
+ * generic algorithms.
+ * </p>
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+public class GarnetMDP extends AbstractIntMDP {
+
+	public static final double RMAX = 1;
+	public static final double RMIN = 0;
+
+	private int _numStates;
+	private int _numActions;
+	private int _branching;
+	private long _seed;
+
+	/**
+	 * Constructs a Garnet MDP.
+	 * 
+	 * @param numStates
+	 *            the number of states
+	 * @param numActions
+	 *            the number of actions
+	 * @param branching
+	 *            the number of successors of each state-action pair (must be
+	 *            in <code>[1, numStates]</code>)
+	 * @param seed
+	 *            the seed selecting the MDP
+	 */
+	public GarnetMDP(int numStates, int numActions, int branching, long seed) {
+		super(Optimization.MAXIMIZE);
+		if (numStates < 1) {
+			throw new IllegalArgumentException(
+					"Expected positive number of states. Found " + numStates
+							+ ".");
+		}
+		if (numActions < 1) {
+			throw new IllegalArgumentException(
+					"Expected positive number of actions. Found " + numActions
+							+ ".");
+		}
+		if (branching < 1 || branching > numStates) {
+			throw new IllegalArgumentException(
+					"Expected branching factor in [1, " + numStates
+							+ "]. Found " + branching + ".");
+		}
+		_numStates = numStates;
+		_numActions = numActions;
+		_branching = branching;
+		_seed = seed;
+	}
+
+	@Override
+	public int numberOfStates() {
+		return _numStates;
+	}
+
+	@Override
+	public int numberOfActions() {
+		return _numActions;
+	}
+
+	/**
+	 * Returns the number of successors of each state-action pair.
+	 * 
+	 * @return the branching factor
+	 */
+	public int branching() {
+		return _branching;
+	}
+
+	/**
+	 * Returns the seed selecting this MDP.
+	 * 
+	 * @return the seed
+	 */
+	public long seed() {
+		return _seed;
+	}
+
+	@Override
+	public double r(int state, int action, int nextState) {
+		return Hashing.uniform(Hashing.hash(key(state, action), -1));
+	}
+
+	@Override
+	public double tprob(int state, int action, int nextState) {
+		long key = key(state, action);
+		int k = Hashing.unpermute(key, nextState, _numStates);
+		if (k < _branching) {
+			return Hashing.exponential(Hashing.hash(key, k))
+					/ weightSum(key);
+		} else {
+			return 0;
+		}
+	}
+
+	@Override
+	public void successors(int state, int action, SuccessorVisitor visitor) {
+		long key = key(state, action);
+		double r = Hashing.uniform(Hashing.hash(key, -1));
+		double sum = weightSum(key);
+		for (int k = 0; k < _branching; k++) {
+			visitor.visit(Hashing.permute(key, k, _numStates), 1,
+					Hashing.exponential(Hashing.hash(key, k)) / sum, r);
+		}
+	}
+
+	private long key(int state, int action) {
+		return Hashing.hash(_seed, state, action);
+	}
+
+	private double weightSum(long key) {
+		double sum = 0;
+		for (int k = 0; k < _branching; k++) {
+			sum += Hashing.exponential(Hashing.hash(key, k));
+		}
+		return sum;
+	}
+
+	public double rmax() {
+		return RMAX;
+	}
+
+	public double rmin() {
+		return RMIN;
+	}
+}
@@ -0,0 +1,260 @@
+/**
+	GridWorldMDP.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.lib.mdps;
+
+import com.github.kingtim1.jmdp.AbstractIntMDP;
+import com.github.kingtim1.jmdp.util.Optimization;
+
+/**
+ * A stochastic gridworld with randomly placed walls. The states are the cells
+ * of a <code>width x height</code> grid numbered row by row, and the agent has
+ * four actions (UP, RIGHT, DOWN and LEFT). An action moves the agent one cell
+ * in its direction with probability <code>1 - slip</code>, and in a direction
+ * chosen uniformly at random with probability <code>slip</code>. Moves into a
+ * wall or off the grid leave the agent where it is.
+ * <p>
+ * The agent starts in the top-left cell and receives a reward of 1 for
+ * reaching the goal in the bottom-right cell. All other events receive a
+ * reward of 0. The goal and the walls are absorbing. Each cell other than the
+ * start and the goal is a wall with probability <code>wallDensity</code>,
+ * decided by a hash of the seed and the cell, so the grid is never
+ * materialized. With a high wall density the goal may be unreachable.
+ * </p>
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+public class GridWorldMDP extends AbstractIntMDP {
+
+	public static final int NUM_ACTIONS = 4;
+
+	public static final int UP = 0;
+	public static final int RIGHT = 1;
+	public static final int DOWN = 2;
+	public static final int LEFT = 3;
+
+	public static final double RMAX = 1;
+	public static final double RMIN = 0;
+
+	private int _width;
+	private int _height;
+	private double _wallDensity;
+	private double _slip;
+	private long _seed;
+
+	/**
+	 * Constructs a stochastic gridworld.
+	 * 
+	 * @param width
+	 *            the number of columns
+	 * @param height
+	 *            the number of rows
+	 * @param wallDensity
+	 *            the probability that a cell is a wall (in [0, 1])
+	 * @param slip
+	 *            the probability that an action moves in a random direction
+	 *            (in [0, 1])
+	 * @param seed
+	 *            the seed selecting the placement of the walls
+	 */
+	public GridWorldMDP(int width, int height, double wallDensity,
+			double slip, long seed) {
+		super(Optimization.MAXIMIZE);
+		if (width < 1 || height < 1
+				|| (long) width * height > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(
+					"Expected positive dimensions with at most "
+							+ Integer.MAX_VALUE + " cells. Found " + width
+							+ " x " + height + ".");
+		}
+		if (!(wallDensity >= 0 && wallDensity <= 1)) {
+			throw new IllegalArgumentException(
+					"Expected wall density in [0, 1]. Found " + wallDensity
+							+ ".");
+		}
+		if (!(slip >= 0 && slip <= 1)) {
+			throw new IllegalArgumentException(
+					"Expected slip probability in [0, 1]. Found " + slip + ".");
+		}
+		_width = width;
+		_height = height;
+		_wallDensity = wallDensity;
+		_slip = slip;
+		_seed = seed;
+	}
+
+	@Override
+	public int numberOfStates() {
+		return _width * _height;
+	}
+
+	@Override
+	public int numberOfActions() {
+		return NUM_ACTIONS;
+	}
+
+	public int width() {
+		return _width;
+	}
+
+	public int height() {
+		return _height;
+	}
+
+	/**
+	 * Returns the state of a cell.
+	 * 
+	 * @param x
+	 *            the column of the cell
+	 * @param y
+	 *            the row of the cell
+	 * @return the state index of the cell
+	 */
+	public int state(int x, int y) {
+		return y * _width + x;
+	}
+
+	public int startState() {
+		return 0;
+	}
+
+	public int goalState() {
+		return _width * _height - 1;
+	}
+
+	/**
+	 * Returns true if a cell is a wall.
+	 * 
+	 * @param state
+	 *            the state index of a cell
+	 * @return true if the cell is a wall; otherwise false
+	 */
+	public boolean isWall(int state) {
+		if (state == startState() || state == goalState()) {
+			return false;
+		}
+		return Hashing.uniform(Hashing.hash(_seed, state)) < _wallDensity;
+	}
+
+	@Override
+	public double r(int state, int action, int nextState) {
+		if (state != goalState() && nextState == goalState()) {
+			return RMAX;
+		} else {
+			return RMIN;
+		}
+	}
+
+	@Override
+	public double tprob(int state, int action, int nextState) {
+		if (isAbsorbing(state)) {
+			return (nextState == state) ? 1 : 0;
+		}
+		double p = 0;
+		for (int dir = 0; dir < NUM_ACTIONS; dir++) {
+			if (move(state, dir) == nextState) {
+				p += moveProbability(action, dir);
+			}
+		}
+		return p;
+	}
+
+	@Override
+	public void successors(int state, int action, SuccessorVisitor visitor) {
+		if (isAbsorbing(state)) {
+			visitor.visit(state, 1, 1, RMIN);
+			return;
+		}
+
+		// Directions leading to the same cell are merged so that each
+		// successor is reported once
+		for (int dir = 0; dir < NUM_ACTIONS; dir++) {
+			int next = move(state, dir);
+			boolean seen = false;
+			for (int prev = 0; prev < dir && !seen; prev++) {
+				seen = move(state, prev) == next;
+			}
+			if (seen) {
+				continue;
+			}
+			double p = moveProbability(action, dir);
+			for (int other = dir + 1; other < NUM_ACTIONS; other++) {
+				if (move(state, other) == next) {
+					p += moveProbability(action, other);
+				}
+			}
+			if (p > 0) {
+				visitor.visit(next, 1, p, r(state, action, next));
+			}
+		}
+	}
+
+	private boolean isAbsorbing(int state) {
+		return state == goalState() || isWall(state);
+	}
+
+	private double moveProbability(int action, int dir) {
+		double p = _slip / NUM_ACTIONS;
+		if (action == dir) {
+			p += 1 - _slip;
+		}
+		return p;
+	}
+
+	private int move(int state, int dir) {
+		int x = state % _width;
+		int y = state / _width;
+		switch (dir) {
+		case UP:
+			y--;
+			break;
+		case RIGHT:
+			x++;
+			break;
+		case DOWN:
+			y++;
+			break;
+		default:
+			x--;
+			break;
+		}
+		if (x < 0 || x >= _width || y < 0 || y >= _height) {
+			return state;
+		}
+		int next = state(x, y);
+		return isWall(next) ? state : next;
+	}
+
+	public double rmax() {
+		return RMAX;
+	}
+
+	public double rmin() {
+		return RMIN;
+	}
+}
@@ -0,0 +1,151 @@
+/**
+	Hashing.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.lib.mdps;
+
+/**
+ * Stateless pseudo-random functions used by the generated models in this
+ * package. Every random quantity of a generated model is computed from a hash
+ * of the model's seed and the indices it belongs to, so the models never
+ * materialize their transitions and always produce the same values.
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+final class Hashing {
+
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+	private static final int FEISTEL_ROUNDS = 4;
+
+	private Hashing() {
+	}
+
+	/**
+	 * The SplitMix64 finalizer.
+	 */
+	static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	static long hash(long seed, long a) {
+		return mix(seed + GOLDEN_GAMMA * (a + 1));
+	}
+
+	static long hash(long seed, long a, long b) {
+		return hash(hash(seed, a), b);
+	}
+
+	static long hash(long seed, long a, long b, long c) {
+		return hash(hash(hash(seed, a), b), c);
+	}
+
+	/**
+	 * Maps a hash to a double uniformly distributed in [0, 1).
+	 */
+	static double uniform(long h) {
+		return (h >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * Maps a hash to a positive sample of the exponential distribution with
+	 * mean 1. Normalizing several such samples gives a point distributed
+	 * uniformly on the probability simplex.
+	 */
+	static double exponential(long h) {
+		return -Math.log(((h >>> 11) + 0.5) * 0x1.0p-53);
+	}
+
+	/**
+	 * Returns the image of <code>index</code> under a pseudo-random
+	 * permutation of <code>[0, n)</code> selected by <code>key</code>. The
+	 * images of <code>0, 1, ..., k - 1</code> are therefore <code>k</code>
+	 * distinct values drawn without replacement. The permutation is a
+	 * balanced Feistel network over the smallest even number of bits that can
+	 * represent <code>n - 1</code>, restricted to <code>[0, n)</code> by cycle
+	 * walking, so it takes less than four evaluations of the network on
+	 * average.
+	 * 
+	 * @param key
+	 *            selects the permutation
+	 * @param index
+	 *            a value in <code>[0, n)</code>
+	 * @param n
+	 *            the size of the permuted range
+	 * @return the image of index
+	 */
+	static int permute(long key, int index, int n) {
+		int half = halfBits(n);
+		long x = index;
+		do {
+			x = feistel(key, x, half);
+		} while (x >= n);
+		return (int) x;
+	}
+
+	/**
+	 * The inverse of {@link #permute(long, int, int)}.
+	 */
+	static int unpermute(long key, int value, int n) {
+		int half = halfBits(n);
+		long x = value;
+		do {
+			x = inverseFeistel(key, x, half);
+		} while (x >= n);
+		return (int) x;
+	}
+
+	private static int halfBits(int n) {
+		int bits = 64 - Long.numberOfLeadingZeros(Math.max(n - 1, 1));
+		return (bits + 1) / 2;
+	}
+
+	private static long feistel(long key, long x, int half) {
+		long mask = (1L << half) - 1;
+		long left = x >>> half;
+		long right = x & mask;
+		for (int round = 0; round < FEISTEL_ROUNDS; round++) {
+			long next = left ^ (hash(key, round, right) & mask);
+			left = right;
+			right = next;
+		}
+		return (left << half) | right;
+	}
+
+	private static long inverseFeistel(long key, long x, int half) {
+		long mask = (1L << half) - 1;
+		long left = x >>> half;
+		long right = x & mask;
+		for (int round = FEISTEL_ROUNDS - 1; round >= 0; round--) {
+			long prev = right ^ (hash(key, round, left) & mask);
+			right = left;
+			left = prev;
+		}
+		return (left << half) | right;
+	}
+}
@@ -0,0 +1,199 @@
+/**
+	LayeredDAGMDP.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.lib.mdps;
+
+import com.github.kingtim1.jmdp.AbstractIntMDP;
+import com.github.kingtim1.jmdp.util.Optimization;
+
+/**
+ * An MDP whose states are arranged in layers of equal width so that its
+ * transition graph is a directed acyclic graph (apart from the absorbing
+ * states of the last layer). Every state-action pair of a layer transitions to
+ * <code>branching</code> distinct states of the next layer chosen uniformly at
+ * random, with transition probabilities drawn uniformly from the probability
+ * simplex, and receives a reinforcement drawn uniformly from [0, 1). The
+ * states of the last layer are absorbing with reinforcement 0.
+ * <p>
+ * State <code>i</code> of layer <code>l</code> has index
+ * <code>l * width + i</code>. The transitions are computed on demand from a
+ * hash of the seed, the state and the action, so the memory used by this MDP
+ * does not depend on its size.
+ * </p>
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+public class LayeredDAGMDP extends AbstractIntMDP {
+
+	public static final double RMAX = 1;
+	public static final double RMIN = 0;
+
+	private int _numLayers;
+	private int _width;
+	private int _numActions;
+	private int _branching;
+	private long _seed;
+
+	/**
+	 * Constructs a layered DAG MDP.
+	 * 
+	 * @param numLayers
+	 *            the number of layers
+	 * @param width
+	 *            the number of states in each layer
+	 * @param numActions
+	 *            the number of actions
+	 * @param branching
+	 *            the number of successors of each state-action pair (must be
+	 *            in <code>[1, width]</code>)
+	 * @param seed
+	 *            the seed selecting the MDP
+	 */
+	public LayeredDAGMDP(int numLayers, int width, int numActions,
+			int branching, long seed) {
+		super(Optimization.MAXIMIZE);
+		if (numLayers < 1 || width < 1
+				|| (long) numLayers * width > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(
+					"Expected positive dimensions with at most "
+							+ Integer.MAX_VALUE + " states. Found " + numLayers
+							+ " layers of width " + width + ".");
+		}
+		if (numActions < 1) {
+			throw new IllegalArgumentException(
+					"Expected positive number of actions. Found " + numActions
+							+ ".");
+		}
+		if (branching < 1 || branching > width) {
+			throw new IllegalArgumentException(
+					"Expected branching factor in [1, " + width + "]. Found "
+							+ branching + ".");
+		}
+		_numLayers = numLayers;
+		_width = width;
+		_numActions = numActions;
+		_branching = branching;
+		_seed = seed;
+	}
+
+	@Override
+	public int numberOfStates() {
+		return _numLayers * _width;
+	}
+
+	@Override
+	public int numberOfActions() {
+		return _numActions;
+	}
+
+	public int numberOfLayers() {
+		return _numLayers;
+	}
+
+	public int width() {
+		return _width;
+	}
+
+	/**
+	 * Returns the layer containing a state.
+	 * 
+	 * @param state
+	 *            a state
+	 * @return the layer of the state
+	 */
+	public int layer(int state) {
+		return state / _width;
+	}
+
+	@Override
+	public double r(int state, int action, int nextState) {
+		if (isTerminal(state)) {
+			return RMIN;
+		}
+		return Hashing.uniform(Hashing.hash(key(state, action), -1));
+	}
+
+	@Override
+	public double tprob(int state, int action, int nextState) {
+		if (isTerminal(state)) {
+			return (nextState == state) ? 1 : 0;
+		}
+		int nextLayer = layer(state) + 1;
+		if (layer(nextState) != nextLayer) {
+			return 0;
+		}
+		long key = key(state, action);
+		int k = Hashing.unpermute(key, nextState - nextLayer * _width, _width);
+		if (k < _branching) {
+			return Hashing.exponential(Hashing.hash(key, k))
+					/ weightSum(key);
+		} else {
+			return 0;
+		}
+	}
+
+	@Override
+	public void successors(int state, int action, SuccessorVisitor visitor) {
+		if (isTerminal(state)) {
+			visitor.visit(state, 1, 1, RMIN);
+			return;
+		}
+		int offset = (layer(state) + 1) * _width;
+		long key = key(state, action);
+		double r = Hashing.uniform(Hashing.hash(key, -1));
+		double sum = weightSum(key);
+		for (int k = 0; k < _branching; k++) {
+			visitor.visit(offset + Hashing.permute(key, k, _width), 1,
+					Hashing.exponential(Hashing.hash(key, k)) / sum, r);
+		}
+	}
+
+	private boolean isTerminal(int state) {
+		return layer(state) == _numLayers - 1;
+	}
+
+	private long key(int state, int action) {
+		return Hashing.hash(_seed, state, action);
+	}
+
+	private double weightSum(long key) {
+		double sum = 0;
+		for (int k = 0; k < _branching; k++) {
+			sum += Hashing.exponential(Hashing.hash(key, k));
+		}
+		return sum;
+	}
+
+	public double rmax() {
+		return RMAX;
+	}
+
+	public double rmin() {
+		return RMIN;
+	}
+}
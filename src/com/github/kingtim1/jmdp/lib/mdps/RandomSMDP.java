@@ -0,0 +1,207 @@
+/**
+	RandomSMDP.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.lib.mdps;
+
+import com.github.kingtim1.jmdp.IntSMDP;
+import com.github.kingtim1.jmdp.util.Optimization;
+
+/**
+ * A random SMDP with heavy-tailed action durations. Like {@link GarnetMDP},
+ * every state-action pair transitions to <code>branching</code> distinct
+ * successors chosen uniformly at random, with transition probabilities drawn
+ * uniformly from the probability simplex. Each transition additionally has a
+ * duration drawn from a discrete Pareto distribution
+ * <code>P(d &gt;= k) = k^(-tailIndex)</code> truncated at
+ * <code>maxDuration</code>, so a few transitions last much longer than the
+ * rest. Each state-action pair receives a reinforcement rate drawn uniformly
+ * from [0, 1) for every timestep of its transitions.
+ * <p>
+ * The transitions are computed on demand from a hash of the seed, the state
+ * and the action, so the memory used by this SMDP does not depend on its size
+ * and two instances constructed with the same arguments describe the same
+ * SMDP.
+ * </p>
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+public class RandomSMDP implements IntSMDP {
+
+	private int _numStates;
+	private int _numActions;
+	private int _branching;
+	private int _maxDuration;
+	private double _tailIndex;
+	private long _seed;
+
+	/**
+	 * Constructs a random SMDP.
+	 * 
+	 * @param numStates
+	 *            the number of states
+	 * @param numActions
+	 *            the number of actions
+	 * @param branching
+	 *            the number of successors of each state-action pair (must be
+	 *            in <code>[1, numStates]</code>)
+	 * @param maxDuration
+	 *            the longest possible duration
+	 * @param tailIndex
+	 *            the tail index of the duration distribution (smaller values
+	 *            give heavier tails; values at most 1 give an infinite mean
+	 *            before truncation)
+	 * @param seed
+	 *            the seed selecting the SMDP
+	 */
+	public RandomSMDP(int numStates, int numActions, int branching,
+			int maxDuration, double tailIndex, long seed) {
+		if (numStates < 1) {
+			throw new IllegalArgumentException(
+					"Expected positive number of states. Found " + numStates
+							+ ".");
+		}
+		if (numActions < 1) {
+			throw new IllegalArgumentException(
+					"Expected positive number of actions. Found " + numActions
+							+ ".");
+		}
+		if (branching < 1 || branching > numStates) {
+			throw new IllegalArgumentException(
+					"Expected branching factor in [1, " + numStates
+							+ "]. Found " + branching + ".");
+		}
+		if (maxDuration < 1) {
+			throw new IllegalArgumentException(
+					"Expected positive maximum duration. Found " + maxDuration
+							+ ".");
+		}
+		if (!(tailIndex > 0)) {
+			throw new IllegalArgumentException(
+					"Expected positive tail index. Found " + tailIndex + ".");
+		}
+		_numStates = numStates;
+		_numActions = numActions;
+		_branching = branching;
+		_maxDuration = maxDuration;
+		_tailIndex = tailIndex;
+		_seed = seed;
+	}
+
+	@Override
+	public int numberOfStates() {
+		return _numStates;
+	}
+
+	@Override
+	public int numberOfActions() {
+		return _numActions;
+	}
+
+	@Override
+	public boolean isValid(int state, int action) {
+		return true;
+	}
+
+	/**
+	 * Returns the number of successors of each state-action pair.
+	 * 
+	 * @return the branching factor
+	 */
+	public int branching() {
+		return _branching;
+	}
+
+	public double tailIndex() {
+		return _tailIndex;
+	}
+
+	public long seed() {
+		return _seed;
+	}
+
+	@Override
+	public double r(int state, int action, int terminalState, int duration) {
+		return rate(key(state, action)) * duration;
+	}
+
+	@Override
+	public double tprob(int state, int action, int terminalState, int duration) {
+		long key = key(state, action);
+		int k = Hashing.unpermute(key, terminalState, _numStates);
+		if (k < _branching && duration(key, k) == duration) {
+			return Hashing.exponential(Hashing.hash(key, k))
+					/ weightSum(key);
+		} else {
+			return 0;
+		}
+	}
+
+	@Override
+	public void successors(int state, int action, SuccessorVisitor visitor) {
+		long key = key(state, action);
+		double rate = rate(key);
+		double sum = weightSum(key);
+		for (int k = 0; k < _branching; k++) {
+			int d = duration(key, k);
+			visitor.visit(Hashing.permute(key, k, _numStates), d,
+					Hashing.exponential(Hashing.hash(key, k)) / sum, rate * d);
+		}
+	}
+
+	@Override
+	public int maxActionDuration() {
+		return _maxDuration;
+	}
+
+	@Override
+	public Optimization opType() {
+		return Optimization.MAXIMIZE;
+	}
+
+	private long key(int state, int action) {
+		return Hashing.hash(_seed, state, action);
+	}
+
+	private double rate(long key) {
+		return Hashing.uniform(Hashing.hash(key, -1));
+	}
+
+	private int duration(long key, int k) {
+		double u = 1 - Hashing.uniform(Hashing.hash(key, -2 - k));
+		double d = Math.floor(Math.pow(u, -1 / _tailIndex));
+		return (d >= _maxDuration) ? _maxDuration : (int) d;
+	}
+
+	private double weightSum(long key) {
+		double sum = 0;
+		for (int k = 0; k < _branching; k++) {
+			sum += Hashing.exponential(Hashing.hash(key, k));
+		}
+		return sum;
+	}
+}
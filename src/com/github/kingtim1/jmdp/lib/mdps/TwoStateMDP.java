@@ -33,8 +33,11 @@ import java.util.List;
 import java.util.Map;
 
 import com.github.kingtim1.jmdp.ActionSet;
+import com.github.kingtim1.jmdp.BoxedSMDP;
 import com.github.kingtim1.jmdp.FiniteStateMDP;
+import com.github.kingtim1.jmdp.IntMDP;
 import com.github.kingtim1.jmdp.RBoundedSMDP;
+import com.github.kingtim1.jmdp.TransitionDistribution;
 import com.github.kingtim1.jmdp.actions.ListActionSet;
 import com.github.kingtim1.jmdp.discounted.MapPolicy;
 import com.github.kingtim1.jmdp.util.Optimization;
@@ -52,7 +55,7 @@ import com.github.kingtim1.jmdp.util.Optimization;
  *
  */
 public class TwoStateMDP extends FiniteStateMDP<Integer, Integer> implements
-		RBoundedSMDP<Integer, Integer> {
+		RBoundedSMDP<Integer, Integer>, IntMDP {
 
 	public static final int NUM_STATES = 2;
 	public static final int NUM_ACTIONS = 4;
@@ -109,6 +112,16 @@ public class TwoStateMDP extends FiniteStateMDP<Integer, Integer> implements
 
 	@Override
 	public double r(Integer state, Integer action, Integer nextState) {
+		return r(state.intValue(), action.intValue(), nextState.intValue());
+	}
+
+	@Override
+	public double tprob(Integer state, Integer action, Integer nextState) {
+		return tprob(state.intValue(), action.intValue(), nextState.intValue());
+	}
+
+	@Override
+	public double r(int state, int action, int nextState) {
 		if (nextState == STATE2) {
 			return rmax();
 		} else {
@@ -117,10 +130,41 @@ public class TwoStateMDP extends FiniteStateMDP<Integer, Integer> implements
 	}
 
 	@Override
-	public double tprob(Integer state, Integer action, Integer nextState) {
+	public double tprob(int state, int action, int nextState) {
 		return _tmat[state][action][nextState];
 	}
 
+	@Override
+	public double r(int state, int action, int terminalState, int duration) {
+		return (duration == 1) ? r(state, action, terminalState) : 0;
+	}
+
+	@Override
+	public double tprob(int state, int action, int terminalState, int duration) {
+		return (duration == 1) ? tprob(state, action, terminalState) : 0;
+	}
+
+	@Override
+	public boolean isValid(int state, int action) {
+		return action >= 0 && action < NUM_ACTIONS;
+	}
+
+	@Override
+	public void successors(int state, int action, SuccessorVisitor visitor) {
+		for (int t = 0; t < NUM_STATES; t++) {
+			double p = _tmat[state][action][t];
+			if (p > 0) {
+				visitor.visit(t, 1, p, r(state, action, t));
+			}
+		}
+	}
+
+	@Override
+	public void transitions(Integer state, Integer action,
+			TransitionDistribution<Integer> dist) {
+		BoxedSMDP.transitions(this, state.intValue(), action.intValue(), dist);
+	}
+
 	@Override
 	public Iterable<Integer> states() {
 		List<Integer> states = new ArrayList<Integer>();
@@ -0,0 +1,347 @@
+/**
+	InstrumentedSMDP.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.metrics;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.github.kingtim1.jmdp.FiniteStateSMDP;
+import com.github.kingtim1.jmdp.TransitionDistribution;
+import com.github.kingtim1.jmdp.discounted.DiscountFactor;
+
+/**
+ * <p>
+ * A decorator that measures the calls a solver makes to another
+ * {@link FiniteStateSMDP}. For every {@link Method}, it counts the calls and
+ * records their latencies in nanoseconds. For
+ * {@link #transitions(Object, Object, TransitionDistribution)} it also records
+ * the fan-out (the size of the distribution). The iterables returned by
+ * {@link #successors(Object, Object)} and
+ * {@link #durations(Object, Object, Object)} are not traversed, because
+ * counting their elements could allocate and would change the cost being
+ * measured. The measurements can tell whether a slow solve is
+ * caused by the solver or by the model.
+ * </p>
+ * 
+ * <p>
+ * Calls are always counted. Latency and fan-out are recorded for a random
+ * sample of one in {@link #samplingInterval()} calls of each method on
+ * average. With an interval larger than 1, unsampled calls only cost an
+ * uncontended {@link LongAdder} increment and a thread-local random number,
+ * which makes the decorator cheap enough to leave enabled. Recording never
+ * allocates and an instance can be shared by several threads.
+ * </p>
+ * 
+ * @author Timothy A. Mann
+ *
+ * @param <S>
+ *            the state type
+ * @param <A>
+ *            the action type
+ */
+public class InstrumentedSMDP<S, A> extends FiniteStateSMDP<S, A> {
+
+	/**
+	 * The instrumented methods.
+	 */
+	public static enum Method {
+		R, TPROB, DTPROB, DURATIONS, SUCCESSORS, TRANSITIONS, STATES
+	}
+
+	private FiniteStateSMDP<S, A> _smdp;
+	private volatile int _samplingInterval;
+
+	private LongAdder[] _calls;
+	private LogLinearHistogram[] _latencies;
+	private LogLinearHistogram[] _fanouts;
+
+	/**
+	 * Constructs a decorator that measures every call.
+	 * 
+	 * @param smdp
+	 *            the SMDP to instrument
+	 */
+	public InstrumentedSMDP(FiniteStateSMDP<S, A> smdp) {
+		this(smdp, 1);
+	}
+
+	/**
+	 * Constructs a decorator that measures one in every
+	 * <code>samplingInterval</code> calls of each method.
+	 * 
+	 * @param smdp
+	 *            the SMDP to instrument
+	 * @param samplingInterval
+	 *            a positive sampling interval
+	 */
+	public InstrumentedSMDP(FiniteStateSMDP<S, A> smdp, int samplingInterval) {
+		super(smdp.actionSet(), smdp.opType());
+		_smdp = smdp;
+		setSamplingInterval(samplingInterval);
+
+		int numMethods = Method.values().length;
+		_calls = new LongAdder[numMethods];
+		_latencies = new LogLinearHistogram[numMethods];
+		_fanouts = new LogLinearHistogram[numMethods];
+		for (int m = 0; m < numMethods; m++) {
+			_calls[m] = new LongAdder();
+			_latencies[m] = new LogLinearHistogram();
+			_fanouts[m] = new LogLinearHistogram();
+		}
+	}
+
+	/**
+	 * Returns the SMDP instrumented by this instance.
+	 * 
+	 * @return the instrumented SMDP
+	 */
+	public FiniteStateSMDP<S, A> smdp() {
+		return _smdp;
+	}
+
+	/**
+	 * Sets the sampling interval. If the interval is n, then the latency and
+	 * fan-out of one in n calls of each method (chosen at random) are
+	 * recorded.
+	 * 
+	 * @param samplingInterval
+	 *            a positive sampling interval
+	 */
+	public void setSamplingInterval(int samplingInterval) {
+		if (samplingInterval < 1) {
+			throw new IllegalArgumentException(
+					"Expected a positive sampling interval. Found "
+							+ samplingInterval + ".");
+		}
+		_samplingInterval = samplingInterval;
+	}
+
+	/**
+	 * Returns the sampling interval.
+	 * 
+	 * @return the sampling interval
+	 */
+	public int samplingInterval() {
+		return _samplingInterval;
+	}
+
+	/**
+	 * Returns the number of calls made to a method.
+	 * 
+	 * @param method
+	 *            a method
+	 * @return the number of calls
+	 */
+	public long calls(Method method) {
+		return _calls[method.ordinal()].sum();
+	}
+
+	/**
+	 * Returns the histogram of the sampled latencies of a method in
+	 * nanoseconds.
+	 * 
+	 * @param method
+	 *            a method
+	 * @return the latency histogram
+	 */
+	public LogLinearHistogram latency(Method method) {
+		return _latencies[method.ordinal()];
+	}
+
+	/**
+	 * Returns the histogram of the sampled fan-outs of a method. Only
+	 * {@link Method#TRANSITIONS} records fan-outs.
+	 * 
+	 * @param method
+	 *            a method
+	 * @return the fan-out histogram
+	 */
+	public LogLinearHistogram fanout(Method method) {
+		return _fanouts[method.ordinal()];
+	}
+
+	/**
+	 * Returns an estimate of the total time spent in a method in nanoseconds,
+	 * extrapolated from the sampled calls.
+	 * 
+	 * @param method
+	 *            a method
+	 * @return the estimated total time in nanoseconds
+	 */
+	public double estimatedNanos(Method method) {
+		LogLinearHistogram latency = latency(method);
+		return latency.mean() * calls(method);
+	}
+
+	/**
+	 * Clears all counts and histograms.
+	 */
+	public void reset() {
+		for (int m = 0; m < _latencies.length; m++) {
+			_calls[m].reset();
+			_latencies[m].reset();
+			_fanouts[m].reset();
+		}
+	}
+
+	/**
+	 * Returns a table with one line per called method: the number of calls,
+	 * the estimated total time, the mean, median, 99th percentile and maximum
+	 * sampled latency, and the mean and maximum sampled fan-out.
+	 * 
+	 * @return a report of the measurements
+	 */
+	public String report() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-12s %12s %12s %10s %10s %10s %10s %8s %8s%n",
+				"method", "calls", "total(ms)", "mean(ns)", "p50(ns)",
+				"p99(ns)", "max(ns)", "fanout", "maxfan"));
+		for (Method method : Method.values()) {
+			long calls = calls(method);
+			if (calls == 0) {
+				continue;
+			}
+			LogLinearHistogram latency = latency(method);
+			LogLinearHistogram fanout = fanout(method);
+			sb.append(String.format(
+					"%-12s %12d %12.3f %10.0f %10d %10d %10d %8.2f %8d%n",
+					method, calls, estimatedNanos(method) / 1e6,
+					latency.mean(), latency.valueAtPercentile(50),
+					latency.valueAtPercentile(99), latency.max(),
+					fanout.mean(), fanout.max()));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Counts a call and returns its start time if it is sampled or -1
+	 * otherwise.
+	 */
+	private long begin(Method method) {
+		_calls[method.ordinal()].increment();
+		int interval = _samplingInterval;
+		if (interval == 1
+				|| ThreadLocalRandom.current().nextInt(interval) == 0) {
+			return System.nanoTime();
+		}
+		return -1;
+	}
+
+	private void end(Method method, long start) {
+		_latencies[method.ordinal()].record(System.nanoTime() - start);
+	}
+
+	@Override
+	public double r(S state, A action, S terminalState, Integer duration) {
+		long start = begin(Method.R);
+		double r = _smdp.r(state, action, terminalState, duration);
+		if (start >= 0) {
+			end(Method.R, start);
+		}
+		return r;
+	}
+
+	@Override
+	public double tprob(S state, A action, S terminalState, Integer duration) {
+		long start = begin(Method.TPROB);
+		double tprob = _smdp.tprob(state, action, terminalState, duration);
+		if (start >= 0) {
+			end(Method.TPROB, start);
+		}
+		return tprob;
+	}
+
+	@Override
+	public double dtprob(S state, A action, S terminalState, Integer duration,
+			DiscountFactor gamma) {
+		long start = begin(Method.DTPROB);
+		double dtprob = _smdp.dtprob(state, action, terminalState, duration,
+				gamma);
+		if (start >= 0) {
+			end(Method.DTPROB, start);
+		}
+		return dtprob;
+	}
+
+	@Override
+	public int maxActionDuration() {
+		return _smdp.maxActionDuration();
+	}
+
+	@Override
+	public Iterable<Integer> durations(S state, A action, S terminalState) {
+		long start = begin(Method.DURATIONS);
+		Iterable<Integer> durations = _smdp.durations(state, action,
+				terminalState);
+		if (start >= 0) {
+			end(Method.DURATIONS, start);
+		}
+		return durations;
+	}
+
+	@Override
+	public Iterable<S> states() {
+		long start = begin(Method.STATES);
+		Iterable<S> states = _smdp.states();
+		if (start >= 0) {
+			end(Method.STATES, start);
+		}
+		return states;
+	}
+
+	@Override
+	public int numberOfStates() {
+		return _smdp.numberOfStates();
+	}
+
+	@Override
+	public Iterable<S> successors(S state, A action) {
+		long start = begin(Method.SUCCESSORS);
+		Iterable<S> successors = _smdp.successors(state, action);
+		if (start >= 0) {
+			end(Method.SUCCESSORS, start);
+		}
+		return successors;
+	}
+
+	/**
+	 * Measures the wrapped SMDP's own implementation of this method. Note that
+	 * if the wrapped SMDP uses the default implementation, the calls it makes
+	 * are not counted by this decorator.
+	 */
+	@Override
+	public void transitions(S state, A action, TransitionDistribution<S> dist) {
+		long start = begin(Method.TRANSITIONS);
+		_smdp.transitions(state, action, dist);
+		if (start >= 0) {
+			end(Method.TRANSITIONS, start);
+			_fanouts[Method.TRANSITIONS.ordinal()].record(dist.size());
+		}
+	}
+}
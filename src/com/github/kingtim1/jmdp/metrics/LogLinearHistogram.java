@@ -0,0 +1,206 @@
+/**
+	LogLinearHistogram.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A histogram of non-negative long values (such as latencies in nanoseconds)
+ * with log-linear buckets, in the style of HdrHistogram. Values below
+ * {@link #SUB_BUCKETS} are counted exactly. Larger values are grouped by their
+ * highest set bit, and each power of two is split into {@link #SUB_BUCKETS}
+ * equal buckets, so every reported value is within 1/{@link #SUB_BUCKETS} of
+ * a recorded value.
+ * </p>
+ * 
+ * <p>
+ * All storage is allocated by the constructor. Recording a value only
+ * increments atomic counters, so it does not allocate and it is safe to record
+ * from several threads.
+ * </p>
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+public class LogLinearHistogram {
+
+	/**
+	 * The number of bits of precision kept for each value.
+	 */
+	public static final int SUB_BUCKET_BITS = 5;
+
+	/**
+	 * The number of buckets per power of two.
+	 */
+	public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private static final int NUM_BUCKETS = SUB_BUCKETS
+			+ (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private AtomicLongArray _counts;
+	private AtomicLong _count;
+	private AtomicLong _sum;
+	private AtomicLong _max;
+
+	/**
+	 * Constructs an empty histogram.
+	 */
+	public LogLinearHistogram() {
+		_counts = new AtomicLongArray(NUM_BUCKETS);
+		_count = new AtomicLong();
+		_sum = new AtomicLong();
+		_max = new AtomicLong();
+	}
+
+	/**
+	 * Returns the bucket of a value.
+	 */
+	private static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		int sub = (int) (value >>> shift) - SUB_BUCKETS;
+		return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Returns the smallest value that falls into a bucket.
+	 */
+	private static long lowerBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+		int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+		return ((long) (SUB_BUCKETS + sub)) << shift;
+	}
+
+	/**
+	 * Records a value. Negative values are recorded as 0.
+	 * 
+	 * @param value
+	 *            a value
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		_counts.incrementAndGet(bucket(value));
+		_count.incrementAndGet();
+		_sum.addAndGet(value);
+		long max = _max.get();
+		while (value > max && !_max.compareAndSet(max, value)) {
+			max = _max.get();
+		}
+	}
+
+	/**
+	 * Returns the number of recorded values.
+	 * 
+	 * @return the number of values
+	 */
+	public long count() {
+		return _count.get();
+	}
+
+	/**
+	 * Returns the sum of the recorded values.
+	 * 
+	 * @return the sum of the values
+	 */
+	public long sum() {
+		return _sum.get();
+	}
+
+	/**
+	 * Returns the largest recorded value (or 0 if the histogram is empty).
+	 * 
+	 * @return the largest value
+	 */
+	public long max() {
+		return _max.get();
+	}
+
+	/**
+	 * Returns the mean of the recorded values (or 0 if the histogram is empty).
+	 * 
+	 * @return the mean value
+	 */
+	public double mean() {
+		long count = count();
+		return (count == 0) ? 0 : ((double) sum()) / count;
+	}
+
+	/**
+	 * Returns an approximation of a percentile of the recorded values: the
+	 * lower bound of the bucket that contains the percentile.
+	 * 
+	 * @param percentile
+	 *            a percentile in [0, 100]
+	 * @return the approximate value at the percentile (or 0 if the histogram
+	 *         is empty)
+	 */
+	public long valueAtPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException(
+					"Expected a percentile in [0, 100]. Found " + percentile
+							+ ".");
+		}
+		long count = count();
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+		for (int b = 0; b < NUM_BUCKETS; b++) {
+			seen += _counts.get(b);
+			if (seen >= rank) {
+				return lowerBound(b);
+			}
+		}
+		return max();
+	}
+
+	/**
+	 * Removes all recorded values. Values recorded concurrently with a reset
+	 * may be partially kept.
+	 */
+	public void reset() {
+		for (int b = 0; b < NUM_BUCKETS; b++) {
+			_counts.set(b, 0);
+		}
+		_count.set(0);
+		_sum.set(0);
+		_max.set(0);
+	}
+}
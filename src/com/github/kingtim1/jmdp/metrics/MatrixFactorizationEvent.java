@@ -0,0 +1,112 @@
+/**
+	MatrixFactorizationEvent.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event covering a dense matrix factorization (or a
+ * low-rank update of a cached inverse).
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+@Name("com.github.kingtim1.jmdp.MatrixFactorization")
+@Label("Matrix Factorization")
+@Category({ "jmdp", "Linear Algebra" })
+@Description("A dense matrix factorization or inverse update")
+public class MatrixFactorizationEvent extends jdk.jfr.Event {
+
+	/**
+	 * A singular value decomposition.
+	 */
+	public static final String SVD = "SVD";
+
+	/**
+	 * An LU decomposition.
+	 */
+	public static final String LU = "LU";
+
+	/**
+	 * A QR decomposition.
+	 */
+	public static final String QR = "QR";
+
+	/**
+	 * A Sherman-Morrison-Woodbury update of an inverse.
+	 */
+	public static final String WOODBURY = "Woodbury";
+
+	@Label("Owner")
+	@Description("The class that requested the factorization")
+	public Class<?> owner;
+
+	@Label("Method")
+	public String method;
+
+	@Label("Rows")
+	public int rows;
+
+	@Label("Columns")
+	public int columns;
+
+	@Label("Rank")
+	@Description("The rank of the update (0 for a full factorization)")
+	public int rank;
+
+	/**
+	 * Ends this event and commits it if it passes the recording's settings.
+	 * 
+	 * @param owner
+	 *            the class that requested the factorization
+	 * @param method
+	 *            the factorization method
+	 * @param rows
+	 *            the number of rows of the factored matrix
+	 * @param columns
+	 *            the number of columns of the factored matrix
+	 * @param rank
+	 *            the rank of the update (0 for a full factorization)
+	 */
+	public void finish(Class<?> owner, String method, int rows, int columns,
+			int rank) {
+		end();
+		if (shouldCommit()) {
+			this.owner = owner;
+			this.method = method;
+			this.rows = rows;
+			this.columns = columns;
+			this.rank = rank;
+			commit();
+		}
+	}
+}
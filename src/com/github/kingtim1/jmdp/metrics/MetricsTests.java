@@ -0,0 +1,200 @@
+/**
+	MetricsTests.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.metrics;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.github.kingtim1.jmdp.BoxedSMDP;
+import com.github.kingtim1.jmdp.TransitionDistribution;
+import com.github.kingtim1.jmdp.lib.mdps.GarnetMDP;
+import com.github.kingtim1.jmdp.metrics.InstrumentedSMDP.Method;
+
+public class MetricsTests {
+
+	public static final int NUM_THREADS = 4;
+	public static final int RECORDS_PER_THREAD = 10000;
+
+	/**
+	 * Tests if {@link LogLinearHistogram} counts small values exactly, keeps
+	 * large values within the relative precision of its buckets and clears
+	 * everything on reset.
+	 */
+	@Test
+	public void testLogLinearHistogramPercentiles() {
+		LogLinearHistogram hist = new LogLinearHistogram();
+		assertEquals(0, hist.valueAtPercentile(50));
+		assertEquals(0, hist.mean(), 0);
+
+		for (int v = 0; v < LogLinearHistogram.SUB_BUCKETS; v++) {
+			hist.record(v);
+		}
+		int n = LogLinearHistogram.SUB_BUCKETS;
+		assertEquals(n, hist.count());
+		assertEquals(n * (n - 1) / 2, hist.sum());
+		assertEquals((n - 1) / 2.0, hist.mean(), 0);
+		assertEquals(n - 1, hist.max());
+		assertEquals(0, hist.valueAtPercentile(0));
+		assertEquals(n / 2 - 1, hist.valueAtPercentile(50));
+		assertEquals(n - 1, hist.valueAtPercentile(100));
+
+		hist.reset();
+		assertEquals(0, hist.count());
+		assertEquals(0, hist.max());
+		long large = 1000003;
+		hist.record(large);
+		hist.record(-5);
+		assertEquals(2, hist.count());
+		assertEquals(large, hist.max());
+		assertEquals(0, hist.valueAtPercentile(50));
+		long approx = hist.valueAtPercentile(100);
+		assertTrue(approx <= large);
+		assertTrue(approx >= large - large / LogLinearHistogram.SUB_BUCKETS);
+
+		try {
+			hist.valueAtPercentile(101);
+			fail("Expected an exception for an invalid percentile.");
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+	/**
+	 * Tests if a {@link LogLinearHistogram} shared by several threads keeps
+	 * every recorded value.
+	 */
+	@Test
+	public void testLogLinearHistogramRecordsFromSeveralThreads()
+			throws InterruptedException {
+		final LogLinearHistogram hist = new LogLinearHistogram();
+		Thread[] threads = new Thread[NUM_THREADS];
+		for (int i = 0; i < NUM_THREADS; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int v = 1; v <= RECORDS_PER_THREAD; v++) {
+						hist.record(v);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long expectedSum = (long) NUM_THREADS * RECORDS_PER_THREAD
+				* (RECORDS_PER_THREAD + 1) / 2;
+		assertEquals(NUM_THREADS * RECORDS_PER_THREAD, hist.count());
+		assertEquals(expectedSum, hist.sum());
+		assertEquals(RECORDS_PER_THREAD, hist.max());
+	}
+
+	/**
+	 * Tests if {@link InstrumentedSMDP} counts every call, samples every call
+	 * with an interval of 1, records fan-outs only for
+	 * {@link InstrumentedSMDP#transitions(Object, Object, TransitionDistribution)}
+	 * and returns the results of the instrumented model.
+	 */
+	@Test
+	public void testInstrumentedSMDPCountsCallsAndFanouts() {
+		BoxedSMDP smdp = new BoxedSMDP(new GarnetMDP(20, 3, 4, 1));
+		InstrumentedSMDP<Integer, Integer> inst = new InstrumentedSMDP<Integer, Integer>(
+				smdp);
+		TransitionDistribution<Integer> expected = new TransitionDistribution<Integer>();
+		TransitionDistribution<Integer> actual = new TransitionDistribution<Integer>();
+
+		long calls = 0;
+		long entries = 0;
+		for (Integer state : smdp.states()) {
+			for (Integer action : smdp.actions(state)) {
+				smdp.transitions(state, action, expected);
+				inst.transitions(state, action, actual);
+				assertEquals(expected.size(), actual.size());
+				for (int k = 0; k < expected.size(); k++) {
+					assertEquals(expected.successor(k), actual.successor(k));
+					assertEquals(
+							smdp.r(state, action, expected.successor(k), 1),
+							inst.r(state, action, expected.successor(k), 1),
+							0);
+				}
+				inst.successors(state, action);
+				calls++;
+				entries += expected.size();
+			}
+		}
+
+		assertEquals(calls, inst.calls(Method.TRANSITIONS));
+		assertEquals(calls, inst.calls(Method.SUCCESSORS));
+		assertEquals(entries, inst.calls(Method.R));
+		assertEquals(0, inst.calls(Method.TPROB));
+		assertEquals(calls, inst.latency(Method.TRANSITIONS).count());
+		assertEquals(calls, inst.fanout(Method.TRANSITIONS).count());
+		assertEquals(entries, inst.fanout(Method.TRANSITIONS).sum());
+		assertEquals(0, inst.fanout(Method.SUCCESSORS).count());
+
+		String report = inst.report();
+		assertTrue(report.contains(Method.TRANSITIONS.toString()));
+		assertFalse(report.contains(Method.TPROB.toString()));
+
+		inst.reset();
+		assertEquals(0, inst.calls(Method.TRANSITIONS));
+		assertEquals(0, inst.latency(Method.TRANSITIONS).count());
+		assertEquals(0, inst.fanout(Method.TRANSITIONS).count());
+	}
+
+	/**
+	 * Tests if {@link InstrumentedSMDP} counts every call but samples only
+	 * about one in {@link InstrumentedSMDP#samplingInterval()} of them.
+	 */
+	@Test
+	public void testInstrumentedSMDPSamplesCalls() {
+		BoxedSMDP smdp = new BoxedSMDP(new GarnetMDP(20, 3, 4, 1));
+		int interval = 10;
+		InstrumentedSMDP<Integer, Integer> inst = new InstrumentedSMDP<Integer, Integer>(
+				smdp, interval);
+		TransitionDistribution<Integer> dist = new TransitionDistribution<Integer>();
+
+		int numCalls = 20000;
+		for (int i = 0; i < numCalls; i++) {
+			inst.transitions(i % smdp.numberOfStates(), 0, dist);
+		}
+		assertEquals(numCalls, inst.calls(Method.TRANSITIONS));
+		long samples = inst.latency(Method.TRANSITIONS).count();
+		assertEquals(samples, inst.fanout(Method.TRANSITIONS).count());
+		assertTrue(samples > numCalls / interval / 2);
+		assertTrue(samples < 2 * numCalls / interval);
+
+		try {
+			inst.setSamplingInterval(0);
+			fail("Expected an exception for a non-positive interval.");
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+}
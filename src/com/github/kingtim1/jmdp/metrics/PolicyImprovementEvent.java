@@ -0,0 +1,60 @@
+/**
+	PolicyImprovementEvent.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event covering one policy improvement pass.
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+@Name("com.github.kingtim1.jmdp.PolicyImprovement")
+@Label("Policy Improvement")
+@Category({ "jmdp", "Solver" })
+@Description("A greedy policy improvement pass")
+public class PolicyImprovementEvent extends jdk.jfr.Event {
+
+	@Label("Improver")
+	public Class<?> improver;
+
+	@Label("States")
+	public int states;
+
+	@Label("Changed States")
+	@Description("The number of states whose action changed (-1 if not counted)")
+	public int changedStates;
+
+	@Label("Threads")
+	public int threads;
+}
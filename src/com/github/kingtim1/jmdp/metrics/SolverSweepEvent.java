@@ -0,0 +1,67 @@
+/**
+	SolverSweepEvent.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event covering one sweep of a solver. The events are
+ * emitted by {@link com.github.kingtim1.jmdp.SolverMonitor}, so every
+ * {@link com.github.kingtim1.jmdp.MonitoredSolver} reports them.
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+@Name("com.github.kingtim1.jmdp.SolverSweep")
+@Label("Solver Sweep")
+@Category({ "jmdp", "Solver" })
+@Description("A sweep of a dynamic programming solver")
+public class SolverSweepEvent extends jdk.jfr.Event {
+
+	@Label("Solver")
+	public Class<?> solver;
+
+	@Label("Sweep")
+	@Description("The number of the sweep, starting from 1")
+	public int sweep;
+
+	@Label("Residual")
+	@Description("The residual of the sweep (NaN if the solver does not compute one)")
+	public double residual;
+
+	@Label("Backups")
+	public long backups;
+
+	@Label("Entries")
+	@Description("The number of successor entries touched by the backups")
+	public long entries;
+}
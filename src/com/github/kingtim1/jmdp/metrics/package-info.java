@@ -0,0 +1,9 @@
+/**
+ * Instrumentation for measuring where the time of a solve is spent, including
+ * Java Flight Recorder events for solver phases.
+ */
+/**
+ * @author Timothy A. Mann
+ *
+ */
+package com.github.kingtim1.jmdp.metrics;
@@ -0,0 +1,214 @@
+/**
+	IndexedMinHeap.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.ssp;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A binary min-heap over the integers 0, 1, ..., n - 1 with double keys. The
+ * heap and the key of each item are stored in primitive arrays, and the
+ * position of each item in the heap is tracked so that keys can be decreased
+ * (or increased) in O(log n) time without boxing.
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+public class IndexedMinHeap {
+
+	private int[] _heap;
+	private int[] _pos;
+	private double[] _keys;
+	private int _size;
+
+	/**
+	 * Constructs an empty heap for the items 0, 1, ..., capacity - 1.
+	 * 
+	 * @param capacity
+	 *            the number of distinct items
+	 */
+	public IndexedMinHeap(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException(
+					"Expected a nonnegative capacity. Found " + capacity + ".");
+		}
+		_heap = new int[capacity];
+		_pos = new int[capacity];
+		Arrays.fill(_pos, -1);
+		_keys = new double[capacity];
+		_size = 0;
+	}
+
+	/**
+	 * Returns the number of items in the heap.
+	 * 
+	 * @return the number of items
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Returns true if the heap is empty.
+	 * 
+	 * @return true if the heap is empty; otherwise false
+	 */
+	public boolean isEmpty() {
+		return _size == 0;
+	}
+
+	/**
+	 * Returns true if an item is in the heap.
+	 * 
+	 * @param item
+	 *            an item
+	 * @return true if the item is in the heap; otherwise false
+	 */
+	public boolean contains(int item) {
+		return _pos[item] >= 0;
+	}
+
+	/**
+	 * Returns the key of an item in the heap.
+	 * 
+	 * @param item
+	 *            an item in the heap
+	 * @return the key of the item
+	 */
+	public double key(int item) {
+		return _keys[item];
+	}
+
+	/**
+	 * Inserts an item or changes its key if it is already in the heap.
+	 * 
+	 * @param item
+	 *            an item
+	 * @param key
+	 *            the new key of the item
+	 */
+	public void put(int item, double key) {
+		int i = _pos[item];
+		if (i < 0) {
+			i = _size++;
+			_heap[i] = item;
+			_pos[item] = i;
+			_keys[item] = key;
+			siftUp(i);
+		} else {
+			double old = _keys[item];
+			_keys[item] = key;
+			if (key < old) {
+				siftUp(i);
+			} else {
+				siftDown(i);
+			}
+		}
+	}
+
+	/**
+	 * Returns the item with the smallest key without removing it.
+	 * 
+	 * @return the item with the smallest key
+	 */
+	public int peek() {
+		if (_size == 0) {
+			throw new NoSuchElementException("The heap is empty.");
+		}
+		return _heap[0];
+	}
+
+	/**
+	 * Removes and returns the item with the smallest key.
+	 * 
+	 * @return the item with the smallest key
+	 */
+	public int poll() {
+		int top = peek();
+		_size--;
+		_pos[top] = -1;
+		if (_size > 0) {
+			int last = _heap[_size];
+			_heap[0] = last;
+			_pos[last] = 0;
+			siftDown(0);
+		}
+		return top;
+	}
+
+	/**
+	 * Removes all items.
+	 */
+	public void clear() {
+		for (int i = 0; i < _size; i++) {
+			_pos[_heap[i]] = -1;
+		}
+		_size = 0;
+	}
+
+	private void siftUp(int i) {
+		int item = _heap[i];
+		double key = _keys[item];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			int p = _heap[parent];
+			if (_keys[p] <= key) {
+				break;
+			}
+			_heap[i] = p;
+			_pos[p] = i;
+			i = parent;
+		}
+		_heap[i] = item;
+		_pos[item] = i;
+	}
+
+	private void siftDown(int i) {
+		int item = _heap[i];
+		double key = _keys[item];
+		int half = _size >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			int c = _heap[child];
+			int right = child + 1;
+			if (right < _size && _keys[_heap[right]] < _keys[c]) {
+				child = right;
+				c = _heap[child];
+			}
+			if (key <= _keys[c]) {
+				break;
+			}
+			_heap[i] = c;
+			_pos[c] = i;
+			i = child;
+		}
+		_heap[i] = item;
+		_pos[item] = i;
+	}
+}
@@ -0,0 +1,203 @@
+/**
+	ModelStructure.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.ssp;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import com.github.kingtim1.jmdp.compiled.CompiledSMDP;
+import com.github.kingtim1.jmdp.compiled.ReverseModel;
+import com.github.kingtim1.jmdp.util.Optimization;
+
+/**
+ * Detects structure of a compiled model that allows faster solvers than value
+ * iteration, such as deterministic transitions or a shortest path structure.
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+public class ModelStructure {
+
+	/**
+	 * The tolerance used when testing whether a probability equals 1.
+	 */
+	public static final double PROBABILITY_TOLERANCE = 1e-12;
+
+	/**
+	 * Returns true if every state-action pair leads to a single successor (and
+	 * duration) with probability 1.
+	 * 
+	 * @param model
+	 *            a compiled model
+	 * @return true if the model is deterministic; otherwise false
+	 */
+	public static boolean isDeterministic(CompiledSMDP<?, ?> model) {
+		for (int row = 0; row < model.numberOfRows(); row++) {
+			int begin = model.entryBegin(row);
+			if (model.entryEnd(row) - begin != 1
+					|| Math.abs(model.tprob(begin) - 1) > PROBABILITY_TOLERANCE) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if no state-action pair has a negative cost. For a
+	 * {@link Optimization#MINIMIZE} model the reinforcements are costs and must
+	 * be nonnegative. For a {@link Optimization#MAXIMIZE} model the
+	 * reinforcements are rewards (negative costs) and must be nonpositive.
+	 * 
+	 * @param model
+	 *            a compiled model
+	 * @return true if all costs are nonnegative; otherwise false
+	 */
+	public static boolean hasNonnegativeCosts(CompiledSMDP<?, ?> model) {
+		boolean minimize = model.opType().equals(Optimization.MINIMIZE);
+		for (int row = 0; row < model.numberOfRows(); row++) {
+			double r = model.r(row);
+			if (minimize ? r < 0 : r > 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the states that cannot be left and yield no reinforcement: every
+	 * action returns to the state with probability 1 and reinforcement 0.
+	 * Such states are the natural terminal (goal) states of a shortest path
+	 * problem.
+	 * 
+	 * @param model
+	 *            a compiled model
+	 * @return the absorbing zero-reinforcement states
+	 */
+	public static <S> Set<S> absorbingStates(CompiledSMDP<S, ?> model) {
+		Set<S> absorbing = new LinkedHashSet<S>();
+		for (int s = 0; s < model.numberOfStates(); s++) {
+			boolean isAbsorbing = model.rowBegin(s) < model.rowEnd(s);
+			for (int row = model.rowBegin(s); row < model.rowEnd(s)
+					&& isAbsorbing; row++) {
+				int begin = model.entryBegin(row);
+				isAbsorbing = model.r(row) == 0
+						&& model.entryEnd(row) - begin == 1
+						&& model.successor(begin) == s
+						&& Math.abs(model.tprob(begin) - 1) <= PROBABILITY_TOLERANCE;
+			}
+			if (isAbsorbing) {
+				absorbing.add(model.state(s));
+			}
+		}
+		return absorbing;
+	}
+
+	/**
+	 * Returns the states from which at least one of the target states can be
+	 * reached with positive probability.
+	 * 
+	 * @param model
+	 *            a compiled model
+	 * @param targets
+	 *            the target states
+	 * @return an array that is true at the index of every state that can reach
+	 *         a target state
+	 */
+	public static <S> boolean[] canReach(CompiledSMDP<S, ?> model,
+			Collection<S> targets) {
+		return canReach(model, new ReverseModel(model),
+				indicator(model, targets));
+	}
+
+	/**
+	 * Returns true if every state can reach one of the terminal states, so
+	 * that the model is a (stochastic) shortest path problem with respect to
+	 * them.
+	 * 
+	 * @param model
+	 *            a compiled model
+	 * @param terminals
+	 *            the terminal states
+	 * @return true if every state can reach a terminal state; otherwise false
+	 */
+	public static <S> boolean isShortestPathProblem(CompiledSMDP<S, ?> model,
+			Collection<S> terminals) {
+		for (boolean reaches : canReach(model, terminals)) {
+			if (!reaches) {
+				return false;
+			}
+		}
+		return !terminals.isEmpty();
+	}
+
+	/**
+	 * Backward breadth-first search from the targets.
+	 */
+	static boolean[] canReach(CompiledSMDP<?, ?> model, ReverseModel reverse,
+			boolean[] targets) {
+		boolean[] reaches = targets.clone();
+		Deque<Integer> queue = new ArrayDeque<Integer>();
+		for (int s = 0; s < reaches.length; s++) {
+			if (reaches[s]) {
+				queue.add(s);
+			}
+		}
+		while (!queue.isEmpty()) {
+			int t = queue.poll();
+			for (int k = reverse.predBegin(t); k < reverse.predEnd(t); k++) {
+				int s = reverse.state(reverse.predecessor(k));
+				if (!reaches[s]) {
+					reaches[s] = true;
+					queue.add(s);
+				}
+			}
+		}
+		return reaches;
+	}
+
+	/**
+	 * Converts a collection of states to an array indexed by state index.
+	 */
+	static <S> boolean[] indicator(CompiledSMDP<S, ?> model,
+			Collection<S> states) {
+		boolean[] indicator = new boolean[model.numberOfStates()];
+		for (S state : states) {
+			int s = model.index(state);
+			if (s < 0) {
+				throw new IllegalArgumentException("Unknown state " + state
+						+ ".");
+			}
+			indicator[s] = true;
+		}
+		return indicator;
+	}
+}
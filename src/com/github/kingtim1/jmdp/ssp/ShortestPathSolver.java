@@ -0,0 +1,502 @@
+/**
+	ShortestPathSolver.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.ssp;
+
+import java.util.Collection;
+
+import com.github.kingtim1.jmdp.DP;
+import com.github.kingtim1.jmdp.FiniteStateSMDP;
+import com.github.kingtim1.jmdp.MonitoredSolver;
+import com.github.kingtim1.jmdp.SolverMonitor;
+import com.github.kingtim1.jmdp.compiled.CompiledSMDP;
+import com.github.kingtim1.jmdp.compiled.ReverseModel;
+import com.github.kingtim1.jmdp.discounted.ArrayQFunction;
+import com.github.kingtim1.jmdp.discounted.DiscountFactor;
+import com.github.kingtim1.jmdp.discounted.DiscountedQFunction;
+import com.github.kingtim1.jmdp.util.Optimization;
+
+/**
+ * <p>
+ * Solves an SMDP whose states are driven toward a set of terminal states with
+ * shortest path algorithms instead of value iteration. The value of a terminal
+ * state is 0. Every other state receives the optimal (discounted) reinforcement
+ * accumulated until a terminal state is reached. In an undiscounted model,
+ * states that cannot reach a terminal state are left at the worst possible
+ * value (positive infinity for {@link Optimization#MINIMIZE} and negative
+ * infinity for {@link Optimization#MAXIMIZE}). In a discounted model their
+ * values are finite: these states are first solved by Gauss-Seidel value
+ * iteration (they only lead to each other, so they can be solved alone), and
+ * their values are then propagated to the other states like the values of
+ * terminal states.
+ * </p>
+ * 
+ * <p>
+ * The algorithm is selected from the structure of the model (see
+ * {@link ModelStructure}):
+ * </p>
+ * <ul>
+ * <li>{@link Method#DIJKSTRA}: a deterministic, undiscounted model with
+ * nonnegative costs is solved by label setting in one pass, settling states
+ * in order of increasing cost-to-go.</li>
+ * <li>{@link Method#BELLMAN_FORD}: any other deterministic model is solved by
+ * label correcting. States whose cost decreased wait on a heap, and the
+ * cheapest one propagates its cost first. In an undiscounted model, a cycle
+ * in the chain of states that last corrected each other proves a cycle of
+ * negative cost. The optimal behavior then follows that cycle instead of
+ * reaching a terminal state, and an {@link IllegalStateException} is thrown.
+ * In a discounted model such a cycle is valid, and its costs converge
+ * geometrically. Label correcting stops when a state has been corrected
+ * <code>maxIterations</code> times. The costs found so far are then
+ * returned, and the call is marked as truncated (see
+ * {@link SolverMonitor#isTruncated()}).</li>
+ * <li>{@link Method#PRIORITIZED}: a stochastic model is solved by label
+ * correcting with Bellman backups. A state is pending while its backup would
+ * change its cost by more than the convergence threshold. Pending states are
+ * backed up cheapest first, and backing up a state only re-examines its
+ * predecessors. Each backup solves for the self-transition of an action
+ * exactly instead of iterating it. The call is marked as truncated if
+ * states are still pending after <code>maxIterations</code> backups per
+ * state.</li>
+ * </ul>
+ * 
+ * <p>
+ * All three keep their pending states on an {@link IndexedMinHeap} of
+ * primitive state indices, so no state is boxed while solving.
+ * </p>
+ * 
+ * @author Timothy A. Mann
+ *
+ * @param <S>
+ *            the state type
+ * @param <A>
+ *            the action type
+ */
+public class ShortestPathSolver<S, A> implements DP<DiscountedQFunction<S, A>>,
+		MonitoredSolver {
+
+	/**
+	 * The shortest path algorithms used by this solver.
+	 */
+	public enum Method {
+		DIJKSTRA, BELLMAN_FORD, PRIORITIZED
+	}
+
+	private CompiledSMDP<S, A> _model;
+	private DiscountFactor _df;
+	private boolean[] _terminal;
+	private int _maxIterations;
+	private double _theta;
+	private Method _method;
+
+	private ReverseModel _reverse;
+	private double[] _discounts;
+	private double _sign;
+	private long _backups;
+	private long _entries;
+	private SolverMonitor _monitor;
+
+	/**
+	 * Constructs a shortest path solver.
+	 * 
+	 * @param smdp
+	 *            a finite-state SMDP (compiled once by this constructor)
+	 * @param df
+	 *            a discount factor
+	 * @param terminals
+	 *            the terminal states (if null, the absorbing states with zero
+	 *            reinforcement are used; see
+	 *            {@link ModelStructure#absorbingStates(CompiledSMDP)})
+	 * @param maxIterations
+	 *            the maximum number of corrections (or backups) per state of
+	 *            the label correcting algorithms, and the maximum number of
+	 *            value iteration sweeps over the states that cannot reach a
+	 *            terminal state
+	 * @param convergenceThreshold
+	 *            changes of a value up to this threshold are not propagated
+	 *            by {@link Method#PRIORITIZED}, and value iteration stops
+	 *            when a sweep changes no value by more than this threshold
+	 */
+	public ShortestPathSolver(FiniteStateSMDP<S, A> smdp, DiscountFactor df,
+			Collection<S> terminals, int maxIterations,
+			double convergenceThreshold) {
+		this(new CompiledSMDP<S, A>(smdp), df, terminals, maxIterations,
+				convergenceThreshold);
+	}
+
+	/**
+	 * Constructs a shortest path solver for a compiled SMDP.
+	 * 
+	 * @param model
+	 *            a compiled SMDP
+	 * @param df
+	 *            a discount factor
+	 * @param terminals
+	 *            the terminal states (if null, the absorbing states with zero
+	 *            reinforcement are used; see
+	 *            {@link ModelStructure#absorbingStates(CompiledSMDP)})
+	 * @param maxIterations
+	 *            the maximum number of corrections (or backups) per state of
+	 *            the label correcting algorithms, and the maximum number of
+	 *            value iteration sweeps over the states that cannot reach a
+	 *            terminal state
+	 * @param convergenceThreshold
+	 *            changes of a value up to this threshold are not propagated
+	 *            by {@link Method#PRIORITIZED}, and value iteration stops
+	 *            when a sweep changes no value by more than this threshold
+	 */
+	public ShortestPathSolver(CompiledSMDP<S, A> model, DiscountFactor df,
+			Collection<S> terminals, int maxIterations,
+			double convergenceThreshold) {
+		if (model == null) {
+			throw new NullPointerException("Model cannot be null.");
+		}
+		if (df == null) {
+			throw new NullPointerException("Discount factor cannot be null.");
+		}
+		_model = model;
+		_df = df;
+		if (terminals == null) {
+			terminals = ModelStructure.absorbingStates(model);
+		}
+		_terminal = ModelStructure.indicator(model, terminals);
+		_maxIterations = maxIterations;
+		_theta = convergenceThreshold;
+
+		if (!ModelStructure.isDeterministic(model)) {
+			_method = Method.PRIORITIZED;
+		} else if (df.doubleValue() == 1
+				&& ModelStructure.hasNonnegativeCosts(model)) {
+			_method = Method.DIJKSTRA;
+		} else {
+			_method = Method.BELLMAN_FORD;
+		}
+		_monitor = new SolverMonitor(this);
+	}
+
+	/**
+	 * Returns the algorithm selected for the model.
+	 * 
+	 * @return the algorithm used by {@link #run()}
+	 */
+	public Method method() {
+		return _method;
+	}
+
+	/**
+	 * Returns the number of backups (label corrections) performed by the last
+	 * call to {@link #run()}.
+	 * 
+	 * @return the number of backups
+	 */
+	public long backups() {
+		return _backups;
+	}
+
+	/**
+	 * Returns the monitor of this solver. The algorithms do not work in
+	 * sweeps, so a single sweep without a residual is reported when the
+	 * shortest paths are found.
+	 */
+	@Override
+	public SolverMonitor monitor() {
+		return _monitor;
+	}
+
+	@Override
+	public DiscountedQFunction<S, A> run() {
+		_monitor.start();
+		int n = _model.numberOfStates();
+		_reverse = new ReverseModel(_model);
+		_discounts = _model.discounts(_df);
+		// All algorithms minimize costs, which are negated rewards when
+		// maximizing
+		_sign = _model.opType().equals(Optimization.MINIMIZE) ? 1 : -1;
+		_backups = 0;
+		_entries = 0;
+
+		double[] costs = new double[n];
+		for (int s = 0; s < n; s++) {
+			costs[s] = _terminal[s] ? 0 : Double.POSITIVE_INFINITY;
+		}
+		boolean[] reaches = ModelStructure.canReach(_model, _reverse,
+				_terminal);
+		if (_df.doubleValue() < 1) {
+			solveUnreachable(costs, reaches);
+		}
+		switch (_method) {
+		case DIJKSTRA:
+			dijkstra(costs);
+			break;
+		case BELLMAN_FORD:
+			bellmanFord(costs, reaches);
+			break;
+		default:
+			prioritized(costs, reaches);
+		}
+		_reverse = null;
+		_monitor.count(_backups, _entries);
+		_monitor.endSweep(Double.NaN);
+
+		double[] qvals = new double[_model.numberOfRows()];
+		for (int s = 0; s < n; s++) {
+			if (_terminal[s]) {
+				continue;
+			}
+			for (int row = _model.rowBegin(s); row < _model.rowEnd(s); row++) {
+				qvals[row] = _sign * qcost(row, costs);
+			}
+		}
+		_monitor.finish();
+		return new ArrayQFunction<S, A>(_model, qvals, 0);
+	}
+
+	/**
+	 * Label setting: states are settled in order of increasing cost.
+	 */
+	private void dijkstra(double[] costs) {
+		int n = costs.length;
+		boolean[] settled = new boolean[n];
+		IndexedMinHeap heap = new IndexedMinHeap(n);
+		for (int s = 0; s < n; s++) {
+			if (_terminal[s]) {
+				heap.put(s, 0);
+			}
+		}
+		while (!heap.isEmpty()) {
+			int t = heap.poll();
+			settled[t] = true;
+			for (int k = _reverse.predBegin(t); k < _reverse.predEnd(t); k++) {
+				int row = _reverse.predecessor(k);
+				int s = _reverse.state(row);
+				if (settled[s] || _terminal[s]) {
+					continue;
+				}
+				double c = _sign * _model.r(row) + costs[t];
+				_backups++;
+				_entries++;
+				if (c < costs[s]) {
+					costs[s] = c;
+					heap.put(s, c);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Solves the states that cannot reach a terminal state of a discounted
+	 * model by Gauss-Seidel value iteration. These states only lead to each
+	 * other, so their values do not depend on the other states.
+	 */
+	private void solveUnreachable(double[] costs, boolean[] reaches) {
+		int n = costs.length;
+		double[] values = new double[n];
+		boolean converged = true;
+		for (int i = 0; i < _maxIterations; i++) {
+			double delta = 0;
+			for (int s = 0; s < n; s++) {
+				if (reaches[s]) {
+					continue;
+				}
+				double v = _model.backup(s, values, _discounts);
+				delta = Math.max(delta, Math.abs(v - values[s]));
+				values[s] = v;
+				_backups++;
+				_entries += _model.entryBegin(_model.rowEnd(s))
+						- _model.entryBegin(_model.rowBegin(s));
+			}
+			converged = delta <= _theta;
+			if (converged) {
+				break;
+			}
+		}
+		if (!converged) {
+			_monitor.markTruncated();
+		}
+		for (int s = 0; s < n; s++) {
+			if (!reaches[s]) {
+				costs[s] = _sign * values[s];
+			}
+		}
+	}
+
+	/**
+	 * Label correcting: states whose cost decreased are kept on a heap and
+	 * the cheapest one propagates its cost first. The terminal states and,
+	 * in a discounted model, the states that cannot reach them start on the
+	 * heap with their final costs.
+	 */
+	private void bellmanFord(double[] costs, boolean[] reaches) {
+		int n = costs.length;
+		int[] corrections = new int[n];
+		int[] parents = new int[n];
+		IndexedMinHeap heap = new IndexedMinHeap(n);
+		for (int s = 0; s < n; s++) {
+			parents[s] = -1;
+			if (_terminal[s] || !Double.isInfinite(costs[s])) {
+				heap.put(s, costs[s]);
+			}
+		}
+		boolean undiscounted = _df.doubleValue() == 1;
+		while (!heap.isEmpty()) {
+			int t = heap.poll();
+			for (int k = _reverse.predBegin(t); k < _reverse.predEnd(t); k++) {
+				int row = _reverse.predecessor(k);
+				int s = _reverse.state(row);
+				if (_terminal[s] || !reaches[s]) {
+					continue;
+				}
+				int e = _model.entryBegin(row);
+				double c = _sign * _model.r(row)
+						+ _discounts[_model.duration(e)] * costs[t];
+				_backups++;
+				_entries++;
+				if (c < costs[s]) {
+					costs[s] = c;
+					parents[s] = t;
+					corrections[s]++;
+					if (undiscounted && corrections[s] >= n
+							&& hasParentCycle(s, parents)) {
+						throw new IllegalStateException(
+								"Expected optimal paths to reach a terminal state. Found an improving cycle through "
+										+ _model.state(s) + ".");
+					}
+					if (corrections[s] >= _maxIterations) {
+						_monitor.markTruncated();
+						return;
+					}
+					heap.put(s, c);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns true if following the states that last corrected each state,
+	 * starting at <code>s</code>, does not reach a terminal state within n
+	 * steps. Every cycle of these parent links has negative cost, because
+	 * each link was created by a strict decrease of a cost.
+	 */
+	private boolean hasParentCycle(int s, int[] parents) {
+		int t = s;
+		for (int i = 0; i < parents.length; i++) {
+			t = parents[t];
+			if (t < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Label correcting with Bellman backups, cheapest pending state first.
+	 */
+	private void prioritized(double[] costs, boolean[] reaches) {
+		int n = costs.length;
+		for (int s = 0; s < n; s++) {
+			if (reaches[s] && !_terminal[s]) {
+				costs[s] = 0;
+			}
+		}
+
+		IndexedMinHeap heap = new IndexedMinHeap(n);
+		for (int s = 0; s < n; s++) {
+			if (reaches[s] && !_terminal[s]) {
+				prioritize(s, costs, reaches, heap);
+			}
+		}
+		long maxBackups = (long) _maxIterations * n;
+		while (!heap.isEmpty() && _backups < maxBackups) {
+			int t = heap.poll();
+			costs[t] = backup(t, costs);
+			_backups++;
+			for (int k = _reverse.predBegin(t); k < _reverse.predEnd(t); k++) {
+				int s = _reverse.state(_reverse.predecessor(k));
+				if (reaches[s] && !_terminal[s]) {
+					prioritize(s, costs, reaches, heap);
+				}
+			}
+		}
+		if (!heap.isEmpty()) {
+			_monitor.markTruncated();
+		}
+	}
+
+	/**
+	 * Puts a state on the heap (keyed by its backed up cost) if its backup
+	 * would change its cost by more than the threshold.
+	 */
+	private void prioritize(int s, double[] costs, boolean[] reaches,
+			IndexedMinHeap heap) {
+		double b = backup(s, costs);
+		double change = Math.abs(b - costs[s]);
+		if (change > _theta) {
+			heap.put(s, b);
+		}
+	}
+
+	/**
+	 * The best expected cost of a state, given the costs of the other states.
+	 * In an undiscounted model, actions that may lead to a state that cannot
+	 * reach a terminal state have infinite cost, and so do actions that never
+	 * leave the state.
+	 */
+	private double backup(int s, double[] costs) {
+		double best = Double.POSITIVE_INFINITY;
+		for (int row = _model.rowBegin(s); row < _model.rowEnd(s); row++) {
+			// Solve for the self-transition instead of iterating it
+			double q = _sign * _model.r(row);
+			double self = 0;
+			int entryEnd = _model.entryEnd(row);
+			for (int e = _model.entryBegin(row); e < entryEnd; e++) {
+				double p = _model.tprob(e) * _discounts[_model.duration(e)];
+				int t = _model.successor(e);
+				if (t == s) {
+					self += p;
+				} else {
+					q += p * costs[t];
+				}
+			}
+			if (self < 1) {
+				best = Math.min(best, q / (1 - self));
+			}
+			_entries += entryEnd - _model.entryBegin(row);
+		}
+		return best;
+	}
+
+	private double qcost(int row, double[] costs) {
+		double q = _sign * _model.r(row);
+		int entryEnd = _model.entryEnd(row);
+		for (int e = _model.entryBegin(row); e < entryEnd; e++) {
+			q += _model.tprob(e) * _discounts[_model.duration(e)]
+					* costs[_model.successor(e)];
+		}
+		return q;
+	}
+}
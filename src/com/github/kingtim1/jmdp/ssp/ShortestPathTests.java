@@ -0,0 +1,388 @@
+/**
+	ShortestPathTests.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+package com.github.kingtim1.jmdp.ssp;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+import com.github.kingtim1.jmdp.AbstractIntMDP;
+import com.github.kingtim1.jmdp.BoxedSMDP;
+import com.github.kingtim1.jmdp.compiled.CompiledSMDP;
+import com.github.kingtim1.jmdp.discounted.DiscountFactor;
+import com.github.kingtim1.jmdp.discounted.DiscountedQFunction;
+import com.github.kingtim1.jmdp.discounted.MapPolicy;
+import com.github.kingtim1.jmdp.discounted.ValueIteration;
+import com.github.kingtim1.jmdp.util.Optimization;
+
+/**
+ * Provides tests for the shortest path solvers and the
+ * {@link IndexedMinHeap} they use.
+ * 
+ * @author Timothy A. Mann
+ *
+ */
+public class ShortestPathTests {
+
+	public static final DiscountFactor UNDISCOUNTED = new DiscountFactor(1);
+	public static final DiscountFactor DF = new DiscountFactor(0.9);
+	public static final int MAX_ITERATIONS = 1000;
+	public static final double VALUE_EPSILON = 1e-6;
+
+	/**
+	 * An MDP given by a table of transition probabilities and a table of
+	 * reinforcements per state-action pair.
+	 */
+	static class TableMDP extends AbstractIntMDP {
+
+		private double[][][] _tmat;
+		private double[][] _r;
+
+		TableMDP(Optimization opType, double[][][] tmat, double[][] r) {
+			super(opType);
+			_tmat = tmat;
+			_r = r;
+		}
+
+		/**
+		 * Constructs a deterministic MDP in which action <code>a</code> moves
+		 * state <code>s</code> to <code>next[s][a]</code>.
+		 */
+		static TableMDP graph(Optimization opType, int[][] next, double[][] r) {
+			double[][][] tmat = new double[next.length][][];
+			for (int s = 0; s < next.length; s++) {
+				tmat[s] = new double[next[s].length][next.length];
+				for (int a = 0; a < next[s].length; a++) {
+					tmat[s][a][next[s][a]] = 1;
+				}
+			}
+			return new TableMDP(opType, tmat, r);
+		}
+
+		@Override
+		public int numberOfStates() {
+			return _tmat.length;
+		}
+
+		@Override
+		public int numberOfActions() {
+			return _tmat[0].length;
+		}
+
+		@Override
+		public boolean isValid(int state, int action) {
+			return action >= 0 && action < _tmat[state].length;
+		}
+
+		@Override
+		public double r(int state, int action, int nextState) {
+			return _r[state][action];
+		}
+
+		@Override
+		public double tprob(int state, int action, int nextState) {
+			return _tmat[state][action][nextState];
+		}
+
+		@Override
+		public void successors(int state, int action, SuccessorVisitor visitor) {
+			for (int t = 0; t < _tmat.length; t++) {
+				double p = _tmat[state][action][t];
+				if (p > 0) {
+					visitor.visit(t, 1, p, _r[state][action]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A cost-minimizing graph whose last state is terminal. The cheapest path
+	 * from state 0 is 0, 1, 2, 3 with total cost 3.
+	 */
+	private static TableMDP costGraph(double edgeCost) {
+		int[][] next = { { 1, 3 }, { 2, 0 }, { 3, 2 }, { 3, 3 } };
+		double[][] r = { { edgeCost, 5 }, { edgeCost, 1 }, { edgeCost, 1 },
+				{ 0, 0 } };
+		return TableMDP.graph(Optimization.MINIMIZE, next, r);
+	}
+
+	private static <A> double[] greedyValues(DiscountedQFunction<Integer, A> q,
+			int n) {
+		double[] values = new double[n];
+		for (int s = 0; s < n; s++) {
+			values[s] = q.greedyValue(s);
+		}
+		return values;
+	}
+
+	/**
+	 * Tests if {@link IndexedMinHeap} polls items in order of their keys
+	 * after keys are decreased and increased.
+	 */
+	@Test
+	public void testIndexedMinHeapPollsItemsInKeyOrder() {
+		IndexedMinHeap heap = new IndexedMinHeap(6);
+		assertTrue(heap.isEmpty());
+		double[] keys = { 5, 3, 8, 1, 9, 4 };
+		for (int i = 0; i < keys.length; i++) {
+			heap.put(i, keys[i]);
+		}
+		assertEquals(6, heap.size());
+		heap.put(4, 0); // decrease
+		heap.put(3, 7); // increase
+		assertTrue(heap.contains(3));
+		assertEquals(7, heap.key(3), 0);
+		assertEquals(4, heap.peek());
+
+		int[] expected = { 4, 1, 5, 0, 3, 2 };
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], heap.poll());
+			assertFalse(heap.contains(expected[i]));
+		}
+		assertTrue(heap.isEmpty());
+
+		heap.put(2, 1);
+		heap.clear();
+		assertTrue(heap.isEmpty());
+		assertFalse(heap.contains(2));
+		try {
+			heap.poll();
+			fail("Expected polling an empty heap to fail.");
+		} catch (NoSuchElementException ex) {
+		}
+	}
+
+	/**
+	 * Tests if an undiscounted deterministic model with nonnegative costs is
+	 * solved by {@link ShortestPathSolver.Method#DIJKSTRA}.
+	 */
+	@Test
+	public void testDijkstraFindsShortestPaths() {
+		CompiledSMDP<Integer, Integer> model = CompiledSMDP.of(costGraph(1));
+		ShortestPathSolver<Integer, Integer> solver = new ShortestPathSolver<Integer, Integer>(
+				model, UNDISCOUNTED, null, MAX_ITERATIONS, 0);
+		assertEquals(ShortestPathSolver.Method.DIJKSTRA, solver.method());
+		DiscountedQFunction<Integer, Integer> q = solver.run();
+		assertArrayEquals(new double[] { 3, 2, 1, 0 }, greedyValues(q, 4), 0);
+		assertEquals(Integer.valueOf(0), q.greedyAction(0));
+	}
+
+	/**
+	 * Tests if {@link ShortestPathSolver.Method#BELLMAN_FORD} handles
+	 * negative costs, rejects an undiscounted negative cycle, and returns
+	 * converging costs for a discounted cycle or a small iteration limit.
+	 */
+	@Test
+	public void testBellmanFordHandlesCycles() {
+		CompiledSMDP<Integer, Integer> model = CompiledSMDP.of(costGraph(-1));
+		ShortestPathSolver<Integer, Integer> solver = new ShortestPathSolver<Integer, Integer>(
+				model, UNDISCOUNTED, Arrays.asList(3), MAX_ITERATIONS, 0);
+		assertEquals(ShortestPathSolver.Method.BELLMAN_FORD, solver.method());
+		// 0 and 1 form a cycle of cost 0, which is not an improving cycle
+		assertArrayEquals(new double[] { -3, -2, -1, 0 },
+				greedyValues(solver.run(), 4), 0);
+
+		int[][] next = { { 1, 3 }, { 0, 3 }, { 3, 3 }, { 3, 3 } };
+		double[][] r = { { -1, 5 }, { -1, 5 }, { 0, 0 }, { 0, 0 } };
+		CompiledSMDP<Integer, Integer> cycle = CompiledSMDP.of(TableMDP.graph(
+				Optimization.MINIMIZE, next, r));
+		try {
+			new ShortestPathSolver<Integer, Integer>(cycle, UNDISCOUNTED,
+					Arrays.asList(3), MAX_ITERATIONS, 0).run();
+			fail("Expected an undiscounted improving cycle to be rejected.");
+		} catch (IllegalStateException ex) {
+		}
+
+		// With discounting the same cycle converges to -1 / (1 - 0.9) = -10
+		ShortestPathSolver<Integer, Integer> discounted = new ShortestPathSolver<Integer, Integer>(
+				cycle, DF, Arrays.asList(3), MAX_ITERATIONS, 0);
+		assertEquals(ShortestPathSolver.Method.BELLMAN_FORD,
+				discounted.method());
+		double[] values = greedyValues(discounted.run(), 4);
+		assertEquals(-10, values[0], VALUE_EPSILON);
+		assertEquals(-10, values[1], VALUE_EPSILON);
+
+		assertFalse(discounted.monitor().isTruncated());
+
+		// A small iteration limit truncates instead of failing
+		ShortestPathSolver<Integer, Integer> truncated = new ShortestPathSolver<Integer, Integer>(
+				cycle, DF, Arrays.asList(3), 2, 0);
+		truncated.run();
+		assertTrue(truncated.monitor().isTruncated());
+		truncated = new ShortestPathSolver<Integer, Integer>(model,
+				UNDISCOUNTED, Arrays.asList(3), 1, 0);
+		truncated.run();
+		assertTrue(truncated.monitor().isTruncated());
+	}
+
+	/**
+	 * Tests if {@link ShortestPathSolver} gives the states of a discounted
+	 * model that cannot reach a terminal state their finite values, and
+	 * propagates them to the states that prefer to move there, for both a
+	 * deterministic and a stochastic model.
+	 */
+	@Test
+	public void testDiscountedUnreachableStatesMatchValueIteration() {
+		// State 2 loops forever at cost 1, which is cheaper for states 0 and 1
+		// than terminating through the cost-20 edge of state 0
+		int[][] next = { { 3, 2 }, { 0, 0 }, { 2, 2 }, { 3, 3 } };
+		double[][] r = { { 20, 1 }, { 1, 1 }, { 1, 2 }, { 0, 0 } };
+		TableMDP graph = TableMDP.graph(Optimization.MINIMIZE, next, r);
+
+		double[][][] tmat = new double[4][2][4];
+		tmat[0][0][3] = 1;
+		tmat[0][1][2] = 0.5;
+		tmat[0][1][1] = 0.5;
+		tmat[1][0][0] = 1;
+		tmat[1][1][0] = 1;
+		tmat[2][0][2] = 1;
+		tmat[2][1][2] = 1;
+		tmat[3][0][3] = 1;
+		tmat[3][1][3] = 1;
+		TableMDP stochastic = new TableMDP(Optimization.MINIMIZE, tmat, r);
+
+		ShortestPathSolver.Method[] methods = {
+				ShortestPathSolver.Method.BELLMAN_FORD,
+				ShortestPathSolver.Method.PRIORITIZED };
+		TableMDP[] mdps = { graph, stochastic };
+		for (int i = 0; i < mdps.length; i++) {
+			ShortestPathSolver<Integer, Integer> solver = new ShortestPathSolver<Integer, Integer>(
+					CompiledSMDP.of(mdps[i]), DF, Arrays.asList(3),
+					MAX_ITERATIONS, 0);
+			assertEquals(methods[i], solver.method());
+			double[] values = greedyValues(solver.run(), 4);
+			assertFalse(solver.monitor().isTruncated());
+
+			ValueIteration<Integer, Integer> vi = new ValueIteration<Integer, Integer>(
+					new BoxedSMDP(mdps[i]), DF, 10 * MAX_ITERATIONS, 0);
+			assertArrayEquals(greedyValues(vi.run(), 4), values,
+					VALUE_EPSILON);
+		}
+		assertEquals(10, greedyValues(new ShortestPathSolver<Integer, Integer>(
+				CompiledSMDP.of(graph), DF, Arrays.asList(3), MAX_ITERATIONS,
+				0).run(), 4)[0], VALUE_EPSILON);
+	}
+
+	/**
+	 * Tests if {@link ShortestPathSolver.Method#PRIORITIZED} matches
+	 * {@link ValueIteration} on a stochastic model and stops backing up
+	 * states once the costs no longer change, even with a threshold of 0.
+	 */
+	@Test
+	public void testPrioritizedSweepsMatchValueIteration() {
+		int n = 20;
+		double[][][] tmat = new double[n][2][n];
+		double[][] r = new double[n][2];
+		for (int s = 0; s < n - 1; s++) {
+			// Walk forward (slipping in place) or jump two states ahead with
+			// a chance of falling back to the start
+			tmat[s][0][s] = 0.2;
+			tmat[s][0][s + 1] = 0.8;
+			tmat[s][1][Math.min(s + 2, n - 1)] = 0.7;
+			tmat[s][1][0] += 0.3;
+			r[s][0] = 1;
+			r[s][1] = 1;
+		}
+		tmat[n - 1][0][n - 1] = 1;
+		tmat[n - 1][1][n - 1] = 1;
+		TableMDP mdp = new TableMDP(Optimization.MINIMIZE, tmat, r);
+
+		ShortestPathSolver<Integer, Integer> solver = new ShortestPathSolver<Integer, Integer>(
+				CompiledSMDP.of(mdp), UNDISCOUNTED, null, MAX_ITERATIONS, 0);
+		assertEquals(ShortestPathSolver.Method.PRIORITIZED, solver.method());
+		double[] values = greedyValues(solver.run(), n);
+		assertTrue(solver.backups() < (long) MAX_ITERATIONS * n);
+
+		ValueIteration<Integer, Integer> vi = new ValueIteration<Integer, Integer>(
+				new BoxedSMDP(mdp), UNDISCOUNTED, 10 * MAX_ITERATIONS, 0);
+		double[] expected = greedyValues(vi.run(), n);
+		assertArrayEquals(expected, values, VALUE_EPSILON);
+		assertEquals(0, values[n - 1], 0);
+	}
+
+	/**
+	 * Tests if {@link StochasticShortestPath} finds a proper policy that
+	 * avoids a zero-cost self-loop and an unreachable region, and if focused
+	 * value iteration improves on it and stops at a threshold of 0.
+	 */
+	@Test
+	public void testStochasticShortestPathImprovesProperPolicy() {
+		int n = 5;
+		double[][][] tmat = new double[n][2][n];
+		double[][] r = new double[n][2];
+		// State 0 can move on or stay put for free (an improper action)
+		tmat[0][0][1] = 1;
+		r[0][0] = 1;
+		tmat[0][1][0] = 1;
+		// State 1 can gamble (cost 1) or pay 10 to terminate
+		tmat[1][0][2] = 0.5;
+		tmat[1][0][0] = 0.5;
+		r[1][0] = 1;
+		tmat[1][1][4] = 1;
+		r[1][1] = 10;
+		// State 2 terminates with probability 0.9 or falls into state 3
+		tmat[2][0][4] = 0.9;
+		tmat[2][0][2] = 0.1;
+		r[2][0] = 1;
+		tmat[2][1][3] = 1;
+		// State 3 never reaches the terminal state 4
+		tmat[3][0][3] = 1;
+		tmat[3][1][3] = 1;
+		r[3][0] = 1;
+		r[3][1] = 2;
+		tmat[4][0][4] = 1;
+		tmat[4][1][4] = 1;
+		TableMDP mdp = new TableMDP(Optimization.MINIMIZE, tmat, r);
+
+		StochasticShortestPath<Integer, Integer> ssp = new StochasticShortestPath<Integer, Integer>(
+				CompiledSMDP.of(mdp), Arrays.asList(4), MAX_ITERATIONS, 0);
+		assertTrue(ssp.isProper(0));
+		assertTrue(ssp.isProper(2));
+		assertFalse(ssp.isProper(3));
+		MapPolicy<Integer, Integer> proper = ssp.properPolicy();
+		assertEquals(Integer.valueOf(0), proper.policy(0));
+		assertEquals(Integer.valueOf(1), proper.policy(1));
+		assertEquals(Integer.valueOf(0), proper.policy(2));
+
+		DiscountedQFunction<Integer, Integer> q = ssp.run();
+		assertTrue(ssp.evaluationSweeps() > 0);
+		assertTrue(ssp.sweeps() > 0 && ssp.sweeps() < MAX_ITERATIONS);
+		// V(2) = 1 / 0.9, V(1) = 1 + (V(2) + V(0)) / 2 and V(0) = 1 + V(1)
+		double v2 = 1 / 0.9;
+		double v1 = 3 + v2;
+		assertEquals(v2, q.greedyValue(2), VALUE_EPSILON);
+		assertEquals(v1, q.greedyValue(1), VALUE_EPSILON);
+		assertEquals(1 + v1, q.greedyValue(0), VALUE_EPSILON);
+		// Focused value iteration replaced the action of the proper policy
+		assertEquals(Integer.valueOf(0), q.greedyAction(1));
+		assertEquals(Double.POSITIVE_INFINITY, q.greedyValue(3), 0);
+	}
+}
@@ -0,0 +1,429 @@
+/**
+	StochasticShortestPath.java
+
+	===================================================================
+
+   Copyright 2014 Timothy A. Mann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+	===================================================================
+
+	The research leading to these results has received funding from the 
+	European Research Council under the European Union's Seventh Framework 
+	Programme (FP/2007-2013) / ERC Grant Agreement n.306638.
+
+ */
+
+
+package com.github.kingtim1.jmdp.ssp;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.github.kingtim1.jmdp.DP;
+import com.github.kingtim1.jmdp.FiniteStateSMDP;
+import com.github.kingtim1.jmdp.MonitoredSolver;
+import com.github.kingtim1.jmdp.SolverMonitor;
+import com.github.kingtim1.jmdp.compiled.CompiledSMDP;
+import com.github.kingtim1.jmdp.compiled.ReverseModel;
+import com.github.kingtim1.jmdp.discounted.ArrayQFunction;
+import com.github.kingtim1.jmdp.discounted.DiscountedQFunction;
+import com.github.kingtim1.jmdp.discounted.MapPolicy;
+import com.github.kingtim1.jmdp.util.Optimization;
+
+/**
+ * <p>
+ * Solves an undiscounted stochastic shortest path (SSP) problem: minimize the
+ * expected total cost of reaching one of a set of terminal states. This is
+ * what a {@link Optimization#MINIMIZE} SMDP with a discount factor of 1
+ * encodes. Value iteration has no notion of terminal states, so on such models
+ * it may not converge, or it may be pulled toward improper policies that never
+ * terminate. (A {@link Optimization#MAXIMIZE} SMDP is handled as the SSP of its
+ * negated rewards.)
+ * </p>
+ * 
+ * <p>
+ * The solver works in three phases.
+ * </p>
+ * <ol>
+ * <li>A backward reachability pass computes the states that reach a terminal
+ * state with probability 1 under some policy, together with such a proper
+ * policy. It alternates between backward breadth-first search from the
+ * terminal states over the actions that cannot leave the current candidate
+ * set, and shrinking the candidate set to the states found. The remaining
+ * states have infinite cost, and actions that may lead to them are never
+ * considered.</li>
+ * <li>The proper policy is evaluated with Gauss-Seidel sweeps in breadth-first
+ * order (states closest to the terminal states first), starting from a cost of
+ * 0. The evaluation stops after <code>maxIterations</code> sweeps or when no
+ * cost changes by more than the convergence threshold, so it only approximates
+ * the cost of the proper policy. Its values are a warm start for the next
+ * phase, not a bound on the optimal cost: with nonnegative costs they rise
+ * toward the cost of the proper policy from below.</li>
+ * <li>Focused value iteration then improves the values in the same order. A
+ * state is only backed up in a sweep if one of its successors changed by more
+ * than the convergence threshold since its last backup. The algorithm stops
+ * when a sweep backs up no state.</li>
+ * </ol>
+ * <p>
+ * Probability mass that the model sends to states outside of its state set
+ * (see {@link CompiledSMDP}) is treated as reaching a terminal state. The
+ * self-transitions of an action are solved for exactly instead of being
+ * iterated.
+ * </p>
+ * 
+ * @author Timothy A. Mann
+ *
+ * @param <S>
+ *            the state type
+ * @param <A>
+ *            the action type
+ */
+public class StochasticShortestPath<S, A> implements
+		DP<DiscountedQFunction<S, A>>, MonitoredSolver {
+
+	private CompiledSMDP<S, A> _model;
+	private boolean[] _terminal;
+	private int _maxIterations;
+	private double _theta;
+	private double _sign;
+
+	private ReverseModel _reverse;
+	private boolean[] _proper;
+	private boolean[] _allowed;
+	private int[] _properRow;
+	private int[] _order;
+	private int _numOrdered;
+
+	private int _evaluationSweeps;
+	private int _sweeps;
+	private long _entries;
+	private boolean _monitored;
+	private SolverMonitor _monitor;
+
+	/**
+	 * Constructs an SSP solver.
+	 * 
+	 * @param smdp
+	 *            a finite-state SMDP (compiled once by this constructor)
+	 * @param terminals
+	 *            the terminal states
+	 * @param maxIterations
+	 *            the maximum number of sweeps of each phase
+	 * @param convergenceThreshold
+	 *            changes of a value up to this threshold do not cause its
+	 *            predecessors to be backed up again
+	 */
+	public StochasticShortestPath(FiniteStateSMDP<S, A> smdp,
+			Collection<S> terminals, int maxIterations,
+			double convergenceThreshold) {
+		this(new CompiledSMDP<S, A>(smdp), terminals, maxIterations,
+				convergenceThreshold);
+	}
+
+	/**
+	 * Constructs an SSP solver for a compiled SMDP.
+	 * 
+	 * @param model
+	 *            a compiled SMDP
+	 * @param terminals
+	 *            the terminal states
+	 * @param maxIterations
+	 *            the maximum number of sweeps of each phase
+	 * @param convergenceThreshold
+	 *            changes of a value up to this threshold do not cause its
+	 *            predecessors to be backed up again
+	 */
+	public StochasticShortestPath(CompiledSMDP<S, A> model,
+			Collection<S> terminals, int maxIterations,
+			double convergenceThreshold) {
+		if (model == null) {
+			throw new NullPointerException("Model cannot be null.");
+		}
+		if (terminals == null) {
+			throw new NullPointerException("Terminal states cannot be null.");
+		}
+		_model = model;
+		_terminal = ModelStructure.indicator(model, terminals);
+		_maxIterations = maxIterations;
+		_theta = convergenceThreshold;
+		_sign = model.opType().equals(Optimization.MINIMIZE) ? 1 : -1;
+
+		_reverse = new ReverseModel(model);
+		findProperPolicy();
+		_monitor = new SolverMonitor(this);
+	}
+
+	/**
+	 * Computes the states that can reach a terminal state with probability 1,
+	 * a proper policy for them, and the breadth-first order of the states.
+	 */
+	private void findProperPolicy() {
+		int n = _model.numberOfStates();
+		int numRows = _model.numberOfRows();
+		_proper = new boolean[n];
+		for (int s = 0; s < n; s++) {
+			_proper[s] = true;
+		}
+		_allowed = new boolean[numRows];
+		_properRow = new int[n];
+		_order = new int[n];
+
+		boolean changed = true;
+		while (changed) {
+			// Allow only the actions that cannot leave the candidate set
+			for (int row = 0; row < numRows; row++) {
+				boolean allowed = _proper[_reverse.state(row)];
+				int entryEnd = _model.entryEnd(row);
+				for (int e = _model.entryBegin(row); e < entryEnd && allowed; e++) {
+					allowed = _proper[_model.successor(e)];
+				}
+				_allowed[row] = allowed;
+			}
+
+			// Backward breadth-first search over the allowed actions
+			boolean[] reached = new boolean[n];
+			_numOrdered = 0;
+			for (int s = 0; s < n; s++) {
+				_properRow[s] = -1;
+				if (_terminal[s]) {
+					reached[s] = true;
+					_order[_numOrdered++] = s;
+				}
+			}
+			for (int s = 0; s < n; s++) {
+				if (reached[s]) {
+					continue;
+				}
+				for (int row = _model.rowBegin(s); row < _model.rowEnd(s); row++) {
+					if (_allowed[row] && exitMass(row) > ModelStructure.PROBABILITY_TOLERANCE) {
+						reached[s] = true;
+						_properRow[s] = row;
+						_order[_numOrdered++] = s;
+						break;
+					}
+				}
+			}
+			for (int head = 0; head < _numOrdered; head++) {
+				int t = _order[head];
+				for (int k = _reverse.predBegin(t); k < _reverse.predEnd(t); k++) {
+					int row = _reverse.predecessor(k);
+					int s = _reverse.state(row);
+					if (!reached[s] && _allowed[row]) {
+						reached[s] = true;
+						_properRow[s] = row;
+						_order[_numOrdered++] = s;
+					}
+				}
+			}
+
+			changed = false;
+			for (int s = 0; s < n; s++) {
+				if (_proper[s] && !reached[s]) {
+					_proper[s] = false;
+					changed = true;
+				}
+			}
+		}
+	}
+
+	private double exitMass(int row) {
+		double mass = 1;
+		int entryEnd = _model.entryEnd(row);
+		for (int e = _model.entryBegin(row); e < entryEnd; e++) {
+			mass -= _model.tprob(e);
+		}
+		return mass;
+	}
+
+	/**
+	 * Returns true if a state reaches a terminal state with probability 1
+	 * under some policy. The optimal cost of all other states is infinite.
+	 * 
+	 * @param state
+	 *            a state
+	 * @return true if the state has a proper policy; otherwise false
+	 */
+	public boolean isProper(S state) {
+		int s = _model.index(state);
+		return s >= 0 && _proper[s];
+	}
+
+	/**
+	 * Returns the proper policy found by the backward reachability pass. It is
+	 * defined at every non-terminal state that has a proper policy.
+	 * 
+	 * @return a proper policy
+	 */
+	public MapPolicy<S, A> properPolicy() {
+		Map<S, A> policy = new HashMap<S, A>();
+		for (int s = 0; s < _properRow.length; s++) {
+			if (_properRow[s] >= 0) {
+				policy.put(_model.state(s), _model.action(_properRow[s]));
+			}
+		}
+		return new MapPolicy<S, A>(policy);
+	}
+
+	/**
+	 * Returns the number of sweeps spent evaluating the proper policy during
+	 * the last call to {@link #run()}.
+	 * 
+	 * @return the number of policy evaluation sweeps
+	 */
+	public int evaluationSweeps() {
+		return _evaluationSweeps;
+	}
+
+	/**
+	 * Returns the number of focused value iteration sweeps performed during
+	 * the last call to {@link #run()}.
+	 * 
+	 * @return the number of value iteration sweeps
+	 */
+	public int sweeps() {
+		return _sweeps;
+	}
+
+	/**
+	 * Returns the monitor of this solver. Both the policy evaluation sweeps and
+	 * the value iteration sweeps are reported. The residual of a value
+	 * iteration sweep is the largest change of a cost backed up in the sweep.
+	 */
+	@Override
+	public SolverMonitor monitor() {
+		return _monitor;
+	}
+
+	@Override
+	public DiscountedQFunction<S, A> run() {
+		_monitored = _monitor.start();
+		_entries = 0;
+		int n = _model.numberOfStates();
+		double[] costs = new double[n];
+		for (int s = 0; s < n; s++) {
+			costs[s] = _proper[s] ? 0 : Double.POSITIVE_INFINITY;
+		}
+
+		// Evaluate the proper policy
+		_evaluationSweeps = 0;
+		double delta = Double.POSITIVE_INFINITY;
+		while (delta > _theta && _evaluationSweeps < _maxIterations) {
+			delta = 0;
+			int backups = 0;
+			for (int i = 0; i < _numOrdered; i++) {
+				int s = _order[i];
+				if (_terminal[s]) {
+					continue;
+				}
+				double c = solveRow(_properRow[s], s, costs);
+				delta = Math.max(delta, Math.abs(c - costs[s]));
+				costs[s] = c;
+				backups++;
+			}
+			_evaluationSweeps++;
+			endSweep(backups, delta);
+		}
+
+		// Focused value iteration
+		boolean[] dirty = new boolean[n];
+		int numDirty = 0;
+		for (int i = 0; i < _numOrdered; i++) {
+			int s = _order[i];
+			if (!_terminal[s]) {
+				dirty[s] = true;
+				numDirty++;
+			}
+		}
+		_sweeps = 0;
+		while (numDirty > 0 && _sweeps < _maxIterations) {
+			delta = 0;
+			int backups = 0;
+			for (int i = 0; i < _numOrdered; i++) {
+				int s = _order[i];
+				if (!dirty[s]) {
+					continue;
+				}
+				dirty[s] = false;
+				numDirty--;
+				double c = Double.POSITIVE_INFINITY;
+				for (int row = _model.rowBegin(s); row < _model.rowEnd(s); row++) {
+					if (_allowed[row]) {
+						c = Math.min(c, solveRow(row, s, costs));
+					}
+				}
+				delta = Math.max(delta, Math.abs(c - costs[s]));
+				backups++;
+				if (Math.abs(c - costs[s]) > _theta) {
+					for (int k = _reverse.predBegin(s); k < _reverse.predEnd(s); k++) {
+						int p = _reverse.state(_reverse.predecessor(k));
+						if (!dirty[p] && _proper[p] && !_terminal[p]) {
+							dirty[p] = true;
+							numDirty++;
+						}
+					}
+				}
+				costs[s] = c;
+			}
+			_sweeps++;
+			endSweep(backups, delta);
+		}
+
+		double[] qvals = new double[_model.numberOfRows()];
+		for (int s = 0; s < n; s++) {
+			if (_terminal[s]) {
+				continue;
+			}
+			for (int row = _model.rowBegin(s); row < _model.rowEnd(s); row++) {
+				double q = _sign * _model.r(row);
+				int entryEnd = _model.entryEnd(row);
+				for (int e = _model.entryBegin(row); e < entryEnd; e++) {
+					q += _model.tprob(e) * costs[_model.successor(e)];
+				}
+				qvals[row] = _sign * q;
+			}
+		}
+		_monitor.finish();
+		return new ArrayQFunction<S, A>(_model, qvals, 0);
+	}
+
+	private void endSweep(int backups, double residual) {
+		_monitor.count(backups, _entries);
+		_entries = 0;
+		_monitor.endSweep(residual);
+	}
+
+	/**
+	 * Returns the expected cost of a row given the costs of the other states,
+	 * solving for the self-transition of state s.
+	 */
+	private double solveRow(int row, int s, double[] costs) {
+		double q = _sign * _model.r(row);
+		double self = 0;
+		int entryEnd = _model.entryEnd(row);
+		for (int e = _model.entryBegin(row); e < entryEnd; e++) {
+			int t = _model.successor(e);
+			if (t == s) {
+				self += _model.tprob(e);
+			} else {
+				q += _model.tprob(e) * costs[t];
+			}
+		}
+		if (_monitored) {
+			_entries += entryEnd - _model.entryBegin(row);
+		}
+		return self < 1 ? q / (1 - self) : Double.POSITIVE_INFINITY;
+	}
+}
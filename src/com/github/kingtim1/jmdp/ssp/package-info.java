@@ -0,0 +1,8 @@
+/**
+ * Solvers for shortest path and stochastic shortest path problems, i.e. models whose states are driven toward a set of terminal (goal) states.
+ */
+/**
+ * @author Timothy A. Mann
+ *
+ */
+package com.github.kingtim1.jmdp.ssp;